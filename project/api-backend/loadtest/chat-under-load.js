@@ -0,0 +1,257 @@
+// 压测：大量流式对话在途时，饮食日记/体重接口是否仍然可用
+//
+// 三个场景按时间先后执行：
+// - records_baseline：没有对话时以固定速率请求日记/体重接口，作为基线
+// - chats：CHAT_VUS 个虚拟用户各自持有一个会话，循环发送流式消息并读完整个 SSE 回复；
+//   每轮回复完成后分页读取刚写入的两条消息，验证 write-behind 缓冲的读己之写
+// - records_loaded：对话全部在途期间以相同速率请求日记/体重接口
+// 结束时按阶段输出各接口的 p50/p99，并把完整结果写入 loadtest-summary.json
+//
+// 用法见同目录 README.md：
+//   k6 run -e BASE_URL=http://localhost:8080 loadtest/chat-under-load.js
+
+import http from 'k6/http';
+import exec from 'k6/execution';
+import { check, sleep } from 'k6';
+import { Rate, Trend } from 'k6/metrics';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const CHAT_VUS = parseInt(__ENV.CHAT_VUS || '200', 10);
+const SEED_USERS = parseInt(__ENV.SEED_USERS || '50', 10);
+const SEED_DIARY_PER_USER = parseInt(__ENV.SEED_DIARY_PER_USER || '20', 10);
+const RECORDS_RATE = parseInt(__ENV.RECORDS_RATE || '20', 10);
+const HOLD = __ENV.HOLD || '2m';
+const THINK_SECONDS = parseFloat(__ENV.THINK_SECONDS || '1');
+const P99_BUDGET_MS = parseInt(__ENV.P99_BUDGET_MS || '500', 10);
+const PASSWORD = 'loadtest123';
+const FOOD_ID = 1;
+
+const chatTtfb = new Trend('chat_ttfb', true);
+const chatDuration = new Trend('chat_duration', true);
+const chatHistoryDuration = new Trend('chat_history_duration', true);
+const chatOk = new Rate('chat_ok');
+const diaryDuration = new Trend('diary_duration', true);
+const weightDuration = new Trend('weight_duration', true);
+const recordsOk = new Rate('records_ok');
+
+export const options = {
+    setupTimeout: '5m',
+    summaryTrendStats: ['avg', 'p(50)', 'p(99)', 'max'],
+    scenarios: {
+        records_baseline: {
+            executor: 'constant-arrival-rate',
+            exec: 'records',
+            rate: RECORDS_RATE,
+            timeUnit: '1s',
+            duration: '20s',
+            preAllocatedVUs: 20,
+            maxVUs: 200,
+            tags: { phase: 'baseline' },
+        },
+        chats: {
+            executor: 'ramping-vus',
+            exec: 'chat',
+            startTime: '20s',
+            startVUs: 0,
+            stages: [
+                { duration: '30s', target: CHAT_VUS },
+                { duration: HOLD, target: CHAT_VUS },
+                { duration: '10s', target: 0 },
+            ],
+            gracefulRampDown: '60s',
+        },
+        records_loaded: {
+            executor: 'constant-arrival-rate',
+            exec: 'records',
+            startTime: '50s',
+            rate: RECORDS_RATE,
+            timeUnit: '1s',
+            duration: HOLD,
+            preAllocatedVUs: 20,
+            maxVUs: 200,
+            tags: { phase: 'loaded' },
+        },
+    },
+    thresholds: {
+        // 对话在途时日记/体重接口的 p99 不超过预算，且几乎没有失败
+        'diary_duration{phase:loaded}': [`p(99)<${P99_BUDGET_MS}`],
+        'weight_duration{phase:loaded}': [`p(99)<${P99_BUDGET_MS}`],
+        'records_ok{phase:loaded}': ['rate>0.99'],
+        // 基线只用于对比，不设阈值（列出以便在结果中按阶段拆分）
+        'diary_duration{phase:baseline}': [],
+        'weight_duration{phase:baseline}': [],
+        'records_ok{phase:baseline}': [],
+        chat_ok: ['rate>0.95'],
+    },
+};
+
+/**
+ * 准备数据：注册并登录 SEED_USERS 个压测用户，为每个用户写入最近的饮食日记和体重记录
+ * 重复执行时注册和同日体重会失败，忽略即可
+ */
+export function setup() {
+    const tokens = [];
+    for (let i = 0; i < SEED_USERS; i++) {
+        const username = `lt_user_${i}`;
+        http.post(`${BASE_URL}/api/user/register`, JSON.stringify({
+            username,
+            password: PASSWORD,
+            nickname: `压测用户${i}`,
+        }), { headers: { 'Content-Type': 'application/json' }, tags: { name: 'seed' } });
+        const login = http.post(`${BASE_URL}/api/user/login`, JSON.stringify({ username, password: PASSWORD }),
+            { headers: { 'Content-Type': 'application/json' }, tags: { name: 'seed' } });
+        const token = login.status === 200 ? login.json('data.token') : null;
+        if (!token) {
+            throw new Error(`压测用户登录失败: ${username}, status: ${login.status}, body: ${login.body}`);
+        }
+        tokens.push(token);
+
+        const params = authParams(token, 'seed');
+        for (let d = 0; d < SEED_DIARY_PER_USER; d++) {
+            http.post(`${BASE_URL}/api/diet/diary/add`, JSON.stringify(diaryEntry(d % 7)), params);
+        }
+        for (let d = 0; d < 30; d++) {
+            http.post(`${BASE_URL}/api/weight/add`, JSON.stringify({
+                recordDate: dateOf(daysAgo(d)),
+                weight: (65 + Math.sin(d / 5) * 2).toFixed(1),
+            }), params);
+        }
+    }
+    return { tokens };
+}
+
+/**
+ * 日记/体重接口：读当天统计、读 30 天体重趋势、写一条日记（写入需要数据库连接）
+ */
+export function records(data) {
+    const token = data.tokens[exec.scenario.iterationInTest % data.tokens.length];
+    const params = authParams(token, 'records');
+
+    const statistics = http.get(`${BASE_URL}/api/diet/diary/statistics/today`, params);
+    diaryDuration.add(statistics.timings.duration);
+    recordsOk.add(isOk(statistics));
+
+    const added = http.post(`${BASE_URL}/api/diet/diary/add`, JSON.stringify(diaryEntry(0)), params);
+    diaryDuration.add(added.timings.duration);
+    recordsOk.add(isOk(added));
+
+    const trend = http.get(`${BASE_URL}/api/weight/trend/last30days`, params);
+    weightDuration.add(trend.timings.duration);
+    recordsOk.add(isOk(trend));
+}
+
+// 每个虚拟用户（独立的 JS 运行时）持有自己的会话，同一会话内的消息按顺序发送
+let session = null;
+
+/**
+ * 流式对话：发送消息并读完 SSE 回复，然后读取本轮写入的消息
+ */
+export function chat(data) {
+    if (session === null) {
+        const token = data.tokens[exec.vu.idInTest % data.tokens.length];
+        const created = http.post(`${BASE_URL}/api/chat/sessions`, JSON.stringify({ title: `压测会话 VU${exec.vu.idInTest}` }),
+            authParams(token, 'chat_session'));
+        if (!isOk(created)) {
+            chatOk.add(false);
+            sleep(THINK_SECONDS);
+            return;
+        }
+        session = { id: created.json('data.id'), token, turns: 0, consistent: true };
+    }
+
+    const params = authParams(session.token, 'chat_stream');
+    params.headers.Accept = 'text/event-stream';
+    params.timeout = '180s';
+    const res = http.post(`${BASE_URL}/api/chat/messages/stream`, JSON.stringify({
+        sessionId: session.id,
+        content: `我今天午饭吃了一碗牛肉面，晚饭应该怎么搭配？（第${session.turns + 1}轮）`,
+    }), params);
+    chatTtfb.add(res.timings.waiting);
+    chatDuration.add(res.timings.duration);
+
+    const done = res.status === 200 && res.body ? /event:done\r?\ndata:(.*)/.exec(res.body) : null;
+    chatOk.add(done !== null);
+    session.turns++;
+    if (done === null) {
+        // 失败轮次是否留下消息取决于失败位置，之后不再按轮次校验该会话
+        session.consistent = false;
+    } else if (session.consistent) {
+        // 消息按时间正序分页，每轮两条（用户消息 + AI回复），第 N 页即第 N 轮
+        const reply = JSON.parse(done[1]);
+        const history = http.get(`${BASE_URL}/api/chat/messages?sessionId=${session.id}&page=${session.turns}&size=2`,
+            authParams(session.token, 'chat_history'));
+        chatHistoryDuration.add(history.timings.duration);
+        check(history, {
+            'write-behind: 读到本轮AI回复': (r) => isOk(r) && r.json('data.1.id') === reply.id,
+        });
+    }
+    sleep(THINK_SECONDS);
+}
+
+export function handleSummary(data) {
+    const rows = [
+        ['diary_duration{phase:baseline}', '日记（基线）'],
+        ['diary_duration{phase:loaded}', `日记（${CHAT_VUS} 个对话在途）`],
+        ['weight_duration{phase:baseline}', '体重（基线）'],
+        ['weight_duration{phase:loaded}', `体重（${CHAT_VUS} 个对话在途）`],
+        ['chat_ttfb', '流式对话首字节'],
+        ['chat_duration', '流式对话完整回复'],
+        ['chat_history_duration', '对话历史（读己之写）'],
+    ];
+    const lines = ['', '接口耗时（毫秒）', pad('指标', 30) + pad('p50', 12) + pad('p99', 12) + pad('max', 12)];
+    for (const [metric, label] of rows) {
+        const values = data.metrics[metric] && data.metrics[metric].values;
+        if (values) {
+            lines.push(pad(label, 30) + pad(values['p(50)'].toFixed(1), 12)
+                + pad(values['p(99)'].toFixed(1), 12) + pad(values.max.toFixed(1), 12));
+        }
+    }
+    for (const [metric, label] of [['chat_ok', '对话成功率'], ['records_ok{phase:loaded}', '日记/体重成功率（对话在途）']]) {
+        const values = data.metrics[metric] && data.metrics[metric].values;
+        if (values) {
+            lines.push(pad(label, 30) + (values.rate * 100).toFixed(2) + '%');
+        }
+    }
+    const failed = Object.entries(data.metrics)
+        .filter(([, metric]) => metric.thresholds && Object.values(metric.thresholds).some((t) => !t.ok))
+        .map(([name]) => name);
+    lines.push(failed.length ? `未通过的阈值: ${failed.join(', ')}` : '全部阈值通过', '');
+    return {
+        stdout: lines.join('\n'),
+        'loadtest-summary.json': JSON.stringify(data, null, 2),
+    };
+}
+
+function authParams(token, name) {
+    return {
+        headers: { 'Content-Type': 'application/json', Authorization: `Bearer ${token}` },
+        tags: { name },
+    };
+}
+
+function isOk(res) {
+    return res.status === 200 && res.json('code') === 0;
+}
+
+function diaryEntry(dayOffset) {
+    return {
+        foodId: FOOD_ID,
+        mealType: 'lunch',
+        mealTime: `${dateOf(daysAgo(dayOffset))}T12:00:00`,
+        amount: 150,
+        unit: 'g',
+    };
+}
+
+function daysAgo(days) {
+    return new Date(Date.now() - days * 24 * 3600 * 1000);
+}
+
+function dateOf(date) {
+    return date.toISOString().slice(0, 10);
+}
+
+function pad(text, width) {
+    const s = String(text);
+    return s.length >= width ? s + ' ' : s + ' '.repeat(width - s.length);
+}
@@ -10,6 +10,7 @@ public enum ResultCode {
     UNAUTHORIZED(401, "未授权"),
     FORBIDDEN(403, "禁止访问"),
     NOT_FOUND(404, "资源不存在"),
+    TOO_MANY_REQUESTS(429, "服务繁忙，请稍后重试"),
     
     PARAM_ERROR(400, "参数错误"),
     BUSINESS_ERROR(500, "业务错误"),
@@ -29,6 +29,24 @@ public class CommonConstant {
     /** 聊天角色：AI助手 */
     public static final String CHAT_ROLE_ASSISTANT = "assistant";
     
+    /** 营养报告AI建议状态：无 */
+    public static final int ADVICE_STATUS_NONE = 0;
+    
+    /** 营养报告AI建议状态：AI生成 */
+    public static final int ADVICE_STATUS_AI = 1;
+    
+    /** 营养报告AI建议状态：规则建议，待AI重新生成 */
+    public static final int ADVICE_STATUS_RULE_PENDING = 2;
+    
+    /** 聊天消息状态：生成中（AI回复占位） */
+    public static final int MESSAGE_STATUS_PENDING = 0;
+    
+    /** 聊天消息状态：已完成 */
+    public static final int MESSAGE_STATUS_COMPLETED = 1;
+    
+    /** 聊天消息状态：生成失败或中断 */
+    public static final int MESSAGE_STATUS_FAILED = 2;
+    
     /** 默认页码 */
     public static final int DEFAULT_PAGE_NUM = 1;
     
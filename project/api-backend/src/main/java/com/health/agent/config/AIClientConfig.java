@@ -0,0 +1,101 @@
+package com.health.agent.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.agent.module.ai.cache.AIResponseCache;
+import com.health.agent.module.ai.cache.FoodAnalysisCache;
+import com.health.agent.module.ai.client.AIClient;
+import com.health.agent.module.ai.client.CachingAIClient;
+import com.health.agent.module.ai.client.ConcurrencyLimitingAIClient;
+import com.health.agent.module.ai.client.HedgingAIClient;
+import com.health.agent.module.ai.client.PrioritySchedulingAIClient;
+import com.health.agent.module.ai.client.RecordingAIClient;
+import com.health.agent.module.ai.client.ReplayAIClient;
+import com.health.agent.module.ai.client.RoutingAIClient;
+import com.health.agent.module.ai.client.SingleFlightAIClient;
+import com.health.agent.module.ai.client.TencentHunyuanClient;
+import com.health.agent.module.ai.limit.AIWorkload;
+import com.health.agent.module.ai.limit.PriorityDispatcher;
+import com.health.agent.module.ai.mock.AIRecordingStore;
+import com.health.agent.module.ai.routing.AIEndpointRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * AI客户端装配
+ * 业务代码注入的 {@link AIClient} 是由上游客户端逐层装饰得到的调用链（由外到内）：
+ * 响应缓存 -> 相同请求合并 -> 对冲请求 -> 优先级调度 -> 并发隔离舱 -> 多端点路由 -> 上游客户端
+ * 缓存命中不占用并发许可，被合并的请求也只占用一个许可；对冲请求各自排队、各自占用许可
+ * 启用 ai.mock 时：replay 模式以回放客户端代替多端点路由和上游客户端，record 模式在其外层录制响应
+ */
+@Slf4j
+@Configuration
+public class AIClientConfig {
+
+    private static final String MOCK_MODE_REPLAY = "replay";
+
+    @Bean
+    @Primary
+    public AIClient aiClient(TencentHunyuanClient upstreamClient,
+                             AIEndpointRegistry endpointRegistry,
+                             AIResponseCache responseCache,
+                             FoodAnalysisCache foodAnalysisCache,
+                             AIConfig aiConfig,
+                             @Qualifier("aiHedgeExecutor") AsyncTaskExecutor hedgeExecutor,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        AIConfig.Mock mock = aiConfig.getMock();
+        AIRecordingStore recordingStore = Boolean.TRUE.equals(mock.getEnabled())
+                ? new AIRecordingStore(mock.getRecordingsFile(), objectMapper) : null;
+
+        StringBuilder chain;
+        AIClient client;
+        if (recordingStore != null && MOCK_MODE_REPLAY.equals(mock.getMode())) {
+            client = new ReplayAIClient(recordingStore, aiConfig, meterRegistry);
+            chain = new StringBuilder("ReplayAIClient");
+            log.warn("AI回放模式已启用，不会访问上游，录制: {} 条", recordingStore.size());
+        } else {
+            client = upstreamClient;
+            chain = new StringBuilder("TencentHunyuanClient");
+            if (Boolean.TRUE.equals(aiConfig.getRouting().getEnabled())) {
+                client = new RoutingAIClient(endpointRegistry, aiConfig.getRouting(), meterRegistry);
+                chain.insert(0, "RoutingAIClient -> ");
+            }
+            if (recordingStore != null) {
+                client = new RecordingAIClient(client, recordingStore, aiConfig);
+                chain.insert(0, "RecordingAIClient -> ");
+            }
+        }
+        ToIntFunction<AIWorkload> workloadLimits = null;
+        if (Boolean.TRUE.equals(aiConfig.getLimiter().getEnabled())) {
+            ConcurrencyLimitingAIClient limitingClient = new ConcurrencyLimitingAIClient(client, aiConfig.getLimiter(), meterRegistry);
+            // 调度器按隔离舱当前上限放行，排队的请求不会在隔离舱处被立即拒绝
+            workloadLimits = limitingClient::getLimit;
+            client = limitingClient;
+            chain.insert(0, "ConcurrencyLimitingAIClient -> ");
+        }
+        if (Boolean.TRUE.equals(aiConfig.getScheduler().getEnabled())) {
+            client = new PrioritySchedulingAIClient(client,
+                    new PriorityDispatcher(aiConfig.getScheduler(), workloadLimits, meterRegistry));
+            chain.insert(0, "PrioritySchedulingAIClient -> ");
+        }
+        if (Boolean.TRUE.equals(aiConfig.getHedge().getEnabled())) {
+            client = new HedgingAIClient(client, aiConfig, hedgeExecutor, meterRegistry);
+            chain.insert(0, "HedgingAIClient -> ");
+        }
+        if (Boolean.TRUE.equals(aiConfig.getSingleFlight().getEnabled())) {
+            client = new SingleFlightAIClient(client, aiConfig, meterRegistry);
+            chain.insert(0, "SingleFlightAIClient -> ");
+        }
+        client = new CachingAIClient(client, responseCache, foodAnalysisCache, aiConfig);
+        chain.insert(0, "CachingAIClient -> ");
+        log.info("AI客户端调用链装配完成: {}", chain);
+        return client;
+    }
+}
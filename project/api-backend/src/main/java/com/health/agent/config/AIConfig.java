@@ -1,6 +1,8 @@
 package com.health.agent.config;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
@@ -40,6 +42,7 @@ public class AIConfig {
         log.info("Max Tokens: {}", maxTokens);
         log.info("Temperature: {}", temperature);
         log.info("Timeout: {}ms", timeout);
+        log.info("HTTP Transport: {}, maxTotal: {}, maxPerRoute: {}", http.getTransport(), http.getMaxTotal(), http.getMaxPerRoute());
         
         if (apiKey == null || apiKey.trim().isEmpty() || apiKey.startsWith("${AI_API_KEY")) {
             log.error("⚠️  警告：AI API Key 未正确配置！请检查 application.yml 中的 ai.api-key 配置");
@@ -71,6 +74,452 @@ public class AIConfig {
     /** 温度参数（0-2） 越高越随机，越低越确定 */
     private Double temperature = 0.7;
 
+    /** 上游HTTP传输配置（连接池、超时） */
+    private Http http = new Http();
+
+    /** 对话响应缓存配置 */
+    private Cache cache = new Cache();
+
+    /** 食物图片分析配置 */
+    private Vision vision = new Vision();
+
+    /** 上传图片预处理配置 */
+    private Image image = new Image();
+
+    /** 异步分析任务配置 */
+    private Job job = new Job();
+
+    /** 上游调用自适应并发限制配置 */
+    private Limiter limiter = new Limiter();
+
+    /** 相同请求合并配置 */
+    private SingleFlight singleFlight = new SingleFlight();
+
+    /** 优先级调度配置 */
+    private Scheduler scheduler = new Scheduler();
+
+    /** 文本对话对冲请求配置 */
+    private Hedge hedge = new Hedge();
+
+    /** 多端点路由配置 */
+    private Routing routing = new Routing();
+
+    /** 营养报告AI建议配置 */
+    private Advice advice = new Advice();
+
+    /** 录制/回放配置（离线压测） */
+    private Mock mock = new Mock();
+
+    /**
+     * 对话上下文配置
+     */
+    private Context context = new Context();
+
+    /**
+     * 上游HTTP传输配置
+     * 读取超时统一使用 {@link AIConfig#timeout}
+     */
+    @Data
+    public static class Http {
+        /** 传输实现：pooled-Apache HttpClient连接池（HTTP/1.1 keep-alive），jdk-JDK HttpClient（HTTP/2优先） */
+        private String transport = "pooled";
+
+        /** 连接池最大连接数 */
+        private Integer maxTotal = 200;
+
+        /** 单个路由（host:port）最大连接数 */
+        private Integer maxPerRoute = 50;
+
+        /** 建立连接超时时间（毫秒） */
+        private Long connectTimeout = 5000L;
+
+        /** 从连接池获取连接的等待超时时间（毫秒） */
+        private Long connectionRequestTimeout = 3000L;
+
+        /** 空闲连接回收时间（秒） */
+        private Long idleEvictSeconds = 30L;
+
+        /** 连接最大存活时间（秒），到期后不再复用 */
+        private Long connectionTtlSeconds = 300L;
+
+        /** 连接空闲超过该时间后复用前先校验（秒） */
+        private Long validateAfterInactivitySeconds = 10L;
+    }
+
+    /**
+     * 对话响应缓存配置（本地 Caffeine + Redis 两级）
+     */
+    @Data
+    public static class Cache {
+        /** 是否启用 */
+        private Boolean enabled = true;
+
+        /** 未显式标记时，温度不高于该值的请求才会被缓存 */
+        private Double maxTemperature = 0.3;
+
+        /** 本地缓存最大条目数 */
+        private Long localMaxSize = 1000L;
+
+        /** 本地缓存过期时间（秒） */
+        private Long localTtlSeconds = 300L;
+
+        /** Redis 缓存过期时间（秒） */
+        private Long redisTtlSeconds = 3600L;
+
+        /** Redis 键前缀 */
+        private String keyPrefix = "ai:cache:chat:";
+
+        /** 是否启用食物图片分析结果缓存 */
+        private Boolean foodEnabled = true;
+
+        /** 食物图片分析本地缓存最大条目数 */
+        private Long foodLocalMaxSize = 500L;
+
+        /** 食物图片分析缓存过期时间（秒），本地与 Redis 共用 */
+        private Long foodTtlSeconds = 86400L;
+
+        /** 感知哈希（dHash）汉明距离不超过该值视为同一张图片，0 表示只做精确匹配 */
+        private Integer foodMaxHammingDistance = 4;
+
+        /** 食物图片分析 Redis 键前缀 */
+        private String foodKeyPrefix = "ai:cache:food:";
+    }
+
+    /**
+     * 食物图片分析配置
+     */
+    @Data
+    public static class Vision {
+        /**
+         * 分析流程：
+         * single-pass-视觉模型直接按JSON格式输出（json_object），校验失败时回退到两阶段；
+         * two-stage-视觉模型输出文本后再由文本模型结构化
+         */
+        private String pipeline = "single-pass";
+
+        /** 批量分析单次最多图片数 */
+        private Integer batchMaxImages = 6;
+    }
+
+    /**
+     * 上传图片预处理配置（降采样解码、按目标大小选择 JPEG 质量）
+     */
+    @Data
+    public static class Image {
+        /** 输出图片最长边（像素） */
+        private Integer maxDimension = 800;
+
+        /** 输出 JPEG 目标字节数，对应 Base64 约 120000 字符（qwen-vl 上限约 130000） */
+        private Integer targetBytes = 90000;
+
+        /** 首选 JPEG 质量，满足目标大小时只编码一次 */
+        private Double maxQuality = 0.6;
+
+        /** 最低 JPEG 质量 */
+        private Double minQuality = 0.3;
+
+        /** 超出目标大小时二分搜索质量的次数 */
+        private Integer searchSteps = 3;
+
+        /** 预处理线程数，0 表示 CPU 核数 */
+        private Integer workers = 0;
+
+        /** 等待预处理的最大任务数，超出时以 429 拒绝 */
+        private Integer queueCapacity = 64;
+
+        /** 编码缓冲区池大小 */
+        private Integer bufferPoolSize = 16;
+    }
+
+    /**
+     * 异步食物图片分析任务配置
+     */
+    @Data
+    public static class Job {
+        /** 最大在途任务数（排队 + 执行中），超出时直接拒绝提交 */
+        private Integer maxInFlight = 64;
+
+        /** 平台线程池工作线程数（不支持虚拟线程时使用） */
+        private Integer workers = 16;
+
+        /** 运行在 JDK 21+ 时是否使用虚拟线程执行任务 */
+        private Boolean virtualThreads = true;
+
+        /** 任务结果保留时间（秒） */
+        private Long resultTtlSeconds = 600L;
+
+        /** Redis 键前缀 */
+        private String keyPrefix = "ai:job:food:";
+    }
+
+    /**
+     * 上游调用自适应并发限制配置（AIMD）
+     * 每类负载一个隔离舱：调用成功且并发接近上限时上限加一，出错或超过慢调用阈值时按比例回退
+     */
+    @Data
+    public static class Limiter {
+        /** 是否启用 */
+        private Boolean enabled = true;
+
+        /** 拥塞时上限的回退比例 */
+        private Double backoffRatio = 0.9;
+
+        /** 交互式文本对话 */
+        private Bulkhead chat = new Bulkhead(20, 4, 100, 30000L);
+
+        /** 食物图片视觉分析 */
+        private Bulkhead vision = new Bulkhead(8, 2, 32, 40000L);
+
+        /** 后台报告建议 */
+        private Bulkhead background = new Bulkhead(4, 1, 8, 60000L);
+    }
+
+    /**
+     * AI调用优先级调度配置
+     * 所有优先级共享 max-concurrency 个上游并发名额，高优先级先放行，低优先级只能使用 share 比例的名额
+     */
+    @Data
+    public static class Scheduler {
+        /** 是否启用 */
+        private Boolean enabled = true;
+
+        /** 各优先级共享的上游并发名额 */
+        private Integer maxConcurrency = 64;
+
+        /** 交互式（对话、知识库问答） */
+        private PriorityClass interactive = new PriorityClass(1.0, 200, 5000L);
+
+        /** 准实时（食物图片分析、生成报告建议） */
+        private PriorityClass nearRealTime = new PriorityClass(0.75, 100, 15000L);
+
+        /** 后台（对话摘要、建议重新生成） */
+        private PriorityClass background = new PriorityClass(0.5, 50, 30000L);
+    }
+
+    /**
+     * 单个优先级的调度参数
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PriorityClass {
+        /** 总在途数低于 max-concurrency 的该比例时才放行 */
+        private Double share;
+
+        /** 排队上限，超出时直接拒绝 */
+        private Integer queueCapacity;
+
+        /** 最长排队时间（毫秒） */
+        private Long maxWaitMillis;
+    }
+
+    /**
+     * 相同请求合并（single-flight）配置
+     * 并发的相同请求只向上游发起一次，结果分发给所有等待方
+     */
+    @Data
+    public static class SingleFlight {
+        /** 是否启用 */
+        private Boolean enabled = true;
+
+        /** 跟随方最长等待时间（毫秒），超时后放弃等待并返回错误 */
+        private Long maxWaitMillis = 60000L;
+    }
+
+    /**
+     * 对冲请求（hedged request）配置
+     * 文本对话超过近期耗时分位数仍未返回时再发出一个相同请求，取先返回者
+     */
+    @Data
+    public static class Hedge {
+        /** 是否启用 */
+        private Boolean enabled = false;
+
+        /** 触发对冲的近期耗时分位数（0-100） */
+        private Double percentile = 95.0;
+
+        /** 对冲等待时间下限（毫秒），避免分位数很小时频繁对冲 */
+        private Long minDelayMillis = 200L;
+
+        /** 耗时统计窗口（秒），分位数取最近两个窗口的样本 */
+        private Long windowSeconds = 30L;
+
+        /** 统计窗口内样本数达到该值才启用对冲 */
+        private Integer minSamples = 20;
+
+        /** 对冲请求预算：不超过主请求数的百分比 */
+        private Double budgetPercent = 5.0;
+
+        /** 预算可累积的最大对冲请求数（允许的短时突发） */
+        private Double budgetBurst = 10.0;
+    }
+
+    /**
+     * 多端点路由配置
+     * 端点来自 ai_config 表（定时热加载），按实时耗时、错误率和在途数选择端点，失败时自动切换
+     */
+    @Data
+    public static class Routing {
+        /** 是否启用（关闭时只使用本文件中的 ai.* 端点） */
+        private Boolean enabled = true;
+
+        /** ai_config 重新加载间隔（毫秒） */
+        private Long reloadIntervalMillis = 15000L;
+
+        /** 单次调用最多尝试的端点数（含首个端点） */
+        private Integer maxAttempts = 2;
+
+        /** 耗时、错误率 EWMA 的平滑系数 */
+        private Double ewmaAlpha = 0.3;
+
+        /** 错误率在没有新样本时的衰减时间常数（秒） */
+        private Long errorDecaySeconds = 30L;
+
+        /** 错误率超过该值的端点视为不健康，仅在没有健康端点时使用 */
+        private Double maxErrorRate = 0.5;
+
+        /** 路由代价中错误率的惩罚系数 */
+        private Double errorPenalty = 10.0;
+
+        /** 尚无耗时样本的端点按该耗时（毫秒）估算 */
+        private Double initialLatencyMillis = 1000.0;
+    }
+
+    /**
+     * 营养报告AI建议配置
+     * AI调用经过熔断器，熔断或失败时使用规则模板生成建议，并由后台任务在熔断器放行时重新生成
+     */
+    @Data
+    public static class Advice {
+        /** 建议回复的最大 Token 数 */
+        private Integer maxTokens = 600;
+
+        /** 建议生成的温度参数 */
+        private Double temperature = 0.5;
+
+        /** 后台重新生成待更新建议的间隔（毫秒） */
+        private Long regenerateIntervalMillis = 60000L;
+
+        /** 每轮最多重新生成的报告数 */
+        private Integer regenerateBatchSize = 10;
+
+        /** 熔断器参数 */
+        private Breaker breaker = new Breaker();
+    }
+
+    /**
+     * AI响应录制/回放配置（mock-ai profile 下启用）
+     * - replay：不访问上游，回放录制文件中的响应，并按配置模拟时延、流式节奏和故障
+     * - record：照常调用上游，把成功的响应追加到录制文件
+     */
+    @Data
+    public static class Mock {
+        /** 是否启用 */
+        private Boolean enabled = false;
+
+        /** 模式：replay / record */
+        private String mode = "replay";
+
+        /** 录制文件（JSON Lines），不存在时回放 classpath 下的示例录制 */
+        private String recordingsFile = "./ai-recordings.jsonl";
+
+        /** 随机种子，设置后时延和故障注入的随机序列固定 */
+        private Long seed;
+
+        /** 使用录制时的实际耗时，而不是按分布抽样 */
+        private Boolean useRecordedLatency = false;
+
+        /** 非流式调用耗时中位数（毫秒） */
+        private Long latencyMedianMillis = 800L;
+
+        /** 耗时 P99（毫秒），与中位数一起确定对数正态分布 */
+        private Long latencyP99Millis = 4000L;
+
+        /** 流式首个分片耗时中位数（毫秒），分布形状与非流式相同 */
+        private Long firstChunkMedianMillis = 300L;
+
+        /** 每个流式分片的字符数 */
+        private Integer chunkChars = 4;
+
+        /** 流式分片间隔（毫秒） */
+        private Long chunkIntervalMillis = 40L;
+
+        /** 上游错误比例 */
+        private Double errorRate = 0.0;
+
+        /** 上游超时比例（等待 ai.timeout 后失败） */
+        private Double timeoutRate = 0.0;
+
+        /** 流式回复中途断开比例 */
+        private Double streamAbortRate = 0.0;
+    }
+
+    /**
+     * 熔断器参数（按调用次数的滑动窗口）
+     */
+    @Data
+    public static class Breaker {
+        /** 失败率阈值（百分比），慢调用计为失败 */
+        private Double failureRateThreshold = 50.0;
+
+        /** 滑动窗口的调用次数 */
+        private Integer windowSize = 10;
+
+        /** 窗口内至少有该数量的调用才计算失败率 */
+        private Integer minimumCalls = 5;
+
+        /** 慢调用阈值（毫秒） */
+        private Long slowCallMillis = 20000L;
+
+        /** 打开后等待多久（秒）转为半开 */
+        private Long openSeconds = 30L;
+
+        /** 半开状态放行的探测调用数 */
+        private Integer halfOpenCalls = 2;
+    }
+
+    /**
+     * 对话上下文配置
+     * 历史消息按 Token 预算从新到旧装入，装不下的早期消息由滚动摘要代替
+     */
+    @Data
+    public static class Context {
+        /** 历史消息的 Token 预算（不含系统提示词、摘要和当前消息） */
+        private Integer historyTokenBudget = 2000;
+
+        /** 每次最多读取的历史消息条数 */
+        private Integer historyFetchLimit = 40;
+
+        /** 是否为超出预算的早期消息生成滚动摘要 */
+        private Boolean summaryEnabled = true;
+
+        /** 未摘要的溢出消息累计达到该 Token 数才刷新摘要，避免每轮都调用 */
+        private Integer summaryTriggerTokens = 600;
+
+        /** 摘要回复的最大 Token 数 */
+        private Integer summaryMaxTokens = 400;
+    }
+
+    /**
+     * 单个隔离舱的并发上限参数
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bulkhead {
+        /** 初始并发上限 */
+        private Integer initialLimit;
+
+        /** 最小并发上限 */
+        private Integer minLimit;
+
+        /** 最大并发上限 */
+        private Integer maxLimit;
+
+        /** 慢调用阈值（毫秒），超过视为拥塞信号 */
+        private Long slowCallMillis;
+    }
+
     /**
      * 获取系统提示词（饮食健康智能顾问）
      */
@@ -0,0 +1,132 @@
+package com.health.agent.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 异步线程池配置
+ * 流式对话等耗时任务在独立线程池中执行，避免长时间占用 Tomcat 请求线程
+ * 同时开启定时任务（AI端点配置热加载等）
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class AsyncConfig {
+
+    /**
+     * AI流式对话线程池
+     */
+    @Bean(name = "aiStreamExecutor")
+    public ThreadPoolTaskExecutor aiStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(64);
+        executor.setQueueCapacity(200);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("ai-stream-");
+        // 队列满时直接拒绝，由调用方返回明确错误而不是无限堆积
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        log.info("AI流式对话线程池初始化完成 - core: 8, max: 64, queue: 200");
+        return executor;
+    }
+
+    /**
+     * AI对冲请求线程池
+     * 可对冲的文本对话在此线程池中发出主请求和对冲请求，调用方线程等待先返回的结果；
+     * 不排队，已满时调用方退化为直接调用
+     */
+    @Bean(name = "aiHedgeExecutor")
+    public ThreadPoolTaskExecutor aiHedgeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(128);
+        executor.setQueueCapacity(0);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("ai-hedge-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        log.info("AI对冲请求线程池初始化完成 - core: 8, max: 128, queue: 0");
+        return executor;
+    }
+
+    /**
+     * AI后台任务线程池（对话摘要、会话压缩、建议重新生成等尽力而为的任务）
+     * 队列满时拒绝，由提交方放弃本次任务，下次触发条件满足时再提交
+     */
+    @Bean(name = "aiBackgroundExecutor")
+    public ThreadPoolTaskExecutor aiBackgroundExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(100);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("ai-bg-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        log.info("AI后台任务线程池初始化完成 - core: 2, max: 4, queue: 100");
+        return executor;
+    }
+
+    /**
+     * 图片预处理线程池（解码、缩放、JPEG编码，CPU密集）
+     * 线程数默认等于CPU核数，队列有界，满时拒绝
+     */
+    @Bean(name = "imagePreprocessExecutor")
+    public ThreadPoolTaskExecutor imagePreprocessExecutor(AIConfig aiConfig) {
+        AIConfig.Image image = aiConfig.getImage();
+        int workers = image.getWorkers() > 0 ? image.getWorkers() : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(image.getQueueCapacity());
+        executor.setThreadNamePrefix("image-prep-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        log.info("图片预处理线程池初始化完成 - workers: {}, queue: {}", workers, image.getQueueCapacity());
+        return executor;
+    }
+
+    /**
+     * 异步食物图片分析线程池
+     * JDK 21+ 且开启配置时使用虚拟线程（并发数由任务服务的在途上限约束），否则使用固定大小的平台线程池
+     */
+    @Bean(name = "foodAnalysisExecutor")
+    public Executor foodAnalysisExecutor(AIConfig aiConfig) {
+        AIConfig.Job job = aiConfig.getJob();
+        if (Boolean.TRUE.equals(job.getVirtualThreads()) && Runtime.version().feature() >= 21) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("food-job-");
+            executor.setVirtualThreads(true);
+            log.info("食物分析任务执行器初始化完成 - 虚拟线程, maxInFlight: {}", job.getMaxInFlight());
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(job.getWorkers());
+        executor.setMaxPoolSize(job.getWorkers());
+        // 在途任务数已由任务服务限制，队列容量与之一致即可
+        executor.setQueueCapacity(job.getMaxInFlight());
+        executor.setThreadNamePrefix("food-job-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        log.info("食物分析任务线程池初始化完成 - workers: {}, maxInFlight: {}", job.getWorkers(), job.getMaxInFlight());
+        return executor;
+    }
+}
@@ -0,0 +1,195 @@
+package com.health.agent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 聊天服务配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat")
+public class ChatConfig {
+
+    /** 消息写入缓冲配置 */
+    private WriteBehind writeBehind = new WriteBehind();
+
+    /** 会话近期消息缓存配置 */
+    private HistoryCache historyCache = new HistoryCache();
+
+    /** 会话消息统计回填配置 */
+    private StatsBackfill statsBackfill = new StatsBackfill();
+
+    /** 生成中AI回复的清理配置 */
+    private PendingReply pendingReply = new PendingReply();
+
+    /** WebSocket 聊天网关配置 */
+    private Gateway gateway = new Gateway();
+
+    /** 可续传的流式回复配置 */
+    private ResumableStream resumableStream = new ResumableStream();
+
+    /** 长会话压缩归档配置 */
+    private Compaction compaction = new Compaction();
+
+    /**
+     * 消息写入缓冲（write-behind）配置
+     * 消息插入和会话最后消息时间更新先进入内存缓冲，按批量大小或时间窗口合并为多行写入
+     */
+    @Data
+    public static class WriteBehind {
+        /** 是否启用（关闭时每条消息直接写库） */
+        private Boolean enabled = true;
+
+        /** 单条多行 INSERT 的最大消息数 */
+        private Integer batchSize = 100;
+
+        /** 最大丢失窗口（毫秒）：缓冲中的写入最迟在该时间内落库；0 表示写入方等待落库后才返回（组提交） */
+        private Long maxLossWindowMillis = 200L;
+
+        /** 缓冲上限，超出时由写入方同步刷新 */
+        private Integer maxPending = 10000;
+
+        /** 等待落库的超时时间（毫秒），仅在丢失窗口为 0 时使用 */
+        private Long flushTimeoutMillis = 5000L;
+
+        /** 刷新失败的重试次数 */
+        private Integer maxRetries = 3;
+    }
+
+    /**
+     * 会话近期消息窗口缓存配置
+     * 每个会话最近 window-size 条消息缓存在 Redis 列表和本地，构建对话上下文时不再查库
+     */
+    @Data
+    public static class HistoryCache {
+        /** 是否启用 */
+        private Boolean enabled = true;
+
+        /** 每个会话缓存的消息条数，应不小于 ai.context.history-fetch-limit，否则上下文读取直接查库 */
+        private Integer windowSize = 40;
+
+        /** 本地缓存的最大会话数 */
+        private Long localMaxSessions = 10000L;
+
+        /** 过期时间（秒），本地与 Redis 共用，会话有新消息时续期 */
+        private Long ttlSeconds = 600L;
+
+        /** Redis 键前缀 */
+        private String keyPrefix = "chat:history:";
+    }
+
+    /**
+     * 会话消息统计回填配置
+     * 启用后应用启动时按 chat_message 重新统计所有会话的消息数量和最后一条消息预览（一次性任务，完成后应关闭）
+     */
+    @Data
+    public static class StatsBackfill {
+        /** 是否在启动时执行回填 */
+        private Boolean enabled = false;
+
+        /** 每批处理的会话数 */
+        private Integer batchSize = 500;
+    }
+
+    /**
+     * 生成中AI回复的清理配置
+     * AI回复先以生成中状态的占位消息写入，进程在生成途中退出时占位会一直停留在生成中，超时后标记为失败
+     */
+    @Data
+    public static class PendingReply {
+        /** 超过该时间（秒）仍在生成中的回复视为中断，应大于AI调用的最长耗时（含排队） */
+        private Long timeoutSeconds = 300L;
+
+        /** 检查间隔（毫秒） */
+        private Long sweepIntervalMillis = 60000L;
+    }
+
+    /**
+     * WebSocket 聊天网关配置
+     * 一个连接承载用户的所有会话；事件经 Redis 发布/订阅转发到用户在其他节点上的连接
+     */
+    @Data
+    public static class Gateway {
+        /** 是否启用 */
+        private Boolean enabled = true;
+
+        /** 连接路径 */
+        private String path = "/ws/chat";
+
+        /** 允许的来源（Origin）模式 */
+        private String[] allowedOriginPatterns = {"*"};
+
+        /** 每个用户在单个节点上的最大连接数 */
+        private Integer maxConnectionsPerUser = 10;
+
+        /** 单条客户端消息最大字节数 */
+        private Integer maxTextMessageBytes = 16384;
+
+        /** 空闲超时（毫秒），客户端应以更短的间隔发送 ping */
+        private Long idleTimeoutMillis = 120000L;
+
+        /** 单次发送的最长阻塞时间（毫秒），超时视为慢客户端并断开 */
+        private Integer sendTimeoutMillis = 10000;
+
+        /** 每个连接待发送数据的缓冲上限（字节），超出视为慢客户端并断开 */
+        private Integer sendBufferBytes = 524288;
+
+        /** Redis 频道前缀，按用户划分频道 */
+        private String channelPrefix = "chat:ws:user:";
+    }
+
+    /**
+     * 可续传的流式回复配置
+     * 流式AI回复的分片按消息ID写入 Redis Stream，客户端断线后可在任意节点从最后收到的偏移量继续接收
+     */
+    @Data
+    public static class ResumableStream {
+        /** 是否启用 */
+        private Boolean enabled = true;
+
+        /** Redis Stream 键前缀，后接AI回复的消息ID */
+        private String keyPrefix = "chat:stream:";
+
+        /** 生成中的过期时间（秒），每次写入分片时不续期，需覆盖最长生成时间 */
+        private Long generatingTtlSeconds = 600L;
+
+        /** 生成结束后保留的时间（秒），供断线的客户端续传 */
+        private Long completedTtlSeconds = 300L;
+
+        /** 续传时轮询新分片的间隔（毫秒） */
+        private Long pollIntervalMillis = 200L;
+
+        /** 续传等待生成结束的最长时间（毫秒） */
+        private Long maxWaitMillis = 180000L;
+    }
+
+    /**
+     * 长会话压缩归档配置
+     * 空闲且较长的会话把早期消息合并进会话摘要后移到归档表，只在 chat_message 中保留最近的消息
+     */
+    @Data
+    public static class Compaction {
+        /** 是否启用（需同时启用 ai.context.summary-enabled） */
+        private Boolean enabled = true;
+
+        /** 执行间隔（毫秒） */
+        private Long intervalMillis = 600000L;
+
+        /** 会话空闲超过该时间（分钟）才压缩，需大于生成中回复的超时时间 */
+        private Long idleMinutes = 1440L;
+
+        /** chat_message 中的对话轮数（一问一答为一轮）超过该值才压缩 */
+        private Integer minTurns = 30;
+
+        /** 压缩后在 chat_message 中保留的最近消息数 */
+        private Integer keepRecentMessages = 20;
+
+        /** 每次执行最多压缩的会话数 */
+        private Integer batchSize = 50;
+
+        /** 单次执行的时间上限（毫秒），超出后不再开始新的摘要轮次和会话 */
+        private Long maxRunMillis = 300000L;
+    }
+}
@@ -0,0 +1,42 @@
+package com.health.agent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 饮食日记配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "diet")
+public class DietConfig {
+
+    /** 每日饮食汇总配置 */
+    private Summary summary = new Summary();
+
+    /**
+     * 每日饮食汇总（diet_daily_summary）配置
+     * 汇总随日记增删改增量维护；定时校验最近几天的汇总与日记是否一致，不一致的用户日期从日记重建
+     */
+    @Data
+    public static class Summary {
+        /** 是否在启动时全量重建汇总（新增汇总表后启用一次，完成后关闭） */
+        private Boolean rebuildOnStartup = false;
+
+        /** 全量重建时每批处理的用户数 */
+        private Integer rebuildBatchSize = 200;
+
+        /** 是否启用定时校验 */
+        private Boolean verifyEnabled = true;
+
+        /** 校验间隔（毫秒） */
+        private Long verifyIntervalMillis = 21600000L;
+
+        /** 校验最近多少天（含今天） */
+        private Integer verifyDays = 7;
+
+        /** 每次校验最多修复的用户日期数 */
+        private Integer verifyLimit = 500;
+    }
+}
@@ -0,0 +1,69 @@
+package com.health.agent.config;
+
+import com.health.agent.module.chat.gateway.ChatHandshakeInterceptor;
+import com.health.agent.module.chat.gateway.ChatWebSocketHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+/**
+ * WebSocket 配置
+ * 聊天网关使用原生 WebSocket + JSON 消息（不使用 STOMP 内存代理，跨节点转发由 Redis 发布/订阅完成）；
+ * 空闲连接只占用容器的 NIO 连接和较小的消息缓冲，不占用线程
+ */
+@Configuration
+@EnableWebSocket
+@ConditionalOnProperty(prefix = "chat.gateway", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final ChatConfig chatConfig;
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final ChatHandshakeInterceptor chatHandshakeInterceptor;
+
+    public WebSocketConfig(ChatConfig chatConfig,
+                           ChatWebSocketHandler chatWebSocketHandler,
+                           ChatHandshakeInterceptor chatHandshakeInterceptor) {
+        this.chatConfig = chatConfig;
+        this.chatWebSocketHandler = chatWebSocketHandler;
+        this.chatHandshakeInterceptor = chatHandshakeInterceptor;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        ChatConfig.Gateway gateway = chatConfig.getGateway();
+        registry.addHandler(chatWebSocketHandler, gateway.getPath())
+                .addInterceptors(chatHandshakeInterceptor)
+                .setAllowedOriginPatterns(gateway.getAllowedOriginPatterns());
+    }
+
+    /**
+     * 限制消息缓冲大小和空闲时间，控制大量空闲连接的内存占用
+     */
+    @Bean
+    public ServletServerContainerFactoryBean webSocketContainer() {
+        ChatConfig.Gateway gateway = chatConfig.getGateway();
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(gateway.getMaxTextMessageBytes());
+        container.setMaxBinaryMessageBufferSize(gateway.getMaxTextMessageBytes());
+        container.setMaxSessionIdleTimeout(gateway.getIdleTimeoutMillis());
+        container.setAsyncSendTimeout((long) gateway.getSendTimeoutMillis());
+        return container;
+    }
+
+    /**
+     * 聊天网关跨节点转发的 Redis 订阅容器，按用户动态订阅频道
+     * 静态方法，避免与依赖它的处理器构成循环依赖
+     */
+    @Bean
+    public static RedisMessageListenerContainer chatListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+}
@@ -0,0 +1,106 @@
+package com.health.agent.module.ai.cache;
+
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * AI请求规范化哈希
+ * 由 模型 + 温度 + 最大Token + 规范化后的消息列表 计算 SHA-256，语义相同的请求得到相同的键
+ * 
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public final class AIRequestKey {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private AIRequestKey() {
+    }
+
+    /**
+     * 计算请求的规范化哈希（未设置的参数使用配置中的默认值）
+     * 
+     * @param request AI请求
+     * @param aiConfig AI配置
+     * @return 64位十六进制 SHA-256
+     */
+    public static String of(AIRequestDTO request, AIConfig aiConfig) {
+        String model = request.getModel() != null ? request.getModel() : aiConfig.getModel();
+        Double temperature = effectiveTemperature(request, aiConfig);
+        Integer maxTokens = request.getMaxTokens() != null ? request.getMaxTokens() : aiConfig.getMaxTokens();
+
+        StringBuilder canonical = new StringBuilder(256);
+        canonical.append("m=").append(model).append('\n');
+        canonical.append("t=").append(temperature == null ? "" : BigDecimal.valueOf(temperature).stripTrailingZeros().toPlainString()).append('\n');
+        canonical.append("k=").append(maxTokens).append('\n');
+        if (request.getMessages() != null) {
+            for (AIRequestDTO.Message message : request.getMessages()) {
+                String content = normalize(message.getContent());
+                // 长度前缀避免不同消息拼接后产生歧义
+                canonical.append(message.getRole()).append(':')
+                        .append(content.length()).append(':')
+                        .append(content).append('\n');
+            }
+        }
+        return sha256(canonical.toString());
+    }
+
+    /**
+     * 计算食物图片分析请求的哈希（按 Base64 原文）
+     * 
+     * @param base64Image Base64 图片数据
+     * @return 64位十六进制 SHA-256
+     */
+    public static String ofFoodImage(String base64Image) {
+        return sha256("food\n" + (base64Image == null ? "" : base64Image.strip()));
+    }
+
+    /**
+     * 计算食物图片分析请求的哈希（有 JPEG 字节时按字节，否则按 Base64 原文）
+     * 
+     * @param request 食物图片分析请求
+     * @return 64位十六进制 SHA-256
+     */
+    public static String ofFoodImage(FoodAnalysisRequestDTO request) {
+        if (request.getImageBytes() == null) {
+            return ofFoodImage(request.getBase64Image());
+        }
+        MessageDigest digest = sha256Digest();
+        digest.update("food-bytes\n".getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest(request.getImageBytes()));
+    }
+
+    /**
+     * 请求实际生效的温度
+     */
+    public static Double effectiveTemperature(AIRequestDTO request, AIConfig aiConfig) {
+        return request.getTemperature() != null ? request.getTemperature() : aiConfig.getTemperature();
+    }
+
+    private static String normalize(String content) {
+        if (content == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(content.strip()).replaceAll(" ");
+    }
+
+    private static String sha256(String text) {
+        return HexFormat.of().formatHex(sha256Digest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+}
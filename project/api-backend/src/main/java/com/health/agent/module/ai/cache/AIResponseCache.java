@@ -0,0 +1,151 @@
+package com.health.agent.module.ai.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * AI对话响应两级缓存
+ * 本地 Caffeine 作为前置缓存，Redis 作为跨实例共享缓存；Redis 不可用时退化为仅本地缓存
+ * <p>
+ * 指标：
+ * - ai.cache.requests{tier=local|redis, result=hit} / {tier=none, result=miss}
+ * - ai.cache.bypass 不可缓存而直接透传的请求数
+ * - ai.cache.local.size 本地缓存条目数
+ * 
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class AIResponseCache {
+
+    private final AIConfig aiConfig;
+    private final AIConfig.Cache cacheConfig;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, AIResponseDTO> localCache;
+
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter misses;
+    private final Counter bypasses;
+
+    public AIResponseCache(AIConfig aiConfig,
+                           StringRedisTemplate redisTemplate,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry) {
+        this.aiConfig = aiConfig;
+        this.cacheConfig = aiConfig.getCache();
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(cacheConfig.getLocalMaxSize())
+                .expireAfterWrite(Duration.ofSeconds(cacheConfig.getLocalTtlSeconds()))
+                .build();
+
+        this.localHits = Counter.builder("ai.cache.requests").tag("tier", "local").tag("result", "hit")
+                .description("AI响应缓存查询次数").register(meterRegistry);
+        this.redisHits = Counter.builder("ai.cache.requests").tag("tier", "redis").tag("result", "hit")
+                .description("AI响应缓存查询次数").register(meterRegistry);
+        this.misses = Counter.builder("ai.cache.requests").tag("tier", "none").tag("result", "miss")
+                .description("AI响应缓存查询次数").register(meterRegistry);
+        this.bypasses = Counter.builder("ai.cache.bypass")
+                .description("不可缓存而直接调用上游的请求数").register(meterRegistry);
+        Gauge.builder("ai.cache.local.size", localCache, Cache::estimatedSize)
+                .description("本地缓存条目数").register(meterRegistry);
+    }
+
+    /**
+     * 判断请求是否可以使用缓存
+     * 显式标记优先；未标记时仅缓存低温度（输出较确定）的请求
+     */
+    public boolean isCacheable(AIRequestDTO request) {
+        if (!Boolean.TRUE.equals(cacheConfig.getEnabled()) || Boolean.FALSE.equals(request.getCacheable())) {
+            return false;
+        }
+        if (Boolean.TRUE.equals(request.getCacheable())) {
+            return true;
+        }
+        Double temperature = AIRequestKey.effectiveTemperature(request, aiConfig);
+        return temperature != null && temperature <= cacheConfig.getMaxTemperature();
+    }
+
+    /**
+     * 记录一次绕过缓存的请求
+     */
+    public void recordBypass() {
+        bypasses.increment();
+    }
+
+    /**
+     * 查询缓存，依次查本地与 Redis，Redis 命中时回填本地
+     * 
+     * @param key 请求规范化哈希
+     * @return 缓存的响应副本，未命中返回 null
+     */
+    public AIResponseDTO get(String key) {
+        AIResponseDTO local = localCache.getIfPresent(key);
+        if (local != null) {
+            localHits.increment();
+            return copyOf(local);
+        }
+
+        try {
+            String json = redisTemplate.opsForValue().get(cacheConfig.getKeyPrefix() + key);
+            if (json != null) {
+                AIResponseDTO cached = objectMapper.readValue(json, AIResponseDTO.class);
+                localCache.put(key, cached);
+                redisHits.increment();
+                return copyOf(cached);
+            }
+        } catch (Exception e) {
+            log.warn("读取Redis AI缓存失败，降级为仅本地缓存: {}", e.getMessage());
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入缓存（仅缓存成功且有内容的响应）
+     */
+    public void put(String key, AIResponseDTO response) {
+        if (response == null || !Boolean.TRUE.equals(response.getSuccess()) || response.getContent() == null
+                || response.getContent().isBlank()) {
+            return;
+        }
+        AIResponseDTO stored = copyOf(response);
+        localCache.put(key, stored);
+        try {
+            redisTemplate.opsForValue().set(cacheConfig.getKeyPrefix() + key,
+                    objectMapper.writeValueAsString(stored),
+                    Duration.ofSeconds(cacheConfig.getRedisTtlSeconds()));
+        } catch (Exception e) {
+            log.warn("写入Redis AI缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private AIResponseDTO copyOf(AIResponseDTO source) {
+        return AIResponseDTO.builder()
+                .content(source.getContent())
+                .model(source.getModel())
+                .usage(source.getUsage())
+                .requestId(source.getRequestId())
+                .responseTime(source.getResponseTime())
+                .success(source.getSuccess())
+                .errorMessage(source.getErrorMessage())
+                .build();
+    }
+}
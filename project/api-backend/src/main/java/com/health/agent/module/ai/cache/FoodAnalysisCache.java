@@ -0,0 +1,175 @@
+package com.health.agent.module.ai.cache;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 食物图片分析结果缓存（按图片内容寻址）
+ * 先按 SHA-256 精确匹配，再按 dHash 汉明距离识别近似重复图片；本地 Caffeine + Redis 两级
+ * <p>
+ * Redis 键：
+ * - {prefix}sha:{sha256} -> 分析结果 JSON
+ * - {prefix}dhash:{dHash} -> sha256（跨实例只做感知哈希完全相同的匹配，近似匹配在本地完成）
+ * <p>
+ * 指标：
+ * - ai.food.cache.requests{match=exact|near, tier=local|redis} / {match=none, tier=none}
+ * - ai.food.cache.local.size 本地缓存条目数
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class FoodAnalysisCache {
+
+    private final AIConfig.Cache cacheConfig;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Entry> localCache;
+    private final MeterRegistry meterRegistry;
+    private final Counter misses;
+
+    public FoodAnalysisCache(AIConfig aiConfig,
+                             StringRedisTemplate redisTemplate,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        this.cacheConfig = aiConfig.getCache();
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(cacheConfig.getFoodLocalMaxSize())
+                .expireAfterWrite(Duration.ofSeconds(cacheConfig.getFoodTtlSeconds()))
+                .build();
+
+        this.misses = Counter.builder("ai.food.cache.requests").tag("match", "none").tag("tier", "none")
+                .description("食物图片分析缓存查询次数").register(meterRegistry);
+        Gauge.builder("ai.food.cache.local.size", localCache, Cache::estimatedSize)
+                .description("食物图片分析本地缓存条目数").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(cacheConfig.getFoodEnabled());
+    }
+
+    /**
+     * 查询缓存：本地精确 -> Redis 精确 -> 本地近似 -> Redis 感知哈希
+     *
+     * @param fingerprint 图片指纹
+     * @return 缓存的分析结果副本，未命中返回 null
+     */
+    public FoodAnalysisResponseDTO get(ImageFingerprint fingerprint) {
+        Entry local = localCache.getIfPresent(fingerprint.getSha256());
+        if (local != null) {
+            return hit("exact", "local", local.response());
+        }
+
+        FoodAnalysisResponseDTO remote = readRedis(fingerprint.getSha256());
+        if (remote != null) {
+            localCache.put(fingerprint.getSha256(), new Entry(fingerprint.getDHash(), remote));
+            return hit("exact", "redis", remote);
+        }
+
+        Long dHash = fingerprint.getDHash();
+        if (dHash != null) {
+            Entry near = findNearDuplicate(dHash);
+            if (near != null) {
+                return hit("near", "local", near.response());
+            }
+
+            try {
+                String sha = redisTemplate.opsForValue().get(cacheConfig.getFoodKeyPrefix() + "dhash:" + fingerprint.dHashHex());
+                FoodAnalysisResponseDTO similar = sha != null ? readRedis(sha) : null;
+                if (similar != null) {
+                    localCache.put(fingerprint.getSha256(), new Entry(dHash, similar));
+                    return hit("near", "redis", similar);
+                }
+            } catch (Exception e) {
+                log.warn("读取Redis食物分析缓存失败: {}", e.getMessage());
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入缓存（仅缓存识别成功的结果）
+     */
+    public void put(ImageFingerprint fingerprint, FoodAnalysisResponseDTO response) {
+        if (response == null || !Boolean.TRUE.equals(response.getSuccess()) || response.getFood() == null) {
+            return;
+        }
+        FoodAnalysisResponseDTO stored = copyOf(response);
+        localCache.put(fingerprint.getSha256(), new Entry(fingerprint.getDHash(), stored));
+
+        Duration ttl = Duration.ofSeconds(cacheConfig.getFoodTtlSeconds());
+        try {
+            redisTemplate.opsForValue().set(cacheConfig.getFoodKeyPrefix() + "sha:" + fingerprint.getSha256(),
+                    objectMapper.writeValueAsString(stored), ttl);
+            if (fingerprint.getDHash() != null) {
+                redisTemplate.opsForValue().set(cacheConfig.getFoodKeyPrefix() + "dhash:" + fingerprint.dHashHex(),
+                        fingerprint.getSha256(), ttl);
+            }
+        } catch (Exception e) {
+            log.warn("写入Redis食物分析缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private Entry findNearDuplicate(long dHash) {
+        int maxDistance = cacheConfig.getFoodMaxHammingDistance();
+        Entry best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (Entry entry : localCache.asMap().values()) {
+            if (entry.dHash() == null) {
+                continue;
+            }
+            int distance = ImageFingerprint.hammingDistance(dHash, entry.dHash());
+            if (distance <= maxDistance && distance < bestDistance) {
+                best = entry;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private FoodAnalysisResponseDTO readRedis(String sha256) {
+        try {
+            String json = redisTemplate.opsForValue().get(cacheConfig.getFoodKeyPrefix() + "sha:" + sha256);
+            return json != null ? objectMapper.readValue(json, FoodAnalysisResponseDTO.class) : null;
+        } catch (Exception e) {
+            log.warn("读取Redis食物分析缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private FoodAnalysisResponseDTO hit(String match, String tier, FoodAnalysisResponseDTO response) {
+        Counter.builder("ai.food.cache.requests").tag("match", match).tag("tier", tier)
+                .description("食物图片分析缓存查询次数").register(meterRegistry)
+                .increment();
+        return copyOf(response);
+    }
+
+    private FoodAnalysisResponseDTO copyOf(FoodAnalysisResponseDTO source) {
+        FoodAnalysisResponseDTO copy = BeanUtil.copyProperties(source, FoodAnalysisResponseDTO.class);
+        if (source.getFood() != null) {
+            copy.setFood(BeanUtil.copyProperties(source.getFood(), FoodAnalysisResponseDTO.FoodInfo.class));
+        }
+        return copy;
+    }
+
+    private record Entry(Long dHash, FoodAnalysisResponseDTO response) {
+    }
+}
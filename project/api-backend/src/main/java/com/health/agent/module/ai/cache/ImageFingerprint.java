@@ -0,0 +1,122 @@
+package com.health.agent.module.ai.cache;
+
+import lombok.Getter;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * 图片指纹
+ * 内容哈希（SHA-256）用于精确匹配；差值哈希（dHash，64位）用于识别重新编码、轻微缩放后的近似重复图片
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Getter
+public final class ImageFingerprint {
+
+    private static final int DHASH_WIDTH = 9;
+    private static final int DHASH_HEIGHT = 8;
+
+    /** 图片字节的 SHA-256（十六进制） */
+    private final String sha256;
+
+    /** 差值哈希，图片无法解码时为 null */
+    private final Long dHash;
+
+    private ImageFingerprint(String sha256, Long dHash) {
+        this.sha256 = sha256;
+        this.dHash = dHash;
+    }
+
+    /**
+     * 由 Base64 图片数据计算指纹（兼容 data:image/...;base64, 前缀）
+     *
+     * @param base64Image Base64 图片数据
+     * @return 指纹，数据不是合法 Base64 时返回 null
+     */
+    public static ImageFingerprint ofBase64(String base64Image) {
+        if (base64Image == null || base64Image.isBlank()) {
+            return null;
+        }
+        String data = base64Image.strip();
+        int comma = data.indexOf(',');
+        if (data.startsWith("data:") && comma > 0) {
+            data = data.substring(comma + 1);
+        }
+        try {
+            return of(Base64.getMimeDecoder().decode(data));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 由图片字节计算指纹
+     */
+    public static ImageFingerprint of(byte[] imageBytes) {
+        return new ImageFingerprint(sha256(imageBytes), dHash(imageBytes));
+    }
+
+    /**
+     * 两个差值哈希之间的汉明距离
+     */
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * 差值哈希的十六进制表示
+     */
+    public String dHashHex() {
+        return dHash == null ? null : HexFormat.of().toHexDigits(dHash);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * 缩放为 9x8 灰度图，逐行比较相邻像素亮度得到 64 位哈希
+     */
+    private static Long dHash(byte[] imageBytes) {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+        } catch (IOException e) {
+            return null;
+        }
+        if (image == null) {
+            return null;
+        }
+
+        BufferedImage gray = new BufferedImage(DHASH_WIDTH, DHASH_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, DHASH_WIDTH, DHASH_HEIGHT, null);
+        g.dispose();
+
+        long hash = 0L;
+        for (int y = 0; y < DHASH_HEIGHT; y++) {
+            for (int x = 0; x < DHASH_WIDTH - 1; x++) {
+                int left = gray.getRaster().getSample(x, y, 0);
+                int right = gray.getRaster().getSample(x + 1, y, 0);
+                hash = (hash << 1) | (left > right ? 1L : 0L);
+            }
+        }
+        return hash;
+    }
+}
@@ -53,6 +53,13 @@ public interface AIClient {
          */
         void onMessage(String content);
         
+        /**
+         * 接收Token使用情况（服务端在流末尾返回，可能不回调）
+         * 
+         * @param usage Token使用统计
+         */
+        default void onUsage(AIResponseDTO.Usage usage) {}
+        
         /**
          * 流式传输完成
          */
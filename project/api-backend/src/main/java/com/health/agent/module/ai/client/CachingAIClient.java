@@ -0,0 +1,135 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.cache.AIRequestKey;
+import com.health.agent.module.ai.cache.AIResponseCache;
+import com.health.agent.module.ai.cache.FoodAnalysisCache;
+import com.health.agent.module.ai.cache.ImageFingerprint;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 带响应缓存的AI客户端装饰器
+ * 对可缓存的对话请求按规范化哈希查询两级缓存，未命中再调用被装饰的客户端；
+ * 食物图片分析按图片内容（SHA-256 + dHash）缓存识别结果
+ * 
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class CachingAIClient implements AIClient {
+
+    private final AIClient delegate;
+    private final AIResponseCache cache;
+    private final FoodAnalysisCache foodCache;
+    private final AIConfig aiConfig;
+
+    public CachingAIClient(AIClient delegate, AIResponseCache cache, FoodAnalysisCache foodCache, AIConfig aiConfig) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.foodCache = foodCache;
+        this.aiConfig = aiConfig;
+    }
+
+    @Override
+    public AIResponseDTO chat(AIRequestDTO request) {
+        if (!cache.isCacheable(request)) {
+            cache.recordBypass();
+            return delegate.chat(request);
+        }
+
+        String key = AIRequestKey.of(request, aiConfig);
+        AIResponseDTO cached = cache.get(key);
+        if (cached != null) {
+            log.info("AI响应缓存命中，key: {}", key);
+            return cached;
+        }
+
+        AIResponseDTO response = delegate.chat(request);
+        cache.put(key, response);
+        return response;
+    }
+
+    @Override
+    public void chatStream(AIRequestDTO request, StreamCallback callback) {
+        if (!cache.isCacheable(request)) {
+            cache.recordBypass();
+            delegate.chatStream(request, callback);
+            return;
+        }
+
+        String key = AIRequestKey.of(request, aiConfig);
+        AIResponseDTO cached = cache.get(key);
+        if (cached != null) {
+            // 命中时一次性回放完整内容
+            log.info("AI响应缓存命中（流式），key: {}", key);
+            callback.onMessage(cached.getContent());
+            if (cached.getUsage() != null) {
+                callback.onUsage(cached.getUsage());
+            }
+            callback.onComplete();
+            return;
+        }
+
+        StringBuilder content = new StringBuilder();
+        AtomicReference<AIResponseDTO.Usage> usage = new AtomicReference<>();
+        delegate.chatStream(request, new StreamCallback() {
+            @Override
+            public void onMessage(String delta) {
+                content.append(delta);
+                callback.onMessage(delta);
+            }
+
+            @Override
+            public void onUsage(AIResponseDTO.Usage streamUsage) {
+                usage.set(streamUsage);
+                callback.onUsage(streamUsage);
+            }
+
+            @Override
+            public void onComplete() {
+                cache.put(key, AIResponseDTO.builder()
+                        .content(content.toString())
+                        .model(request.getModel() != null ? request.getModel() : aiConfig.getModel())
+                        .usage(usage.get())
+                        .success(true)
+                        .build());
+                callback.onComplete();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    @Override
+    public FoodAnalysisResponseDTO analyzeFoodImage(FoodAnalysisRequestDTO request) {
+        if (!foodCache.isEnabled()) {
+            return delegate.analyzeFoodImage(request);
+        }
+
+        ImageFingerprint fingerprint = request.getImageBytes() != null
+                ? ImageFingerprint.of(request.getImageBytes())
+                : ImageFingerprint.ofBase64(request.getBase64Image());
+        if (fingerprint == null) {
+            return delegate.analyzeFoodImage(request);
+        }
+
+        FoodAnalysisResponseDTO cached = foodCache.get(fingerprint);
+        if (cached != null) {
+            log.info("食物图片分析缓存命中，sha256: {}, dHash: {}", fingerprint.getSha256(), fingerprint.dHashHex());
+            return cached;
+        }
+
+        FoodAnalysisResponseDTO response = delegate.analyzeFoodImage(request);
+        foodCache.put(fingerprint, response);
+        return response;
+    }
+}
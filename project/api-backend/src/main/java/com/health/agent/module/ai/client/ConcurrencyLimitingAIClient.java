@@ -0,0 +1,199 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.common.api.ResultCode;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.limit.AIWorkload;
+import com.health.agent.module.ai.limit.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.InterruptedIOException;
+import java.net.http.HttpTimeoutException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 带并发隔离舱的AI客户端装饰器
+ * 文本对话、视觉分析、后台任务各自使用独立的自适应并发上限，
+ * 上游变慢时快速拒绝超出部分（429），避免请求线程全部阻塞在上游调用上。
+ * 只有超时、429 和 5xx 视为拥塞信号（视觉分析的失败响应按其 failureCause 判断）；调用方取消只释放许可，其余失败按正常样本计入
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class ConcurrencyLimitingAIClient implements AIClient {
+
+    /**
+     * 上游客户端把非 2xx 响应包装成 "HTTP请求失败，状态码: 503 SERVICE_UNAVAILABLE" 形式的异常
+     */
+    private static final Pattern STATUS_CODE = Pattern.compile("状态码: (\\d{3})");
+
+    private final AIClient delegate;
+    private final Map<AIWorkload, AdaptiveConcurrencyLimiter> bulkheads = new EnumMap<>(AIWorkload.class);
+
+    public ConcurrencyLimitingAIClient(AIClient delegate, AIConfig.Limiter limiterConfig, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        double backoffRatio = limiterConfig.getBackoffRatio();
+        bulkheads.put(AIWorkload.CHAT, new AdaptiveConcurrencyLimiter(
+                AIWorkload.CHAT.getTag(), limiterConfig.getChat(), backoffRatio, meterRegistry));
+        bulkheads.put(AIWorkload.VISION, new AdaptiveConcurrencyLimiter(
+                AIWorkload.VISION.getTag(), limiterConfig.getVision(), backoffRatio, meterRegistry));
+        bulkheads.put(AIWorkload.BACKGROUND, new AdaptiveConcurrencyLimiter(
+                AIWorkload.BACKGROUND.getTag(), limiterConfig.getBackground(), backoffRatio, meterRegistry));
+    }
+
+    @Override
+    public AIResponseDTO chat(AIRequestDTO request) {
+        AdaptiveConcurrencyLimiter.Permit permit = acquire(workloadOf(request));
+        try {
+            AIResponseDTO response = delegate.chat(request);
+            permit.success(true);
+            return response;
+        } catch (RuntimeException e) {
+            release(permit, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void chatStream(AIRequestDTO request, StreamCallback callback) {
+        AdaptiveConcurrencyLimiter.Permit permit;
+        try {
+            permit = acquire(workloadOf(request));
+        } catch (BusinessException e) {
+            callback.onError(e);
+            return;
+        }
+
+        try {
+            delegate.chatStream(request, new StreamCallback() {
+                @Override
+                public void onMessage(String content) {
+                    callback.onMessage(content);
+                }
+
+                @Override
+                public void onUsage(AIResponseDTO.Usage usage) {
+                    callback.onUsage(usage);
+                }
+
+                @Override
+                public void onComplete() {
+                    permit.success(false);
+                    callback.onComplete();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    release(permit, error);
+                    callback.onError(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            release(permit, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public FoodAnalysisResponseDTO analyzeFoodImage(FoodAnalysisRequestDTO request) {
+        AdaptiveConcurrencyLimiter.Permit permit = acquire(AIWorkload.VISION);
+        try {
+            FoodAnalysisResponseDTO response = delegate.analyzeFoodImage(request);
+            if (!Boolean.TRUE.equals(response.getSuccess()) && response.getFailureCause() != null) {
+                // 上游客户端把调用异常转成了失败响应，按失败原因区分拥塞
+                release(permit, response.getFailureCause());
+            } else {
+                // 识别成功或模型输出不可用，按正常样本计入耗时
+                permit.success(true);
+            }
+            return response;
+        } catch (RuntimeException e) {
+            release(permit, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 负载类型的当前并发上限（供调度器对齐放行数量）
+     */
+    public int getLimit(AIWorkload workload) {
+        return bulkheads.get(workload).getLimit();
+    }
+
+    private AdaptiveConcurrencyLimiter.Permit acquire(AIWorkload workload) {
+        AdaptiveConcurrencyLimiter limiter = bulkheads.get(workload);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            log.warn("AI调用并发已达上限，快速拒绝，bulkhead: {}, limit: {}", workload.getTag(), limiter.getLimit());
+            throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "AI服务繁忙，请稍后重试");
+        }
+        return permit;
+    }
+
+    /**
+     * 按失败原因释放许可：取消只释放，超时/429/5xx 视为拥塞，其余失败按正常样本计入
+     */
+    private void release(AdaptiveConcurrencyLimiter.Permit permit, Throwable error) {
+        if (isCancellation(error)) {
+            // 对冲请求落败或客户端断开，不是上游拥塞
+            permit.cancelled();
+        } else if (isCongestion(error)) {
+            permit.dropped();
+        } else {
+            permit.success(true);
+        }
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof CancellationException || e instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isCongestion(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            // 读超时、连接池等待超时（InterruptedIOException 子类）与 JDK HttpClient 超时
+            if (e instanceof InterruptedIOException || e instanceof HttpTimeoutException
+                    || e instanceof TimeoutException) {
+                return true;
+            }
+            if (e instanceof RestClientResponseException responseException) {
+                return isCongestionStatus(responseException.getStatusCode().value());
+            }
+            String message = e.getMessage();
+            if (message != null) {
+                Matcher matcher = STATUS_CODE.matcher(message);
+                if (matcher.find() && isCongestionStatus(Integer.parseInt(matcher.group(1)))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCongestionStatus(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    private AIWorkload workloadOf(AIRequestDTO request) {
+        return request.getWorkload() != null ? request.getWorkload() : AIWorkload.CHAT;
+    }
+}
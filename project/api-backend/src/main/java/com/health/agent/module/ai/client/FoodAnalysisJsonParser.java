@@ -0,0 +1,167 @@
+package com.health.agent.module.ai.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 食物分析JSON解析与校验
+ * 使用 Jackson 流式解析器逐个读取字段，不构建中间 Map；
+ * 结构不完整或数值不合理时抛出 {@link IllegalArgumentException}，由调用方决定是否回退
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public final class FoodAnalysisJsonParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final Pattern LEADING_NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    /** 每100克热量上限（纯脂肪约900千卡） */
+    private static final double MAX_CALORIES = 900.0;
+
+    /** 每100克单项营养素上限 */
+    private static final double MAX_NUTRIENT_GRAMS = 100.0;
+
+    private FoodAnalysisJsonParser() {
+    }
+
+    /**
+     * 解析结果
+     */
+    @Getter
+    public static final class Result {
+        private final FoodAnalysisResponseDTO.FoodInfo foodInfo;
+        private final String nutritionAnalysis;
+
+        private Result(FoodAnalysisResponseDTO.FoodInfo foodInfo, String nutritionAnalysis) {
+            this.foodInfo = foodInfo;
+            this.nutritionAnalysis = nutritionAnalysis;
+        }
+    }
+
+    /**
+     * 解析并校验模型输出
+     *
+     * @param json 模型返回的JSON文本（允许包裹 ``` 代码块）
+     * @return 解析结果
+     * @throws IllegalArgumentException JSON格式错误或字段校验不通过
+     */
+    public static Result parse(String json) {
+        String text = stripCodeFence(json);
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("模型返回内容为空");
+        }
+
+        FoodAnalysisResponseDTO.FoodInfo foodInfo = null;
+        String nutritionAnalysis = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(text)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("模型返回内容不是JSON对象");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("food".equals(field) && value == JsonToken.START_OBJECT) {
+                    foodInfo = readFood(parser);
+                } else if ("nutritionAnalysis".equals(field)) {
+                    nutritionAnalysis = readText(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON解析失败: " + e.getMessage(), e);
+        }
+
+        validate(foodInfo);
+        return new Result(foodInfo, nutritionAnalysis);
+    }
+
+    private static FoodAnalysisResponseDTO.FoodInfo readFood(JsonParser parser) throws IOException {
+        FoodAnalysisResponseDTO.FoodInfo food = new FoodAnalysisResponseDTO.FoodInfo();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "name" -> food.setName(readText(parser));
+                case "category" -> food.setCategory(readText(parser));
+                case "calories" -> food.setCalories(readNumber(parser));
+                case "protein" -> food.setProtein(readNumber(parser));
+                case "fat" -> food.setFat(readNumber(parser));
+                case "carbohydrate" -> food.setCarbohydrate(readNumber(parser));
+                case "unit" -> food.setUnit(readText(parser));
+                case "suggestedPortion" -> food.setSuggestedPortion(readText(parser));
+                case "advice" -> food.setAdvice(readText(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        return food;
+    }
+
+    private static String readText(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING || token.isNumeric() || token.isBoolean()) {
+            return parser.getValueAsString();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * 读取数值，兼容 "116千卡" 这类带单位的字符串
+     */
+    private static Double readNumber(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            Matcher matcher = LEADING_NUMBER.matcher(parser.getText());
+            return matcher.find() ? Double.valueOf(matcher.group()) : null;
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static void validate(FoodAnalysisResponseDTO.FoodInfo food) {
+        if (food == null) {
+            throw new IllegalArgumentException("缺少 food 字段");
+        }
+        if (food.getName() == null || food.getName().isBlank()) {
+            throw new IllegalArgumentException("缺少食物名称");
+        }
+        checkRange("calories", food.getCalories(), MAX_CALORIES);
+        checkRange("protein", food.getProtein(), MAX_NUTRIENT_GRAMS);
+        checkRange("fat", food.getFat(), MAX_NUTRIENT_GRAMS);
+        checkRange("carbohydrate", food.getCarbohydrate(), MAX_NUTRIENT_GRAMS);
+    }
+
+    private static void checkRange(String field, Double value, double max) {
+        if (value == null || value.isNaN() || value < 0 || value > max) {
+            throw new IllegalArgumentException("字段 " + field + " 缺失或超出合理范围: " + value);
+        }
+    }
+
+    private static String stripCodeFence(String json) {
+        if (json == null) {
+            return "";
+        }
+        String text = json.strip();
+        if (text.startsWith("```")) {
+            int firstLineEnd = text.indexOf('\n');
+            int closing = text.lastIndexOf("```");
+            if (firstLineEnd > 0 && closing > firstLineEnd) {
+                text = text.substring(firstLineEnd + 1, closing).strip();
+            }
+        }
+        return text;
+    }
+}
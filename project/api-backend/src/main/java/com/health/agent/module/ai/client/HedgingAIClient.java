@@ -0,0 +1,232 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.common.api.ResultCode;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.hedge.HedgeBudget;
+import com.health.agent.module.ai.hedge.LatencyHistogram;
+import com.health.agent.module.ai.limit.AIWorkload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 对冲请求（hedged request）AI客户端装饰器
+ * 交互式文本对话（CHAT 负载的 chat 调用）超过该模型近期耗时的指定分位数仍未返回时，
+ * 再发出一个相同的请求，取先成功返回的结果并取消另一个：
+ * - 近期耗时按模型用 HdrHistogram 统计，样本不足时不对冲
+ * - 对冲请求受预算限制（默认不超过主请求数的 5%），同样经过内层的并发隔离舱，上限已满时放弃对冲
+ * - 被取消的请求中断其执行线程；传输层不响应中断时，结果在返回后丢弃，并发许可到那时才释放
+ * 流式调用、视觉分析和后台任务不对冲，直接透传
+ * <p>
+ * 指标：ai.hedge{model, outcome=issued|won|budget_exhausted|rejected}、ai.hedge.budget.balance
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class HedgingAIClient implements AIClient {
+
+    private final AIClient delegate;
+    private final AIConfig aiConfig;
+    private final AsyncTaskExecutor executor;
+    private final MeterRegistry meterRegistry;
+    private final LatencyHistogram latencies;
+    private final HedgeBudget budget;
+    private final long minDelayMillis;
+
+    public HedgingAIClient(AIClient delegate, AIConfig aiConfig, AsyncTaskExecutor executor, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.aiConfig = aiConfig;
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        AIConfig.Hedge hedge = aiConfig.getHedge();
+        this.latencies = new LatencyHistogram(hedge.getPercentile(), hedge.getWindowSeconds(),
+                hedge.getMinSamples(), meterRegistry);
+        this.budget = new HedgeBudget(hedge.getBudgetPercent() / 100.0, hedge.getBudgetBurst());
+        this.minDelayMillis = hedge.getMinDelayMillis();
+        Gauge.builder("ai.hedge.budget.balance", budget, HedgeBudget::getBalance)
+                .description("对冲请求预算余额").register(meterRegistry);
+    }
+
+    @Override
+    public AIResponseDTO chat(AIRequestDTO request) {
+        AIWorkload workload = request.getWorkload() != null ? request.getWorkload() : AIWorkload.CHAT;
+        if (workload != AIWorkload.CHAT) {
+            return delegate.chat(request);
+        }
+
+        String model = request.getModel() != null ? request.getModel() : aiConfig.getModel();
+        long percentileMillis = latencies.percentileMillis(model);
+        if (percentileMillis < 0) {
+            // 样本不足，直接在当前线程调用并积累样本
+            return timedChat(request, model);
+        }
+
+        budget.deposit();
+        HedgedCall call = new HedgedCall(request, model);
+        try {
+            call.launch(false);
+        } catch (RejectedExecutionException e) {
+            // 对冲线程池已满时退化为直接调用
+            return timedChat(request, model);
+        }
+        return call.await(Math.max(minDelayMillis, percentileMillis));
+    }
+
+    @Override
+    public void chatStream(AIRequestDTO request, StreamCallback callback) {
+        delegate.chatStream(request, callback);
+    }
+
+    @Override
+    public FoodAnalysisResponseDTO analyzeFoodImage(FoodAnalysisRequestDTO request) {
+        return delegate.analyzeFoodImage(request);
+    }
+
+    private AIResponseDTO timedChat(AIRequestDTO request, String model) {
+        long start = System.nanoTime();
+        AIResponseDTO response = delegate.chat(request);
+        latencies.record(model, System.nanoTime() - start);
+        return response;
+    }
+
+    private void count(String model, String outcome) {
+        Counter.builder("ai.hedge").tag("model", model).tag("outcome", outcome)
+                .description("对冲请求统计").register(meterRegistry)
+                .increment();
+    }
+
+    private static boolean isRejectedByLimiter(RuntimeException e) {
+        return e instanceof BusinessException business
+                && business.getCode() == ResultCode.TOO_MANY_REQUESTS.getCode();
+    }
+
+    /**
+     * 一次可对冲的调用：主请求和（可能的）对冲请求共享同一个结果，先成功者胜出
+     * 全部已发出的请求都失败时以主请求的错误结束
+     */
+    private final class HedgedCall {
+        private final AIRequestDTO request;
+        private final String model;
+        private final CompletableFuture<AIResponseDTO> result = new CompletableFuture<>();
+        private final List<Future<?>> attempts = new ArrayList<>();
+        private int failed;
+        private RuntimeException primaryError;
+        private RuntimeException hedgeError;
+
+        private HedgedCall(AIRequestDTO request, String model) {
+            this.request = request;
+            this.model = model;
+        }
+
+        /**
+         * 在线程池中发出一次请求
+         *
+         * @return 调用已结束（已有结果或已全部失败）时不再发出，返回 false
+         * @throws RejectedExecutionException 线程池已满
+         */
+        synchronized boolean launch(boolean hedge) {
+            if (result.isDone()) {
+                return false;
+            }
+            int index = attempts.size();
+            attempts.add(executor.submit(() -> run(index, hedge)));
+            return true;
+        }
+
+        AIResponseDTO await(long delayMillis) {
+            try {
+                try {
+                    return result.get(delayMillis, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    hedge(delayMillis);
+                }
+                return result.get();
+            } catch (InterruptedException e) {
+                cancelExcept(-1);
+                Thread.currentThread().interrupt();
+                throw new BusinessException("请求已取消");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new BusinessException("AI调用失败: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        private void hedge(long delayMillis) {
+            if (!budget.tryWithdraw()) {
+                count(model, "budget_exhausted");
+                return;
+            }
+            try {
+                if (launch(true)) {
+                    count(model, "issued");
+                    log.info("AI请求超过 {}ms 未返回，发出对冲请求，model: {}", delayMillis, model);
+                } else {
+                    budget.refund();
+                }
+            } catch (RejectedExecutionException e) {
+                budget.refund();
+                count(model, "rejected");
+            }
+        }
+
+        private void run(int index, boolean hedge) {
+            long start = System.nanoTime();
+            try {
+                AIResponseDTO response = delegate.chat(request);
+                latencies.record(model, System.nanoTime() - start);
+                if (result.complete(response)) {
+                    if (hedge) {
+                        count(model, "won");
+                    }
+                    cancelExcept(index);
+                }
+            } catch (RuntimeException e) {
+                onFailure(e, hedge);
+            }
+        }
+
+        private synchronized void onFailure(RuntimeException e, boolean hedge) {
+            failed++;
+            if (hedge) {
+                hedgeError = e;
+                if (isRejectedByLimiter(e)) {
+                    // 并发隔离舱已满，对冲请求未真正发出
+                    budget.refund();
+                    count(model, "rejected");
+                }
+            } else {
+                primaryError = e;
+            }
+            if (failed == attempts.size()) {
+                result.completeExceptionally(primaryError != null ? primaryError : hedgeError);
+            }
+        }
+
+        private synchronized void cancelExcept(int winner) {
+            for (int i = 0; i < attempts.size(); i++) {
+                if (i != winner) {
+                    attempts.get(i).cancel(true);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.limit.AIPriority;
+import com.health.agent.module.ai.limit.AIWorkload;
+import com.health.agent.module.ai.limit.PriorityDispatcher;
+
+/**
+ * 按优先级调度的AI客户端装饰器
+ * 调用前从 {@link PriorityDispatcher} 获取名额（可能排队），调用结束后释放：
+ * 文本调用的优先级取请求的 priority，未指定时按 workload 推断；视觉分析按准实时处理。
+ * 负载类型与 {@link ConcurrencyLimitingAIClient} 的隔离舱一致，未指定时按文本对话处理
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public class PrioritySchedulingAIClient implements AIClient {
+
+    private final AIClient delegate;
+    private final PriorityDispatcher dispatcher;
+
+    public PrioritySchedulingAIClient(AIClient delegate, PriorityDispatcher dispatcher) {
+        this.delegate = delegate;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public AIResponseDTO chat(AIRequestDTO request) {
+        PriorityDispatcher.Slot slot = dispatcher.acquire(priorityOf(request), workloadOf(request), request.getUserId());
+        try {
+            return delegate.chat(request);
+        } finally {
+            slot.release();
+        }
+    }
+
+    @Override
+    public void chatStream(AIRequestDTO request, StreamCallback callback) {
+        PriorityDispatcher.Slot slot;
+        try {
+            slot = dispatcher.acquire(priorityOf(request), workloadOf(request), request.getUserId());
+        } catch (BusinessException e) {
+            callback.onError(e);
+            return;
+        }
+
+        try {
+            delegate.chatStream(request, new StreamCallback() {
+                @Override
+                public void onMessage(String content) {
+                    callback.onMessage(content);
+                }
+
+                @Override
+                public void onUsage(AIResponseDTO.Usage usage) {
+                    callback.onUsage(usage);
+                }
+
+                @Override
+                public void onComplete() {
+                    slot.release();
+                    callback.onComplete();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    slot.release();
+                    callback.onError(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            slot.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public FoodAnalysisResponseDTO analyzeFoodImage(FoodAnalysisRequestDTO request) {
+        PriorityDispatcher.Slot slot = dispatcher.acquire(AIPriority.NEAR_REAL_TIME, AIWorkload.VISION, request.getUserId());
+        try {
+            return delegate.analyzeFoodImage(request);
+        } finally {
+            slot.release();
+        }
+    }
+
+    private AIWorkload workloadOf(AIRequestDTO request) {
+        return request.getWorkload() != null ? request.getWorkload() : AIWorkload.CHAT;
+    }
+
+    private AIPriority priorityOf(AIRequestDTO request) {
+        return request.getPriority() != null ? request.getPriority() : AIPriority.of(request.getWorkload());
+    }
+}
@@ -0,0 +1,104 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.cache.AIRequestKey;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.mock.AIRecording;
+import com.health.agent.module.ai.mock.AIRecordingStore;
+
+/**
+ * 录制上游响应的AI客户端装饰器
+ * 成功的文本、流式和食物分析响应按请求哈希追加到录制文件，供 {@link ReplayAIClient} 离线回放；
+ * 流式响应在完成后按完整内容录制
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public class RecordingAIClient implements AIClient {
+
+    private final AIClient delegate;
+    private final AIRecordingStore store;
+    private final AIConfig aiConfig;
+
+    public RecordingAIClient(AIClient delegate, AIRecordingStore store, AIConfig aiConfig) {
+        this.delegate = delegate;
+        this.store = store;
+        this.aiConfig = aiConfig;
+    }
+
+    @Override
+    public AIResponseDTO chat(AIRequestDTO request) {
+        long start = System.nanoTime();
+        AIResponseDTO response = delegate.chat(request);
+        if (Boolean.TRUE.equals(response.getSuccess()) && response.getContent() != null) {
+            record(request, response.getContent(), response.getUsage(), start);
+        }
+        return response;
+    }
+
+    @Override
+    public void chatStream(AIRequestDTO request, StreamCallback callback) {
+        long start = System.nanoTime();
+        StringBuilder content = new StringBuilder();
+        delegate.chatStream(request, new StreamCallback() {
+            private AIResponseDTO.Usage usage;
+
+            @Override
+            public void onMessage(String chunk) {
+                content.append(chunk);
+                callback.onMessage(chunk);
+            }
+
+            @Override
+            public void onUsage(AIResponseDTO.Usage streamUsage) {
+                usage = streamUsage;
+                callback.onUsage(streamUsage);
+            }
+
+            @Override
+            public void onComplete() {
+                record(request, content.toString(), usage, start);
+                callback.onComplete();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    @Override
+    public FoodAnalysisResponseDTO analyzeFoodImage(FoodAnalysisRequestDTO request) {
+        long start = System.nanoTime();
+        FoodAnalysisResponseDTO response = delegate.analyzeFoodImage(request);
+        if (Boolean.TRUE.equals(response.getSuccess()) && response.getFood() != null) {
+            store.append(AIRecording.builder()
+                    .key(AIRequestKey.ofFoodImage(request))
+                    .type(AIRecording.TYPE_VISION)
+                    .food(response.getFood())
+                    .nutritionAnalysis(response.getNutritionAnalysis())
+                    .latencyMillis(elapsedMillis(start))
+                    .build());
+        }
+        return response;
+    }
+
+    private void record(AIRequestDTO request, String content, AIResponseDTO.Usage usage, long startNanos) {
+        store.append(AIRecording.builder()
+                .key(AIRequestKey.of(request, aiConfig))
+                .type(AIRecording.TYPE_CHAT)
+                .prompt(ReplayAIClient.promptPreview(request))
+                .content(content)
+                .usage(usage)
+                .latencyMillis(elapsedMillis(startNanos))
+                .build());
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+}
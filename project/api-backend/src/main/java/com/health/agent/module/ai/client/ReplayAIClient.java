@@ -0,0 +1,221 @@
+package com.health.agent.module.ai.client;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.cache.AIRequestKey;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.mock.AIRecording;
+import com.health.agent.module.ai.mock.AIRecordingStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+/**
+ * 回放录制响应的AI客户端（替代上游，用于离线压测）
+ * 按请求哈希从 {@link AIRecordingStore} 取回复，并模拟上游的时延和故障：
+ * - 耗时服从对数正态分布，由中位数和 P99 确定；也可使用录制时的实际耗时
+ * - 流式回复先等待首个分片耗时，再按固定字数和间隔逐片发送
+ * - 按比例注入上游错误、超时（等待 ai.timeout 后失败）和流式中途断开，
+ *   异常类型与 RestTemplate 的真实失败一致（读超时为 SocketTimeoutException，错误为 HTTP 500），
+ *   以便并发隔离舱、熔断和对冲按真实故障分类
+ * 配置 seed 后随机序列固定，同样的请求顺序得到同样的时延和故障
+ * <p>
+ * 指标：ai.mock.replay{type, outcome=recorded|fallback|error|timeout|aborted}
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class ReplayAIClient implements AIClient {
+
+    /**
+     * 标准正态分布的 0.99 分位数
+     */
+    private static final double Z_99 = 2.3263;
+
+    private static final int PROMPT_PREVIEW_CHARS = 60;
+
+    private final AIRecordingStore store;
+    private final AIConfig aiConfig;
+    private final AIConfig.Mock config;
+    private final MeterRegistry meterRegistry;
+    private final Random random;
+    private final double sigma;
+
+    public ReplayAIClient(AIRecordingStore store, AIConfig aiConfig, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.aiConfig = aiConfig;
+        this.config = aiConfig.getMock();
+        this.meterRegistry = meterRegistry;
+        this.random = config.getSeed() != null ? new Random(config.getSeed()) : new Random();
+        double median = config.getLatencyMedianMillis();
+        double p99 = config.getLatencyP99Millis();
+        this.sigma = p99 > median && median > 0 ? Math.log(p99 / median) / Z_99 : 0;
+    }
+
+    @Override
+    public AIResponseDTO chat(AIRequestDTO request) {
+        AIRecording recording = recordingFor(request);
+        injectFailure(AIRecording.TYPE_CHAT, latencyMillis(recording, config.getLatencyMedianMillis()));
+        return AIResponseDTO.builder()
+                .content(recording.getContent())
+                .model(request.getModel() != null ? request.getModel() : aiConfig.getModel())
+                .usage(recording.getUsage())
+                .success(true)
+                .build();
+    }
+
+    @Override
+    public void chatStream(AIRequestDTO request, StreamCallback callback) {
+        try {
+            AIRecording recording = recordingFor(request);
+            String content = recording.getContent() != null ? recording.getContent() : "";
+            int chunkChars = Math.max(1, config.getChunkChars());
+            long firstChunkMillis = latencyMillis(recording, config.getFirstChunkMedianMillis());
+            if (Boolean.TRUE.equals(config.getUseRecordedLatency()) && recording.getLatencyMillis() != null) {
+                // 录制的是流式总耗时，扣除分片间隔后作为首个分片耗时
+                int chunks = (content.length() + chunkChars - 1) / chunkChars;
+                firstChunkMillis = Math.max(0, firstChunkMillis - Math.max(0, chunks - 1) * config.getChunkIntervalMillis());
+            }
+            injectFailure(AIRecording.TYPE_CHAT, firstChunkMillis);
+
+            int abortAt = random.nextDouble() < config.getStreamAbortRate() ? content.length() / 2 : -1;
+            for (int start = 0; start < content.length(); start += chunkChars) {
+                if (abortAt >= 0 && start >= abortAt) {
+                    outcome(AIRecording.TYPE_CHAT, "aborted");
+                    throw new IOException("模拟上游流式连接中断");
+                }
+                if (start > 0) {
+                    sleep(config.getChunkIntervalMillis());
+                }
+                callback.onMessage(content.substring(start, Math.min(content.length(), start + chunkChars)));
+            }
+            if (recording.getUsage() != null) {
+                callback.onUsage(recording.getUsage());
+            }
+            callback.onComplete();
+        } catch (Exception e) {
+            log.debug("模拟流式调用失败: {}", e.getMessage());
+            callback.onError(new RuntimeException("模拟AI流式调用失败: " + e.getMessage(), e));
+        }
+    }
+
+    @Override
+    public FoodAnalysisResponseDTO analyzeFoodImage(FoodAnalysisRequestDTO request) {
+        String key = AIRequestKey.ofFoodImage(request);
+        AIRecording recording = store.find(AIRecording.TYPE_VISION, key);
+        if (recording == null || recording.getFood() == null) {
+            return FoodAnalysisResponseDTO.builder()
+                    .success(false)
+                    .errorMessage("没有可回放的食物分析录制")
+                    .build();
+        }
+        outcome(AIRecording.TYPE_VISION, key.equals(recording.getKey()) ? "recorded" : "fallback");
+        try {
+            injectFailure(AIRecording.TYPE_VISION, latencyMillis(recording, config.getLatencyMedianMillis()));
+        } catch (RuntimeException e) {
+            return FoodAnalysisResponseDTO.builder()
+                    .success(false)
+                    .errorMessage("食物图片分析失败: " + e.getMessage())
+                    .failureCause(e)
+                    .build();
+        }
+
+        return FoodAnalysisResponseDTO.builder()
+                .success(true)
+                .food(BeanUtil.copyProperties(recording.getFood(), FoodAnalysisResponseDTO.FoodInfo.class))
+                .nutritionAnalysis(recording.getNutritionAnalysis())
+                .build();
+    }
+
+    /**
+     * 查找文本回复；没有任何文本录制时生成一条固定格式的回复
+     */
+    private AIRecording recordingFor(AIRequestDTO request) {
+        String key = AIRequestKey.of(request, aiConfig);
+        AIRecording recording = store.find(AIRecording.TYPE_CHAT, key);
+        if (recording != null && recording.getContent() != null) {
+            outcome(AIRecording.TYPE_CHAT, key.equals(recording.getKey()) ? "recorded" : "fallback");
+            return recording;
+        }
+        outcome(AIRecording.TYPE_CHAT, "fallback");
+        return AIRecording.builder()
+                .type(AIRecording.TYPE_CHAT)
+                .content("（模拟回复）已收到：" + promptPreview(request))
+                .build();
+    }
+
+    /**
+     * 等待模拟耗时，并按比例注入错误或超时
+     */
+    private void injectFailure(String type, long latencyMillis) {
+        double roll = random.nextDouble();
+        if (roll < config.getTimeoutRate()) {
+            outcome(type, "timeout");
+            sleep(aiConfig.getTimeout());
+            throw new ResourceAccessException("模拟上游读取超时", new SocketTimeoutException("Read timed out"));
+        }
+        sleep(latencyMillis);
+        if (roll < config.getTimeoutRate() + config.getErrorRate()) {
+            outcome(type, "error");
+            throw HttpServerErrorException.create("模拟上游返回 500", HttpStatus.INTERNAL_SERVER_ERROR,
+                    HttpStatus.INTERNAL_SERVER_ERROR.getReasonPhrase(), HttpHeaders.EMPTY, null, null);
+        }
+    }
+
+    /**
+     * 按对数正态分布抽样耗时（中位数为 median，形状由 P99/中位数 确定）
+     */
+    private long latencyMillis(AIRecording recording, long median) {
+        if (Boolean.TRUE.equals(config.getUseRecordedLatency()) && recording.getLatencyMillis() != null) {
+            return recording.getLatencyMillis();
+        }
+        return Math.round(median * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("模拟AI请求已取消", e);
+        }
+    }
+
+    private void outcome(String type, String outcome) {
+        Counter.builder("ai.mock.replay")
+                .description("回放的AI调用数")
+                .tag("type", type)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    static String promptPreview(AIRequestDTO request) {
+        if (request.getMessages() == null) {
+            return "";
+        }
+        for (int i = request.getMessages().size() - 1; i >= 0; i--) {
+            AIRequestDTO.Message message = request.getMessages().get(i);
+            if ("user".equals(message.getRole()) && message.getContent() != null) {
+                String content = message.getContent().strip();
+                return content.length() > PROMPT_PREVIEW_CHARS ? content.substring(0, PROMPT_PREVIEW_CHARS) : content;
+            }
+        }
+        return "";
+    }
+}
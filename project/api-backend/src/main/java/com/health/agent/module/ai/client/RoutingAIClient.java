@@ -0,0 +1,200 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.routing.AIEndpointRegistry;
+import com.health.agent.module.ai.routing.EndpointHealth;
+import com.health.agent.module.ai.routing.RoutedEndpoint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 多端点路由AI客户端（调用链最内层）
+ * 每次调用从 ai_config 配置的端点中选择代价最低的一个（代价计算见 {@link EndpointHealth}）：
+ * - 错误率超过 ai.routing.max-error-rate 的端点视为不健康，排在所有健康端点之后
+ * - 请求指定了模型时优先使用该模型的端点；图片分析只使用配置了视觉模型的端点
+ * - 调用失败时按代价顺序切换到下一个端点，最多尝试 ai.routing.max-attempts 个端点；
+ *   流式调用只在尚未收到任何内容时切换
+ * <p>
+ * 指标：ai.routing.failover{endpoint}（从该端点切换走的次数）
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class RoutingAIClient implements AIClient {
+
+    private final AIEndpointRegistry registry;
+    private final AIConfig.Routing config;
+    private final MeterRegistry meterRegistry;
+
+    public RoutingAIClient(AIEndpointRegistry registry, AIConfig.Routing config, MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public AIResponseDTO chat(AIRequestDTO request) {
+        RuntimeException lastError = null;
+        for (RoutedEndpoint candidate : rank(request.getModel(), false)) {
+            EndpointHealth health = candidate.getHealth();
+            long start = health.start();
+            try {
+                AIResponseDTO response = candidate.getClient().chat(request);
+                health.success(System.nanoTime() - start);
+                return response;
+            } catch (RuntimeException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    health.cancelled();
+                    throw e;
+                }
+                health.failure();
+                failover(candidate, e.getMessage());
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    @Override
+    public void chatStream(AIRequestDTO request, StreamCallback callback) {
+        streamFrom(rank(request.getModel(), false), 0, request, callback);
+    }
+
+    @Override
+    public FoodAnalysisResponseDTO analyzeFoodImage(FoodAnalysisRequestDTO request) {
+        List<RoutedEndpoint> candidates = rank(null, true);
+        if (candidates.isEmpty()) {
+            return FoodAnalysisResponseDTO.builder()
+                    .success(false)
+                    .errorMessage("没有配置视觉模型的可用端点")
+                    .build();
+        }
+
+        FoodAnalysisResponseDTO response = null;
+        for (RoutedEndpoint candidate : candidates) {
+            EndpointHealth health = candidate.getHealth();
+            long start = health.start();
+            try {
+                response = candidate.getClient().analyzeFoodImage(request);
+            } catch (RuntimeException e) {
+                health.failure();
+                throw e;
+            }
+            if (Boolean.TRUE.equals(response.getSuccess())) {
+                health.success(System.nanoTime() - start);
+                return response;
+            }
+            health.failure();
+            failover(candidate, response.getErrorMessage());
+        }
+        return response;
+    }
+
+    /**
+     * 在第 index 个候选端点上发起流式调用，首个分片之前失败时切换到下一个端点
+     */
+    private void streamFrom(List<RoutedEndpoint> candidates, int index, AIRequestDTO request, StreamCallback callback) {
+        RoutedEndpoint candidate = candidates.get(index);
+        EndpointHealth health = candidate.getHealth();
+        long start = health.start();
+        candidate.getClient().chatStream(request, new StreamCallback() {
+            private long firstChunkNanos = -1;
+
+            @Override
+            public void onMessage(String content) {
+                if (firstChunkNanos < 0) {
+                    firstChunkNanos = System.nanoTime() - start;
+                }
+                callback.onMessage(content);
+            }
+
+            @Override
+            public void onUsage(AIResponseDTO.Usage usage) {
+                callback.onUsage(usage);
+            }
+
+            @Override
+            public void onComplete() {
+                // 流式调用的总耗时取决于回复长度，按首个分片耗时统计
+                health.success(firstChunkNanos >= 0 ? firstChunkNanos : System.nanoTime() - start);
+                callback.onComplete();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                if (isCancellation(error)) {
+                    health.cancelled();
+                    callback.onError(error);
+                    return;
+                }
+                health.failure();
+                if (firstChunkNanos < 0 && index + 1 < candidates.size()) {
+                    failover(candidate, error.getMessage());
+                    streamFrom(candidates, index + 1, request, callback);
+                    return;
+                }
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * 按路由优先级排序的候选端点（最多 max-attempts 个）
+     */
+    private List<RoutedEndpoint> rank(String model, boolean vision) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (RoutedEndpoint routed : registry.getEndpoints()) {
+            if (vision && !routed.getEndpoint().supportsVision()) {
+                continue;
+            }
+            EndpointHealth health = routed.getHealth();
+            candidates.add(new Candidate(routed,
+                    health.getErrorRate() <= config.getMaxErrorRate(),
+                    model == null || model.equals(routed.getEndpoint().getModel()),
+                    health.cost(config.getErrorPenalty())));
+        }
+        // 代价在取值时就已固定，排序期间其他请求更新统计不影响比较结果
+        candidates.sort(Comparator.comparing((Candidate c) -> !c.healthy())
+                .thenComparing(c -> !c.modelMatched())
+                .thenComparingDouble(Candidate::cost)
+                .thenComparing(c -> !c.routed().getEndpoint().isPreferred()));
+        return candidates.stream()
+                .limit(Math.max(1, config.getMaxAttempts()))
+                .map(Candidate::routed)
+                .toList();
+    }
+
+    private void failover(RoutedEndpoint from, String reason) {
+        String name = from.getEndpoint().getName();
+        log.warn("AI端点调用失败，尝试下一个端点，endpoint: {}, 原因: {}", name, reason);
+        Counter.builder("ai.routing.failover").tag("endpoint", name)
+                .description("端点调用失败后切换到其他端点的次数").register(meterRegistry)
+                .increment();
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof CancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Candidate(RoutedEndpoint routed, boolean healthy, boolean modelMatched, double cost) {
+    }
+}
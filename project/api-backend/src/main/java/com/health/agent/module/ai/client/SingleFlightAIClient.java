@@ -0,0 +1,275 @@
+package com.health.agent.module.ai.client;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.cache.AIRequestKey;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 相同请求合并（single-flight）AI客户端装饰器
+ * 规范化哈希相同的并发请求只由第一个到达的请求（领头方）调用上游，其余请求等待并共享结果：
+ * - 同步调用：跟随方最多等待 ai.single-flight.max-wait-millis，超时放弃等待
+ * - 流式调用：跟随方先回放已收到的分片再接收后续分片；所有订阅方都断开后中止上游流
+ * <p>
+ * 指标：ai.singleflight.coalesced{call=chat|stream|vision}、ai.singleflight.wait.timeout、ai.singleflight.cancelled
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class SingleFlightAIClient implements AIClient {
+
+    private final AIClient delegate;
+    private final AIConfig aiConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, CompletableFuture<AIResponseDTO>> chatCalls = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, StreamFlight> streamCalls = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<FoodAnalysisResponseDTO>> visionCalls = new ConcurrentHashMap<>();
+
+    private final Counter waitTimeouts;
+    private final Counter cancelled;
+
+    public SingleFlightAIClient(AIClient delegate, AIConfig aiConfig, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.aiConfig = aiConfig;
+        this.meterRegistry = meterRegistry;
+        this.waitTimeouts = Counter.builder("ai.singleflight.wait.timeout")
+                .description("等待合并结果超时的请求数").register(meterRegistry);
+        this.cancelled = Counter.builder("ai.singleflight.cancelled")
+                .description("所有订阅方断开而中止的上游流式调用数").register(meterRegistry);
+    }
+
+    @Override
+    public AIResponseDTO chat(AIRequestDTO request) {
+        return coalesce(chatCalls, "chat", AIRequestKey.of(request, aiConfig),
+                () -> delegate.chat(request), this::copyOf);
+    }
+
+    @Override
+    public FoodAnalysisResponseDTO analyzeFoodImage(FoodAnalysisRequestDTO request) {
+        return coalesce(visionCalls, "vision", AIRequestKey.ofFoodImage(request),
+                () -> delegate.analyzeFoodImage(request), this::copyOf);
+    }
+
+    @Override
+    public void chatStream(AIRequestDTO request, StreamCallback callback) {
+        String key = AIRequestKey.of(request, aiConfig);
+        StreamFlight flight = new StreamFlight(key);
+        StreamFlight existing;
+        while ((existing = streamCalls.putIfAbsent(key, flight)) != null) {
+            if (existing.join(callback)) {
+                coalesced("stream");
+                log.info("合并相同的流式请求，key: {}", key);
+                return;
+            }
+            // 已有调用刚好结束，移除后由本次请求发起新的调用
+            streamCalls.remove(key, existing);
+        }
+
+        flight.join(callback);
+        try {
+            delegate.chatStream(request, flight);
+        } catch (RuntimeException e) {
+            flight.onError(e);
+        }
+    }
+
+    /**
+     * 同步调用合并：领头方执行调用并完成 future，跟随方有界等待
+     */
+    private <T> T coalesce(ConcurrentHashMap<String, CompletableFuture<T>> calls, String call, String key,
+                           Supplier<T> upstream, UnaryOperator<T> copier) {
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> existing = calls.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced(call);
+            log.info("合并相同的AI请求，call: {}, key: {}", call, key);
+            return await(existing, copier);
+        }
+
+        try {
+            T result = upstream.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, mine);
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future, UnaryOperator<T> copier) {
+        try {
+            return copier.apply(future.get(aiConfig.getSingleFlight().getMaxWaitMillis(), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            waitTimeouts.increment();
+            throw new BusinessException("AI响应超时，请稍后重试");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("请求已取消");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new BusinessException("AI调用失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void coalesced(String call) {
+        Counter.builder("ai.singleflight.coalesced").tag("call", call)
+                .description("被合并到进行中调用的请求数").register(meterRegistry)
+                .increment();
+    }
+
+    private AIResponseDTO copyOf(AIResponseDTO source) {
+        return source == null ? null : BeanUtil.copyProperties(source, AIResponseDTO.class);
+    }
+
+    private FoodAnalysisResponseDTO copyOf(FoodAnalysisResponseDTO source) {
+        if (source == null) {
+            return null;
+        }
+        FoodAnalysisResponseDTO copy = BeanUtil.copyProperties(source, FoodAnalysisResponseDTO.class);
+        if (source.getFood() != null) {
+            copy.setFood(BeanUtil.copyProperties(source.getFood(), FoodAnalysisResponseDTO.FoodInfo.class));
+        }
+        return copy;
+    }
+
+    /**
+     * 一次进行中的流式调用，缓存已收到的分片并分发给所有订阅方
+     * 订阅方回调抛出异常视为已断开，移除前以该异常回调其 onError（与未合并时上游读取中止的处理一致，
+     * 订阅方据此保存已生成的部分）；全部断开后向上游回调抛出 CancellationException 以中止读取
+     */
+    private final class StreamFlight implements StreamCallback {
+        private final String key;
+        private final List<String> chunks = new ArrayList<>();
+        private final List<StreamCallback> subscribers = new ArrayList<>();
+        private AIResponseDTO.Usage usage;
+        private boolean finished;
+
+        private StreamFlight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * 加入订阅，回放已收到的分片
+         *
+         * @return 调用已结束时返回 false（由调用方发起新的调用）
+         */
+        synchronized boolean join(StreamCallback subscriber) {
+            if (finished) {
+                return false;
+            }
+            try {
+                for (String chunk : chunks) {
+                    subscriber.onMessage(chunk);
+                }
+                if (usage != null) {
+                    subscriber.onUsage(usage);
+                }
+                subscribers.add(subscriber);
+            } catch (RuntimeException e) {
+                log.debug("流式订阅方回放时断开，key: {}", key);
+                notifyDisconnected(subscriber, e);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void onMessage(String content) {
+            chunks.add(content);
+            subscribers.removeIf(subscriber -> {
+                try {
+                    subscriber.onMessage(content);
+                    return false;
+                } catch (RuntimeException e) {
+                    log.debug("流式订阅方已断开，key: {}", key);
+                    notifyDisconnected(subscriber, e);
+                    return true;
+                }
+            });
+            if (subscribers.isEmpty()) {
+                finish();
+                cancelled.increment();
+                log.info("所有订阅方已断开，中止上游流式调用，key: {}", key);
+                throw new CancellationException("所有订阅方已断开");
+            }
+        }
+
+        @Override
+        public synchronized void onUsage(AIResponseDTO.Usage streamUsage) {
+            usage = streamUsage;
+            for (StreamCallback subscriber : subscribers) {
+                subscriber.onUsage(streamUsage);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            for (StreamCallback subscriber : finish()) {
+                try {
+                    subscriber.onComplete();
+                } catch (RuntimeException e) {
+                    log.warn("流式订阅方完成回调失败，key: {}", key, e);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            for (StreamCallback subscriber : finish()) {
+                try {
+                    subscriber.onError(error);
+                } catch (RuntimeException e) {
+                    log.warn("流式订阅方错误回调失败，key: {}", key, e);
+                }
+            }
+        }
+
+        /**
+         * 通知已断开的订阅方本次调用对它已结束
+         */
+        private void notifyDisconnected(StreamCallback subscriber, RuntimeException cause) {
+            try {
+                subscriber.onError(cause);
+            } catch (RuntimeException e) {
+                log.warn("流式订阅方错误回调失败，key: {}", key, e);
+            }
+        }
+
+        /**
+         * 标记结束并移出进行中的调用表，返回需要通知的订阅方
+         */
+        private synchronized List<StreamCallback> finish() {
+            if (finished) {
+                return List.of();
+            }
+            finished = true;
+            streamCalls.remove(key, this);
+            List<StreamCallback> toNotify = new ArrayList<>(subscribers);
+            subscribers.clear();
+            return toNotify;
+        }
+    }
+}
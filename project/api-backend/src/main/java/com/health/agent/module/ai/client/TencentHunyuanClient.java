@@ -1,20 +1,43 @@
 package com.health.agent.module.ai.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.health.agent.config.AIConfig;
 import com.health.agent.module.ai.dto.AIRequestDTO;
 import com.health.agent.module.ai.dto.AIResponseDTO;
 import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
 import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.routing.AIEndpoint;
+import com.health.agent.module.ai.transport.AIHttpTransport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Primary;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -28,55 +51,112 @@ import java.util.stream.Collectors;
  */
 @Slf4j
 @Component
-@Primary
 public class TencentHunyuanClient implements AIClient {
     
     private final AIConfig aiConfig;
+    private final AIEndpoint endpoint;
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
     
-    // 明确允许的模型常量
-    private static final String TEXT_MODEL = "qwen-max";
-    private static final String VISION_MODEL = "qwen-vl-max-latest";
+    /**
+     * 未指定模型时使用的文本模型和视觉模型
+     */
+    public static final String DEFAULT_TEXT_MODEL = "qwen-max";
+    public static final String DEFAULT_VISION_MODEL = "qwen-vl-max-latest";
+    
+    /**
+     * 食物分析结构化输出格式说明（两阶段的结构化步骤与单次视觉调用共用）
+     */
+    private static final String FOOD_JSON_PROMPT = """
+            你是一个营养分析专家。请将食物分析结果转换为严格的JSON格式，包含以下字段：
+            {
+                "food": {
+                    "name": "食物名称（字符串）",
+                    "category": "食物分类（字符串，如：主食、肉类、蔬菜、水果）",
+                    "calories": 数值（每100克热量，千卡，必须是数字）,
+                    "protein": 数值（每100克蛋白质，克，必须是数字）,
+                    "fat": 数值（每100克脂肪，克，必须是数字）,
+                    "carbohydrate": 数值（每100克碳水化合物，克，必须是数字）,
+                    "unit": "常用单位（如：克、个、碗、杯）",
+                    "suggestedPortion": "建议分量（如：100克、1个、1碗）",
+                    "advice": "健康建议（字符串）"
+                },
+                "nutritionAnalysis": "详细的营养分析文本（字符串）"
+            }
+            
+            重要：calories、protein、fat、carbohydrate必须是数字类型，不要加单位。
+            如果无法准确识别某项数值，请给出合理估计值。
+            只返回JSON，不要添加其他文字说明。
+            """;
+    
+    private static final String PIPELINE_SINGLE_PASS = "single-pass";
+    
+    private static final String JPEG_DATA_URL_PREFIX = "data:image/jpeg;base64,";
+    
+    /**
+     * 视觉请求体写出器：不把 flush 传递给连接输出流，图片编码前刷出 JSON 缓冲时不会产生额外的传输分块
+     */
+    private final ObjectWriter visionRequestWriter;
+    
+    /**
+     * 使用 application.yml 中 ai.* 配置的默认端点
+     */
+    @Autowired
+    public TencentHunyuanClient(AIConfig aiConfig, AIHttpTransport httpTransport, MeterRegistry meterRegistry) {
+        this(aiConfig, httpTransport, meterRegistry, AIEndpoint.builder()
+                .name("default")
+                .provider("qwen")
+                .apiUrl(aiConfig.getApiUrl())
+                .apiKey(aiConfig.getApiKey())
+                .model(aiConfig.getModel() != null ? aiConfig.getModel() : DEFAULT_TEXT_MODEL)
+                .visionModel(DEFAULT_VISION_MODEL)
+                .maxTokens(aiConfig.getMaxTokens())
+                .temperature(aiConfig.getTemperature())
+                .preferred(true)
+                .build());
+    }
     
-    public TencentHunyuanClient(AIConfig aiConfig) {
+    /**
+     * 使用指定端点（多端点路由时为 ai_config 中的每条配置各创建一个，共享底层连接池）
+     */
+    public TencentHunyuanClient(AIConfig aiConfig, AIHttpTransport httpTransport, MeterRegistry meterRegistry,
+                                AIEndpoint endpoint) {
         this.aiConfig = aiConfig;
-        this.restTemplate = createRestTemplate();
+        this.endpoint = endpoint;
+        this.restTemplate = createRestTemplate(httpTransport);
         this.objectMapper = new ObjectMapper();
+        this.visionRequestWriter = objectMapper.writer().without(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        this.meterRegistry = meterRegistry;
         
         log.info("========== 腾讯混元HTTP客户端初始化 ==========");
-        log.info("API URL: {}", aiConfig.getApiUrl());
-        log.info("API Key 长度: {}", aiConfig.getApiKey() != null ? aiConfig.getApiKey().length() : 0);
-        log.info("Model: {}", aiConfig.getModel());
+        log.info("端点: {}", endpoint.getName());
+        log.info("API URL: {}", endpoint.getApiUrl());
+        log.info("API Key 长度: {}", endpoint.getApiKey() != null ? endpoint.getApiKey().length() : 0);
+        log.info("Model: {}, Vision Model: {}", endpoint.getModel(), endpoint.getVisionModel());
         
         // 验证API Key
-        if (aiConfig.getApiKey() == null || aiConfig.getApiKey().trim().isEmpty()) {
+        if (endpoint.getApiKey() == null || endpoint.getApiKey().trim().isEmpty()) {
             log.error("❌ 错误：API Key 未配置！AI功能将无法使用");
-        } else if (aiConfig.getApiKey().startsWith("${AI_API_KEY")) {
+        } else if (endpoint.getApiKey().startsWith("${AI_API_KEY")) {
             log.error("❌ 错误：API Key 未正确替换，仍然是占位符格式");
         } else {
             log.info("✅ API Key 配置正常");
         }
         
-        // 校验并修正配置，后端只支持固定的两个模型
-        if (aiConfig.getModel() == null || !TEXT_MODEL.equals(aiConfig.getModel())) {
-            log.warn("配置的AI文本模型 '{}' 非受支持模型，强制设置为 '{}'", aiConfig.getModel(), TEXT_MODEL);
-            aiConfig.setModel(TEXT_MODEL);
-        }
-        
         log.info("✅ QWENHTTP客户端初始化成功");
         log.info("=============================================");
     }
     
-    private RestTemplate createRestTemplate() {
-        // 使用SimpleClientHttpRequestFactory配置超时
-        org.springframework.http.client.SimpleClientHttpRequestFactory factory = 
-                new org.springframework.http.client.SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(30000); // 30秒连接超时
-        factory.setReadTimeout(60000);    // 60秒读取超时
-        
-        RestTemplate template = new RestTemplate(factory);
-        log.info("RestTemplate配置完成 - 连接超时: 30s, 读取超时: 60s");
+    public AIEndpoint getEndpoint() {
+        return endpoint;
+    }
+    
+    private RestTemplate createRestTemplate(AIHttpTransport httpTransport) {
+        // 使用共享连接池的传输层，读取超时取自 ai.timeout
+        RestTemplate template = httpTransport.createRestTemplate(Duration.ofMillis(aiConfig.getTimeout()));
+        log.info("RestTemplate配置完成 - 传输: {}, 连接超时: {}ms, 读取超时: {}ms",
+                httpTransport.name(), aiConfig.getHttp().getConnectTimeout(), aiConfig.getTimeout());
         return template;
     }
     
@@ -84,18 +164,18 @@ public class TencentHunyuanClient implements AIClient {
     public AIResponseDTO chat(AIRequestDTO request) {
         try {
             log.info("========== 腾讯混元API请求详情 ==========");
-            log.info("API URL: {}", aiConfig.getApiUrl());
-            log.info("Model: {}", aiConfig.getModel());
-            log.info("Max Tokens: {}", aiConfig.getMaxTokens());
-            log.info("Temperature: {}", aiConfig.getTemperature());
+            log.info("API URL: {}", endpoint.getApiUrl());
+            log.info("Model: {}", endpoint.getModel());
+            log.info("Max Tokens: {}", request.getMaxTokens() != null ? request.getMaxTokens() : endpoint.getMaxTokens());
+            log.info("Temperature: {}", request.getTemperature() != null ? request.getTemperature() : endpoint.getTemperature());
             log.info("消息数量: {}", request.getMessages().size());
             
             // 构建请求体
             HunyuanRequest hunyuanRequest = new HunyuanRequest();
             // 文本对话请求统一使用后端支持的文本模型
-            hunyuanRequest.setModel(TEXT_MODEL);
-            hunyuanRequest.setMaxTokens(aiConfig.getMaxTokens());
-            hunyuanRequest.setTemperature(aiConfig.getTemperature());
+            hunyuanRequest.setModel(endpoint.getModel());
+            hunyuanRequest.setMaxTokens(request.getMaxTokens() != null ? request.getMaxTokens() : endpoint.getMaxTokens());
+            hunyuanRequest.setTemperature(request.getTemperature() != null ? request.getTemperature() : endpoint.getTemperature());
             hunyuanRequest.setStream(false);
             
             // 转换消息格式
@@ -112,17 +192,17 @@ public class TencentHunyuanClient implements AIClient {
             // 设置请求头
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(aiConfig.getApiKey());
+            headers.setBearerAuth(endpoint.getApiKey());
             
             // 创建请求实体
             HttpEntity<HunyuanRequest> entity = new HttpEntity<>(hunyuanRequest, headers);
             
-            log.info("发送请求到: {}/chat/completions", aiConfig.getApiUrl());
+            log.info("发送请求到: {}/chat/completions", endpoint.getApiUrl());
             long startTime = System.currentTimeMillis();
             
             // 发送HTTP请求
             ResponseEntity<HunyuanResponse> response = restTemplate.exchange(
-                    aiConfig.getApiUrl() + "/chat/completions",
+                    endpoint.getApiUrl() + "/chat/completions",
                     HttpMethod.POST,
                     entity,
                     HunyuanResponse.class
@@ -153,7 +233,7 @@ public class TencentHunyuanClient implements AIClient {
                     
                     return AIResponseDTO.builder()
                             .content(content)
-                            .model(aiConfig.getModel())
+                            .model(endpoint.getModel())
                             .usage(usage)
                             .success(true)
                             .build();
@@ -165,11 +245,16 @@ public class TencentHunyuanClient implements AIClient {
             }
             
         } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // 调用方已取消（如对冲请求落败），不是上游故障
+                log.info("腾讯混元API请求已取消");
+                throw new RuntimeException("腾讯混元API请求已取消", e);
+            }
             log.error("========== 腾讯混元API请求失败 ==========");
             log.error("错误类型: {}", e.getClass().getName());
             log.error("错误信息: {}", e.getMessage());
-            log.error("API URL: {}", aiConfig.getApiUrl());
-            log.error("Model: {}", aiConfig.getModel());
+            log.error("API URL: {}", endpoint.getApiUrl());
+            log.error("Model: {}", endpoint.getModel());
             log.error("完整堆栈:", e);
             
             throw new RuntimeException("腾讯混元API调用失败: " + e.getMessage(), e);
@@ -178,26 +263,141 @@ public class TencentHunyuanClient implements AIClient {
     
     @Override
     public void chatStream(AIRequestDTO request, StreamCallback callback) {
-        // 流式实现可以后续添加
-        throw new UnsupportedOperationException("腾讯混元流式模式暂未实现");
+        log.info("========== 腾讯混元流式请求 ==========");
+        log.info("Model: {}, 消息数量: {}", endpoint.getModel(), request.getMessages().size());
+        
+        // 构建请求体（与 chat 一致，仅开启 stream）
+        HunyuanRequest hunyuanRequest = new HunyuanRequest();
+        hunyuanRequest.setModel(endpoint.getModel());
+        hunyuanRequest.setMaxTokens(request.getMaxTokens() != null ? request.getMaxTokens() : endpoint.getMaxTokens());
+        hunyuanRequest.setTemperature(request.getTemperature() != null ? request.getTemperature() : endpoint.getTemperature());
+        hunyuanRequest.setStream(true);
+        // 让服务端在最后一个分片中返回 usage，便于落库 token 数
+        StreamOptions streamOptions = new StreamOptions();
+        streamOptions.setIncludeUsage(true);
+        hunyuanRequest.setStreamOptions(streamOptions);
+        hunyuanRequest.setMessages(request.getMessages().stream()
+                .map(msg -> {
+                    HunyuanMessage hunyuanMsg = new HunyuanMessage();
+                    hunyuanMsg.setRole(msg.getRole());
+                    hunyuanMsg.setContent(msg.getContent());
+                    return hunyuanMsg;
+                })
+                .collect(Collectors.toList()));
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+        headers.setBearerAuth(endpoint.getApiKey());
+        HttpEntity<HunyuanRequest> entity = new HttpEntity<>(hunyuanRequest, headers);
+        
+        long startTime = System.currentTimeMillis();
+        try {
+            restTemplate.execute(
+                    endpoint.getApiUrl() + "/chat/completions",
+                    HttpMethod.POST,
+                    restTemplate.httpEntityCallback(entity),
+                    response -> {
+                        if (!response.getStatusCode().is2xxSuccessful()) {
+                            throw new RuntimeException("HTTP请求失败，状态码: " + response.getStatusCode());
+                        }
+                        readEventStream(response.getBody(), callback, startTime);
+                        return null;
+                    });
+            log.info("流式请求完成，总耗时: {}ms", System.currentTimeMillis() - startTime);
+            callback.onComplete();
+        } catch (Exception e) {
+            log.error("腾讯混元流式请求失败: {}", e.getMessage(), e);
+            callback.onError(new RuntimeException("腾讯混元API流式调用失败: " + e.getMessage(), e));
+        }
+    }
+    
+    /**
+     * 逐行解析 OpenAI 兼容的 SSE 响应（data: {...} / data: [DONE]），并把增量内容交给回调
+     */
+    private void readEventStream(InputStream body, StreamCallback callback, long startTime) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        boolean firstToken = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+            String data = line.substring(5).trim();
+            if (data.isEmpty()) {
+                continue;
+            }
+            if ("[DONE]".equals(data)) {
+                break;
+            }
+            
+            HunyuanStreamChunk chunk = objectMapper.readValue(data, HunyuanStreamChunk.class);
+            if (chunk.getChoices() != null) {
+                for (HunyuanStreamChoice choice : chunk.getChoices()) {
+                    String delta = choice.getDelta() != null ? extractContent(choice.getDelta().getContent()) : "";
+                    if (delta.isEmpty()) {
+                        continue;
+                    }
+                    if (firstToken) {
+                        log.info("首个Token耗时(TTFT): {}ms", System.currentTimeMillis() - startTime);
+                        firstToken = false;
+                    }
+                    callback.onMessage(delta);
+                }
+            }
+            if (chunk.getUsage() != null) {
+                callback.onUsage(AIResponseDTO.Usage.builder()
+                        .promptTokens(chunk.getUsage().getPromptTokens())
+                        .completionTokens(chunk.getUsage().getCompletionTokens())
+                        .totalTokens(chunk.getUsage().getTotalTokens())
+                        .build());
+            }
+        }
     }
     
     @Override
     public FoodAnalysisResponseDTO analyzeFoodImage(FoodAnalysisRequestDTO request) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // 实际执行的流程：single_pass / fallback（单次失败后回退两阶段）/ two_stage
+        String path = "two_stage";
         try {
             log.info("========== 开始食物图片分析 ==========");
             log.info("用户ID: {}", request.getUserId());
             
-            // 第一步：使用 qwen-vl-max-latest 分析图片
-            log.info("第一步：使用 qwen-vl-max-latest 分析图片");
-            String imageAnalysisText = analyzeImageWithVisionModel(request.getBase64Image());
-            log.info("图片分析结果: {}", imageAnalysisText);
+            StructuredAnalysisResult result = null;
+            if (PIPELINE_SINGLE_PASS.equals(aiConfig.getVision().getPipeline())) {
+                try {
+                    log.info("单次调用：使用 {} 直接输出JSON", endpoint.getVisionModel());
+                    result = analyzeImageSinglePass(request);
+                    path = "single_pass";
+                } catch (IllegalArgumentException | HttpClientErrorException e) {
+                    // 只在输出校验不通过或请求体不被接受（400/422，如模型不支持 json_object）时回退；
+                    // 限流、鉴权、网络和服务端错误直接失败，避免再发一次完整的视觉调用放大故障
+                    if (e instanceof HttpClientErrorException clientError && !isBadPayload(clientError)) {
+                        throw clientError;
+                    }
+                    String reason = e instanceof IllegalArgumentException ? "invalid_output" : "client_error";
+                    log.warn("单次视觉分析失败，回退两阶段流程，原因: {}, {}", reason, e.getMessage());
+                    Counter.builder("ai.food.analysis.fallback").tag("reason", reason)
+                            .description("单次视觉分析回退两阶段的次数").register(meterRegistry)
+                            .increment();
+                    path = "fallback";
+                }
+            }
             
-            // 第二步：使用 qwen-max 进行结构化处理
-            log.info("第二步：使用 qwen-max 进行结构化处理");
-            StructuredAnalysisResult result = structureFoodAnalysis(imageAnalysisText);
+            if (result == null) {
+                // 第一步：使用视觉模型分析图片
+                log.info("第一步：使用 {} 分析图片", endpoint.getVisionModel());
+                String imageAnalysisText = analyzeImageWithVisionModel(request);
+                log.info("图片分析结果: {}", imageAnalysisText);
+                
+                // 第二步：使用文本模型进行结构化处理
+                log.info("第二步：使用 {} 进行结构化处理", endpoint.getModel());
+                result = structureFoodAnalysis(imageAnalysisText);
+            }
             
-            log.info("食物分析完成 - 名称: {}", result.foodInfo.getName());
+            log.info("食物分析完成 - 名称: {}, 流程: {}", result.foodInfo.getName(), path);
+            recordFoodAnalysis(sample, path, "success");
             
             return FoodAnalysisResponseDTO.builder()
                     .success(true)
@@ -206,6 +406,7 @@ public class TencentHunyuanClient implements AIClient {
                     .build();
                     
         } catch (Exception e) {
+            recordFoodAnalysis(sample, path, "failure");
             log.error("========== 食物图片分析失败 ==========");
             log.error("错误类型: {}", e.getClass().getName());
             log.error("错误信息: {}", e.getMessage());
@@ -214,18 +415,85 @@ public class TencentHunyuanClient implements AIClient {
             return FoodAnalysisResponseDTO.builder()
                     .success(false)
                     .errorMessage("食物图片分析失败: " + e.getMessage())
+                    .failureCause(e)
                     .build();
         }
     }
     
+    /**
+     * 400/422 表示请求体不被接受，换用两阶段流程可能成功
+     */
+    private static boolean isBadPayload(HttpClientErrorException e) {
+        int status = e.getStatusCode().value();
+        return status == HttpStatus.BAD_REQUEST.value() || status == HttpStatus.UNPROCESSABLE_ENTITY.value();
+    }
+    
+    private void recordFoodAnalysis(Timer.Sample sample, String path, String outcome) {
+        sample.stop(Timer.builder("ai.food.analysis")
+                .description("食物图片分析耗时")
+                .tag("path", path)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+    
+    /**
+     * 单次调用视觉模型，要求按 json_object 格式直接输出结构化结果
+     * 
+     * @throws IllegalArgumentException 输出不符合格式或校验不通过
+     */
+    private StructuredAnalysisResult analyzeImageSinglePass(FoodAnalysisRequestDTO request) {
+        HunyuanRequest visionRequest = new HunyuanRequest();
+        visionRequest.setModel(endpoint.getVisionModel());
+        visionRequest.setMaxTokens(2000);
+        visionRequest.setTemperature(0.3);
+        visionRequest.setStream(false);
+        ResponseFormat responseFormat = new ResponseFormat();
+        responseFormat.setType("json_object");
+        visionRequest.setResponseFormat(responseFormat);
+        
+        List<HunyuanMessage> messages = new ArrayList<>();
+        HunyuanMessage systemMessage = new HunyuanMessage();
+        systemMessage.setRole("system");
+        systemMessage.setContent(FOOD_JSON_PROMPT);
+        messages.add(systemMessage);
+        
+        MultimodalContent textContent = new MultimodalContent();
+        textContent.setType("text");
+        textContent.setText("请识别图片中的食物，估计每100克的营养成分，并按要求的JSON格式返回。");
+        MultimodalContent imageContent = new MultimodalContent();
+        imageContent.setType("image_url");
+        imageContent.setImageUrl(imageUrlOf(request));
+        
+        HunyuanMessage userMessage = new HunyuanMessage();
+        userMessage.setRole("user");
+        userMessage.setContent(List.of(textContent, imageContent));
+        messages.add(userMessage);
+        visionRequest.setMessages(messages);
+        
+        ResponseEntity<HunyuanResponse> response = postVisionRequest(visionRequest);
+        
+        HunyuanResponse body = response.getBody();
+        if (body == null || body.getChoices() == null || body.getChoices().isEmpty()) {
+            throw new IllegalArgumentException("视觉模型返回数据格式不正确");
+        }
+        String jsonText = extractContent(body.getChoices().get(0).getMessage().getContent());
+        log.info("单次视觉分析JSON响应长度: {}", jsonText.length());
+        
+        FoodAnalysisJsonParser.Result parsed = FoodAnalysisJsonParser.parse(jsonText);
+        StructuredAnalysisResult result = new StructuredAnalysisResult();
+        result.setFoodInfo(parsed.getFoodInfo());
+        result.setNutritionAnalysis(parsed.getNutritionAnalysis());
+        return result;
+    }
+    
     /**
      * 使用视觉模型分析图片
      */
-    private String analyzeImageWithVisionModel(String base64Image) {
+    private String analyzeImageWithVisionModel(FoodAnalysisRequestDTO request) {
         try {
             // 构建标准OpenAI兼容格式的视觉模型请求
             HunyuanRequest visionRequest = new HunyuanRequest();
-            visionRequest.setModel(VISION_MODEL);
+            visionRequest.setModel(endpoint.getVisionModel());
             visionRequest.setMaxTokens(2000);
             visionRequest.setTemperature(0.7);
             visionRequest.setStream(false);
@@ -253,9 +521,7 @@ public class TencentHunyuanClient implements AIClient {
             // 添加图片内容
             MultimodalContent imageContent = new MultimodalContent();
             imageContent.setType("image_url");
-            ImageUrl imgUrl = new ImageUrl();
-            imgUrl.setUrl("data:image/jpeg;base64," + base64Image);
-            imageContent.setImageUrl(imgUrl);
+            imageContent.setImageUrl(imageUrlOf(request));
             contentList.add(imageContent);
             
             userMessage.setContent(contentList);
@@ -264,21 +530,10 @@ public class TencentHunyuanClient implements AIClient {
             visionRequest.setMessages(messages);
             
             // 发送请求
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(aiConfig.getApiKey());
-            
-            HttpEntity<HunyuanRequest> entity = new HttpEntity<>(visionRequest, headers);
+            log.info("发送视觉模型请求到: {}/chat/completions", endpoint.getApiUrl());
+            log.info("使用模型: {}", endpoint.getVisionModel());
             
-            log.info("发送视觉模型请求到: {}/chat/completions", aiConfig.getApiUrl());
-            log.info("使用模型: {}", VISION_MODEL);
-            
-            ResponseEntity<HunyuanResponse> response = restTemplate.exchange(
-                    aiConfig.getApiUrl() + "/chat/completions",
-                    HttpMethod.POST,
-                    entity,
-                    HunyuanResponse.class
-            );
+            ResponseEntity<HunyuanResponse> response = postVisionRequest(visionRequest);
             
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
                 HunyuanResponse visionResponse = response.getBody();
@@ -299,6 +554,40 @@ public class TencentHunyuanClient implements AIClient {
         }
     }
     
+    /**
+     * 图片内容：有 JPEG 字节时由序列化器在写出请求体时编码，否则使用请求中的 Base64 原文
+     */
+    private ImageUrl imageUrlOf(FoodAnalysisRequestDTO request) {
+        ImageUrl imgUrl = new ImageUrl();
+        if (request.getImageBytes() != null) {
+            imgUrl.setJpegBytes(request.getImageBytes());
+        } else {
+            imgUrl.setUrl(JPEG_DATA_URL_PREFIX + request.getBase64Image());
+        }
+        return imgUrl;
+    }
+    
+    /**
+     * 发送视觉模型请求，请求体直接序列化到连接输出流
+     * 不经过消息转换器生成完整请求体，图片也不会以 Base64 字符串形式出现在内存中（见 ImageUrlSerializer）
+     */
+    private ResponseEntity<HunyuanResponse> postVisionRequest(HunyuanRequest visionRequest) {
+        return restTemplate.execute(
+                endpoint.getApiUrl() + "/chat/completions",
+                HttpMethod.POST,
+                request -> {
+                    request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                    request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON));
+                    request.getHeaders().setBearerAuth(endpoint.getApiKey());
+                    if (request instanceof StreamingHttpOutputMessage streaming) {
+                        streaming.setBody(out -> visionRequestWriter.writeValue(StreamUtils.nonClosing(out), visionRequest));
+                    } else {
+                        visionRequestWriter.writeValue(StreamUtils.nonClosing(request.getBody()), visionRequest);
+                    }
+                },
+                restTemplate.responseEntityExtractor(HunyuanResponse.class));
+    }
+    
     /**
      * 结构化分析结果（内部类）
      */
@@ -315,7 +604,7 @@ public class TencentHunyuanClient implements AIClient {
         try {
             // 构建标准OpenAI格式请求
             StructuredModelRequest structuredRequest = new StructuredModelRequest();
-            structuredRequest.setModel(TEXT_MODEL);
+            structuredRequest.setModel(endpoint.getModel());
             structuredRequest.setMaxTokens(2000);
             structuredRequest.setTemperature(0.3);  // 更低的温度以获得更准确的结果
             structuredRequest.setStream(false);
@@ -326,27 +615,7 @@ public class TencentHunyuanClient implements AIClient {
             // 系统消息
             HunyuanMessage systemMessage = new HunyuanMessage();
             systemMessage.setRole("system");
-            systemMessage.setContent("""
-                    你是一个营养分析专家。请将食物分析结果转换为严格的JSON格式，包含以下字段：
-                    {
-                        "food": {
-                            "name": "食物名称（字符串）",
-                            "category": "食物分类（字符串，如：主食、肉类、蔬菜、水果）",
-                            "calories": 数值（每100克热量，千卡，必须是数字）,
-                            "protein": 数值（每100克蛋白质，克，必须是数字）,
-                            "fat": 数值（每100克脂肪，克，必须是数字）,
-                            "carbohydrate": 数值（每100克碳水化合物，克，必须是数字）,
-                            "unit": "常用单位（如：克、个、碗、杯）",
-                            "suggestedPortion": "建议分量（如：100克、1个、1碗）",
-                            "advice": "健康建议（字符串）"
-                        },
-                        "nutritionAnalysis": "详细的营养分析文本（字符串）"
-                    }
-                    
-                    重要：calories、protein、fat、carbohydrate必须是数字类型，不要加单位。
-                    如果无法准确识别某项数值，请给出合理估计值。
-                    只返回JSON，不要添加其他文字说明。
-                    """);
+            systemMessage.setContent(FOOD_JSON_PROMPT);
             messages.add(systemMessage);
             
             // 用户消息
@@ -365,13 +634,13 @@ public class TencentHunyuanClient implements AIClient {
             // 发送请求
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(aiConfig.getApiKey());
+            headers.setBearerAuth(endpoint.getApiKey());
             
             HttpEntity<StructuredModelRequest> entity = new HttpEntity<>(structuredRequest, headers);
             
-            log.info("发送结构化处理请求到: {}/chat/completions", aiConfig.getApiUrl());
+            log.info("发送结构化处理请求到: {}/chat/completions", endpoint.getApiUrl());
             ResponseEntity<HunyuanResponse> response = restTemplate.exchange(
-                    aiConfig.getApiUrl() + "/chat/completions",
+                    endpoint.getApiUrl() + "/chat/completions",
                     HttpMethod.POST,
                     entity,
                     HunyuanResponse.class
@@ -436,9 +705,24 @@ public class TencentHunyuanClient implements AIClient {
         
         private Double temperature;
         private Boolean stream;
+        
+        @JsonProperty("stream_options")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private StreamOptions streamOptions;
+        
+        @JsonProperty("response_format")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private ResponseFormat responseFormat;
     }
     
     @Data
+    public static class StreamOptions {
+        @JsonProperty("include_usage")
+        private Boolean includeUsage;
+    }
+    
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class HunyuanMessage {
         private String role;
         private Object content;  // 改为Object类型以支持String或List
@@ -457,8 +741,45 @@ public class TencentHunyuanClient implements AIClient {
     }
     
     @Data
+    @JsonSerialize(using = ImageUrlSerializer.class)
     public static class ImageUrl {
         private String url;  // data:image/jpeg;base64,xxx
+        
+        /** JPEG 原始字节，设置时忽略 url，写出请求体时直接编码为 data URL */
+        private byte[] jpegBytes;
+    }
+    
+    /**
+     * ImageUrl 序列化器
+     * 有原始字节时先写出引号和 data URL 前缀，再用 Base64 编码流把图片直接写入底层输出流，
+     * Base64 字符不需要 JSON 转义；无法取得底层字节流时退化为普通字符串
+     */
+    static class ImageUrlSerializer extends StdSerializer<ImageUrl> {
+        
+        ImageUrlSerializer() {
+            super(ImageUrl.class);
+        }
+        
+        @Override
+        public void serialize(ImageUrl value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeFieldName("url");
+            byte[] jpegBytes = value.getJpegBytes();
+            if (jpegBytes == null) {
+                gen.writeString(value.getUrl());
+            } else if (gen.getOutputTarget() instanceof OutputStream out) {
+                gen.writeRawValue("\"" + JPEG_DATA_URL_PREFIX);
+                gen.flush();
+                try (OutputStream base64 = Base64.getEncoder().wrap(
+                        new BufferedOutputStream(StreamUtils.nonClosing(out), 8192))) {
+                    base64.write(jpegBytes);
+                }
+                gen.writeRaw('"');
+            } else {
+                gen.writeString(JPEG_DATA_URL_PREFIX + Base64.getEncoder().encodeToString(jpegBytes));
+            }
+            gen.writeEndObject();
+        }
     }
     
     // 腾讯混元API响应格式
@@ -481,7 +802,30 @@ public class TencentHunyuanClient implements AIClient {
         private String finishReason;
     }
     
+    /**
+     * 流式响应分片（choices[].delta 为增量内容）
+     */
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class HunyuanStreamChunk {
+        private String id;
+        private String model;
+        private List<HunyuanStreamChoice> choices;
+        private HunyuanUsage usage;
+    }
+    
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class HunyuanStreamChoice {
+        private Integer index;
+        private HunyuanMessage delta;
+        
+        @JsonProperty("finish_reason")
+        private String finishReason;
+    }
+    
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class HunyuanUsage {
         @JsonProperty("prompt_tokens")
         private Integer promptTokens;
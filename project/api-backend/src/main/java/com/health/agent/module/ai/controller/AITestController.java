@@ -109,7 +109,9 @@ public class AITestController {
     @Operation(summary = "AI服务健康检查", description = "检查AI服务是否可用")
     public ApiResponse<HealthStatus> healthCheck() {
         try {
+            // 健康检查必须真正访问上游，不使用响应缓存
             AIRequestDTO request = AIRequestDTO.builder()
+                    .cacheable(false)
                     .build()
                     .addSystemMessage("你是一个饮食健康AI顾问。")
                     .addUserMessage("请提供一个简单的健康饮食建议");
@@ -1,9 +1,19 @@
 package com.health.agent.module.ai.controller;
 
 import com.health.agent.common.api.ApiResponse;
+import com.health.agent.common.api.ResultCode;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
 import com.health.agent.module.ai.client.AIClient;
 import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
 import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.image.FoodImagePreprocessor;
+import com.health.agent.module.ai.service.IFoodAnalysisJobService;
+import com.health.agent.module.ai.vo.FoodAnalysisBatchItemVO;
+import com.health.agent.module.ai.vo.FoodAnalysisBatchSummaryVO;
+import com.health.agent.module.ai.vo.FoodAnalysisJobVO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -13,17 +23,13 @@ import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.util.Base64;
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * 食物图片分析控制器
@@ -41,6 +47,23 @@ public class FoodAnalysisController {
 
     @Autowired
     private AIClient aiClient;
+    
+    @Autowired
+    private IFoodAnalysisJobService foodAnalysisJobService;
+    
+    @Autowired
+    private AIConfig aiConfig;
+    
+    @Autowired
+    private FoodImagePreprocessor foodImagePreprocessor;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * 任务结果订阅超时时间（毫秒），覆盖两阶段分析的最长耗时
+     */
+    private static final long JOB_EVENTS_TIMEOUT_MS = 150_000L;
 
     /**
      * 分析食物图片（接收文件上传）
@@ -55,38 +78,17 @@ public class FoodAnalysisController {
         
         try {
             // 验证文件
-            if (file.isEmpty()) {
-                return ApiResponse.fail("上传的文件为空");
-            }
-            
-            // 验证文件类型
-            String contentType = file.getContentType();
-            if (contentType == null || !contentType.startsWith("image/")) {
-                return ApiResponse.fail("只支持图片文件（jpg、png、jpeg等）");
-            }
-            
-            // 验证文件大小（最大10MB）
-            if (file.getSize() > 10 * 1024 * 1024) {
-                return ApiResponse.fail("图片文件不能超过10MB");
+            String invalidReason = validateImageFile(file);
+            if (invalidReason != null) {
+                return ApiResponse.fail(invalidReason);
             }
             
-            // 转换为Base64并压缩
-            byte[] bytes = file.getBytes();
-            byte[] compressedBytes = compressImage(bytes);
-            String base64Image = Base64.getEncoder().encodeToString(compressedBytes);
-            
-            // 检查Base64长度(qwen-vl限制约130000字符)
-            if (base64Image.length() > 120000) {
-                log.warn("压缩后图片仍然过大: {} 字符, 进行二次压缩", base64Image.length());
-                compressedBytes = compressImage(compressedBytes, 0.3);
-                base64Image = Base64.getEncoder().encodeToString(compressedBytes);
-            }
-            
-            log.info("图片Base64长度: {}", base64Image.length());
+            // 压缩图片（请求体写出时才编码为Base64）
+            byte[] imageBytes = foodImagePreprocessor.preprocess(file.getBytes());
             
             // 构建请求
             FoodAnalysisRequestDTO request = FoodAnalysisRequestDTO.builder()
-                    .base64Image(base64Image)
+                    .imageBytes(imageBytes)
                     .userId(userId)
                     .build();
             
@@ -101,6 +103,9 @@ public class FoodAnalysisController {
                 return ApiResponse.fail("分析失败: " + response.getErrorMessage());
             }
             
+        } catch (BusinessException e) {
+            log.warn("食物图片分析被拒绝: {}", e.getMessage());
+            return ApiResponse.fail(e.getCode(), e.getMessage());
         } catch (Exception e) {
             log.error("========== 文件上传转换异常 ==========", e);
             return ApiResponse.fail("分析失败: " + e.getMessage());
@@ -135,6 +140,9 @@ public class FoodAnalysisController {
                 return ApiResponse.fail("分析失败: " + response.getErrorMessage());
             }
             
+        } catch (BusinessException e) {
+            log.warn("食物图片分析被拒绝: {}", e.getMessage());
+            return ApiResponse.fail(e.getCode(), e.getMessage());
         } catch (Exception e) {
             log.error("========== 食物图片分析异常 ==========", e);
             return ApiResponse.fail("分析失败: " + e.getMessage());
@@ -142,82 +150,227 @@ public class FoodAnalysisController {
     }
     
     /**
-     * 压缩图片
-     * @param imageBytes 原始图片字节
-     * @return 压缩后的图片字节
+     * 提交异步分析任务（接收文件上传）
+     * 压缩后立即返回任务ID，分析在后台线程执行，结果可轮询或通过SSE订阅
      */
-    private byte[] compressImage(byte[] imageBytes) throws Exception {
-        return compressImage(imageBytes, 0.5);
+    @PostMapping(value = "/analyze-food/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "提交食物图片分析任务", description = "上传食物图片文件，立即返回任务ID；在途任务已满时返回429")
+    public ApiResponse<FoodAnalysisJobVO> submitAnalysisJob(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "userId", required = false) Long userId) {
+        log.info("提交食物分析任务，用户ID: {}, 文件名: {}, 文件大小: {} bytes", userId, file.getOriginalFilename(), file.getSize());
+        
+        String invalidReason = validateImageFile(file);
+        if (invalidReason != null) {
+            return ApiResponse.fail(invalidReason);
+        }
+        
+        byte[] imageBytes;
+        try {
+            imageBytes = foodImagePreprocessor.preprocess(file.getBytes());
+        } catch (BusinessException e) {
+            // 预处理繁忙（429）与任务提交被拒绝一样交给全局异常处理
+            throw e;
+        } catch (Exception e) {
+            log.error("图片预处理失败", e);
+            return ApiResponse.fail("图片处理失败: " + e.getMessage());
+        }
+        
+        FoodAnalysisJobVO job = foodAnalysisJobService.submit(FoodAnalysisRequestDTO.builder()
+                .imageBytes(imageBytes)
+                .userId(userId)
+                .build());
+        return ApiResponse.ok("任务已提交", job);
     }
     
     /**
-     * 压缩图片
-     * @param imageBytes 原始图片字节
-     * @param quality 压缩质量 0.0-1.0
-     * @return 压缩后的图片字节
+     * 查询分析任务（轮询）
      */
-    private byte[] compressImage(byte[] imageBytes, double quality) throws Exception {
-        try {
-            // 读取图片
-            ByteArrayInputStream bais = new ByteArrayInputStream(imageBytes);
-            BufferedImage originalImage = ImageIO.read(bais);
-            
-            if (originalImage == null) {
-                throw new RuntimeException("无法读取图片");
+    @GetMapping("/analyze-food/jobs/{jobId}")
+    @Operation(summary = "查询食物图片分析任务", description = "返回任务状态，成功时包含分析结果")
+    public ApiResponse<FoodAnalysisJobVO> getAnalysisJob(@PathVariable String jobId) {
+        FoodAnalysisJobVO job = foodAnalysisJobService.getJob(jobId);
+        if (job == null) {
+            return ApiResponse.fail(ResultCode.NOT_FOUND.getCode(), "任务不存在或已过期");
+        }
+        return ApiResponse.ok(job);
+    }
+    
+    /**
+     * 订阅分析任务结果（SSE）
+     * status 事件为订阅时的任务状态，done 事件为结束后的任务（含结果或错误），error 事件为错误信息
+     */
+    @GetMapping(value = "/analyze-food/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "订阅食物图片分析任务", description = "通过SSE在任务结束时推送结果")
+    public SseEmitter subscribeAnalysisJob(@PathVariable String jobId) {
+        SseEmitter emitter = new SseEmitter(JOB_EVENTS_TIMEOUT_MS);
+        Consumer<FoodAnalysisJobVO> listener = finished -> {
+            sendEvent(emitter, "done", finished);
+            emitter.complete();
+        };
+        // 订阅超时或客户端断开时移除回调，避免长任务积累失效的订阅
+        Runnable unsubscribe = () -> foodAnalysisJobService.unsubscribe(jobId, listener);
+        emitter.onTimeout(unsubscribe);
+        emitter.onCompletion(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        
+        FoodAnalysisJobVO job = foodAnalysisJobService.subscribe(jobId, listener);
+        if (job == null) {
+            sendEvent(emitter, "error", "任务不存在或已过期");
+            emitter.complete();
+        } else if (!job.isFinished()) {
+            sendEvent(emitter, "status", job);
+        }
+        return emitter;
+    }
+    
+    /**
+     * 批量分析食物图片（一餐多道菜，SSE 逐张推送）
+     * 各图片作为分析任务并行压缩、并行调用视觉分析（与异步任务共用在途上限，并受视觉隔离舱并发上限约束），
+     * 每张完成即推送 item 事件，全部结束后推送 done 事件；总耗时接近最慢的一张而不是各张之和
+     */
+    @PostMapping(value = "/analyze-food/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "批量分析食物图片", description = "上传多张食物图片，通过SSE按完成顺序推送每张结果（item事件），全部完成后推送汇总（done事件）")
+    public SseEmitter analyzeFoodImageBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "userId", required = false) Long userId) {
+        log.info("批量分析食物图片，用户ID: {}, 图片数: {}", userId, files.size());
+        SseEmitter emitter = new SseEmitter(JOB_EVENTS_TIMEOUT_MS);
+        int maxImages = aiConfig.getVision().getBatchMaxImages();
+        if (files.isEmpty() || files.size() > maxImages) {
+            sendEvent(emitter, "error", "每次可分析1到" + maxImages + "张图片");
+            emitter.complete();
+            return emitter;
+        }
+        
+        long startNanos = System.nanoTime();
+        int total = files.size();
+        AtomicInteger remaining = new AtomicInteger(total);
+        AtomicInteger succeeded = new AtomicInteger();
+        Consumer<FoodAnalysisBatchItemVO> onItem = item -> {
+            if (Boolean.TRUE.equals(item.getSuccess())) {
+                succeeded.incrementAndGet();
             }
-            
-            // 计算压缩后的尺寸(最大800px)
-            int maxDimension = 800;
-            int originalWidth = originalImage.getWidth();
-            int originalHeight = originalImage.getHeight();
-            int newWidth = originalWidth;
-            int newHeight = originalHeight;
-            
-            if (originalWidth > maxDimension || originalHeight > maxDimension) {
-                double scale = Math.min(
-                    (double) maxDimension / originalWidth,
-                    (double) maxDimension / originalHeight
-                );
-                newWidth = (int) (originalWidth * scale);
-                newHeight = (int) (originalHeight * scale);
+            sendEvent(emitter, "item", item);
+            if (remaining.decrementAndGet() == 0) {
+                long elapsedNanos = System.nanoTime() - startNanos;
+                Timer.builder("ai.food.batch.latency")
+                        .description("批量食物图片分析总耗时")
+                        .register(meterRegistry)
+                        .record(elapsedNanos, TimeUnit.NANOSECONDS);
+                FoodAnalysisBatchSummaryVO summary = FoodAnalysisBatchSummaryVO.builder()
+                        .total(total)
+                        .succeeded(succeeded.get())
+                        .failed(total - succeeded.get())
+                        .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                        .build();
+                log.info("批量分析完成，图片数: {}, 成功: {}, 耗时: {}ms", total, summary.getSucceeded(), summary.getElapsedMillis());
+                sendEvent(emitter, "done", summary);
+                emitter.complete();
             }
-            
-            // 缩放图片
-            BufferedImage resizedImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
-            Graphics2D g = resizedImage.createGraphics();
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g.drawImage(originalImage, 0, 0, newWidth, newHeight, null);
-            g.dispose();
-            
-            // 压缩质量
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
-            if (!writers.hasNext()) {
-                throw new RuntimeException("没有找到JPEG编码器");
+        };
+        
+        for (int i = 0; i < total; i++) {
+            MultipartFile file = files.get(i);
+            int index = i;
+            String fileName = file.getOriginalFilename();
+            String invalidReason = validateImageFile(file);
+            if (invalidReason != null) {
+                onItem.accept(failedBatchItem(index, fileName, ResultCode.PARAM_ERROR.getCode(), invalidReason, 0L));
+                continue;
             }
             
-            ImageWriter writer = writers.next();
-            ImageWriteParam param = writer.getDefaultWriteParam();
-            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            param.setCompressionQuality((float) quality);
-            
-            ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
-            writer.setOutput(ios);
-            writer.write(null, new javax.imageio.IIOImage(resizedImage, null, null), param);
-            
-            writer.dispose();
-            ios.close();
-            
-            byte[] compressed = baos.toByteArray();
-            log.info("图片压缩: {}x{} -> {}x{}, {}KB -> {}KB, 质量: {}", 
-                originalWidth, originalHeight, newWidth, newHeight,
-                imageBytes.length / 1024, compressed.length / 1024, quality);
-            
-            return compressed;
+            // 请求返回后上传的临时文件会被清理，先在请求线程中读出内容
+            byte[] imageBytes;
+            try {
+                imageBytes = file.getBytes();
+            } catch (IOException e) {
+                onItem.accept(failedBatchItem(index, fileName, ResultCode.FAIL.getCode(), "读取图片失败", 0L));
+                continue;
+            }
             
+            try {
+                foodAnalysisJobService.execute(() -> onItem.accept(analyzeBatchItem(index, fileName, imageBytes, userId)));
+            } catch (BusinessException e) {
+                onItem.accept(failedBatchItem(index, fileName, e.getCode(), e.getMessage(), 0L));
+            }
+        }
+        return emitter;
+    }
+    
+    /**
+     * 分析批量中的单张图片（压缩 + 视觉分析），异常转换为失败结果
+     */
+    private FoodAnalysisBatchItemVO analyzeBatchItem(int index, String fileName, byte[] imageBytes, Long userId) {
+        long startNanos = System.nanoTime();
+        try {
+            FoodAnalysisResponseDTO response = aiClient.analyzeFoodImage(FoodAnalysisRequestDTO.builder()
+                    .imageBytes(foodImagePreprocessor.preprocess(imageBytes))
+                    .userId(userId)
+                    .build());
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (Boolean.TRUE.equals(response.getSuccess())) {
+                return FoodAnalysisBatchItemVO.builder()
+                        .index(index)
+                        .fileName(fileName)
+                        .success(true)
+                        .result(response)
+                        .elapsedMillis(elapsedMillis)
+                        .build();
+            }
+            return failedBatchItem(index, fileName, ResultCode.FAIL.getCode(),
+                    "分析失败: " + response.getErrorMessage(), elapsedMillis);
+        } catch (BusinessException e) {
+            log.warn("批量分析图片被拒绝，index: {}: {}", index, e.getMessage());
+            return failedBatchItem(index, fileName, e.getCode(), e.getMessage(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
         } catch (Exception e) {
-            log.error("图片压缩失败", e);
-            throw new RuntimeException("图片压缩失败: " + e.getMessage());
+            log.error("批量分析图片异常，index: {}", index, e);
+            return failedBatchItem(index, fileName, ResultCode.FAIL.getCode(), "分析失败: " + e.getMessage(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+    
+    private FoodAnalysisBatchItemVO failedBatchItem(int index, String fileName, Integer errorCode,
+                                                    String errorMessage, Long elapsedMillis) {
+        return FoodAnalysisBatchItemVO.builder()
+                .index(index)
+                .fileName(fileName)
+                .success(false)
+                .errorCode(errorCode)
+                .errorMessage(errorMessage)
+                .elapsedMillis(elapsedMillis)
+                .build();
+    }
+    
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("推送分析任务事件失败（客户端可能已断开）: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 校验上传的图片文件
+     * @return 不合法时返回原因，合法返回 null
+     */
+    private String validateImageFile(MultipartFile file) {
+        if (file.isEmpty()) {
+            return "上传的文件为空";
+        }
+        
+        // 验证文件类型
+        String contentType = file.getContentType();
+        if (contentType == null || !contentType.startsWith("image/")) {
+            return "只支持图片文件（jpg、png、jpeg等）";
+        }
+        
+        // 验证文件大小（最大10MB）
+        if (file.getSize() > 10 * 1024 * 1024) {
+            return "图片文件不能超过10MB";
         }
+        return null;
     }
 }
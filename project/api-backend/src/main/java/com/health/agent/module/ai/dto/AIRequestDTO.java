@@ -1,5 +1,7 @@
 package com.health.agent.module.ai.dto;
 
+import com.health.agent.module.ai.limit.AIPriority;
+import com.health.agent.module.ai.limit.AIWorkload;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -53,6 +55,22 @@ public class AIRequestDTO {
     @Builder.Default
     private Boolean stream = false;
     
+    /**
+     * 是否允许使用响应缓存
+     * null-按温度自动判断, true-强制可缓存, false-跳过缓存
+     */
+    private Boolean cacheable;
+    
+    /**
+     * 负载类型（决定使用的并发隔离舱，默认 CHAT）
+     */
+    private AIWorkload workload;
+    
+    /**
+     * 调度优先级（为空时按 workload 推断）
+     */
+    private AIPriority priority;
+    
     /**
      * 用户ID（用于日志和监控）
      */
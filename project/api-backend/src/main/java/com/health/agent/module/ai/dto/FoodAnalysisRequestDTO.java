@@ -1,5 +1,6 @@
 package com.health.agent.module.ai.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
@@ -26,4 +27,12 @@ public class FoodAnalysisRequestDTO {
     
     @Schema(description = "用户ID（可选）")
     private Long userId;
+    
+    /**
+     * 预处理后的 JPEG 字节（服务端上传路径使用）
+     * 设置后优先于 base64Image，请求体写出时才编码为 Base64，不在内存中生成 Base64 字符串
+     */
+    @JsonIgnore
+    @Schema(hidden = true)
+    private byte[] imageBytes;
 }
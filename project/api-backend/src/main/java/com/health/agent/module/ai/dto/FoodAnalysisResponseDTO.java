@@ -1,5 +1,6 @@
 package com.health.agent.module.ai.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -34,6 +35,13 @@ public class FoodAnalysisResponseDTO {
     @Schema(description = "图片URL（如果已保存）")
     private String imageUrl;
     
+    /**
+     * 失败原因（仅服务端使用，不序列化），供并发限制器区分上游拥塞与其他失败
+     */
+    @JsonIgnore
+    @Schema(hidden = true)
+    private Throwable failureCause;
+    
     /**
      * 食物信息详情
      */
@@ -0,0 +1,79 @@
+package com.health.agent.module.ai.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * AI上游端点配置实体
+ * 对应数据库表：ai_config
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIEndpointConfig {
+
+    /**
+     * 配置ID
+     */
+    private Long id;
+
+    /**
+     * 配置名称
+     */
+    private String name;
+
+    /**
+     * 提供商 qwen, custom
+     */
+    private String provider;
+
+    /**
+     * 模型名称（文本模型）
+     */
+    private String model;
+
+    /**
+     * API地址
+     */
+    private String apiUrl;
+
+    /**
+     * API密钥
+     */
+    private String apiKey;
+
+    /**
+     * 模型参数（JSON），支持 visionModel、maxTokens、temperature
+     */
+    private String parameters;
+
+    /**
+     * 是否默认
+     * 0-否, 1-是
+     */
+    private Integer isDefault;
+
+    /**
+     * 状态
+     * 0-禁用, 1-启用
+     */
+    private Integer status;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createdAt;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,52 @@
+package com.health.agent.module.ai.hedge;
+
+/**
+ * 对冲请求预算（令牌桶）
+ * 每个可对冲的主请求存入 ratio 个令牌，每发出一个对冲请求消耗一个令牌，余额不超过 maxBalance：
+ * 长期来看对冲请求数不超过主请求数的 ratio 倍，同时允许短时少量突发
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public class HedgeBudget {
+
+    private final double ratio;
+    private final double maxBalance;
+    private double balance;
+
+    public HedgeBudget(double ratio, double maxBalance) {
+        this.ratio = ratio;
+        this.maxBalance = maxBalance;
+    }
+
+    /**
+     * 主请求存入令牌
+     */
+    public synchronized void deposit() {
+        balance = Math.min(maxBalance, balance + ratio);
+    }
+
+    /**
+     * 尝试为一次对冲请求扣除令牌
+     *
+     * @return 余额不足时返回 false
+     */
+    public synchronized boolean tryWithdraw() {
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+
+    /**
+     * 对冲请求未实际发出（线程池或并发上限已满）时退回令牌
+     */
+    public synchronized void refund() {
+        balance = Math.min(maxBalance, balance + 1);
+    }
+
+    public synchronized double getBalance() {
+        return balance;
+    }
+}
@@ -0,0 +1,97 @@
+package com.health.agent.module.ai.hedge;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按模型统计的近期调用耗时分布（HdrHistogram）
+ * 每个模型用一个 Recorder 无锁记录样本，每隔一个窗口轮换出区间直方图，
+ * 分位数取最近两个区间合并后的结果（覆盖 1~2 个窗口），只在轮换时计算一次
+ * <p>
+ * 指标：ai.hedge.latency.percentile{model}（毫秒，样本不足时为 -1）
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public class LatencyHistogram {
+
+    private static final long HIGHEST_TRACKABLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final double percentile;
+    private final long windowNanos;
+    private final int minSamples;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, ModelLatency> models = new ConcurrentHashMap<>();
+
+    public LatencyHistogram(double percentile, long windowSeconds, int minSamples, MeterRegistry meterRegistry) {
+        this.percentile = percentile;
+        this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+        this.minSamples = minSamples;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 记录一次成功调用的耗时
+     */
+    public void record(String model, long elapsedNanos) {
+        long millis = Math.min(HIGHEST_TRACKABLE_MILLIS, Math.max(0L, TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+        modelLatency(model).recorder.recordValue(millis);
+    }
+
+    /**
+     * 最近窗口内的耗时分位数
+     *
+     * @return 毫秒，样本数不足 min-samples 时返回 -1
+     */
+    public long percentileMillis(String model) {
+        return modelLatency(model).percentileMillis();
+    }
+
+    private ModelLatency modelLatency(String model) {
+        ModelLatency latency = models.get(model);
+        if (latency != null) {
+            return latency;
+        }
+        return models.computeIfAbsent(model, key -> {
+            ModelLatency created = new ModelLatency();
+            Gauge.builder("ai.hedge.latency.percentile", created, ModelLatency::percentileMillis)
+                    .tag("model", key).description("对冲判断使用的近期耗时分位数（毫秒）").register(meterRegistry);
+            return created;
+        });
+    }
+
+    private final class ModelLatency {
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MILLIS, SIGNIFICANT_DIGITS);
+        private Histogram previous;
+        private volatile long rotatedAt = System.nanoTime();
+        private volatile long cachedMillis = -1;
+
+        long percentileMillis() {
+            long now = System.nanoTime();
+            if (now - rotatedAt >= windowNanos) {
+                rotate(now);
+            }
+            return cachedMillis;
+        }
+
+        private synchronized void rotate(long now) {
+            if (now - rotatedAt < windowNanos) {
+                return;
+            }
+            Histogram interval = recorder.getIntervalHistogram();
+            Histogram window = interval.copy();
+            if (previous != null) {
+                window.add(previous);
+            }
+            previous = interval;
+            rotatedAt = now;
+            cachedMillis = window.getTotalCount() >= minSamples ? window.getValueAtPercentile(percentile) : -1;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.health.agent.module.ai.image;
+
+import com.health.agent.common.api.ResultCode;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 食物图片预处理器
+ * 把上传的原图转换为适合视觉模型的 JPEG（最长边不超过 ai.image.max-dimension，大小不超过 ai.image.target-bytes）：
+ * - 先只读图片头获取尺寸，再按整数倍源降采样解码，解码结果已接近目标尺寸，不再分配原图大小的像素缓冲
+ * - 降采样后仍超出目标尺寸时双线性缩放一次，缩放倍数不超过 2
+ * - 先按首选质量编码，超出目标大小时二分搜索能满足目标的最高质量，而不是固定质量再压一遍
+ * - 编码输出缓冲区池化复用；输入输出都使用内存流，不使用 ImageIO 默认的临时文件缓存
+ * - 在有界的 CPU 线程池中执行，队列满时以 429 拒绝
+ * <p>
+ * 指标：ai.image.preprocess{outcome}、ai.image.preprocess.encodes（每张图片的编码次数）
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class FoodImagePreprocessor {
+
+    private static final long PREPROCESS_TIMEOUT_SECONDS = 30;
+
+    /**
+     * 超过该倍数目标大小的缓冲区用完后不放回池中，避免个别大图长期占用内存
+     */
+    private static final int MAX_POOLED_BUFFER_FACTOR = 4;
+
+    private final AIConfig.Image config;
+    private final Executor executor;
+    private final MeterRegistry meterRegistry;
+    private final BlockingQueue<PooledBuffer> bufferPool;
+    private final DistributionSummary encodes;
+
+    public FoodImagePreprocessor(AIConfig aiConfig,
+                                 @Qualifier("imagePreprocessExecutor") Executor executor,
+                                 MeterRegistry meterRegistry) {
+        this.config = aiConfig.getImage();
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        this.bufferPool = new ArrayBlockingQueue<>(Math.max(1, config.getBufferPoolSize()));
+        this.encodes = DistributionSummary.builder("ai.image.preprocess.encodes")
+                .description("每张图片预处理的JPEG编码次数").register(meterRegistry);
+    }
+
+    /**
+     * 在预处理线程池中把原图转换为压缩后的 JPEG
+     *
+     * @param imageBytes 原图字节（JPEG、PNG 等 ImageIO 支持的格式）
+     * @return 压缩后的 JPEG 字节
+     * @throws BusinessException 预处理队列已满（429）或等待超时
+     * @throws IllegalArgumentException 图片无法解码
+     */
+    public byte[] preprocess(byte[] imageBytes) {
+        long start = System.nanoTime();
+        CompletableFuture<byte[]> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> process(imageBytes), executor);
+        } catch (RejectedExecutionException e) {
+            record("rejected", start);
+            log.warn("图片预处理队列已满，拒绝请求");
+            throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "图片处理繁忙，请稍后重试");
+        }
+
+        try {
+            byte[] jpeg = future.get(PREPROCESS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            record("success", start);
+            return jpeg;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            record("timeout", start);
+            throw new BusinessException("图片处理超时，请稍后重试");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("请求已取消");
+        } catch (ExecutionException e) {
+            record("error", start);
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new BusinessException("图片处理失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * 解码、缩放、编码（在当前线程执行）
+     */
+    byte[] process(byte[] imageBytes) {
+        BufferedImage image = decodeSubsampled(imageBytes);
+        int originalBytes = imageBytes.length;
+        image = fitToRgb(image);
+
+        byte[] jpeg = encodeWithinTarget(image);
+        log.info("图片预处理: {}KB -> {}x{}, {}KB", originalBytes / 1024, image.getWidth(), image.getHeight(), jpeg.length / 1024);
+        return jpeg;
+    }
+
+    /**
+     * 按源降采样解码：降采样倍数取 最长边 / 目标尺寸 的整数部分，解码结果最长边不小于目标尺寸
+     */
+    private BufferedImage decodeSubsampled(byte[] imageBytes) {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(imageBytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("无法读取图片");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int factor = Math.max(1, Math.max(width, height) / config.getMaxDimension());
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (factor > 1) {
+                    param.setSourceSubsampling(factor, factor, 0, 0);
+                }
+                BufferedImage decoded = reader.read(0, param);
+                log.debug("降采样解码: {}x{} / {} -> {}x{}", width, height, factor, decoded.getWidth(), decoded.getHeight());
+                return decoded;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("无法读取图片: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 缩放到目标尺寸以内并转换为 JPEG 编码器可直接写出的 RGB 图片
+     * 已满足尺寸且为三通道格式时直接返回，不再重绘；透明背景按白色填充
+     */
+    private BufferedImage fitToRgb(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int maxDimension = config.getMaxDimension();
+        double scale = Math.min(1.0, Math.min((double) maxDimension / width, (double) maxDimension / height));
+        boolean rgb = image.getType() == BufferedImage.TYPE_3BYTE_BGR || image.getType() == BufferedImage.TYPE_INT_RGB;
+        if (scale >= 1.0 && rgb) {
+            return image;
+        }
+
+        int newWidth = Math.max(1, (int) (width * scale));
+        int newHeight = Math.max(1, (int) (height * scale));
+        BufferedImage target = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            if (image.getColorModel().hasAlpha()) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, newWidth, newHeight);
+            }
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, newWidth, newHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * 按目标大小选择 JPEG 质量：首选质量满足时只编码一次；
+     * 否则在 [最低质量, 首选质量) 内二分搜索满足目标的最高质量，都不满足时使用最低质量
+     */
+    private byte[] encodeWithinTarget(BufferedImage image) {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IllegalStateException("没有找到JPEG编码器");
+        }
+        ImageWriter writer = writers.next();
+        PooledBuffer buffer = borrowBuffer();
+        int encodeCount = 0;
+        try {
+            int target = config.getTargetBytes();
+            float high = config.getMaxQuality().floatValue();
+            float low = config.getMinQuality().floatValue();
+
+            encode(writer, image, high, buffer);
+            encodeCount++;
+            if (buffer.size() <= target) {
+                return buffer.toByteArray();
+            }
+
+            byte[] best = null;
+            float fitting = low;
+            float failing = high;
+            for (int i = 0; i < config.getSearchSteps(); i++) {
+                float quality = (fitting + failing) / 2;
+                encode(writer, image, quality, buffer);
+                encodeCount++;
+                if (buffer.size() <= target) {
+                    best = buffer.toByteArray();
+                    fitting = quality;
+                } else {
+                    failing = quality;
+                }
+            }
+            if (best != null) {
+                return best;
+            }
+
+            encode(writer, image, low, buffer);
+            encodeCount++;
+            if (buffer.size() > target) {
+                log.warn("图片按最低质量编码后仍超出目标大小: {} > {} bytes", buffer.size(), target);
+            }
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("图片编码失败: " + e.getMessage(), e);
+        } finally {
+            writer.dispose();
+            releaseBuffer(buffer);
+            encodes.record(encodeCount);
+        }
+    }
+
+    private void encode(ImageWriter writer, BufferedImage image, float quality, PooledBuffer buffer) throws IOException {
+        buffer.reset();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(buffer)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+    }
+
+    private PooledBuffer borrowBuffer() {
+        PooledBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : new PooledBuffer(config.getTargetBytes() + config.getTargetBytes() / 2);
+    }
+
+    private void releaseBuffer(PooledBuffer buffer) {
+        if (buffer.capacity() <= config.getTargetBytes() * MAX_POOLED_BUFFER_FACTOR) {
+            buffer.reset();
+            bufferPool.offer(buffer);
+        }
+    }
+
+    private void record(String outcome, long startNanos) {
+        Timer.builder("ai.image.preprocess")
+                .description("上传图片预处理耗时（含排队）")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 可复用的编码输出缓冲区
+     */
+    private static final class PooledBuffer extends ByteArrayOutputStream {
+
+        private PooledBuffer(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
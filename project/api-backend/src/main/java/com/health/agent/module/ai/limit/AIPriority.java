@@ -0,0 +1,47 @@
+package com.health.agent.module.ai.limit;
+
+/**
+ * AI调用优先级
+ * 上游容量紧张时按优先级从高到低放行，低优先级只能使用部分容量
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public enum AIPriority {
+
+    /** 交互式：用户在线等待回复（对话、知识库问答） */
+    INTERACTIVE("interactive"),
+
+    /** 准实时：用户发起但可以稍等（食物图片分析、生成报告建议） */
+    NEAR_REAL_TIME("near_real_time"),
+
+    /** 后台：用户不在线等待（对话摘要、建议重新生成） */
+    BACKGROUND("background");
+
+    private final String tag;
+
+    AIPriority(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * 指标标签值
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * 请求未指定优先级时按负载类型推断
+     */
+    public static AIPriority of(AIWorkload workload) {
+        if (workload == null) {
+            return INTERACTIVE;
+        }
+        return switch (workload) {
+            case CHAT -> INTERACTIVE;
+            case VISION -> NEAR_REAL_TIME;
+            case BACKGROUND -> BACKGROUND;
+        };
+    }
+}
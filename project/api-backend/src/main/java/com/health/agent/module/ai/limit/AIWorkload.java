@@ -0,0 +1,33 @@
+package com.health.agent.module.ai.limit;
+
+/**
+ * AI调用负载类型
+ * 不同类型使用独立的并发隔离舱，互不挤占
+ * 
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public enum AIWorkload {
+
+    /** 交互式文本对话 */
+    CHAT("chat"),
+
+    /** 食物图片视觉分析 */
+    VISION("vision"),
+
+    /** 后台任务（如营养报告建议），用户不在线等待 */
+    BACKGROUND("background");
+
+    private final String tag;
+
+    AIWorkload(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * 指标标签值
+     */
+    public String getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,142 @@
+package com.health.agent.module.ai.limit;
+
+import com.health.agent.config.AIConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 自适应并发限制器（AIMD）
+ * 参考 Netflix concurrency-limits 的 AIMD 算法：
+ * - 调用成功且在途数不低于上限的一半时，上限加一（加性增）
+ * - 调用失败或耗时超过慢调用阈值时，上限乘以回退比例（乘性减）
+ * 在途数达到上限时立即拒绝，不排队等待
+ * <p>
+ * 指标（均带 bulkhead 标签）：ai.limiter.limit、ai.limiter.in_flight、ai.limiter.rejected
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long slowCallNanos;
+    private final double backoffRatio;
+    private final Counter rejected;
+
+    private double limit;
+    private int inFlight;
+
+    public AdaptiveConcurrencyLimiter(String name, AIConfig.Bulkhead bulkhead, double backoffRatio,
+                                      MeterRegistry meterRegistry) {
+        this.name = name;
+        this.minLimit = bulkhead.getMinLimit();
+        this.maxLimit = bulkhead.getMaxLimit();
+        this.slowCallNanos = bulkhead.getSlowCallMillis() * 1_000_000L;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, bulkhead.getInitialLimit()));
+
+        Gauge.builder("ai.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("bulkhead", name).description("AI调用当前并发上限").register(meterRegistry);
+        Gauge.builder("ai.limiter.in_flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .tag("bulkhead", name).description("AI调用在途请求数").register(meterRegistry);
+        this.rejected = Counter.builder("ai.limiter.rejected")
+                .tag("bulkhead", name).description("超出并发上限被拒绝的AI调用数").register(meterRegistry);
+    }
+
+    /**
+     * 尝试获取一个并发许可
+     *
+     * @return 许可，已达上限时返回 null
+     */
+    public Permit tryAcquire() {
+        synchronized (this) {
+            if (inFlight >= (int) limit) {
+                rejected.increment();
+                return null;
+            }
+            inFlight++;
+        }
+        return new Permit(System.nanoTime());
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private synchronized void onCancelled() {
+        inFlight--;
+    }
+
+    private synchronized void onSample(long elapsedNanos, boolean dropped, int inFlightAtStart) {
+        inFlight--;
+        double previous = limit;
+        if (dropped || (slowCallNanos > 0 && elapsedNanos > slowCallNanos)) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (inFlightAtStart * 2 >= limit) {
+            // 并发利用率不足一半时不增长，避免空闲期上限无限膨胀
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        if ((int) previous != (int) limit) {
+            log.debug("AI并发上限调整，bulkhead: {}, {} -> {}", name, (int) previous, (int) limit);
+        }
+    }
+
+    /**
+     * 并发许可，调用结束时必须且只能释放一次
+     */
+    public final class Permit {
+        private final long startNanos;
+        private final int inFlightAtStart;
+        private boolean released;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = getInFlight();
+        }
+
+        /**
+         * 调用成功
+         *
+         * @param measureLatency 是否按慢调用阈值判断拥塞（流式调用总耗时取决于回复长度，不参与判断）
+         */
+        public void success(boolean measureLatency) {
+            release(false, measureLatency);
+        }
+
+        /**
+         * 调用失败（超时、429、5xx 等上游过载），视为拥塞信号
+         */
+        public void dropped() {
+            release(true, true);
+        }
+
+        /**
+         * 调用被主动取消（如对冲请求中落败的一方、客户端断开），只释放许可，不作为拥塞信号
+         */
+        public synchronized void cancelled() {
+            if (released) {
+                return;
+            }
+            released = true;
+            onCancelled();
+        }
+
+        private synchronized void release(boolean dropped, boolean measureLatency) {
+            if (released) {
+                return;
+            }
+            released = true;
+            long elapsed = measureLatency ? System.nanoTime() - startNanos : 0L;
+            onSample(elapsed, dropped, inFlightAtStart);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.health.agent.module.ai.limit;
+
+import com.health.agent.config.AIConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 熔断器（按调用次数的滑动窗口）
+ * - 关闭：记录最近 window-size 次调用的结果，调用数不少于 minimum-calls 且失败率（慢调用计为失败）达到阈值时打开
+ * - 打开：直接拒绝调用，open-seconds 后转为半开
+ * - 半开：只放行 half-open-calls 个探测调用，全部成功后关闭，任一失败立即重新打开
+ * <p>
+ * 指标（均带 name 标签）：ai.breaker.state（0-关闭 1-打开 2-半开）、ai.breaker.transitions{to}、ai.breaker.rejected
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final MeterRegistry meterRegistry;
+    private final Counter rejected;
+
+    /**
+     * 环形窗口，true 表示失败
+     */
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(String name, AIConfig.Breaker config, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.failureRateThreshold = config.getFailureRateThreshold();
+        this.minimumCalls = config.getMinimumCalls();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallMillis());
+        this.openNanos = TimeUnit.SECONDS.toNanos(config.getOpenSeconds());
+        this.halfOpenCalls = Math.max(1, config.getHalfOpenCalls());
+        this.window = new boolean[Math.max(1, config.getWindowSize())];
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("ai.breaker.state", this, breaker -> breaker.getState().ordinal())
+                .tag("name", name).description("熔断器状态 0-关闭 1-打开 2-半开").register(meterRegistry);
+        this.rejected = Counter.builder("ai.breaker.rejected")
+                .tag("name", name).description("熔断器拒绝的调用数").register(meterRegistry);
+    }
+
+    /**
+     * 尝试获取调用许可
+     *
+     * @return 熔断器打开或半开探测名额已满时返回 false
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected.increment();
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= halfOpenCalls) {
+                rejected.increment();
+                return false;
+            }
+            halfOpenPermits++;
+        }
+        return true;
+    }
+
+    /**
+     * 调用成功，耗时超过慢调用阈值时计为失败
+     */
+    public synchronized void onSuccess(long elapsedNanos) {
+        record(slowCallNanos > 0 && elapsedNanos > slowCallNanos);
+    }
+
+    /**
+     * 调用失败
+     */
+    public synchronized void onFailure() {
+        record(true);
+    }
+
+    /**
+     * 许可未实际使用（如调用被本地并发限制拒绝），不计入结果，半开状态下归还探测名额
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenPermits > halfOpenSuccesses) {
+            halfOpenPermits--;
+        }
+    }
+
+    /**
+     * 当前是否可能放行调用（不占用许可，用于跳过注定被拒绝的批量任务）
+     */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.nanoTime() - openedAt >= openNanos;
+            case HALF_OPEN -> halfOpenPermits < halfOpenCalls;
+        };
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        switch (state) {
+            case HALF_OPEN -> {
+                if (failed) {
+                    transition(State.OPEN);
+                } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                    transition(State.CLOSED);
+                }
+            }
+            case CLOSED -> {
+                if (windowCount == window.length) {
+                    if (window[windowIndex]) {
+                        windowFailures--;
+                    }
+                } else {
+                    windowCount++;
+                }
+                window[windowIndex] = failed;
+                if (failed) {
+                    windowFailures++;
+                }
+                windowIndex = (windowIndex + 1) % window.length;
+                if (windowCount >= minimumCalls && windowFailures * 100.0 / windowCount >= failureRateThreshold) {
+                    transition(State.OPEN);
+                }
+            }
+            default -> {
+                // 打开前发出的调用在打开后才返回，结果不再计入
+            }
+        }
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        switch (to) {
+            case OPEN -> openedAt = System.nanoTime();
+            case HALF_OPEN -> {
+                halfOpenPermits = 0;
+                halfOpenSuccesses = 0;
+            }
+            case CLOSED -> {
+                windowIndex = 0;
+                windowCount = 0;
+                windowFailures = 0;
+            }
+        }
+        log.warn("熔断器状态变化，name: {}, {} -> {}", name, from, to);
+        Counter.builder("ai.breaker.transitions").tag("name", name).tag("to", to.name().toLowerCase())
+                .description("熔断器状态变化次数").register(meterRegistry)
+                .increment();
+    }
+}
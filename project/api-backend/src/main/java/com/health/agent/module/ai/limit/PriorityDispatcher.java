@@ -0,0 +1,321 @@
+package com.health.agent.module.ai.limit;
+
+import com.health.agent.common.api.ResultCode;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AI调用优先级调度器
+ * 所有优先级共享 ai.scheduler.max-concurrency 个上游并发名额：
+ * - 优先级之间严格按高到低放行：有高优先级请求排队时，低优先级请求不会被放行
+ * - 每个优先级只能在总在途数低于 max-concurrency * share 时获得名额，低优先级为高优先级预留余量
+ * - 同一优先级内按用户加权公平排队（起始时间公平排队，每次调用代价为 1），单个用户的大量请求不会饿死其他用户
+ * - 按负载类型放行的在途数不超过对应隔离舱当前的自适应并发上限：隔离舱已满时该类请求继续排队等待，
+ *   而不是放行后被隔离舱立即拒绝；同一优先级内其他负载类型的请求不受影响
+ * - 队列已满或等待超过 max-wait-millis 时以 429 拒绝
+ * <p>
+ * 指标（均带 priority 标签）：ai.scheduler.queued、ai.scheduler.in_flight、ai.scheduler.wait、ai.scheduler.rejected{reason}
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class PriorityDispatcher {
+
+    /**
+     * 未携带用户ID的请求共用的公平排队键
+     */
+    private static final long ANONYMOUS_USER = 0L;
+
+    private static final Comparator<Waiter> WAITER_ORDER =
+            Comparator.comparingDouble((Waiter w) -> w.finishTag).thenComparingLong(w -> w.sequence);
+
+    private final int maxConcurrency;
+    private final ToIntFunction<AIWorkload> workloadLimits;
+    private final int[] workloadInFlight = new int[AIWorkload.values().length];
+    private final Map<AIPriority, ClassQueue> queues = new EnumMap<>(AIPriority.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final MeterRegistry meterRegistry;
+
+    private int inFlight;
+
+    public PriorityDispatcher(AIConfig.Scheduler config, MeterRegistry meterRegistry) {
+        this(config, null, meterRegistry);
+    }
+
+    /**
+     * @param workloadLimits 各负载类型当前的并发上限（通常为隔离舱的自适应上限），为空时不按负载类型限制
+     */
+    public PriorityDispatcher(AIConfig.Scheduler config, ToIntFunction<AIWorkload> workloadLimits,
+                              MeterRegistry meterRegistry) {
+        this.maxConcurrency = Math.max(1, config.getMaxConcurrency());
+        this.workloadLimits = workloadLimits;
+        this.meterRegistry = meterRegistry;
+        queues.put(AIPriority.INTERACTIVE, new ClassQueue(AIPriority.INTERACTIVE, config.getInteractive()));
+        queues.put(AIPriority.NEAR_REAL_TIME, new ClassQueue(AIPriority.NEAR_REAL_TIME, config.getNearRealTime()));
+        queues.put(AIPriority.BACKGROUND, new ClassQueue(AIPriority.BACKGROUND, config.getBackground()));
+    }
+
+    /**
+     * 获取调用名额，必要时排队等待
+     *
+     * @param priority 优先级
+     * @param workload 负载类型（对应的隔离舱）
+     * @param userId   用户ID（公平排队键，可为空）
+     * @return 名额，调用结束时必须释放
+     * @throws BusinessException 队列已满或等待超时（429），等待期间线程被中断
+     */
+    public Slot acquire(AIPriority priority, AIWorkload workload, Long userId) {
+        ClassQueue queue = queues.get(priority);
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (queue.size >= queue.capacity) {
+                rejected(priority, "full");
+                log.warn("AI调用排队已满，拒绝请求，priority: {}, queued: {}", priority.getTag(), queue.size);
+                throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "AI服务繁忙，请稍后重试");
+            }
+            Waiter waiter = queue.enqueue(userId != null ? userId : ANONYMOUS_USER, workload, lock.newCondition());
+            dispatch();
+
+            long remaining = queue.maxWaitNanos;
+            while (!waiter.granted) {
+                if (remaining <= 0) {
+                    queue.remove(waiter);
+                    rejected(priority, "timeout");
+                    log.warn("AI调用排队超时，priority: {}, userId: {}", priority.getTag(), userId);
+                    throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "AI服务繁忙，请稍后重试");
+                }
+                try {
+                    remaining = waiter.signal.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        // 放行与中断同时发生，归还名额
+                        release(queue, workload);
+                    } else {
+                        queue.remove(waiter);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new BusinessException("请求已取消");
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        queue.wait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new Slot(queue, workload);
+    }
+
+    /**
+     * 按优先级从高到低放行排队的请求，直到名额用完
+     * 调用方必须持有锁
+     */
+    private void dispatch() {
+        for (ClassQueue queue : queues.values()) {
+            while (queue.size > 0) {
+                if (inFlight >= queue.ceiling) {
+                    // 低优先级的上限不高于当前优先级，同样无法放行
+                    return;
+                }
+                Waiter next = queue.pollEligible();
+                if (next == null) {
+                    // 该优先级排队的请求所属隔离舱都已满；低优先级中属于其他隔离舱的请求仍可放行
+                    break;
+                }
+                next.granted = true;
+                inFlight++;
+                queue.inFlight++;
+                workloadInFlight[next.workload.ordinal()]++;
+                next.signal.signal();
+            }
+        }
+    }
+
+    /**
+     * 负载类型的在途数是否低于其当前并发上限
+     * 调用方必须持有锁
+     */
+    private boolean hasCapacity(AIWorkload workload) {
+        return workloadLimits == null || workloadInFlight[workload.ordinal()] < workloadLimits.applyAsInt(workload);
+    }
+
+    /**
+     * 归还名额并放行排队的请求（锁可重入，持有锁时也可调用）
+     */
+    private void release(ClassQueue queue, AIWorkload workload) {
+        lock.lock();
+        try {
+            inFlight--;
+            queue.inFlight--;
+            workloadInFlight[workload.ordinal()]--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rejected(AIPriority priority, String reason) {
+        Counter.builder("ai.scheduler.rejected")
+                .description("排队已满或超时被拒绝的AI调用数")
+                .tag("priority", priority.getTag())
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 调用名额，调用结束时释放一次（重复释放无效）
+     */
+    public final class Slot {
+        private final ClassQueue queue;
+        private final AIWorkload workload;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Slot(ClassQueue queue, AIWorkload workload) {
+            this.queue = queue;
+            this.workload = workload;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                PriorityDispatcher.this.release(queue, workload);
+            }
+        }
+    }
+
+    /**
+     * 排队中的请求
+     */
+    private static final class Waiter {
+        private final double startTag;
+        private final double finishTag;
+        private final long sequence;
+        private final AIWorkload workload;
+        private final Condition signal;
+        private boolean granted;
+
+        private Waiter(double startTag, double finishTag, long sequence, AIWorkload workload, Condition signal) {
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+            this.workload = workload;
+            this.signal = signal;
+        }
+    }
+
+    /**
+     * 单个优先级的公平队列
+     * 每个请求的起始标签取 max(虚拟时间, 该用户上一个请求的结束标签)，结束标签 = 起始标签 + 1，按结束标签出队；
+     * 虚拟时间推进到最近出队请求的起始标签。队列排空时清空用户标签，空闲期不保留历史。
+     * 按负载类型分开存放，出队时只在隔离舱未满的负载类型中选择结束标签最小的请求
+     */
+    private final class ClassQueue {
+        private final AIPriority priority;
+        private final int ceiling;
+        private final int capacity;
+        private final long maxWaitNanos;
+        private final Timer wait;
+        private final Map<AIWorkload, PriorityQueue<Waiter>> waiters = new EnumMap<>(AIWorkload.class);
+        private final Map<Long, Double> userFinishTags = new HashMap<>();
+        private int size;
+        private double virtualTime;
+        private long sequence;
+        private int inFlight;
+
+        private ClassQueue(AIPriority priority, AIConfig.PriorityClass config) {
+            this.priority = priority;
+            this.ceiling = Math.max(1, (int) Math.round(maxConcurrency * Math.min(1.0, config.getShare())));
+            this.capacity = config.getQueueCapacity();
+            this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxWaitMillis());
+            this.wait = Timer.builder("ai.scheduler.wait")
+                    .description("AI调用排队等待时间")
+                    .tag("priority", priority.getTag())
+                    .register(meterRegistry);
+            Gauge.builder("ai.scheduler.queued", this, ClassQueue::queued)
+                    .tag("priority", priority.getTag()).description("排队中的AI调用数").register(meterRegistry);
+            Gauge.builder("ai.scheduler.in_flight", this, ClassQueue::inFlight)
+                    .tag("priority", priority.getTag()).description("已获得名额的AI调用数").register(meterRegistry);
+        }
+
+        private Waiter enqueue(long userKey, AIWorkload workload, Condition signal) {
+            double startTag = Math.max(virtualTime, userFinishTags.getOrDefault(userKey, 0.0));
+            double finishTag = startTag + 1.0;
+            userFinishTags.put(userKey, finishTag);
+            Waiter waiter = new Waiter(startTag, finishTag, sequence++, workload, signal);
+            waiters.computeIfAbsent(workload, w -> new PriorityQueue<>(WAITER_ORDER)).add(waiter);
+            size++;
+            return waiter;
+        }
+
+        /**
+         * 取出隔离舱未满的负载类型中结束标签最小的请求，都已满时返回 null
+         */
+        private Waiter pollEligible() {
+            PriorityQueue<Waiter> selected = null;
+            for (Map.Entry<AIWorkload, PriorityQueue<Waiter>> entry : waiters.entrySet()) {
+                Waiter head = entry.getValue().peek();
+                if (head != null && hasCapacity(entry.getKey())
+                        && (selected == null || WAITER_ORDER.compare(head, selected.peek()) < 0)) {
+                    selected = entry.getValue();
+                }
+            }
+            if (selected == null) {
+                return null;
+            }
+            Waiter waiter = selected.poll();
+            size--;
+            virtualTime = Math.max(virtualTime, waiter.startTag);
+            resetIfIdle();
+            return waiter;
+        }
+
+        private void remove(Waiter waiter) {
+            if (waiters.get(waiter.workload).remove(waiter)) {
+                size--;
+            }
+            resetIfIdle();
+        }
+
+        private void resetIfIdle() {
+            if (size == 0) {
+                userFinishTags.clear();
+                virtualTime = 0;
+            }
+        }
+
+        private int queued() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int inFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.health.agent.module.ai.mapper;
+
+import com.health.agent.module.ai.entity.AIEndpointConfig;
+import org.apache.ibatis.annotations.Mapper;
+
+import java.util.List;
+
+/**
+ * AI上游端点配置Mapper
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Mapper
+public interface AIEndpointConfigMapper {
+
+    /**
+     * 查询所有启用的配置
+     *
+     * @return 配置列表（默认配置在前）
+     */
+    List<AIEndpointConfig> findEnabled();
+}
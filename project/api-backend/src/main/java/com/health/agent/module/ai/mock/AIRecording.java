@@ -0,0 +1,64 @@
+package com.health.agent.module.ai.mock;
+
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一条录制的AI响应（录制文件中的一行 JSON）
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIRecording {
+
+    public static final String TYPE_CHAT = "chat";
+    public static final String TYPE_VISION = "vision";
+
+    /**
+     * 请求规范化哈希（{@link com.health.agent.module.ai.cache.AIRequestKey}），回放时精确匹配
+     */
+    private String key;
+
+    /**
+     * 类型：chat / vision
+     */
+    private String type;
+
+    /**
+     * 最后一条用户消息的前缀，仅便于人工查看
+     */
+    private String prompt;
+
+    /**
+     * 文本回复内容
+     */
+    private String content;
+
+    /**
+     * Token 使用情况
+     */
+    private AIResponseDTO.Usage usage;
+
+    /**
+     * 食物分析结果（vision）
+     */
+    private FoodAnalysisResponseDTO.FoodInfo food;
+
+    /**
+     * 营养分析文本（vision）
+     */
+    private String nutritionAnalysis;
+
+    /**
+     * 录制时的上游耗时（毫秒）
+     */
+    private Long latencyMillis;
+}
@@ -0,0 +1,133 @@
+package com.health.agent.module.ai.mock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AI响应录制文件（JSON Lines，每行一条 {@link AIRecording}）
+ * - 回放：按请求哈希精确匹配；没有匹配时按哈希从同类型录制中确定性地选取一条，相同请求总是得到相同回复
+ * - 录制：追加写入文件，同时加入内存索引
+ * 录制文件不存在时加载 classpath 下的示例录制 mock-ai/recordings.jsonl
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+public class AIRecordingStore {
+
+    private static final String DEFAULT_RECORDINGS = "mock-ai/recordings.jsonl";
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final Map<String, AIRecording> byKey = new HashMap<>();
+    private final Map<String, List<AIRecording>> byType = new HashMap<>();
+
+    public AIRecordingStore(String recordingsFile, ObjectMapper objectMapper) {
+        this.file = Path.of(recordingsFile);
+        this.objectMapper = objectMapper;
+        load();
+    }
+
+    /**
+     * 查找回放用的录制
+     *
+     * @return 没有该类型的任何录制时返回 null
+     */
+    public synchronized AIRecording find(String type, String key) {
+        AIRecording exact = byKey.get(key);
+        if (exact != null && type.equals(exact.getType())) {
+            return exact;
+        }
+        List<AIRecording> candidates = byType.get(type);
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.get(Math.floorMod(key.hashCode(), candidates.size()));
+    }
+
+    /**
+     * 追加一条录制（相同请求哈希已录制时跳过）
+     */
+    public synchronized void append(AIRecording recording) {
+        if (byKey.containsKey(recording.getKey())) {
+            return;
+        }
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(objectMapper.writeValueAsString(recording));
+                writer.newLine();
+            }
+            index(recording);
+        } catch (IOException e) {
+            log.warn("写入AI录制失败，file: {}: {}", file, e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return byKey.size();
+    }
+
+    private void load() {
+        try {
+            if (Files.exists(file)) {
+                try (InputStream input = Files.newInputStream(file)) {
+                    read(input);
+                }
+                log.info("已加载AI录制: {} 条，file: {}", byKey.size(), file.toAbsolutePath());
+                return;
+            }
+            ClassPathResource resource = new ClassPathResource(DEFAULT_RECORDINGS);
+            if (resource.exists()) {
+                try (InputStream input = resource.getInputStream()) {
+                    read(input);
+                }
+                log.info("录制文件不存在，已加载示例录制: {} 条，file: {}", byKey.size(), file.toAbsolutePath());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("读取AI录制失败: " + e.getMessage(), e);
+        }
+    }
+
+    private void read(InputStream input) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                index(objectMapper.readValue(line, AIRecording.class));
+            } catch (IOException e) {
+                log.warn("跳过无法解析的AI录制，第 {} 行: {}", lineNumber, e.getMessage());
+            }
+        }
+    }
+
+    private void index(AIRecording recording) {
+        if (recording.getKey() != null) {
+            byKey.put(recording.getKey(), recording);
+        }
+        byType.computeIfAbsent(recording.getType(), type -> new ArrayList<>()).add(recording);
+    }
+}
@@ -0,0 +1,74 @@
+package com.health.agent.module.ai.routing;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * AI上游端点（一个 OpenAI 兼容接口地址 + 密钥 + 模型）
+ * 来自 ai_config 表中的一条启用配置；表中没有可用配置时使用 application.yml 中的 ai.* 配置
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIEndpoint {
+
+    /**
+     * ai_config 配置ID（来自 application.yml 时为 null）
+     */
+    private Long id;
+
+    /**
+     * 端点名称（日志和指标标签）
+     */
+    private String name;
+
+    /**
+     * 提供商 qwen, custom
+     */
+    private String provider;
+
+    /**
+     * 接口地址（不含 /chat/completions）
+     */
+    private String apiUrl;
+
+    /**
+     * API密钥
+     */
+    private String apiKey;
+
+    /**
+     * 文本模型
+     */
+    private String model;
+
+    /**
+     * 视觉模型（为空表示该端点不支持图片分析）
+     */
+    private String visionModel;
+
+    /**
+     * 默认最大生成token数（请求未指定时使用）
+     */
+    private Integer maxTokens;
+
+    /**
+     * 默认温度（请求未指定时使用）
+     */
+    private Double temperature;
+
+    /**
+     * 是否为默认端点（健康状况相同时优先选择）
+     */
+    private boolean preferred;
+
+    public boolean supportsVision() {
+        return visionModel != null && !visionModel.isBlank();
+    }
+}
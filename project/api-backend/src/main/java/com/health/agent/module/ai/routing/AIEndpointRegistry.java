@@ -0,0 +1,206 @@
+package com.health.agent.module.ai.routing;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.client.TencentHunyuanClient;
+import com.health.agent.module.ai.entity.AIEndpointConfig;
+import com.health.agent.module.ai.mapper.AIEndpointConfigMapper;
+import com.health.agent.module.ai.transport.AIHttpTransport;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * AI上游端点注册表
+ * 定时从 ai_config 表读取启用的配置（热加载，无需重启）：
+ * - 配置未变化的端点保留原客户端和健康统计，新增或修改的端点重新创建客户端
+ * - 表中没有可用配置或读取失败时，使用 application.yml 中 ai.* 配置的默认端点
+ * <p>
+ * 指标（带 endpoint 标签）：ai.routing.latency、ai.routing.error_rate、ai.routing.in_flight
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class AIEndpointRegistry {
+
+    /**
+     * 支持的提供商（均为 OpenAI 兼容的 /chat/completions 接口）
+     */
+    private static final Set<String> SUPPORTED_PROVIDERS = Set.of("qwen", "custom");
+
+    private final AIEndpointConfigMapper configMapper;
+    private final AIConfig aiConfig;
+    private final AIHttpTransport httpTransport;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final RoutedEndpoint defaultEndpoint;
+
+    private volatile List<RoutedEndpoint> endpoints;
+
+    public AIEndpointRegistry(AIEndpointConfigMapper configMapper,
+                              AIConfig aiConfig,
+                              AIHttpTransport httpTransport,
+                              TencentHunyuanClient defaultClient,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry) {
+        this.configMapper = configMapper;
+        this.aiConfig = aiConfig;
+        this.httpTransport = httpTransport;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.defaultEndpoint = new RoutedEndpoint(defaultClient.getEndpoint(), defaultClient, newHealth(), "application.yml");
+        this.endpoints = List.of(defaultEndpoint);
+        registerGauges(defaultEndpoint.getEndpoint().getName());
+    }
+
+    /**
+     * 当前参与路由的端点（不可变列表，至少一个）
+     */
+    public List<RoutedEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * 重新加载 ai_config 配置
+     */
+    @Scheduled(fixedDelayString = "${ai.routing.reload-interval-millis:15000}")
+    public void reload() {
+        if (!Boolean.TRUE.equals(aiConfig.getRouting().getEnabled())) {
+            return;
+        }
+
+        List<AIEndpointConfig> configs;
+        try {
+            configs = configMapper.findEnabled();
+        } catch (RuntimeException e) {
+            log.warn("读取ai_config失败，继续使用当前端点: {}", e.getMessage());
+            return;
+        }
+
+        List<RoutedEndpoint> current = endpoints;
+        Map<Long, RoutedEndpoint> byId = new HashMap<>();
+        for (RoutedEndpoint routed : current) {
+            if (routed.getEndpoint().getId() != null) {
+                byId.put(routed.getEndpoint().getId(), routed);
+            }
+        }
+
+        List<RoutedEndpoint> next = new ArrayList<>();
+        for (AIEndpointConfig config : configs) {
+            String signature = signatureOf(config);
+            RoutedEndpoint existing = byId.get(config.getId());
+            if (existing != null && existing.getSignature().equals(signature)) {
+                next.add(existing);
+                continue;
+            }
+            AIEndpoint endpoint = toEndpoint(config);
+            if (endpoint != null) {
+                TencentHunyuanClient client = new TencentHunyuanClient(aiConfig, httpTransport, meterRegistry, endpoint);
+                next.add(new RoutedEndpoint(endpoint, client, newHealth(), signature));
+            }
+        }
+        if (next.isEmpty()) {
+            next.add(defaultEndpoint);
+        }
+
+        if (!next.equals(current)) {
+            endpoints = List.copyOf(next);
+            next.forEach(routed -> registerGauges(routed.getEndpoint().getName()));
+            log.info("AI路由端点已更新: {}", next.stream()
+                    .map(routed -> routed.getEndpoint().getName() + "(" + routed.getEndpoint().getModel() + ")")
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    private AIEndpoint toEndpoint(AIEndpointConfig config) {
+        String provider = config.getProvider() != null ? config.getProvider().trim().toLowerCase(Locale.ROOT) : "";
+        if (!SUPPORTED_PROVIDERS.contains(provider)) {
+            log.warn("ai_config 配置 {} 的提供商 '{}' 不受支持，已忽略", config.getId(), config.getProvider());
+            return null;
+        }
+        if (config.getApiUrl() == null || config.getApiUrl().isBlank() || config.getModel() == null || config.getModel().isBlank()) {
+            log.warn("ai_config 配置 {} 缺少接口地址或模型，已忽略", config.getId());
+            return null;
+        }
+
+        Map<String, Object> parameters = parseParameters(config);
+        Object visionModel = parameters.get("visionModel");
+        Object maxTokens = parameters.get("maxTokens");
+        Object temperature = parameters.get("temperature");
+        String apiUrl = config.getApiUrl().trim();
+        return AIEndpoint.builder()
+                .id(config.getId())
+                .name(config.getName() != null ? config.getName() : "ai_config-" + config.getId())
+                .provider(provider)
+                .apiUrl(apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl)
+                .apiKey(config.getApiKey())
+                .model(config.getModel().trim())
+                // qwen 提供商未指定视觉模型时使用默认视觉模型，自定义提供商需显式配置
+                .visionModel(visionModel != null ? visionModel.toString()
+                        : "qwen".equals(provider) ? TencentHunyuanClient.DEFAULT_VISION_MODEL : null)
+                .maxTokens(maxTokens instanceof Number number ? number.intValue() : aiConfig.getMaxTokens())
+                .temperature(temperature instanceof Number number ? number.doubleValue() : aiConfig.getTemperature())
+                .preferred(Integer.valueOf(1).equals(config.getIsDefault()))
+                .build();
+    }
+
+    private Map<String, Object> parseParameters(AIEndpointConfig config) {
+        if (config.getParameters() == null || config.getParameters().isBlank()) {
+            return Map.of();
+        }
+        try {
+            Map<String, Object> parameters = objectMapper.readValue(config.getParameters(), new TypeReference<>() {
+            });
+            return parameters != null ? parameters : Map.of();
+        } catch (Exception e) {
+            log.warn("ai_config 配置 {} 的 parameters 不是合法JSON，使用默认参数: {}", config.getId(), e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private String signatureOf(AIEndpointConfig config) {
+        return String.join("\n", config.getName(), config.getProvider(), config.getModel(), config.getApiUrl(),
+                config.getApiKey(), config.getParameters(), Objects.toString(config.getIsDefault()));
+    }
+
+    private EndpointHealth newHealth() {
+        AIConfig.Routing routing = aiConfig.getRouting();
+        return new EndpointHealth(routing.getEwmaAlpha(), routing.getErrorDecaySeconds(), routing.getInitialLatencyMillis());
+    }
+
+    /**
+     * 按端点名称注册指标，取值时查找当前端点，配置重新加载后指标仍然有效
+     */
+    private void registerGauges(String name) {
+        Gauge.builder("ai.routing.latency", this, registry -> registry.stat(name, EndpointHealth::getLatencyMillis))
+                .tag("endpoint", name).description("端点耗时EWMA（毫秒）").register(meterRegistry);
+        Gauge.builder("ai.routing.error_rate", this, registry -> registry.stat(name, EndpointHealth::getErrorRate))
+                .tag("endpoint", name).description("端点错误率EWMA").register(meterRegistry);
+        Gauge.builder("ai.routing.in_flight", this, registry -> registry.stat(name, EndpointHealth::getInFlight))
+                .tag("endpoint", name).description("端点在途请求数").register(meterRegistry);
+    }
+
+    private double stat(String name, ToDoubleFunction<EndpointHealth> metric) {
+        for (RoutedEndpoint routed : endpoints) {
+            if (name.equals(routed.getEndpoint().getName())) {
+                return metric.applyAsDouble(routed.getHealth());
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,103 @@
+package com.health.agent.module.ai.routing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个上游端点的实时健康统计
+ * - 耗时：峰值敏感的 EWMA，样本高于当前值时直接取样本（变慢立即生效），低于时按 alpha 平滑回落
+ * - 错误率：按 alpha 平滑的 EWMA，没有新样本时按 exp(-空闲时间/τ) 向 0 衰减，
+ *   被判定为不健康而不再分到流量的端点，冷却后会自然重新参与路由
+ * - 在途请求数：参与路由代价计算，避免所有请求同时涌向同一个端点
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public class EndpointHealth {
+
+    private final double alpha;
+    private final long errorDecayNanos;
+    private final double initialLatencyMillis;
+
+    private double latencyMillis = -1;
+    private double errorRate;
+    private long errorUpdatedAt = System.nanoTime();
+    private int inFlight;
+
+    public EndpointHealth(double alpha, long errorDecaySeconds, double initialLatencyMillis) {
+        this.alpha = alpha;
+        this.errorDecayNanos = TimeUnit.SECONDS.toNanos(errorDecaySeconds);
+        this.initialLatencyMillis = initialLatencyMillis;
+    }
+
+    /**
+     * 开始一次调用
+     *
+     * @return 开始时间（纳秒），结束时传回
+     */
+    public synchronized long start() {
+        inFlight++;
+        return System.nanoTime();
+    }
+
+    /**
+     * 调用成功
+     *
+     * @param elapsedNanos 计入耗时统计的时长（同步调用为总耗时，流式调用为首个分片耗时）
+     */
+    public synchronized void success(long elapsedNanos) {
+        inFlight--;
+        double sample = TimeUnit.NANOSECONDS.toMicros(elapsedNanos) / 1000.0;
+        if (latencyMillis < 0 || sample > latencyMillis) {
+            latencyMillis = sample;
+        } else {
+            latencyMillis += alpha * (sample - latencyMillis);
+        }
+        updateErrorRate(0);
+    }
+
+    public synchronized void failure() {
+        inFlight--;
+        updateErrorRate(1);
+    }
+
+    /**
+     * 调用被主动取消，只减少在途数，不计入统计
+     */
+    public synchronized void cancelled() {
+        inFlight--;
+    }
+
+    /**
+     * 路由代价：耗时 × (在途数 + 1) × (1 + 错误率 × 惩罚系数)，越小越优先
+     */
+    public synchronized double cost(double errorPenalty) {
+        double latency = latencyMillis < 0 ? initialLatencyMillis : latencyMillis;
+        return latency * (inFlight + 1) * (1 + currentErrorRate() * errorPenalty);
+    }
+
+    public synchronized double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public synchronized double getErrorRate() {
+        return currentErrorRate();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void updateErrorRate(int sample) {
+        errorRate = currentErrorRate();
+        errorRate += alpha * (sample - errorRate);
+        errorUpdatedAt = System.nanoTime();
+    }
+
+    private double currentErrorRate() {
+        if (errorDecayNanos <= 0) {
+            return errorRate;
+        }
+        long idle = System.nanoTime() - errorUpdatedAt;
+        return errorRate * Math.exp(-(double) idle / errorDecayNanos);
+    }
+}
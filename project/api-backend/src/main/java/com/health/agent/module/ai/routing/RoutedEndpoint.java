@@ -0,0 +1,28 @@
+package com.health.agent.module.ai.routing;
+
+import com.health.agent.module.ai.client.AIClient;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 参与路由的端点：端点配置、对应的客户端和健康统计
+ * 配置未变化的端点在重新加载时原样保留，健康统计不会被重置
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Getter
+@AllArgsConstructor
+public class RoutedEndpoint {
+
+    private final AIEndpoint endpoint;
+
+    private final AIClient client;
+
+    private final EndpointHealth health;
+
+    /**
+     * 配置签名，用于重新加载时判断配置是否变化
+     */
+    private final String signature;
+}
@@ -0,0 +1,57 @@
+package com.health.agent.module.ai.service;
+
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.vo.FoodAnalysisJobVO;
+
+import java.util.function.Consumer;
+
+/**
+ * 异步食物图片分析任务服务接口
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public interface IFoodAnalysisJobService {
+
+    /**
+     * 提交分析任务，立即返回任务ID
+     *
+     * @param request 分析请求（已压缩的 Base64 图片）
+     * @return 排队中的任务
+     * @throws com.health.agent.common.exception.BusinessException 在途任务已满时以 429 拒绝
+     */
+    FoodAnalysisJobVO submit(FoodAnalysisRequestDTO request);
+
+    /**
+     * 查询任务
+     *
+     * @param jobId 任务ID
+     * @return 任务，不存在或已过期时返回 null
+     */
+    FoodAnalysisJobVO getJob(String jobId);
+
+    /**
+     * 订阅任务结束事件，任务已结束时立即回调
+     *
+     * @param jobId 任务ID
+     * @param listener 结束回调（只会调用一次）
+     * @return 任务当前状态，不存在时返回 null
+     */
+    FoodAnalysisJobVO subscribe(String jobId, Consumer<FoodAnalysisJobVO> listener);
+
+    /**
+     * 取消订阅（订阅方超时或断开时调用），任务已结束或未订阅时忽略
+     *
+     * @param jobId 任务ID
+     * @param listener 订阅时传入的回调
+     */
+    void unsubscribe(String jobId, Consumer<FoodAnalysisJobVO> listener);
+
+    /**
+     * 在与异步任务共用的在途上限下执行一个分析任务（批量分析逐张提交）
+     *
+     * @param task 分析任务
+     * @throws com.health.agent.common.exception.BusinessException 在途任务已满或执行器已满时以 429 拒绝
+     */
+    void execute(Runnable task);
+}
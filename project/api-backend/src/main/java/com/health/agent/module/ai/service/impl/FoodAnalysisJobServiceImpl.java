@@ -0,0 +1,285 @@
+package com.health.agent.module.ai.service.impl;
+
+import cn.hutool.core.util.IdUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.health.agent.common.api.ResultCode;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.client.AIClient;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.service.IFoodAnalysisJobService;
+import com.health.agent.module.ai.vo.FoodAnalysisJobVO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 异步食物图片分析任务服务实现
+ * 任务状态写入 Redis（带TTL），本地同时保留一份以便 Redis 不可用时仍可查询；
+ * 任务结束时回调本实例上的订阅者（SSE 推送）
+ * <p>
+ * 指标：
+ * - ai.food.job.queue.depth 已提交未开始的任务数
+ * - ai.food.job.in_flight 在途任务数（排队 + 执行中）
+ * - ai.food.job.wait 任务排队耗时
+ * - ai.food.job.latency{outcome} 提交到结束的总耗时
+ * - ai.food.job.rejected 因在途上限被拒绝的提交数
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Service
+public class FoodAnalysisJobServiceImpl implements IFoodAnalysisJobService {
+
+    private final AIClient aiClient;
+    private final Executor executor;
+    private final AIConfig.Job jobConfig;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private final Semaphore inFlightPermits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Cache<String, FoodAnalysisJobVO> localJobs;
+    private final Map<String, List<Subscription>> listeners = new ConcurrentHashMap<>();
+
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public FoodAnalysisJobServiceImpl(AIClient aiClient,
+                                      @Qualifier("foodAnalysisExecutor") Executor executor,
+                                      AIConfig aiConfig,
+                                      StringRedisTemplate redisTemplate,
+                                      ObjectMapper objectMapper,
+                                      MeterRegistry meterRegistry) {
+        this.aiClient = aiClient;
+        this.executor = executor;
+        this.jobConfig = aiConfig.getJob();
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.inFlightPermits = new Semaphore(jobConfig.getMaxInFlight());
+        this.localJobs = Caffeine.newBuilder()
+                .maximumSize(jobConfig.getMaxInFlight() * 20L)
+                .expireAfterWrite(Duration.ofSeconds(jobConfig.getResultTtlSeconds()))
+                .build();
+
+        Gauge.builder("ai.food.job.queue.depth", queued, AtomicInteger::get)
+                .description("已提交未开始的食物分析任务数").register(meterRegistry);
+        Gauge.builder("ai.food.job.in_flight", inFlightPermits,
+                        permits -> jobConfig.getMaxInFlight() - permits.availablePermits())
+                .description("在途食物分析任务数").register(meterRegistry);
+        this.waitTimer = Timer.builder("ai.food.job.wait")
+                .description("食物分析任务排队耗时").register(meterRegistry);
+        this.rejected = Counter.builder("ai.food.job.rejected")
+                .description("因在途上限被拒绝的任务数").register(meterRegistry);
+    }
+
+    @Override
+    public FoodAnalysisJobVO submit(FoodAnalysisRequestDTO request) {
+        acquirePermit();
+
+        FoodAnalysisJobVO job = FoodAnalysisJobVO.builder()
+                .jobId(IdUtil.fastSimpleUUID())
+                .userId(request.getUserId())
+                .status(FoodAnalysisJobVO.STATUS_PENDING)
+                .createdAt(LocalDateTime.now())
+                .build();
+        save(job);
+
+        long submittedAt = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> run(job, request, submittedAt));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            inFlightPermits.release();
+            rejected.increment();
+            job.setStatus(FoodAnalysisJobVO.STATUS_FAILED);
+            job.setErrorMessage("任务执行器已满");
+            job.setFinishedAt(LocalDateTime.now());
+            save(job);
+            throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "图片分析任务繁忙，请稍后重试");
+        }
+
+        log.info("食物分析任务已提交，jobId: {}, userId: {}", job.getJobId(), job.getUserId());
+        return copyOf(job);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        acquirePermit();
+        long submittedAt = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                queued.decrementAndGet();
+                waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                try {
+                    task.run();
+                } finally {
+                    inFlightPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            inFlightPermits.release();
+            rejected.increment();
+            throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "图片分析任务繁忙，请稍后重试");
+        }
+    }
+
+    @Override
+    public FoodAnalysisJobVO getJob(String jobId) {
+        try {
+            String json = redisTemplate.opsForValue().get(jobConfig.getKeyPrefix() + jobId);
+            if (json != null) {
+                return objectMapper.readValue(json, FoodAnalysisJobVO.class);
+            }
+        } catch (Exception e) {
+            log.warn("读取Redis分析任务失败，使用本地状态: {}", e.getMessage());
+        }
+        FoodAnalysisJobVO local = localJobs.getIfPresent(jobId);
+        return local != null ? copyOf(local) : null;
+    }
+
+    @Override
+    public FoodAnalysisJobVO subscribe(String jobId, Consumer<FoodAnalysisJobVO> listener) {
+        // 保证回调只执行一次：注册后任务可能恰好结束，完成通知与下面的检查可能同时触发
+        Subscription once = new Subscription(listener, new AtomicBoolean());
+        listeners.computeIfAbsent(jobId, k -> new CopyOnWriteArrayList<>()).add(once);
+
+        FoodAnalysisJobVO job = getJob(jobId);
+        if (job == null || job.isFinished()) {
+            unsubscribe(jobId, listener);
+            if (job != null) {
+                once.accept(job);
+            }
+        }
+        return job;
+    }
+
+    @Override
+    public void unsubscribe(String jobId, Consumer<FoodAnalysisJobVO> listener) {
+        listeners.computeIfPresent(jobId, (k, registered) -> {
+            registered.removeIf(subscription -> subscription.listener() == listener);
+            return registered.isEmpty() ? null : registered;
+        });
+    }
+
+    /**
+     * 获取在途许可，已满时以 429 拒绝
+     */
+    private void acquirePermit() {
+        if (!inFlightPermits.tryAcquire()) {
+            rejected.increment();
+            log.warn("食物分析在途任务已达上限: {}", jobConfig.getMaxInFlight());
+            throw new BusinessException(ResultCode.TOO_MANY_REQUESTS.getCode(), "图片分析任务繁忙，请稍后重试");
+        }
+    }
+
+    private void run(FoodAnalysisJobVO job, FoodAnalysisRequestDTO request, long submittedAt) {
+        queued.decrementAndGet();
+        waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+        try {
+            job.setStatus(FoodAnalysisJobVO.STATUS_RUNNING);
+            save(job);
+
+            FoodAnalysisResponseDTO response = aiClient.analyzeFoodImage(request);
+            if (Boolean.TRUE.equals(response.getSuccess())) {
+                job.setStatus(FoodAnalysisJobVO.STATUS_SUCCEEDED);
+                job.setResult(response);
+            } else {
+                job.setStatus(FoodAnalysisJobVO.STATUS_FAILED);
+                job.setErrorMessage(response.getErrorMessage());
+            }
+        } catch (Exception e) {
+            log.error("食物分析任务执行异常，jobId: {}", job.getJobId(), e);
+            job.setStatus(FoodAnalysisJobVO.STATUS_FAILED);
+            job.setErrorMessage(e.getMessage());
+        } finally {
+            inFlightPermits.release();
+        }
+
+        job.setFinishedAt(LocalDateTime.now());
+        save(job);
+        Timer.builder("ai.food.job.latency")
+                .description("食物分析任务提交到结束的耗时")
+                .tag("outcome", job.getStatus())
+                .register(meterRegistry)
+                .record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+        log.info("食物分析任务结束，jobId: {}, status: {}", job.getJobId(), job.getStatus());
+
+        List<Subscription> subscribers = listeners.remove(job.getJobId());
+        if (subscribers != null) {
+            for (Subscription subscriber : subscribers) {
+                try {
+                    subscriber.accept(copyOf(job));
+                } catch (Exception e) {
+                    log.warn("通知分析任务订阅者失败，jobId: {}", job.getJobId(), e);
+                }
+            }
+        }
+    }
+
+    private void save(FoodAnalysisJobVO job) {
+        FoodAnalysisJobVO snapshot = copyOf(job);
+        localJobs.put(job.getJobId(), snapshot);
+        try {
+            redisTemplate.opsForValue().set(jobConfig.getKeyPrefix() + job.getJobId(),
+                    objectMapper.writeValueAsString(snapshot),
+                    Duration.ofSeconds(jobConfig.getResultTtlSeconds()));
+        } catch (Exception e) {
+            log.warn("写入Redis分析任务失败，jobId: {}: {}", job.getJobId(), e.getMessage());
+        }
+    }
+
+    private FoodAnalysisJobVO copyOf(FoodAnalysisJobVO job) {
+        return FoodAnalysisJobVO.builder()
+                .jobId(job.getJobId())
+                .userId(job.getUserId())
+                .status(job.getStatus())
+                .result(job.getResult())
+                .errorMessage(job.getErrorMessage())
+                .createdAt(job.getCreatedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+
+    /**
+     * 任务订阅：保留原始回调以便按回调取消订阅，fired 保证只通知一次
+     */
+    private record Subscription(Consumer<FoodAnalysisJobVO> listener, AtomicBoolean fired)
+            implements Consumer<FoodAnalysisJobVO> {
+
+        @Override
+        public void accept(FoodAnalysisJobVO job) {
+            if (fired.compareAndSet(false, true)) {
+                listener.accept(job);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.health.agent.module.ai.transport;
+
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * AI/RAG 上游调用的 HTTP 传输层
+ * 统一管理连接池与超时，不同的 {@link com.health.agent.module.ai.client.AIClient} 实现
+ * 以及 RAG 客户端共享同一个底层连接池，避免每次请求重新建立 TCP/TLS 连接
+ * 
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public interface AIHttpTransport {
+
+    /**
+     * 创建共享底层连接池的 RestTemplate
+     * 
+     * @param readTimeout 读取（响应）超时时间
+     * @return RestTemplate
+     */
+    RestTemplate createRestTemplate(Duration readTimeout);
+
+    /**
+     * 传输实现名称（用于日志）
+     */
+    String name();
+}
@@ -0,0 +1,64 @@
+package com.health.agent.module.ai.transport;
+
+import com.health.agent.config.AIConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * 基于 JDK HttpClient 的传输实现
+ * 上游支持时通过 ALPN 协商 HTTP/2，单连接多路复用；不支持时自动回落 HTTP/1.1 keep-alive
+ * <p>
+ * 说明：JDK HttpClient 的连接池参数只能通过系统属性配置，
+ * 空闲回收时间映射到 jdk.httpclient.keepalive.timeout，连接数映射到 jdk.httpclient.connectionPoolSize。
+ * 
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "ai.http", name = "transport", havingValue = "jdk")
+public class JdkHttpTransport implements AIHttpTransport {
+
+    private final HttpClient httpClient;
+
+    public JdkHttpTransport(AIConfig aiConfig) {
+        AIConfig.Http httpConfig = aiConfig.getHttp();
+
+        // 必须在首个 HttpClient 创建前设置，已显式配置的系统属性优先
+        setPropertyIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(httpConfig.getIdleEvictSeconds()));
+        setPropertyIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(httpConfig.getMaxTotal()));
+
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(httpConfig.getConnectTimeout()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+
+        log.info("AI HTTP客户端初始化完成（JDK HttpClient, HTTP/2优先） - connectTimeout: {}ms, keepalive: {}s",
+                httpConfig.getConnectTimeout(), httpConfig.getIdleEvictSeconds());
+    }
+
+    @Override
+    public RestTemplate createRestTemplate(Duration readTimeout) {
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(readTimeout);
+        return new RestTemplate(factory);
+    }
+
+    @Override
+    public String name() {
+        return "jdk";
+    }
+
+    private static void setPropertyIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.health.agent.module.ai.transport;
+
+import com.health.agent.config.AIConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * 基于 Apache HttpClient 5 连接池的传输实现（默认）
+ * HTTP/1.1 keep-alive，连接总数与单路由连接数有界，定期回收空闲/过期连接
+ * 
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "ai.http", name = "transport", havingValue = "pooled", matchIfMissing = true)
+public class PooledHttpTransport implements AIHttpTransport {
+
+    private final AIConfig.Http httpConfig;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    public PooledHttpTransport(AIConfig aiConfig) {
+        this.httpConfig = aiConfig.getHttp();
+
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(httpConfig.getConnectTimeout()))
+                .setTimeToLive(TimeValue.ofSeconds(httpConfig.getConnectionTtlSeconds()))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(httpConfig.getValidateAfterInactivitySeconds()))
+                .build();
+
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(httpConfig.getMaxTotal())
+                .setMaxConnPerRoute(httpConfig.getMaxPerRoute())
+                .setDefaultConnectionConfig(connectionConfig)
+                // LIFO 复用最近使用的连接，空闲连接更容易被及时回收
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .build();
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(httpConfig.getIdleEvictSeconds()))
+                .build();
+
+        log.info("AI HTTP连接池初始化完成 - maxTotal: {}, maxPerRoute: {}, connectTimeout: {}ms, idleEvict: {}s, ttl: {}s",
+                httpConfig.getMaxTotal(), httpConfig.getMaxPerRoute(), httpConfig.getConnectTimeout(),
+                httpConfig.getIdleEvictSeconds(), httpConfig.getConnectionTtlSeconds());
+    }
+
+    @Override
+    public RestTemplate createRestTemplate(Duration readTimeout) {
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        // 每个 RestTemplate 使用独立的响应超时，但共享同一个连接池
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(httpConfig.getConnectionRequestTimeout()))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build();
+        factory.setHttpContextFactory((method, uri) -> {
+            HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(requestConfig);
+            return context;
+        });
+        return new RestTemplate(factory);
+    }
+
+    @Override
+    public String name() {
+        return "pooled";
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            httpClient.close();
+            connectionManager.close();
+            log.info("AI HTTP连接池已关闭");
+        } catch (Exception e) {
+            log.warn("关闭AI HTTP连接池失败: {}", e.getMessage());
+        }
+    }
+}
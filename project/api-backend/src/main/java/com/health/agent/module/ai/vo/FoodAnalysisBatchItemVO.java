@@ -0,0 +1,44 @@
+package com.health.agent.module.ai.vo;
+
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量食物图片分析单张结果VO
+ * 每张图片分析完成后立即以 SSE item 事件推送，顺序与完成先后一致
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "批量食物图片分析单张结果")
+public class FoodAnalysisBatchItemVO {
+
+    @Schema(description = "图片在上传列表中的序号（从0开始）")
+    private Integer index;
+
+    @Schema(description = "原始文件名")
+    private String fileName;
+
+    @Schema(description = "是否成功")
+    private Boolean success;
+
+    @Schema(description = "分析结果（成功时）")
+    private FoodAnalysisResponseDTO result;
+
+    @Schema(description = "错误码（失败时，429表示AI服务繁忙）")
+    private Integer errorCode;
+
+    @Schema(description = "错误信息（失败时）")
+    private String errorMessage;
+
+    @Schema(description = "该图片的处理耗时（毫秒，含压缩）")
+    private Long elapsedMillis;
+}
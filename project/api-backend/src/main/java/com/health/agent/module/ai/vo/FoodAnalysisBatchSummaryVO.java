@@ -0,0 +1,33 @@
+package com.health.agent.module.ai.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量食物图片分析汇总VO（SSE done 事件）
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "批量食物图片分析汇总")
+public class FoodAnalysisBatchSummaryVO {
+
+    @Schema(description = "图片总数")
+    private Integer total;
+
+    @Schema(description = "成功数")
+    private Integer succeeded;
+
+    @Schema(description = "失败数")
+    private Integer failed;
+
+    @Schema(description = "总耗时（毫秒）")
+    private Long elapsedMillis;
+}
@@ -0,0 +1,62 @@
+package com.health.agent.module.ai.vo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 食物图片分析任务VO
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "食物图片分析任务")
+public class FoodAnalysisJobVO {
+
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_SUCCEEDED = "succeeded";
+    public static final String STATUS_FAILED = "failed";
+
+    @Schema(description = "任务ID")
+    private String jobId;
+
+    @Schema(description = "用户ID")
+    private Long userId;
+
+    @Schema(description = "状态：pending-排队中, running-分析中, succeeded-成功, failed-失败")
+    private String status;
+
+    @Schema(description = "分析结果（成功时）")
+    private FoodAnalysisResponseDTO result;
+
+    @Schema(description = "错误消息（失败时）")
+    private String errorMessage;
+
+    @Schema(description = "提交时间")
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createdAt;
+
+    @Schema(description = "完成时间")
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime finishedAt;
+
+    /**
+     * 是否已结束（成功或失败）
+     */
+    @JsonIgnore
+    public boolean isFinished() {
+        return STATUS_SUCCEEDED.equals(status) || STATUS_FAILED.equals(status);
+    }
+}
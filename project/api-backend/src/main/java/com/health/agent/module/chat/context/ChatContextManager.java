@@ -0,0 +1,358 @@
+package com.health.agent.module.chat.context;
+
+import cn.hutool.core.util.StrUtil;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.client.AIClient;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.limit.AIWorkload;
+import com.health.agent.module.chat.entity.ChatMessage;
+import com.health.agent.module.chat.entity.ChatSession;
+import com.health.agent.module.chat.mapper.ChatMessageMapper;
+import com.health.agent.module.chat.mapper.ChatSessionMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 对话上下文管理器
+ * 按 Token 预算构建多轮对话上下文：
+ * - 历史消息从新到旧装入，直到用完 ai.context.history-token-budget；活跃会话的近期消息从 {@link ChatHistoryCache} 读取
+ * - 装不下的早期消息由会话上的滚动摘要代替，摘要拼接在系统提示词之后
+ * - 溢出且未被摘要覆盖的消息累计到阈值后，在后台线程中把它们合并进摘要
+ * - 会话压缩归档前由 {@link #summarizeBefore} 同步把待归档的消息全部合并进摘要
+ * <p>
+ * 指标：
+ * - ai.chat.prompt.tokens{source=estimated|upstream} 每次请求的提示词 Token 数（本地估算 / 上游返回）
+ * - ai.chat.context.evicted 因超出预算未装入上下文的历史消息数
+ * - ai.chat.summary.updates{outcome} 滚动摘要刷新次数
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class ChatContextManager {
+
+    private static final String SUMMARY_HEADER = "\n\n以下是与该用户早期对话的摘要，请结合摘要理解后续对话：\n";
+
+    private static final String SUMMARY_PROMPT =
+        "你是对话摘要助手。请把营养咨询对话压缩为简洁的中文摘要，供后续对话参考。\n" +
+        "要求：\n" +
+        "1. 保留用户的身体情况、健康目标、饮食偏好与禁忌、已给出的关键建议和未解决的问题\n" +
+        "2. 合并已有摘要与新增对话，去掉寒暄和重复内容\n" +
+        "3. 使用第三人称陈述，只输出摘要正文";
+
+    /**
+     * 单次摘要最多读取的消息条数
+     */
+    private static final int SUMMARY_SOURCE_LIMIT = 200;
+
+    /**
+     * 同步摘要时最多调用的次数（每次输入按两倍历史预算截断）
+     */
+    private static final int MAX_SUMMARY_ROUNDS = 10;
+
+    private enum RefreshResult {
+        UPDATED, UP_TO_DATE, FAILED
+    }
+
+    private final ChatMessageMapper messageMapper;
+    private final ChatSessionMapper sessionMapper;
+    private final ChatHistoryCache historyCache;
+    private final AIClient aiClient;
+    private final Executor executor;
+    private final AIConfig aiConfig;
+    private final AIConfig.Context config;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 正在刷新摘要的会话，同一会话同时只有一个摘要任务
+     */
+    private final Set<Long> summarizing = ConcurrentHashMap.newKeySet();
+
+    private final Counter evicted;
+
+    public ChatContextManager(ChatMessageMapper messageMapper,
+                              ChatSessionMapper sessionMapper,
+                              ChatHistoryCache historyCache,
+                              AIClient aiClient,
+                              @Qualifier("aiBackgroundExecutor") Executor executor,
+                              AIConfig aiConfig,
+                              MeterRegistry meterRegistry) {
+        this.messageMapper = messageMapper;
+        this.sessionMapper = sessionMapper;
+        this.historyCache = historyCache;
+        this.aiClient = aiClient;
+        this.executor = executor;
+        this.aiConfig = aiConfig;
+        this.config = aiConfig.getContext();
+        this.meterRegistry = meterRegistry;
+        this.evicted = Counter.builder("ai.chat.context.evicted")
+                .description("超出Token预算未装入上下文的历史消息数").register(meterRegistry);
+    }
+
+    /**
+     * 向请求追加系统提示词（含摘要）、预算内的历史消息和当前消息
+     * 当前消息在调用前已入库，历史中与之相同的最新用户消息不会重复添加
+     *
+     * @param request AI请求
+     * @param session 会话
+     * @param systemPrompt 系统提示词
+     * @param currentMessage 当前用户消息
+     * @return 本地估算的提示词 Token 数
+     */
+    public int appendContext(AIRequestDTO request, ChatSession session, String systemPrompt, String currentMessage) {
+        String summary = Boolean.TRUE.equals(config.getSummaryEnabled()) && StrUtil.isNotBlank(session.getSummary())
+                ? session.getSummary() : null;
+        String system = summary != null ? systemPrompt + SUMMARY_HEADER + summary : systemPrompt;
+        request.addSystemMessage(system);
+
+        Long summarizedUpTo = summary != null ? session.getSummaryMessageId() : null;
+        int fetchLimit = config.getHistoryFetchLimit();
+        int budget = config.getHistoryTokenBudget();
+        List<ChatMessage> latest = historyCache.findLatest(session.getId(), fetchLimit);
+
+        // 从新到旧装入，直到预算用完或遇到已被摘要覆盖的消息
+        List<ChatMessage> packed = new ArrayList<>();
+        int historyTokens = 0;
+        int index = 0;
+        String newerUserContent = currentMessage;
+        for (; index < latest.size(); index++) {
+            ChatMessage msg = latest.get(index);
+            if (summarizedUpTo != null && msg.getId() <= summarizedUpTo) {
+                break;
+            }
+            // 生成中和失败的AI回复不计入上下文
+            if (!msg.isUserMessage() && !msg.isAssistantMessage() || !msg.isCompleted()) {
+                continue;
+            }
+            // 连续相同的用户消息（重复点击发送、客户端重试）只保留一条，使并发的相同请求上下文一致
+            if (msg.isUserMessage() && StrUtil.equals(msg.getContent(), newerUserContent)) {
+                continue;
+            }
+            int tokens = TokenEstimator.estimateMessage(msg.getContent());
+            if (historyTokens + tokens > budget) {
+                break;
+            }
+            packed.add(msg);
+            historyTokens += tokens;
+            newerUserContent = msg.isUserMessage() ? msg.getContent() : null;
+        }
+
+        for (int i = packed.size() - 1; i >= 0; i--) {
+            ChatMessage msg = packed.get(i);
+            if (msg.isUserMessage()) {
+                request.addUserMessage(msg.getContent());
+            } else {
+                request.addAssistantMessage(msg.getContent());
+            }
+        }
+        request.addUserMessage(currentMessage);
+
+        int overflowCount = overflowCount(latest, index, summarizedUpTo);
+        if (overflowCount > 0) {
+            evicted.increment(overflowCount);
+        }
+        if (!latest.isEmpty()) {
+            maybeRefreshSummary(session, latest, index, summarizedUpTo);
+        }
+
+        int promptTokens = TokenEstimator.estimateMessage(system) + historyTokens
+                + TokenEstimator.estimateMessage(currentMessage);
+        recordPromptTokens("estimated", promptTokens);
+        log.info("构建对话上下文，sessionId: {}, 历史: {}条/{} tokens, 溢出: {}条, 摘要: {}, 估算提示词: {} tokens",
+                session.getId(), packed.size(), historyTokens, overflowCount, summary != null, promptTokens);
+        return promptTokens;
+    }
+
+    /**
+     * 记录上游返回的实际提示词 Token 数，与本地估算值对比
+     */
+    public void recordUpstreamPromptTokens(AIResponseDTO.Usage usage) {
+        if (usage != null && usage.getPromptTokens() != null) {
+            recordPromptTokens("upstream", usage.getPromptTokens());
+        }
+    }
+
+    private void recordPromptTokens(String source, int tokens) {
+        DistributionSummary.builder("ai.chat.prompt.tokens")
+                .description("对话请求的提示词Token数")
+                .baseUnit("tokens")
+                .tag("source", source)
+                .register(meterRegistry)
+                .record(tokens);
+    }
+
+    /**
+     * 未装入上下文且未被摘要覆盖的历史消息数
+     */
+    private int overflowCount(List<ChatMessage> latest, int from, Long summarizedUpTo) {
+        int count = 0;
+        for (int i = from; i < latest.size(); i++) {
+            if (summarizedUpTo != null && latest.get(i).getId() <= summarizedUpTo) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 溢出消息累计达到阈值时提交后台摘要任务
+     * 读取窗口被占满时，窗口之外还有更早的未摘要消息，直接触发
+     */
+    private void maybeRefreshSummary(ChatSession session, List<ChatMessage> latest, int from, Long summarizedUpTo) {
+        if (!Boolean.TRUE.equals(config.getSummaryEnabled())) {
+            return;
+        }
+        int overflowTokens = 0;
+        for (int i = from; i < latest.size(); i++) {
+            ChatMessage msg = latest.get(i);
+            if (summarizedUpTo != null && msg.getId() <= summarizedUpTo) {
+                break;
+            }
+            overflowTokens += TokenEstimator.estimateMessage(msg.getContent());
+        }
+        ChatMessage oldestFetched = latest.get(latest.size() - 1);
+        boolean beyondWindow = latest.size() >= config.getHistoryFetchLimit()
+                && (summarizedUpTo == null || oldestFetched.getId() > summarizedUpTo);
+        if (overflowTokens < config.getSummaryTriggerTokens() && !beyondWindow) {
+            return;
+        }
+
+        Long sessionId = session.getId();
+        // 摘要只覆盖到最新一条溢出消息为止（ID 开区间上界）；没有窗口内溢出时覆盖窗口之外的消息
+        long beforeId = from < latest.size() ? latest.get(from).getId() + 1 : oldestFetched.getId();
+        if (!summarizing.add(sessionId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    refreshSummary(sessionId, beforeId);
+                } finally {
+                    summarizing.remove(sessionId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            summarizing.remove(sessionId);
+            summaryUpdated("rejected");
+            log.warn("后台任务队列已满，跳过本次摘要刷新，sessionId: {}", sessionId);
+        }
+    }
+
+    /**
+     * 在当前线程中把 beforeId 之前的消息全部合并进滚动摘要（使用后台优先级调用AI）
+     *
+     * @param sessionId 会话ID
+     * @param beforeId 摘要需覆盖的消息ID上界（开区间）
+     * @param deadlineNanos 截止时间（System.nanoTime()），超过后不再开始新的一轮，已合并的部分保留
+     * @return 摘要已覆盖 beforeId 之前的全部消息时返回 true；摘要未启用、调用失败、已到截止时间或该会话正在刷新摘要时返回 false
+     */
+    public boolean summarizeBefore(Long sessionId, long beforeId, long deadlineNanos) {
+        if (!Boolean.TRUE.equals(config.getSummaryEnabled()) || !summarizing.add(sessionId)) {
+            return false;
+        }
+        try {
+            for (int round = 0; round < MAX_SUMMARY_ROUNDS && System.nanoTime() - deadlineNanos < 0; round++) {
+                switch (refreshSummary(sessionId, beforeId)) {
+                    case UP_TO_DATE -> {
+                        return true;
+                    }
+                    case FAILED -> {
+                        return false;
+                    }
+                    default -> {
+                        // 输入被截断，继续合并剩余消息
+                    }
+                }
+            }
+            return false;
+        } finally {
+            summarizing.remove(sessionId);
+        }
+    }
+
+    /**
+     * 把已有摘要之后、beforeId 之前的消息合并进滚动摘要
+     * 单次输入按两倍历史预算截断，剩余部分留给下一次刷新
+     */
+    private RefreshResult refreshSummary(Long sessionId, long beforeId) {
+        try {
+            ChatSession session = sessionMapper.findById(sessionId);
+            if (session == null) {
+                return RefreshResult.FAILED;
+            }
+            List<ChatMessage> source = messageMapper.findBetweenIds(
+                    sessionId, session.getSummaryMessageId(), beforeId, SUMMARY_SOURCE_LIMIT);
+            if (source.isEmpty()) {
+                return RefreshResult.UP_TO_DATE;
+            }
+
+            int inputBudget = config.getHistoryTokenBudget() * 2;
+            int inputTokens = 0;
+            StringBuilder input = new StringBuilder();
+            if (StrUtil.isNotBlank(session.getSummary())) {
+                input.append("已有摘要：\n").append(session.getSummary()).append("\n\n");
+            }
+            input.append("新增对话：\n");
+            Long lastIncludedId = null;
+            for (ChatMessage msg : source) {
+                int tokens = TokenEstimator.estimateMessage(msg.getContent());
+                if (lastIncludedId != null && inputTokens + tokens > inputBudget) {
+                    break;
+                }
+                input.append(msg.isUserMessage() ? "用户：" : "助手：").append(msg.getContent()).append('\n');
+                inputTokens += tokens;
+                lastIncludedId = msg.getId();
+            }
+
+            AIRequestDTO request = AIRequestDTO.builder()
+                    .model(aiConfig.getModel())
+                    .sessionId(sessionId)
+                    .userId(session.getUserId())
+                    .temperature(0.3)
+                    .maxTokens(config.getSummaryMaxTokens())
+                    .workload(AIWorkload.BACKGROUND)
+                    .cacheable(false)
+                    .build();
+            request.addSystemMessage(SUMMARY_PROMPT);
+            request.addUserMessage(input.toString());
+
+            AIResponseDTO response = aiClient.chat(request);
+            if (!Boolean.TRUE.equals(response.getSuccess()) || StrUtil.isBlank(response.getContent())) {
+                summaryUpdated("failed");
+                log.warn("生成对话摘要失败，sessionId: {}, error: {}", sessionId, response.getErrorMessage());
+                return RefreshResult.FAILED;
+            }
+
+            int updated = sessionMapper.updateSummary(sessionId, response.getContent().trim(), lastIncludedId);
+            summaryUpdated(updated > 0 ? "success" : "stale");
+            log.info("对话摘要已刷新，sessionId: {}, 覆盖至消息: {}, 输入: {} tokens", sessionId, lastIncludedId, inputTokens);
+            return updated > 0 ? RefreshResult.UPDATED : RefreshResult.FAILED;
+        } catch (Exception e) {
+            summaryUpdated("failed");
+            log.warn("刷新对话摘要异常，sessionId: {}: {}", sessionId, e.getMessage());
+            return RefreshResult.FAILED;
+        }
+    }
+
+    private void summaryUpdated(String outcome) {
+        Counter.builder("ai.chat.summary.updates")
+                .description("对话滚动摘要刷新次数")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,272 @@
+package com.health.agent.module.chat.context;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.chat.entity.ChatMessage;
+import com.health.agent.module.chat.mapper.ChatMessageMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 会话近期消息窗口缓存
+ * 每个会话最近 window-size 条消息（从新到旧）缓存在 Redis 列表中，本地再缓存一份：
+ * - 消息落库后追加到窗口并裁剪长度；窗口不存在时不追加，由下次读取从数据库加载
+ * - 每个会话有一个代数计数器，每次追加或失效加一：本地窗口的代数与 Redis 一致时直接使用，
+ *   从数据库加载的窗口只有在加载期间代数未变化时才写入 Redis，避免并发追加的消息被旧窗口覆盖
+ * - Redis 不可用时直接查库（本地窗口无法校验是否过期，不单独使用）
+ * <p>
+ * 指标：chat.history.cache{result=local|redis|miss|bypass}
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class ChatHistoryCache {
+
+    /**
+     * KEYS: 列表, 代数; ARGV: 过期秒数, 窗口大小, 消息（从旧到新）
+     */
+    private static final RedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>(
+            "local gen = redis.call('INCR', KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[1]) " +
+            "if redis.call('EXISTS', KEYS[1]) == 1 then " +
+            "  for i = 3, #ARGV do redis.call('LPUSH', KEYS[1], ARGV[i]) end " +
+            "  redis.call('LTRIM', KEYS[1], 0, tonumber(ARGV[2]) - 1) " +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "end " +
+            "return gen", Long.class);
+
+    /**
+     * KEYS: 列表, 代数; ARGV: 期望代数, 过期秒数, 消息（从新到旧）
+     */
+    private static final RedisScript<Long> POPULATE_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then return 0 end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "if #ARGV >= 3 then " +
+            "  for i = 3, #ARGV do redis.call('RPUSH', KEYS[1], ARGV[i]) end " +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "  redis.call('EXPIRE', KEYS[2], ARGV[2]) " +
+            "end " +
+            "return 1", Long.class);
+
+    /**
+     * KEYS: 列表, 代数; ARGV: 窗口大小；返回窗口消息，最后一个元素为代数
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_SCRIPT = new DefaultRedisScript<>(
+            "local items = redis.call('LRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1) " +
+            "table.insert(items, redis.call('GET', KEYS[2]) or '0') " +
+            "return items", List.class);
+
+    /**
+     * KEYS: 列表, 代数; ARGV: 过期秒数
+     */
+    private static final RedisScript<Long> INVALIDATE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "local gen = redis.call('INCR', KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[1]) " +
+            "return gen", Long.class);
+
+    private final ChatMessageMapper messageMapper;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChatConfig.HistoryCache config;
+    private final MeterRegistry meterRegistry;
+    private final Cache<Long, Window> localCache;
+
+    public ChatHistoryCache(ChatMessageMapper messageMapper,
+                            StringRedisTemplate redisTemplate,
+                            ObjectMapper objectMapper,
+                            ChatConfig chatConfig,
+                            MeterRegistry meterRegistry) {
+        this.messageMapper = messageMapper;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.config = chatConfig.getHistoryCache();
+        this.meterRegistry = meterRegistry;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(config.getLocalMaxSessions())
+                .expireAfterWrite(Duration.ofSeconds(config.getTtlSeconds()))
+                .build();
+    }
+
+    /**
+     * 获取会话最新的消息，按时间倒序（与 {@link ChatMessageMapper#findLatestBySessionId} 一致）
+     *
+     * @param sessionId 会话ID
+     * @param limit 消息数量
+     * @return 消息列表
+     */
+    public List<ChatMessage> findLatest(Long sessionId, int limit) {
+        if (!Boolean.TRUE.equals(config.getEnabled()) || limit > config.getWindowSize()) {
+            record("bypass");
+            return messageMapper.findLatestBySessionId(sessionId, limit);
+        }
+
+        String listKey = listKey(sessionId);
+        String genKey = genKey(sessionId);
+        String generation;
+        try {
+            generation = currentGeneration(genKey);
+            Window local = localCache.getIfPresent(sessionId);
+            if (local != null && local.generation.equals(generation)) {
+                record("local");
+                return head(local.messages, limit);
+            }
+
+            List<?> items = redisTemplate.execute(READ_SCRIPT, List.of(listKey, genKey),
+                    String.valueOf(config.getWindowSize()));
+            if (items != null && items.size() > 1) {
+                generation = String.valueOf(items.get(items.size() - 1));
+                List<ChatMessage> messages = new ArrayList<>(items.size() - 1);
+                for (int i = 0; i < items.size() - 1; i++) {
+                    messages.add(objectMapper.readValue(String.valueOf(items.get(i)), ChatMessage.class));
+                }
+                localCache.put(sessionId, new Window(generation, Collections.unmodifiableList(messages)));
+                record("redis");
+                return head(messages, limit);
+            }
+            if (items != null && !items.isEmpty()) {
+                generation = String.valueOf(items.get(0));
+            }
+        } catch (Exception e) {
+            log.warn("读取会话消息缓存失败，直接查库，sessionId: {}: {}", sessionId, e.getMessage());
+            record("miss");
+            return messageMapper.findLatestBySessionId(sessionId, limit);
+        }
+
+        record("miss");
+        List<ChatMessage> messages = messageMapper.findLatestBySessionId(sessionId, config.getWindowSize());
+        populate(sessionId, generation, messages);
+        return head(messages, limit);
+    }
+
+    /**
+     * 追加已落库的消息（同一会话内按写入顺序）
+     */
+    public void append(List<ChatMessage> messages) {
+        if (!Boolean.TRUE.equals(config.getEnabled()) || messages.isEmpty()) {
+            return;
+        }
+        Map<Long, List<ChatMessage>> bySession = new LinkedHashMap<>();
+        for (ChatMessage message : messages) {
+            bySession.computeIfAbsent(message.getSessionId(), id -> new ArrayList<>()).add(message);
+        }
+        bySession.forEach(this::appendSession);
+    }
+
+    /**
+     * 使会话窗口失效（删除会话、清理历史消息后调用）
+     */
+    public void invalidate(Long sessionId) {
+        localCache.invalidate(sessionId);
+        try {
+            redisTemplate.execute(INVALIDATE_SCRIPT, List.of(listKey(sessionId), genKey(sessionId)),
+                    String.valueOf(config.getTtlSeconds()));
+        } catch (Exception e) {
+            log.warn("清除会话消息缓存失败，sessionId: {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private void appendSession(Long sessionId, List<ChatMessage> messages) {
+        try {
+            List<String> args = new ArrayList<>(messages.size() + 2);
+            args.add(String.valueOf(config.getTtlSeconds()));
+            args.add(String.valueOf(config.getWindowSize()));
+            for (ChatMessage message : messages) {
+                args.add(objectMapper.writeValueAsString(message));
+            }
+            Long generation = redisTemplate.execute(APPEND_SCRIPT, List.of(listKey(sessionId), genKey(sessionId)),
+                    args.toArray());
+            if (generation == null) {
+                localCache.invalidate(sessionId);
+                return;
+            }
+
+            // 本地窗口只有在这次追加之前是最新的才能直接更新，否则等下次读取时重新加载
+            String previous = String.valueOf(generation - 1);
+            localCache.asMap().computeIfPresent(sessionId, (id, window) -> {
+                if (!window.generation.equals(previous)) {
+                    return null;
+                }
+                List<ChatMessage> updated = new ArrayList<>(window.messages.size() + messages.size());
+                for (int i = messages.size() - 1; i >= 0; i--) {
+                    updated.add(messages.get(i));
+                }
+                updated.addAll(window.messages);
+                return new Window(String.valueOf(generation), Collections.unmodifiableList(
+                        head(updated, config.getWindowSize())));
+            });
+        } catch (Exception e) {
+            localCache.invalidate(sessionId);
+            log.warn("追加会话消息缓存失败，sessionId: {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * 把从数据库加载的窗口写入缓存，加载期间有新的追加或失效时放弃
+     */
+    private void populate(Long sessionId, String generation, List<ChatMessage> messages) {
+        try {
+            List<String> args = new ArrayList<>(messages.size() + 2);
+            args.add(generation);
+            args.add(String.valueOf(config.getTtlSeconds()));
+            for (ChatMessage message : messages) {
+                args.add(objectMapper.writeValueAsString(message));
+            }
+            Long populated = redisTemplate.execute(POPULATE_SCRIPT, List.of(listKey(sessionId), genKey(sessionId)),
+                    args.toArray());
+            if (populated != null && populated == 1) {
+                localCache.put(sessionId, new Window(generation, List.copyOf(messages)));
+            }
+        } catch (Exception e) {
+            log.warn("写入会话消息缓存失败，sessionId: {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private String currentGeneration(String genKey) {
+        String generation = redisTemplate.opsForValue().get(genKey);
+        return generation != null ? generation : "0";
+    }
+
+    private String listKey(Long sessionId) {
+        return config.getKeyPrefix() + sessionId;
+    }
+
+    private String genKey(Long sessionId) {
+        return config.getKeyPrefix() + sessionId + ":gen";
+    }
+
+    private void record(String result) {
+        Counter.builder("chat.history.cache")
+                .description("会话近期消息缓存查询次数")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static List<ChatMessage> head(List<ChatMessage> messages, int limit) {
+        return messages.size() <= limit ? messages : messages.subList(0, limit);
+    }
+
+    /**
+     * 本地缓存的会话窗口（从新到旧），generation 为加载或更新时的 Redis 代数
+     */
+    private record Window(String generation, List<ChatMessage> messages) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.health.agent.module.chat.context;
+
+/**
+ * 本地 Token 数估算器
+ * 不加载分词词表，按字符类别近似通义千问等 BPE 分词器的结果（宁多勿少）：
+ * - 汉字、假名、谚文及其他非 ASCII 字符（含全角标点）每字符计 1
+ * - 连续的 ASCII 字母数字按每 4 个字符计 1（不足 4 个按 1 计）
+ * - ASCII 标点每个计 1，空白不计
+ * 每条消息另加固定开销，对应角色标记和分隔符
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public final class TokenEstimator {
+
+    /**
+     * 每条消息的固定开销（角色、起止标记）
+     */
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private static final int ASCII_CHARS_PER_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算文本的 Token 数
+     */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int asciiRun = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                asciiRun++;
+                continue;
+            }
+            if (asciiRun > 0) {
+                tokens += (asciiRun + ASCII_CHARS_PER_TOKEN - 1) / ASCII_CHARS_PER_TOKEN;
+                asciiRun = 0;
+            }
+            if (Character.isWhitespace(c) || Character.isLowSurrogate(c)) {
+                // 代理对只在高位计一次
+                continue;
+            }
+            tokens++;
+        }
+        if (asciiRun > 0) {
+            tokens += (asciiRun + ASCII_CHARS_PER_TOKEN - 1) / ASCII_CHARS_PER_TOKEN;
+        }
+        return tokens;
+    }
+
+    /**
+     * 估算一条对话消息的 Token 数（含固定开销）
+     */
+    public static int estimateMessage(String content) {
+        return estimate(content) + MESSAGE_OVERHEAD;
+    }
+}
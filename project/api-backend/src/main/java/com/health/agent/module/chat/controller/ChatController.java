@@ -1,10 +1,12 @@
 package com.health.agent.module.chat.controller;
 
+import cn.hutool.core.util.NumberUtil;
 import com.health.agent.common.api.ApiResponse;
 import com.health.agent.common.util.JwtUtil;
 import com.health.agent.module.chat.dto.CreateSessionDTO;
 import com.health.agent.module.chat.dto.SendMessageDTO;
 import com.health.agent.module.chat.service.IChatService;
+import com.health.agent.module.chat.stream.ChatReplyStreamBuffer;
 import com.health.agent.module.chat.vo.ChatMessageVO;
 import com.health.agent.module.chat.vo.ChatSessionVO;
 import io.swagger.v3.oas.annotations.Operation;
@@ -12,10 +14,18 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 /**
  * 聊天控制器
@@ -35,6 +45,18 @@ public class ChatController {
     @Autowired
     private JwtUtil jwtUtil;
     
+    @Autowired
+    @Qualifier("aiStreamExecutor")
+    private Executor aiStreamExecutor;
+    
+    @Autowired
+    private ChatReplyStreamBuffer replyStreams;
+    
+    /**
+     * 流式回复超时时间（毫秒）
+     */
+    private static final long STREAM_TIMEOUT_MS = 180_000L;
+    
     /**
      * 创建会话
      */
@@ -115,6 +137,41 @@ public class ChatController {
         return ApiResponse.ok(message);
     }
     
+    /**
+     * 发送消息（流式）
+     * 以 SSE 推送AI回复：start 事件为生成中的消息（其ID用于续传），delta 事件为增量文本（事件ID为偏移量），
+     * done 事件为已保存的完整消息，error 事件为错误信息
+     */
+    @PostMapping(value = "/messages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "发送咨询消息（流式）", description = "发送饮食健康咨询消息，通过SSE实时推送AI回复")
+    public SseEmitter sendMessageStream(
+            @Validated @RequestBody SendMessageDTO dto) {
+        
+        log.info("发送流式消息，sessionId: {}, content: {}", dto.getSessionId(), dto.getContent());
+        
+        return streamToEmitter(listener -> chatService.sendMessageStream(dto.getSessionId(), dto.getContent(), listener));
+    }
+    
+    /**
+     * 续传流式回复
+     * 客户端断线重连后从最后收到的偏移量继续接收，事件格式与发送接口相同（不再推送 start 事件）；
+     * 偏移量优先取 after 参数，其次取 SSE 标准的 Last-Event-ID 请求头
+     */
+    @GetMapping(value = "/messages/{messageId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "续传AI回复（流式）", description = "断线重连后从指定偏移量继续接收AI回复")
+    public SseEmitter resumeMessageStream(
+            @Parameter(description = "AI回复的消息ID", required = true) 
+            @PathVariable Long messageId,
+            @Parameter(description = "最后收到的偏移量", example = "0") 
+            @RequestParam(required = false) Long after,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        
+        long afterOffset = after != null ? after : NumberUtil.parseLong(lastEventId, 0L);
+        log.info("续传流式消息，messageId: {}, after: {}", messageId, afterOffset);
+        
+        return streamToEmitter(listener -> chatService.resumeMessageStream(messageId, afterOffset, listener));
+    }
+    
     /**
      * 获取消息历史
      */
@@ -136,6 +193,103 @@ public class ChatController {
     
     // ================= 私有方法 =================
     
+    /**
+     * 在流式对话线程池中执行流式调用，把回复推送到 SSE
+     */
+    private SseEmitter streamToEmitter(Consumer<IChatService.StreamListener> call) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        try {
+            aiStreamExecutor.execute(() -> {
+                try {
+                    call.accept(new SseStreamListener(emitter));
+                } catch (CancellationException e) {
+                    log.debug("客户端已断开，停止推送");
+                    emitter.complete();
+                } catch (Exception e) {
+                    log.error("流式消息处理失败", e);
+                    sendEvent(emitter, "error", e.getMessage());
+                    emitter.complete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("流式对话线程池已满，拒绝请求");
+            sendEvent(emitter, "error", "服务繁忙，请稍后再试");
+            emitter.complete();
+        }
+        return emitter;
+    }
+    
+    /**
+     * 推送SSE事件（客户端断开时忽略）
+     */
+    private boolean sendEvent(SseEmitter emitter, String name, Object data) {
+        return sendEvent(emitter, SseEmitter.event().name(name).data(data));
+    }
+    
+    private boolean sendEvent(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("SSE推送失败（客户端可能已断开）: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 把流式回复推送为SSE事件
+     * 客户端断开时：可续传的回复继续生成（分片仍写入续传缓冲，客户端重连后续传），
+     * 否则中止生成（续传时则停止读取），避免继续消耗Token
+     */
+    private class SseStreamListener implements IChatService.StreamListener {
+        private final SseEmitter emitter;
+        private boolean resumable;
+        private boolean disconnected;
+        
+        private SseStreamListener(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+        
+        @Override
+        public void onStart(ChatMessageVO message) {
+            resumable = replyStreams.isEnabled() && message.getId() != null;
+            sendEvent(emitter, "start", message);
+        }
+        
+        @Override
+        public void onDelta(String delta) {
+            push(SseEmitter.event().name("delta").data(delta));
+        }
+        
+        @Override
+        public void onDelta(String delta, long offset) {
+            push(SseEmitter.event().id(String.valueOf(offset)).name("delta").data(delta));
+        }
+        
+        @Override
+        public void onComplete(ChatMessageVO message) {
+            sendEvent(emitter, "done", message);
+            emitter.complete();
+        }
+        
+        @Override
+        public void onError(Throwable error) {
+            sendEvent(emitter, "error", error.getMessage());
+            emitter.complete();
+        }
+        
+        private void push(SseEmitter.SseEventBuilder event) {
+            if (disconnected || sendEvent(emitter, event)) {
+                return;
+            }
+            if (!resumable) {
+                throw new CancellationException("客户端已断开");
+            }
+            disconnected = true;
+            log.info("客户端已断开，回复继续生成以便续传");
+        }
+    }
+    
     /**
      * 获取当前登录用户ID
      * TODO: 实际应从JWT Token或Spring Security Context中获取
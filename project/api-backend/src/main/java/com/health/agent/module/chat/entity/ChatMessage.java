@@ -1,5 +1,6 @@
 package com.health.agent.module.chat.entity;
 
+import com.health.agent.common.constant.CommonConstant;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -47,12 +48,24 @@ public class ChatMessage {
      */
     private Integer tokens;
     
+    /**
+     * 提示词Token数
+     * AI回复消息对应请求的提示词token数（上游未返回时为本地估算值）
+     */
+    private Integer promptTokens;
+    
     /**
      * 使用的AI模型
         * 例如：qwen-max
      */
     private String model;
     
+    /**
+     * 状态
+     * 0-生成中, 1-已完成, 2-生成失败
+     */
+    private Integer status;
+    
     /**
      * 创建时间
      */
@@ -71,5 +84,12 @@ public class ChatMessage {
     public boolean isAssistantMessage() {
         return "assistant".equals(this.role);
     }
+    
+    /**
+     * 便捷方法：判断是否已完成（生成中和失败的AI回复不计入对话上下文）
+     */
+    public boolean isCompleted() {
+        return this.status == null || this.status == CommonConstant.MESSAGE_STATUS_COMPLETED;
+    }
 }
 
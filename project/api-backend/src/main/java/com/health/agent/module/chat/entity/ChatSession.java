@@ -54,6 +54,32 @@ public class ChatSession {
      */
     private LocalDateTime lastMessageTime;
     
+    /**
+     * 消息数量（随消息写入增量维护）
+     */
+    private Integer messageCount;
+    
+    /**
+     * 最后一条消息预览
+     */
+    private String lastMessagePreview;
+    
+    /**
+     * 早期对话滚动摘要
+     * 超出上下文 Token 预算的历史消息压缩后的内容
+     */
+    private String summary;
+    
+    /**
+     * 摘要已覆盖的最后一条消息ID
+     */
+    private Long summaryMessageId;
+    
+    /**
+     * 已归档的消息数（已移到 chat_message_archive，计入 messageCount）
+     */
+    private Integer archivedMessageCount;
+    
     /**
      * 创建时间
      */
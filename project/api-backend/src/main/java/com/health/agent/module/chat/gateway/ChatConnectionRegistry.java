@@ -0,0 +1,241 @@
+package com.health.agent.module.chat.gateway;
+
+import cn.hutool.core.util.IdUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.agent.config.ChatConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WebSocket 连接注册表与跨节点事件转发
+ * - 按用户登记本节点上的连接；用户在本节点的第一个连接建立时订阅该用户的 Redis 频道，最后一个连接断开时退订，
+ *   节点只接收有本地连接的用户的事件。订阅/退订在连接表更新之后、按用户分段加锁执行，不在连接表的锁内调用 Redis，
+ *   每次都按连接表的当前状态调整，并发的连接与断开最终收敛到正确的订阅状态
+ * - 发布事件时先投递本节点的连接，再发布到 Redis；订阅方忽略本节点发出的事件，避免重复投递
+ * - Redis 不可用时退化为只投递本节点连接
+ * <p>
+ * 指标：chat.ws.connections、chat.ws.users、chat.ws.events{route=local|relay}
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chat.gateway", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ChatConnectionRegistry implements MessageListener {
+
+    private static final int SUBSCRIPTION_LOCK_STRIPES = 64;
+
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    private final ConcurrentHashMap<Long, Set<WebSocketSession>> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    /**
+     * 已订阅频道的用户，只在对应分段锁内修改
+     */
+    private final Set<Long> subscribedUsers = ConcurrentHashMap.newKeySet();
+    private final Object[] subscriptionLocks = new Object[SUBSCRIPTION_LOCK_STRIPES];
+
+    private final RedisMessageListenerContainer listenerContainer;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChatConfig.Gateway config;
+
+    private final Counter localEvents;
+    private final Counter relayedEvents;
+
+    public ChatConnectionRegistry(RedisMessageListenerContainer chatListenerContainer,
+                                  StringRedisTemplate redisTemplate,
+                                  ObjectMapper objectMapper,
+                                  ChatConfig chatConfig,
+                                  MeterRegistry meterRegistry) {
+        this.listenerContainer = chatListenerContainer;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.config = chatConfig.getGateway();
+        for (int i = 0; i < subscriptionLocks.length; i++) {
+            subscriptionLocks[i] = new Object();
+        }
+        this.localEvents = Counter.builder("chat.ws.events").tag("route", "local")
+                .description("投递到WebSocket连接的事件数").register(meterRegistry);
+        this.relayedEvents = Counter.builder("chat.ws.events").tag("route", "relay")
+                .description("投递到WebSocket连接的事件数").register(meterRegistry);
+        Gauge.builder("chat.ws.connections", connectionCount, AtomicInteger::get)
+                .description("本节点WebSocket连接数").register(meterRegistry);
+        Gauge.builder("chat.ws.users", connections, ConcurrentHashMap::size)
+                .description("本节点有WebSocket连接的用户数").register(meterRegistry);
+    }
+
+    /**
+     * 登记连接
+     *
+     * @return 用户在本节点的连接数已达上限时返回 false
+     */
+    public boolean register(Long userId, WebSocketSession session) {
+        boolean[] accepted = {true};
+        connections.compute(userId, (id, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+            }
+            if (sessions.size() >= config.getMaxConnectionsPerUser()) {
+                accepted[0] = false;
+            } else {
+                sessions.add(session);
+                connectionCount.incrementAndGet();
+            }
+            return sessions.isEmpty() ? null : sessions;
+        });
+        syncSubscription(userId);
+        return accepted[0];
+    }
+
+    /**
+     * 注销连接
+     */
+    public void unregister(Long userId, WebSocketSession session) {
+        connections.computeIfPresent(userId, (id, sessions) -> {
+            if (sessions.remove(session)) {
+                connectionCount.decrementAndGet();
+            }
+            return sessions.isEmpty() ? null : sessions;
+        });
+        syncSubscription(userId);
+    }
+
+    /**
+     * 向用户的所有连接（含其他节点）发布事件
+     *
+     * @param userId 用户ID
+     * @param event 事件
+     * @param exclude 不需要接收的本地连接（如发出该操作的连接），可为空
+     */
+    public void publish(Long userId, ChatGatewayEvent event, WebSocketSession exclude) {
+        if (event.getTimestamp() == null) {
+            event.setTimestamp(System.currentTimeMillis());
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(event);
+        } catch (Exception e) {
+            log.warn("序列化网关事件失败: {}", e.getMessage());
+            return;
+        }
+        deliver(userId, json, exclude, localEvents);
+        try {
+            redisTemplate.convertAndSend(channel(userId),
+                    objectMapper.writeValueAsString(new RelayMessage(nodeId, userId, json)));
+        } catch (Exception e) {
+            log.debug("网关事件发布到Redis失败，仅投递本节点连接: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 直接发送给单个连接（心跳、参数错误等只与该连接相关的响应）
+     */
+    public void send(WebSocketSession session, ChatGatewayEvent event) {
+        if (event.getTimestamp() == null) {
+            event.setTimestamp(System.currentTimeMillis());
+        }
+        try {
+            sendQuietly(session, new TextMessage(objectMapper.writeValueAsString(event)));
+        } catch (Exception e) {
+            log.warn("序列化网关事件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 接收其他节点转发的事件
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            RelayMessage relay = objectMapper.readValue(new String(message.getBody(), StandardCharsets.UTF_8),
+                    RelayMessage.class);
+            if (nodeId.equals(relay.origin())) {
+                return;
+            }
+            deliver(relay.userId(), relay.event(), null, relayedEvents);
+        } catch (Exception e) {
+            log.warn("处理转发的网关事件失败: {}", e.getMessage());
+        }
+    }
+
+    private void deliver(Long userId, String json, WebSocketSession exclude, Counter counter) {
+        Set<WebSocketSession> sessions = connections.get(userId);
+        if (sessions == null) {
+            return;
+        }
+        TextMessage text = new TextMessage(json);
+        for (WebSocketSession session : sessions) {
+            if (session != exclude) {
+                sendQuietly(session, text);
+                counter.increment();
+            }
+        }
+    }
+
+    private void sendQuietly(WebSocketSession session, TextMessage text) {
+        try {
+            if (session.isOpen()) {
+                session.sendMessage(text);
+            }
+        } catch (Exception e) {
+            log.debug("WebSocket推送失败（连接可能已断开），id: {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 按连接表的当前状态订阅或退订用户频道（在连接表的锁外调用）
+     */
+    private void syncSubscription(Long userId) {
+        synchronized (subscriptionLocks[Math.floorMod(userId.hashCode(), subscriptionLocks.length)]) {
+            boolean connected = connections.containsKey(userId);
+            if (connected == subscribedUsers.contains(userId)) {
+                return;
+            }
+            ChannelTopic topic = new ChannelTopic(channel(userId));
+            if (connected) {
+                try {
+                    listenerContainer.addMessageListener(this, topic);
+                    subscribedUsers.add(userId);
+                } catch (Exception e) {
+                    log.warn("订阅用户网关频道失败，仅接收本节点事件，userId: {}: {}", userId, e.getMessage());
+                }
+            } else {
+                subscribedUsers.remove(userId);
+                try {
+                    listenerContainer.removeMessageListener(this, topic);
+                } catch (Exception e) {
+                    log.warn("退订用户网关频道失败，userId: {}: {}", userId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private String channel(Long userId) {
+        return config.getChannelPrefix() + userId;
+    }
+
+    /**
+     * 节点间转发的事件，event 为已序列化的客户端事件
+     */
+    record RelayMessage(String origin, Long userId, String event) {
+    }
+}
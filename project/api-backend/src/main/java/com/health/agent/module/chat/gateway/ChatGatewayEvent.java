@@ -0,0 +1,83 @@
+package com.health.agent.module.chat.gateway;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.health.agent.module.chat.vo.ChatMessageVO;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * WebSocket 聊天网关推送给客户端的事件
+ * type 取值：
+ * - message 用户在某个设备上发送的消息（同步到其他设备）
+ * - start   AI回复开始生成，message 为生成中的消息（其ID可用于断线后续传）
+ * - delta   AI回复增量文本，offset 为偏移量
+ * - done    AI回复完成，message 为已保存的完整消息
+ * - error   错误信息
+ * - status  会话状态：generating-AI生成中, idle-空闲
+ * - typing  用户在其他设备上正在输入
+ * - pong    心跳响应
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatGatewayEvent {
+
+    public static final String TYPE_MESSAGE = "message";
+    public static final String TYPE_START = "start";
+    public static final String TYPE_DELTA = "delta";
+    public static final String TYPE_DONE = "done";
+    public static final String TYPE_ERROR = "error";
+    public static final String TYPE_STATUS = "status";
+    public static final String TYPE_TYPING = "typing";
+    public static final String TYPE_PONG = "pong";
+
+    public static final String STATUS_GENERATING = "generating";
+    public static final String STATUS_IDLE = "idle";
+
+    /**
+     * 事件类型
+     */
+    private String type;
+
+    /**
+     * 聊天会话ID
+     */
+    private Long sessionId;
+
+    /**
+     * 客户端为本次发送生成的ID，用于关联增量与发送请求
+     */
+    private String clientMsgId;
+
+    /**
+     * 文本内容（用户消息、增量文本或错误信息）
+     */
+    private String content;
+
+    /**
+     * 增量文本的偏移量，断线后按最后收到的偏移量续传
+     */
+    private Long offset;
+
+    /**
+     * AI消息（start 事件为生成中的消息，done 事件为已保存的完整消息）
+     */
+    private ChatMessageVO message;
+
+    /**
+     * 会话状态
+     */
+    private String status;
+
+    /**
+     * 事件时间戳（毫秒）
+     */
+    private Long timestamp;
+}
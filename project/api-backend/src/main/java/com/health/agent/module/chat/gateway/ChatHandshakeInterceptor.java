@@ -0,0 +1,62 @@
+package com.health.agent.module.chat.gateway;
+
+import cn.hutool.core.util.StrUtil;
+import com.health.agent.common.util.JwtUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * WebSocket 握手鉴权
+ * 浏览器无法为 WebSocket 握手设置请求头，Token 优先从查询参数 token 读取，其次读取 Authorization: Bearer 请求头；
+ * 校验通过后把用户ID放入连接属性，校验失败返回 401
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chat.gateway", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ChatHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String ATTR_USER_ID = "userId";
+
+    private final JwtUtil jwtUtil;
+
+    public ChatHandshakeInterceptor(JwtUtil jwtUtil) {
+        this.jwtUtil = jwtUtil;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String token = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("token");
+        if (StrUtil.isBlank(token)) {
+            String authorization = request.getHeaders().getFirst("Authorization");
+            if (authorization != null && authorization.toLowerCase().startsWith("bearer ")) {
+                token = authorization.substring(7).trim();
+            }
+        }
+        Long userId = StrUtil.isNotBlank(token) && jwtUtil.validateToken(token) ? jwtUtil.getUserIdFromToken(token) : null;
+        if (userId == null) {
+            log.debug("WebSocket握手鉴权失败，remote: {}", request.getRemoteAddress());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+        attributes.put(ATTR_USER_ID, userId);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
@@ -0,0 +1,225 @@
+package com.health.agent.module.chat.gateway;
+
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.chat.service.IChatService;
+import com.health.agent.module.chat.vo.ChatMessageVO;
+import com.health.agent.module.chat.vo.ChatSessionVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * WebSocket 聊天网关
+ * 一个连接承载用户的所有会话，客户端消息为 JSON：
+ * - {"type":"send","sessionId":1,"content":"...","clientMsgId":"..."} 发送消息，AI回复以 delta/done 事件推送
+ * - {"type":"typing","sessionId":1} 正在输入，同步到用户的其他设备
+ * - {"type":"ping"} 心跳，返回 pong
+ * 发送产生的事件（用户消息、生成状态、增量、完成）推送到用户的所有连接，实现多设备同步；
+ * 发起方断开不会中止生成，回复照常保存并推送给其他设备，重连后可通过续传接口从最后收到的偏移量继续接收
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chat.gateway", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ChatWebSocketHandler extends TextWebSocketHandler {
+
+    private static final String ATTR_CONNECTION = "connection";
+
+    private final IChatService chatService;
+    private final ChatConnectionRegistry registry;
+    private final ObjectMapper objectMapper;
+    private final Executor aiStreamExecutor;
+    private final ChatConfig.Gateway config;
+
+    public ChatWebSocketHandler(IChatService chatService,
+                                ChatConnectionRegistry registry,
+                                ObjectMapper objectMapper,
+                                @Qualifier("aiStreamExecutor") Executor aiStreamExecutor,
+                                ChatConfig chatConfig) {
+        this.chatService = chatService;
+        this.registry = registry;
+        this.objectMapper = objectMapper;
+        this.aiStreamExecutor = aiStreamExecutor;
+        this.config = chatConfig.getGateway();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        // 推送来自多个线程（生成线程、Redis 订阅线程），发送串行化，慢客户端超出时间或缓冲上限时断开
+        WebSocketSession connection = new ConcurrentWebSocketSessionDecorator(session,
+                config.getSendTimeoutMillis(), config.getSendBufferBytes());
+        session.getAttributes().put(ATTR_CONNECTION, connection);
+        if (!registry.register(userIdOf(session), connection)) {
+            log.warn("用户WebSocket连接数已达上限，userId: {}", userIdOf(session));
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("too many connections"));
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        registry.unregister(userIdOf(session), connectionOf(session));
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.debug("WebSocket传输错误，id: {}: {}", session.getId(), exception.getMessage());
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        Long userId = userIdOf(session);
+        WebSocketSession connection = connectionOf(session);
+        JsonNode frame;
+        try {
+            frame = objectMapper.readTree(message.getPayload());
+        } catch (Exception e) {
+            registry.send(connection, error(null, null, "消息格式错误"));
+            return;
+        }
+
+        switch (frame.path("type").asText("")) {
+            case "send" -> handleSend(userId, connection, frame);
+            case "typing" -> registry.publish(userId, ChatGatewayEvent.builder()
+                    .type(ChatGatewayEvent.TYPE_TYPING)
+                    .sessionId(frame.path("sessionId").asLong())
+                    .build(), connection);
+            case "ping" -> registry.send(connection, ChatGatewayEvent.builder().type(ChatGatewayEvent.TYPE_PONG).build());
+            default -> registry.send(connection, error(null, null, "不支持的消息类型"));
+        }
+    }
+
+    private void handleSend(Long userId, WebSocketSession connection, JsonNode frame) {
+        Long sessionId = frame.path("sessionId").asLong(0);
+        String content = frame.path("content").asText("");
+        String clientMsgId = frame.hasNonNull("clientMsgId") ? frame.get("clientMsgId").asText() : null;
+        if (sessionId <= 0 || StrUtil.isBlank(content)) {
+            registry.send(connection, error(sessionId, clientMsgId, "会话ID和消息内容不能为空"));
+            return;
+        }
+        try {
+            ChatSessionVO chatSession = chatService.getSessionById(sessionId);
+            if (!userId.equals(chatSession.getUserId())) {
+                registry.send(connection, error(sessionId, clientMsgId, "无权访问该会话"));
+                return;
+            }
+        } catch (BusinessException e) {
+            registry.send(connection, error(sessionId, clientMsgId, e.getMessage()));
+            return;
+        } catch (RuntimeException e) {
+            log.error("WebSocket查询会话失败，sessionId: {}", sessionId, e);
+            registry.send(connection, error(sessionId, clientMsgId, "发送失败，请稍后再试"));
+            return;
+        }
+
+        // 用户消息同步到其他设备，生成状态推送到所有设备
+        registry.publish(userId, ChatGatewayEvent.builder()
+                .type(ChatGatewayEvent.TYPE_MESSAGE)
+                .sessionId(sessionId)
+                .clientMsgId(clientMsgId)
+                .content(content)
+                .build(), connection);
+        registry.publish(userId, status(sessionId, ChatGatewayEvent.STATUS_GENERATING), null);
+
+        try {
+            aiStreamExecutor.execute(() -> generate(userId, sessionId, content, clientMsgId));
+        } catch (RejectedExecutionException e) {
+            log.warn("流式对话线程池已满，拒绝WebSocket请求");
+            registry.publish(userId, error(sessionId, clientMsgId, "服务繁忙，请稍后再试"), null);
+            registry.publish(userId, status(sessionId, ChatGatewayEvent.STATUS_IDLE), null);
+        }
+    }
+
+    private void generate(Long userId, Long sessionId, String content, String clientMsgId) {
+        try {
+            chatService.sendMessageStream(sessionId, content, new IChatService.StreamListener() {
+                @Override
+                public void onStart(ChatMessageVO message) {
+                    registry.publish(userId, ChatGatewayEvent.builder()
+                            .type(ChatGatewayEvent.TYPE_START)
+                            .sessionId(sessionId)
+                            .clientMsgId(clientMsgId)
+                            .message(message)
+                            .build(), null);
+                }
+
+                @Override
+                public void onDelta(String delta) {
+                    publishDelta(delta, null);
+                }
+
+                @Override
+                public void onDelta(String delta, long offset) {
+                    publishDelta(delta, offset);
+                }
+
+                private void publishDelta(String delta, Long offset) {
+                    registry.publish(userId, ChatGatewayEvent.builder()
+                            .type(ChatGatewayEvent.TYPE_DELTA)
+                            .sessionId(sessionId)
+                            .clientMsgId(clientMsgId)
+                            .content(delta)
+                            .offset(offset)
+                            .build(), null);
+                }
+
+                @Override
+                public void onComplete(ChatMessageVO message) {
+                    registry.publish(userId, ChatGatewayEvent.builder()
+                            .type(ChatGatewayEvent.TYPE_DONE)
+                            .sessionId(sessionId)
+                            .clientMsgId(clientMsgId)
+                            .message(message)
+                            .build(), null);
+                    registry.publish(userId, status(sessionId, ChatGatewayEvent.STATUS_IDLE), null);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    registry.publish(userId, error(sessionId, clientMsgId, error.getMessage()), null);
+                    registry.publish(userId, status(sessionId, ChatGatewayEvent.STATUS_IDLE), null);
+                }
+            });
+        } catch (Exception e) {
+            log.error("WebSocket流式消息处理失败", e);
+            registry.publish(userId, error(sessionId, clientMsgId, e.getMessage()), null);
+            registry.publish(userId, status(sessionId, ChatGatewayEvent.STATUS_IDLE), null);
+        }
+    }
+
+    private static ChatGatewayEvent status(Long sessionId, String status) {
+        return ChatGatewayEvent.builder().type(ChatGatewayEvent.TYPE_STATUS).sessionId(sessionId).status(status).build();
+    }
+
+    private static ChatGatewayEvent error(Long sessionId, String clientMsgId, String message) {
+        return ChatGatewayEvent.builder()
+                .type(ChatGatewayEvent.TYPE_ERROR)
+                .sessionId(sessionId)
+                .clientMsgId(clientMsgId)
+                .content(message)
+                .build();
+    }
+
+    private static Long userIdOf(WebSocketSession session) {
+        return (Long) session.getAttributes().get(ChatHandshakeInterceptor.ATTR_USER_ID);
+    }
+
+    private static WebSocketSession connectionOf(WebSocketSession session) {
+        Object connection = session.getAttributes().get(ATTR_CONNECTION);
+        return connection instanceof WebSocketSession decorated ? decorated : session;
+    }
+}
@@ -4,6 +4,7 @@ import com.health.agent.module.chat.entity.ChatMessage;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -15,6 +16,14 @@ import java.util.List;
 @Mapper
 public interface ChatMessageMapper {
     
+    /**
+     * 根据ID查询消息
+     * 
+     * @param id 消息ID
+     * @return 消息
+     */
+    ChatMessage findById(@Param("id") Long id);
+    
     /**
      * 根据会话ID查询消息列表（分页）
      * 
@@ -43,6 +52,30 @@ public interface ChatMessageMapper {
      */
     int insert(ChatMessage message);
     
+    /**
+     * 批量插入消息（多行 INSERT），按顺序回填自增ID
+     * 
+     * @param messages 消息列表
+     * @return 影响行数
+     */
+    int insertBatch(List<ChatMessage> messages);
+    
+    /**
+     * 批量更新AI回复的内容、Token数、模型和状态
+     * 
+     * @param messages 已入库的消息（需有ID）
+     * @return 影响行数
+     */
+    int updateReplies(List<ChatMessage> messages);
+    
+    /**
+     * 把创建时间早于 before 仍在生成中的AI回复标记为失败（进程在生成途中退出的遗留占位）
+     * 
+     * @param before 截止时间
+     * @return 影响行数
+     */
+    int markStalePendingFailed(@Param("before") LocalDateTime before);
+    
     /**
      * 根据会话ID删除所有消息
      * 
@@ -60,5 +93,57 @@ public interface ChatMessageMapper {
      */
     List<ChatMessage> findLatestBySessionId(@Param("sessionId") Long sessionId, 
                                              @Param("limit") Integer limit);
+    
+    /**
+     * 获取ID开区间 (afterId, beforeId) 内的消息，按时间正序（用于生成摘要）
+     * 
+     * @param sessionId 会话ID
+     * @param afterId 起始消息ID（不含），为空表示从头开始
+     * @param beforeId 结束消息ID（不含）
+     * @param limit 消息数量
+     * @return 消息列表
+     */
+    List<ChatMessage> findBetweenIds(@Param("sessionId") Long sessionId,
+                                     @Param("afterId") Long afterId,
+                                     @Param("beforeId") Long beforeId,
+                                     @Param("limit") Integer limit);
+    
+    /**
+     * 根据会话ID查询已归档的消息（分页，按时间正序，排在 chat_message 中的消息之前）
+     * 
+     * @param sessionId 会话ID
+     * @param offset 偏移量
+     * @param limit 每页数量
+     * @return 消息列表
+     */
+    List<ChatMessage> findArchivedBySessionId(@Param("sessionId") Long sessionId,
+                                              @Param("offset") Integer offset,
+                                              @Param("limit") Integer limit);
+    
+    /**
+     * 把会话中ID不大于 maxId 的消息复制到归档表
+     * 
+     * @param sessionId 会话ID
+     * @param maxId 归档的最后一条消息ID
+     * @return 复制的行数
+     */
+    int archiveUpTo(@Param("sessionId") Long sessionId, @Param("maxId") Long maxId);
+    
+    /**
+     * 删除会话中ID不大于 maxId 的消息（与 {@link #archiveUpTo} 在同一事务中执行）
+     * 
+     * @param sessionId 会话ID
+     * @param maxId 删除的最后一条消息ID
+     * @return 影响行数
+     */
+    int deleteUpTo(@Param("sessionId") Long sessionId, @Param("maxId") Long maxId);
+    
+    /**
+     * 根据会话ID删除所有已归档的消息
+     * 
+     * @param sessionId 会话ID
+     * @return 影响行数
+     */
+    int deleteArchivedBySessionId(@Param("sessionId") Long sessionId);
 }
 
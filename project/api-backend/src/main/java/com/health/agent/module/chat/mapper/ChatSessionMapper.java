@@ -1,9 +1,11 @@
 package com.health.agent.module.chat.mapper;
 
 import com.health.agent.module.chat.entity.ChatSession;
+import com.health.agent.module.chat.persist.ChatSessionDelta;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -59,6 +61,27 @@ public interface ChatSessionMapper {
      */
     int update(ChatSession session);
     
+    /**
+     * 批量累加会话统计：消息数量、最后消息时间（只向后推进）、最后一条消息预览
+     * 
+     * @param deltas 各会话的增量
+     * @return 影响行数
+     */
+    int updateMessageStats(@Param("deltas") List<ChatSessionDelta> deltas);
+    
+    /**
+     * 查询ID大于 afterId 的会话ID（含已删除，按ID正序，用于分批回填）
+     */
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, @Param("limit") Integer limit);
+    
+    /**
+     * 按 chat_message 和已归档数重新统计会话的消息数量和最后一条消息预览
+     * 
+     * @param ids 会话ID列表
+     * @return 影响行数
+     */
+    int recountMessageStats(@Param("ids") List<Long> ids);
+    
     /**
      * 删除会话（软删除）
      * 
@@ -66,5 +89,29 @@ public interface ChatSessionMapper {
      * @return 影响行数
      */
     int deleteById(@Param("id") Long id);
+    
+    /**
+     * 更新滚动摘要（仅当新摘要覆盖的消息更靠后时生效）
+     */
+    int updateSummary(@Param("id") Long id,
+                      @Param("summary") String summary,
+                      @Param("summaryMessageId") Long summaryMessageId);
+    
+    /**
+     * 查询待压缩的会话ID：最后消息时间早于 idleBefore，且 chat_message 中的消息数不少于 minMessages
+     * 
+     * @param idleBefore 空闲截止时间
+     * @param minMessages 最少未归档消息数
+     * @param limit 数量
+     * @return 会话ID列表（按最后消息时间正序）
+     */
+    List<Long> findCompactionCandidates(@Param("idleBefore") LocalDateTime idleBefore,
+                                        @Param("minMessages") Integer minMessages,
+                                        @Param("limit") Integer limit);
+    
+    /**
+     * 累加已归档的消息数
+     */
+    int addArchivedCount(@Param("id") Long id, @Param("count") Integer count);
 }
 
@@ -0,0 +1,179 @@
+package com.health.agent.module.chat.persist;
+
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.chat.context.ChatContextManager;
+import com.health.agent.module.chat.context.ChatHistoryCache;
+import com.health.agent.module.chat.entity.ChatMessage;
+import com.health.agent.module.chat.entity.ChatSession;
+import com.health.agent.module.chat.mapper.ChatMessageMapper;
+import com.health.agent.module.chat.mapper.ChatSessionMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 长会话压缩归档
+ * 定时处理空闲超过 chat.compaction.idle-minutes、未归档对话超过 min-turns 轮的会话：
+ * - 先通过 {@link ChatContextManager#summarizeBefore} 以后台优先级把除最近 keep-recent-messages 条之外的消息合并进会话摘要
+ * - 再在一个事务内把摘要已覆盖的消息复制到 chat_message_archive 并从 chat_message 删除，累加会话的已归档数
+ * - 对话上下文本来就由摘要代替这些消息，归档后提示词不变，chat_message 只保留各会话最近的消息
+ * - 摘要失败的会话跳过，下次执行重试；消息数（message_count）包含已归档的消息
+ * - 定时触发后整批在 aiBackgroundExecutor 中执行，不占用定时任务线程；同一时间只执行一批，
+ *   单批耗时超过 max-run-millis 后不再开始新的会话，剩余会话留到下次
+ * <p>
+ * 指标：chat.compaction.sessions{outcome=compacted|skipped|failed}、chat.compaction.archived
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class ChatSessionCompactor {
+
+    private final ChatSessionMapper sessionMapper;
+    private final ChatMessageMapper messageMapper;
+    private final ChatContextManager contextManager;
+    private final ChatHistoryCache historyCache;
+    private final ChatWriteBehindBuffer writeBuffer;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatConfig.Compaction config;
+    private final Executor executor;
+    private final MeterRegistry meterRegistry;
+    private final Counter archived;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public ChatSessionCompactor(ChatSessionMapper sessionMapper,
+                                ChatMessageMapper messageMapper,
+                                ChatContextManager contextManager,
+                                ChatHistoryCache historyCache,
+                                ChatWriteBehindBuffer writeBuffer,
+                                TransactionTemplate transactionTemplate,
+                                ChatConfig chatConfig,
+                                @Qualifier("aiBackgroundExecutor") Executor executor,
+                                MeterRegistry meterRegistry) {
+        this.sessionMapper = sessionMapper;
+        this.messageMapper = messageMapper;
+        this.contextManager = contextManager;
+        this.historyCache = historyCache;
+        this.writeBuffer = writeBuffer;
+        this.transactionTemplate = transactionTemplate;
+        this.config = chatConfig.getCompaction();
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        this.archived = Counter.builder("chat.compaction.archived")
+                .description("压缩时移到归档表的消息数").register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${chat.compaction.interval-millis:600000}",
+            fixedDelayString = "${chat.compaction.interval-millis:600000}")
+    public void compact() {
+        if (!Boolean.TRUE.equals(config.getEnabled()) || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    compactBatch();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            log.warn("后台任务队列已满，跳过本次会话压缩");
+        }
+    }
+
+    /**
+     * 压缩一批候选会话（在后台线程池中执行）
+     */
+    private void compactBatch() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getMaxRunMillis());
+        List<Long> sessionIds;
+        try {
+            LocalDateTime idleBefore = LocalDateTime.now().minusMinutes(config.getIdleMinutes());
+            sessionIds = sessionMapper.findCompactionCandidates(
+                    idleBefore, config.getMinTurns() * 2, config.getBatchSize());
+        } catch (Exception e) {
+            log.warn("查询待压缩会话失败: {}", e.getMessage());
+            return;
+        }
+        if (sessionIds.isEmpty()) {
+            return;
+        }
+
+        int compacted = 0;
+        int processed = 0;
+        for (Long sessionId : sessionIds) {
+            if (System.nanoTime() - deadline >= 0) {
+                log.info("长会话压缩已达单次时间上限，剩余 {} 个会话留到下次", sessionIds.size() - processed);
+                break;
+            }
+            processed++;
+            String outcome;
+            try {
+                outcome = compactSession(sessionId, deadline);
+            } catch (Exception e) {
+                outcome = "failed";
+                log.warn("压缩会话失败，sessionId: {}: {}", sessionId, e.getMessage());
+            }
+            if ("compacted".equals(outcome)) {
+                compacted++;
+            }
+            Counter.builder("chat.compaction.sessions").tag("outcome", outcome)
+                    .description("长会话压缩次数").register(meterRegistry)
+                    .increment();
+        }
+        log.info("长会话压缩完成，候选: {}, 已处理: {}, 已压缩: {}", sessionIds.size(), processed, compacted);
+    }
+
+    /**
+     * 压缩单个会话
+     *
+     * @return compacted、skipped（没有可归档的消息）或 failed（摘要失败或到达时间上限）
+     */
+    private String compactSession(Long sessionId, long deadline) {
+        writeBuffer.flushSession(sessionId);
+        List<ChatMessage> recent = messageMapper.findLatestBySessionId(sessionId, config.getKeepRecentMessages());
+        if (recent.size() < config.getKeepRecentMessages()) {
+            return "skipped";
+        }
+        // 保留的最早一条消息，之前的消息全部归档
+        long keepFromId = recent.get(recent.size() - 1).getId();
+        if (!contextManager.summarizeBefore(sessionId, keepFromId, deadline)) {
+            return "failed";
+        }
+
+        ChatSession session = sessionMapper.findById(sessionId);
+        if (session == null || session.getSummaryMessageId() == null) {
+            return "skipped";
+        }
+        long maxId = Math.min(session.getSummaryMessageId(), keepFromId - 1);
+        Integer moved = transactionTemplate.execute(status -> {
+            messageMapper.archiveUpTo(sessionId, maxId);
+            int deleted = messageMapper.deleteUpTo(sessionId, maxId);
+            if (deleted > 0) {
+                sessionMapper.addArchivedCount(sessionId, deleted);
+            }
+            return deleted;
+        });
+        if (moved == null || moved == 0) {
+            return "skipped";
+        }
+        historyCache.invalidate(sessionId);
+        archived.increment(moved);
+        log.info("会话已压缩，sessionId: {}, 归档消息: {} 条（至消息 {}）", sessionId, moved, maxId);
+        return "compacted";
+    }
+}
@@ -0,0 +1,71 @@
+package com.health.agent.module.chat.persist;
+
+import cn.hutool.core.util.StrUtil;
+import com.health.agent.module.chat.entity.ChatMessage;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 一次批量写入对单个会话统计字段的增量
+ * 对应 chat_session 的 message_count、last_message_time、last_message_preview
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Data
+public class ChatSessionDelta {
+
+    /**
+     * 消息预览最大长度
+     */
+    public static final int PREVIEW_LENGTH = 100;
+
+    /**
+     * 会话ID
+     */
+    private Long sessionId;
+
+    /**
+     * 新增消息数
+     */
+    private int addedCount;
+
+    /**
+     * 最后消息时间（只由AI回复更新，为空表示不更新）
+     */
+    private LocalDateTime lastMessageTime;
+
+    /**
+     * 最后一条消息预览
+     */
+    private String lastMessagePreview;
+
+    public ChatSessionDelta(Long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * 累加一条消息
+     *
+     * @param message 消息（按写入顺序累加）
+     * @param touchSession 是否更新最后消息时间
+     */
+    public void add(ChatMessage message, boolean touchSession) {
+        addedCount++;
+        touch(message, touchSession);
+    }
+
+    /**
+     * 按消息更新预览和最后消息时间，不计入消息数（AI回复生成结束时使用）
+     * 生成中和失败的AI回复不更新预览
+     */
+    public void touch(ChatMessage message, boolean touchSession) {
+        if (message.isCompleted() && StrUtil.isNotEmpty(message.getContent())) {
+            lastMessagePreview = StrUtil.sub(message.getContent(), 0, PREVIEW_LENGTH);
+        }
+        if (touchSession && (lastMessageTime == null || message.getCreatedAt().isAfter(lastMessageTime))) {
+            lastMessageTime = message.getCreatedAt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.health.agent.module.chat.persist;
+
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.chat.mapper.ChatSessionMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 会话消息统计回填
+ * chat_session 新增 message_count、last_message_preview 后，按 chat_message 重新统计已有会话；
+ * 按会话ID分批执行，每批一条 UPDATE，可重复执行（结果以 chat_message 为准，也可用于修正偏差）
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class ChatSessionStatsBackfill {
+
+    private final ChatSessionMapper sessionMapper;
+    private final ChatWriteBehindBuffer writeBuffer;
+    private final ChatConfig.StatsBackfill config;
+
+    public ChatSessionStatsBackfill(ChatSessionMapper sessionMapper,
+                                    ChatWriteBehindBuffer writeBuffer,
+                                    ChatConfig chatConfig) {
+        this.sessionMapper = sessionMapper;
+        this.writeBuffer = writeBuffer;
+        this.config = chatConfig.getStatsBackfill();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!Boolean.TRUE.equals(config.getEnabled())) {
+            return;
+        }
+        Thread thread = new Thread(this::backfill, "chat-stats-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 分批回填所有会话
+     *
+     * @return 处理的会话数
+     */
+    public int backfill() {
+        long start = System.currentTimeMillis();
+        int total = 0;
+        long afterId = 0;
+        try {
+            while (true) {
+                List<Long> ids = sessionMapper.findIdsAfter(afterId, config.getBatchSize());
+                if (ids.isEmpty()) {
+                    break;
+                }
+                // 先落库缓冲中的消息，缩小与增量更新交错的窗口
+                writeBuffer.flush();
+                sessionMapper.recountMessageStats(ids);
+                total += ids.size();
+                afterId = ids.get(ids.size() - 1);
+            }
+            log.info("会话消息统计回填完成，会话: {} 个，耗时: {}ms", total, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("会话消息统计回填失败，已处理: {} 个，最后会话ID: {}", total, afterId, e);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,368 @@
+package com.health.agent.module.chat.persist;
+
+import com.health.agent.common.constant.CommonConstant;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.chat.context.ChatHistoryCache;
+import com.health.agent.module.chat.entity.ChatMessage;
+import com.health.agent.module.chat.mapper.ChatMessageMapper;
+import com.health.agent.module.chat.mapper.ChatSessionMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 聊天消息写入缓冲（write-behind）
+ * 消息插入和会话最后消息时间更新先进入内存缓冲，由单独的刷新线程合并落库：
+ * - 每次刷新在一个事务内执行：消息按 batch-size 拆分为多行 INSERT，各会话的消息数、最后消息时间和预览合并为一条 CASE UPDATE
+ * - 缓冲达到 batch-size 时立即刷新，否则每 max-loss-window-millis 刷新一次，进程崩溃最多丢失该窗口内的写入
+ * - 丢失窗口为 0 时写入方等待所在批次提交后返回（组提交：并发的写入仍合并为一批）
+ * - 读取会话消息前调用 {@link #flushSession(Long)}，保证读到自己的写入（包括其他线程已取出、正在提交的写入）；
+ *   应用关闭时刷新全部缓冲
+ * - 刷新失败按次数重试，仍失败时丢弃该批并记录指标
+ * - AI回复先以生成中的占位消息写入，生成结束后由 {@link #finishReply} 写入内容和状态；
+ *   占位消息尚未落库时直接以最终内容插入，否则合并为一条 CASE UPDATE
+ * - 提交后把已完成的消息追加到 {@link ChatHistoryCache}
+ * <p>
+ * 指标：chat.write_behind.pending、chat.write_behind.flush、chat.write_behind.batch.size、chat.write_behind.dropped
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class ChatWriteBehindBuffer {
+
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+
+    private final ChatMessageMapper messageMapper;
+    private final ChatSessionMapper sessionMapper;
+    private final ChatHistoryCache historyCache;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatConfig.WriteBehind config;
+    private final ScheduledExecutorService flusher;
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSize;
+    private final Counter dropped;
+
+    /**
+     * 串行化刷新，保证消息按写入顺序获得自增ID
+     */
+    private final Object flushLock = new Object();
+
+    private List<PendingMessage> pendingMessages = new ArrayList<>();
+    private List<PendingMessage> pendingReplies = new ArrayList<>();
+    private Map<Long, ChatSessionDelta> pendingDeltas = new LinkedHashMap<>();
+
+    /**
+     * 正在刷新（已从缓冲取出、尚未提交）的会话增量
+     */
+    private Map<Long, ChatSessionDelta> flushingDeltas = Map.of();
+
+    public ChatWriteBehindBuffer(ChatMessageMapper messageMapper,
+                                 ChatSessionMapper sessionMapper,
+                                 ChatHistoryCache historyCache,
+                                 TransactionTemplate transactionTemplate,
+                                 ChatConfig chatConfig,
+                                 MeterRegistry meterRegistry) {
+        this.messageMapper = messageMapper;
+        this.sessionMapper = sessionMapper;
+        this.historyCache = historyCache;
+        this.transactionTemplate = transactionTemplate;
+        this.config = chatConfig.getWriteBehind();
+        this.flushTimer = Timer.builder("chat.write_behind.flush")
+                .description("聊天消息缓冲刷新耗时").register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("chat.write_behind.batch.size")
+                .description("每次刷新写入的消息数").register(meterRegistry);
+        this.dropped = Counter.builder("chat.write_behind.dropped")
+                .description("重试后仍写入失败而丢弃的消息数").register(meterRegistry);
+        Gauge.builder("chat.write_behind.pending", this, ChatWriteBehindBuffer::pendingCount)
+                .description("缓冲中等待落库的消息数").register(meterRegistry);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long window = config.getMaxLossWindowMillis();
+        if (isEnabled() && window > 0) {
+            flusher.scheduleWithFixedDelay(this::flushQuietly, window, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 保存消息；touchSession 为 true 时同时把会话最后消息时间更新为消息的创建时间
+     * 丢失窗口为 0 或未启用缓冲时，返回前消息已落库并回填ID；否则返回时ID可能为空
+     */
+    public void save(ChatMessage message, boolean touchSession) {
+        if (message.getCreatedAt() == null) {
+            message.setCreatedAt(LocalDateTime.now());
+        }
+        if (!isEnabled()) {
+            ChatSessionDelta delta = new ChatSessionDelta(message.getSessionId());
+            delta.add(message, touchSession);
+            transactionTemplate.executeWithoutResult(status -> {
+                messageMapper.insert(message);
+                sessionMapper.updateMessageStats(List.of(delta));
+            });
+            historyCache.append(List.of(message));
+            return;
+        }
+
+        PendingMessage pending = new PendingMessage(message);
+        int size;
+        synchronized (this) {
+            pendingMessages.add(pending);
+            pendingDeltas.computeIfAbsent(message.getSessionId(), ChatSessionDelta::new).add(message, touchSession);
+            size = pendingMessages.size();
+        }
+
+        if (size >= config.getMaxPending()) {
+            // 刷新跟不上写入，由写入方同步刷新形成背压
+            flush();
+        } else if (size >= config.getBatchSize() || config.getMaxLossWindowMillis() <= 0) {
+            flusher.execute(this::flushQuietly);
+        }
+        if (config.getMaxLossWindowMillis() <= 0) {
+            await(pending.done);
+        }
+    }
+
+    /**
+     * 写入AI回复的生成结果（内容、Token数、模型、状态）
+     * 已完成的回复同时更新会话最后消息时间和预览；失败的回复保留已生成的部分内容
+     *
+     * @param placeholder 已通过 {@link #save} 写入的生成中占位消息
+     * @param result 生成结果
+     */
+    public void finishReply(ChatMessage placeholder, ChatMessage result) {
+        boolean completed = result.isCompleted();
+        if (!isEnabled()) {
+            applyResult(placeholder, result);
+            ChatSessionDelta delta = new ChatSessionDelta(placeholder.getSessionId());
+            delta.touch(placeholder, completed);
+            transactionTemplate.executeWithoutResult(status -> {
+                messageMapper.updateReplies(List.of(placeholder));
+                sessionMapper.updateMessageStats(List.of(delta));
+            });
+            if (completed) {
+                historyCache.append(List.of(placeholder));
+            }
+            return;
+        }
+
+        PendingMessage pending = null;
+        synchronized (this) {
+            applyResult(placeholder, result);
+            pendingDeltas.computeIfAbsent(placeholder.getSessionId(), ChatSessionDelta::new).touch(placeholder, completed);
+            for (PendingMessage queued : pendingMessages) {
+                if (queued.message == placeholder) {
+                    // 占位消息尚未落库，插入时直接写入最终内容
+                    pending = queued;
+                    break;
+                }
+            }
+            if (pending == null) {
+                pending = new PendingMessage(placeholder);
+                pendingReplies.add(pending);
+            }
+        }
+        if (config.getMaxLossWindowMillis() <= 0) {
+            flusher.execute(this::flushQuietly);
+            await(pending.done);
+        }
+    }
+
+    /**
+     * 会话有未落库的写入时立即刷新，返回时该会话此前的写入都已提交（或重试后失败）
+     * 会话的写入正由其他线程刷新时，等待那次刷新结束（读取会话消息、删除会话前调用）
+     */
+    public void flushSession(Long sessionId) {
+        if (!isEnabled()) {
+            return;
+        }
+        boolean hasPending;
+        synchronized (this) {
+            hasPending = pendingDeltas.containsKey(sessionId) || flushingDeltas.containsKey(sessionId);
+        }
+        if (hasPending) {
+            // flush 持有 flushLock，进行中的刷新结束后才开始，再写入剩余的缓冲
+            flush();
+        }
+    }
+
+    /**
+     * 刷新全部缓冲
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingMessage> messages;
+            List<PendingMessage> replies;
+            Map<Long, ChatSessionDelta> deltas;
+            synchronized (this) {
+                if (pendingMessages.isEmpty() && pendingReplies.isEmpty()) {
+                    return;
+                }
+                messages = pendingMessages;
+                replies = pendingReplies;
+                deltas = pendingDeltas;
+                flushingDeltas = deltas;
+                pendingMessages = new ArrayList<>();
+                pendingReplies = new ArrayList<>();
+                pendingDeltas = new LinkedHashMap<>();
+                // 在取出时确定是否进入近期消息缓存，之后才完成的占位消息由其回复更新追加，避免重复
+                messages.forEach(p -> p.cacheable = p.message.isCompleted());
+                replies.forEach(p -> p.cacheable = p.message.isCompleted());
+            }
+            try {
+                write(messages, replies, new ArrayList<>(deltas.values()));
+            } finally {
+                synchronized (this) {
+                    flushingDeltas = Map.of();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(config.getFlushTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        log.info("聊天消息缓冲已在关闭前刷新");
+    }
+
+    private void write(List<PendingMessage> messages, List<PendingMessage> replies, List<ChatSessionDelta> deltas) {
+        List<ChatMessage> rows = messages.stream().map(p -> p.message).toList();
+        List<ChatMessage> updates = new ArrayList<>(replies.size());
+        for (PendingMessage reply : replies) {
+            if (reply.message.getId() != null) {
+                updates.add(reply.message);
+            } else {
+                log.warn("AI回复的占位消息未能写入，忽略生成结果，sessionId: {}", reply.message.getSessionId());
+            }
+        }
+        List<ChatMessage> cacheable = new ArrayList<>();
+        messages.stream().filter(p -> p.cacheable).forEach(p -> cacheable.add(p.message));
+        replies.stream().filter(p -> p.cacheable && p.message.getId() != null).forEach(p -> cacheable.add(p.message));
+
+        RuntimeException failure = null;
+        for (int attempt = 0; attempt <= config.getMaxRetries(); attempt++) {
+            if (attempt > 0) {
+                sleepQuietly(RETRY_BACKOFF_MILLIS * attempt);
+            }
+            try {
+                long start = System.nanoTime();
+                transactionTemplate.executeWithoutResult(status -> {
+                    int chunk = Math.max(1, config.getBatchSize());
+                    for (int from = 0; from < rows.size(); from += chunk) {
+                        messageMapper.insertBatch(rows.subList(from, Math.min(rows.size(), from + chunk)));
+                    }
+                    if (!updates.isEmpty()) {
+                        messageMapper.updateReplies(updates);
+                    }
+                    sessionMapper.updateMessageStats(deltas);
+                });
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                batchSize.record(rows.size());
+                // 提交后才追加到近期消息缓存，缓存中的消息都已有ID
+                historyCache.append(cacheable);
+                messages.forEach(p -> p.done.complete(null));
+                replies.forEach(p -> p.done.complete(null));
+                return;
+            } catch (RuntimeException e) {
+                failure = e;
+                rows.forEach(row -> row.setId(null));
+                log.warn("聊天消息批量写入失败，第 {} 次，消息: {} 条: {}", attempt + 1, rows.size(), e.getMessage());
+            }
+        }
+
+        dropped.increment(rows.size() + updates.size());
+        log.error("聊天消息批量写入重试后仍失败，丢弃 {} 条消息、{} 条回复更新、{} 个会话统计更新",
+                rows.size(), updates.size(), deltas.size(), failure);
+        RuntimeException cause = failure;
+        messages.forEach(p -> p.done.completeExceptionally(cause));
+        replies.forEach(p -> p.done.completeExceptionally(cause));
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("聊天消息缓冲刷新异常", e);
+        }
+    }
+
+    private void await(CompletableFuture<Void> done) {
+        try {
+            done.get(config.getFlushTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new BusinessException("消息保存超时，请稍后重试");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("请求已取消");
+        } catch (ExecutionException e) {
+            throw new BusinessException("消息保存失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void applyResult(ChatMessage placeholder, ChatMessage result) {
+        placeholder.setContent(result.getContent());
+        placeholder.setTokens(result.getTokens());
+        placeholder.setPromptTokens(result.getPromptTokens());
+        placeholder.setModel(result.getModel());
+        placeholder.setStatus(result.getStatus() != null ? result.getStatus() : CommonConstant.MESSAGE_STATUS_COMPLETED);
+    }
+
+    private boolean isEnabled() {
+        return Boolean.TRUE.equals(config.getEnabled());
+    }
+
+    private synchronized int pendingCount() {
+        return pendingMessages.size();
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 缓冲中的消息，落库后完成 done
+     */
+    private static final class PendingMessage {
+        private final ChatMessage message;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private boolean cacheable;
+
+        private PendingMessage(ChatMessage message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.health.agent.module.chat.persist;
+
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.chat.mapper.ChatMessageMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 生成中AI回复清理
+ * 进程在生成途中退出时，占位消息的生成结果不会再写入；超过 chat.pending-reply.timeout-seconds 仍在生成中的回复标记为失败，
+ * 前端据此展示失败状态并允许重新发送，对话上下文也不再等待它
+ * <p>
+ * 指标：chat.reply.abandoned
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class PendingReplySweeper {
+
+    private final ChatMessageMapper messageMapper;
+    private final ChatConfig.PendingReply config;
+    private final Counter abandoned;
+
+    public PendingReplySweeper(ChatMessageMapper messageMapper, ChatConfig chatConfig, MeterRegistry meterRegistry) {
+        this.messageMapper = messageMapper;
+        this.config = chatConfig.getPendingReply();
+        this.abandoned = Counter.builder("chat.reply.abandoned")
+                .description("超时仍在生成中而标记为失败的AI回复数").register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${chat.pending-reply.sweep-interval-millis:60000}",
+            fixedDelayString = "${chat.pending-reply.sweep-interval-millis:60000}")
+    public void sweep() {
+        try {
+            int count = messageMapper.markStalePendingFailed(LocalDateTime.now().minusSeconds(config.getTimeoutSeconds()));
+            if (count > 0) {
+                abandoned.increment(count);
+                log.warn("{} 条AI回复超时仍在生成中，已标记为失败", count);
+            }
+        } catch (Exception e) {
+            log.warn("清理生成中的AI回复失败: {}", e.getMessage());
+        }
+    }
+}
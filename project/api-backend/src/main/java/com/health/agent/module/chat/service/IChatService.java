@@ -31,6 +31,26 @@ public interface IChatService {
      */
     ChatMessageVO sendMessage(Long sessionId, String content);
     
+    /**
+     * 发送消息并以流式方式获取AI回复
+     * 用户消息立即落库，AI回复在流结束后落库
+     * 
+     * @param sessionId 会话ID
+     * @param content 消息内容
+     * @param listener 流式回复监听器
+     */
+    void sendMessageStream(Long sessionId, String content, StreamListener listener);
+    
+    /**
+     * 续传流式AI回复（客户端断线重连后调用，可在任意节点执行）
+     * 从偏移量之后继续推送分片，直到回复结束；缓冲已过期时直接返回数据库中的回复
+     * 
+     * @param messageId AI回复的消息ID（流式回复开始时通过 onStart 返回）
+     * @param afterOffset 最后收到的分片偏移量，0 表示从头开始
+     * @param listener 流式回复监听器
+     */
+    void resumeMessageStream(Long messageId, long afterOffset, StreamListener listener);
+    
     /**
      * 获取用户会话列表（分页）
      * 
@@ -82,5 +102,49 @@ public interface IChatService {
      * @return 消息数量
      */
     Integer countSessionMessages(Long sessionId);
+    
+    /**
+     * 流式回复监听器
+     */
+    interface StreamListener {
+        /**
+         * AI回复开始生成（此时回复为生成中的占位消息，ID可用于续传）
+         * 
+         * @param message 生成中的AI消息
+         */
+        default void onStart(ChatMessageVO message) {
+        }
+        
+        /**
+         * 收到AI回复的增量文本
+         * 
+         * @param delta 文本片段
+         */
+        void onDelta(String delta);
+        
+        /**
+         * 收到AI回复的增量文本及其偏移量（从 1 开始递增，续传时传入最后收到的偏移量）
+         * 
+         * @param delta 文本片段
+         * @param offset 偏移量
+         */
+        default void onDelta(String delta, long offset) {
+            onDelta(delta);
+        }
+        
+        /**
+         * AI回复完成并已保存
+         * 
+         * @param message 已保存的AI消息
+         */
+        void onComplete(ChatMessageVO message);
+        
+        /**
+         * 发生错误
+         * 
+         * @param error 错误信息
+         */
+        void onError(Throwable error);
+    }
 }
 
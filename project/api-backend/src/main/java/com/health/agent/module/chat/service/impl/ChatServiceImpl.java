@@ -2,15 +2,21 @@ package com.health.agent.module.chat.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
+import com.health.agent.common.constant.CommonConstant;
 import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.ChatConfig;
 import com.health.agent.module.ai.client.AIClient;
 import com.health.agent.module.ai.dto.AIRequestDTO;
 import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.chat.context.ChatContextManager;
+import com.health.agent.module.chat.context.ChatHistoryCache;
 import com.health.agent.module.chat.entity.ChatMessage;
 import com.health.agent.module.chat.entity.ChatSession;
 import com.health.agent.module.chat.mapper.ChatMessageMapper;
 import com.health.agent.module.chat.mapper.ChatSessionMapper;
+import com.health.agent.module.chat.persist.ChatWriteBehindBuffer;
 import com.health.agent.module.chat.service.IChatService;
+import com.health.agent.module.chat.stream.ChatReplyStreamBuffer;
 import com.health.agent.module.chat.vo.ChatMessageVO;
 import com.health.agent.module.chat.vo.ChatSessionVO;
 import lombok.extern.slf4j.Slf4j;
@@ -18,9 +24,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -42,9 +51,32 @@ public class ChatServiceImpl implements IChatService {
     @Autowired
     private AIClient aiClient;
     
+    @Autowired
+    private ChatContextManager contextManager;
+    
+    @Autowired
+    private ChatWriteBehindBuffer writeBuffer;
+    
+    @Autowired
+    private ChatHistoryCache historyCache;
+    
+    @Autowired
+    private ChatReplyStreamBuffer replyStreams;
+    
+    @Autowired
+    private ChatConfig chatConfig;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
     @Value("${ai.model}")
     private String defaultModel;
     
+    /**
+     * 续传时等待生成中回复结束的轮询间隔（毫秒）
+     */
+    private static final long PENDING_POLL_INTERVAL_MILLIS = 1000;
+    
     /**
      * 系统Prompt（后续可以从配置或数据库读取）
      */
@@ -67,11 +99,6 @@ public class ChatServiceImpl implements IChatService {
         "- 尊重个体差异和饮食文化\n" +
         "- 强调均衡营养和适量原则";
     
-    /**
-     * AI对话上下文消息数量
-     */
-    private static final int CONTEXT_MESSAGE_COUNT = 10;
-    
     @Override
     @Transactional
     public ChatSessionVO createSession(Long userId, String title) {
@@ -103,7 +130,6 @@ public class ChatServiceImpl implements IChatService {
     }
     
     @Override
-    @Transactional
     public ChatMessageVO sendMessage(Long sessionId, String content) {
         log.info("发送消息，sessionId: {}, content: {}", sessionId, content);
         
@@ -113,17 +139,21 @@ public class ChatServiceImpl implements IChatService {
             throw new BusinessException("会话不存在");
         }
         
-        // 2. 保存用户消息
+        // 2. 保存用户消息和AI回复占位（AI调用耗时较长，不放在事务中；消息经写入缓冲批量落库）
+        writeBuffer.flushSession(sessionId);
         ChatMessage userMessage = ChatMessage.builder()
                 .sessionId(sessionId)
                 .role("user")
                 .content(content)
+                .createdAt(LocalDateTime.now())
                 .build();
-        messageMapper.insert(userMessage);
+        writeBuffer.save(userMessage, false);
+        ChatMessage aiMessage = createReplyPlaceholder(sessionId);
         
         try {
             // 3. 构建AI请求（包含历史上下文）
-            AIRequestDTO aiRequest = buildAIRequest(sessionId, content);
+            AIRequestDTO aiRequest = buildAIRequest(session);
+            int estimatedPromptTokens = contextManager.appendContext(aiRequest, session, SYSTEM_PROMPT, content);
             
             // 4. 调用AI获取回复
             AIResponseDTO aiResponse = aiClient.chat(aiRequest);
@@ -131,32 +161,167 @@ public class ChatServiceImpl implements IChatService {
             if (!aiResponse.getSuccess()) {
                 throw new BusinessException("AI调用失败: " + aiResponse.getErrorMessage());
             }
+            contextManager.recordUpstreamPromptTokens(aiResponse.getUsage());
             
-            // 5. 保存AI回复
-            ChatMessage aiMessage = ChatMessage.builder()
-                    .sessionId(sessionId)
-                    .role("assistant")
+            // 5. 写入AI回复并更新会话最后消息时间
+            writeBuffer.finishReply(aiMessage, ChatMessage.builder()
                     .content(aiResponse.getContent())
                     .tokens(aiResponse.getUsage() != null ? aiResponse.getUsage().getTotalTokens() : null)
+                    .promptTokens(promptTokensOf(aiResponse.getUsage(), estimatedPromptTokens))
                     .model(aiResponse.getModel())
-                    .build();
-            messageMapper.insert(aiMessage);
-            
-            // 6. 更新会话最后消息时间
-            session.setLastMessageTime(LocalDateTime.now());
-            sessionMapper.update(session);
+                    .status(CommonConstant.MESSAGE_STATUS_COMPLETED)
+                    .build());
             
             log.info("消息发送成功，返回AI回复");
             
-            // 7. 返回AI消息
+            // 6. 返回AI消息
             return convertMessageToVO(aiMessage);
             
+        } catch (BusinessException e) {
+            // 保留业务错误码（如AI服务繁忙时的429）
+            log.error("发送消息失败: {}", e.getMessage());
+            failReply(aiMessage, null);
+            throw e;
         } catch (Exception e) {
             log.error("发送消息失败", e);
+            failReply(aiMessage, null);
             throw new BusinessException("发送消息失败: " + e.getMessage());
         }
     }
     
+    @Override
+    public void sendMessageStream(Long sessionId, String content, StreamListener listener) {
+        log.info("发送流式消息，sessionId: {}, content: {}", sessionId, content);
+        
+        // 1. 验证会话是否存在
+        ChatSession session = sessionMapper.findById(sessionId);
+        if (session == null) {
+            throw new BusinessException("会话不存在");
+        }
+        
+        // 2. 保存用户消息（流式生成可能持续数十秒，不放在事务中）
+        writeBuffer.flushSession(sessionId);
+        ChatMessage userMessage = ChatMessage.builder()
+                .sessionId(sessionId)
+                .role("user")
+                .content(content)
+                .createdAt(LocalDateTime.now())
+                .build();
+        writeBuffer.save(userMessage, false);
+        ChatMessage aiMessage = createReplyPlaceholder(sessionId);
+        if (replyStreams.isEnabled()) {
+            // 续传以AI回复的消息ID定位缓冲，立即落库占位消息以获得ID
+            writeBuffer.flushSession(sessionId);
+        }
+        ChatReplyStreamBuffer.Writer stream = replyStreams.open(aiMessage.getId());
+        
+        StringBuilder reply = new StringBuilder();
+        AtomicReference<AIResponseDTO.Usage> usage = new AtomicReference<>();
+        try {
+            listener.onStart(convertMessageToVO(aiMessage));
+            
+            // 3. 构建AI请求（包含历史上下文）
+            AIRequestDTO aiRequest = buildAIRequest(session);
+            int estimatedPromptTokens = contextManager.appendContext(aiRequest, session, SYSTEM_PROMPT, content);
+            aiRequest.setStream(true);
+            
+            // 4. 流式调用AI，边生成边推送，完成后写入AI回复
+            streamReply(aiRequest, aiMessage, estimatedPromptTokens, reply, usage, stream, listener);
+        } catch (RuntimeException e) {
+            failReply(aiMessage, reply.toString());
+            stream.error(e.getMessage());
+            throw e;
+        }
+    }
+    
+    @Override
+    public void resumeMessageStream(Long messageId, long afterOffset, StreamListener listener) {
+        log.info("续传流式消息，messageId: {}, afterOffset: {}", messageId, afterOffset);
+        
+        if (replyStreams.replay(messageId, afterOffset, listener)) {
+            return;
+        }
+        
+        // 缓冲已过期或未能写入，以数据库中的回复为准：已完成时返回回复，失败时返回错误，
+        // 生成中时按间隔等待结束（超过生成中超时的回复会被标记为失败），等待超时返回可重试的错误
+        ChatMessage message = messageMapper.findById(messageId);
+        if (message == null || !"assistant".equals(message.getRole())) {
+            throw new BusinessException("消息不存在");
+        }
+        long deadline = System.currentTimeMillis() + chatConfig.getResumableStream().getMaxWaitMillis();
+        while (message.getStatus() != null && message.getStatus() == CommonConstant.MESSAGE_STATUS_PENDING) {
+            if (System.currentTimeMillis() > deadline) {
+                listener.onError(new IllegalStateException("回复仍在生成中，请稍后刷新"));
+                return;
+            }
+            try {
+                Thread.sleep(PENDING_POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                listener.onError(new IllegalStateException("请求已取消"));
+                return;
+            }
+            writeBuffer.flushSession(message.getSessionId());
+            message = messageMapper.findById(messageId);
+        }
+        if (message.getStatus() != null && message.getStatus() == CommonConstant.MESSAGE_STATUS_FAILED) {
+            listener.onError(new IllegalStateException("回复生成失败，请重新发送"));
+            return;
+        }
+        listener.onComplete(convertMessageToVO(message));
+    }
+    
+    /**
+     * 流式调用AI，把增量推送给监听方，结束后写入AI回复
+     */
+    private void streamReply(AIRequestDTO aiRequest, ChatMessage aiMessage, int estimatedPromptTokens,
+                             StringBuilder reply, AtomicReference<AIResponseDTO.Usage> usage,
+                             ChatReplyStreamBuffer.Writer stream, StreamListener listener) {
+        aiClient.chatStream(aiRequest, new AIClient.StreamCallback() {
+            @Override
+            public void onMessage(String delta) {
+                reply.append(delta);
+                listener.onDelta(delta, stream.append(delta));
+            }
+            
+            @Override
+            public void onUsage(AIResponseDTO.Usage streamUsage) {
+                usage.set(streamUsage);
+            }
+            
+            @Override
+            public void onComplete() {
+                try {
+                    contextManager.recordUpstreamPromptTokens(usage.get());
+                    writeBuffer.finishReply(aiMessage, ChatMessage.builder()
+                            .content(reply.toString())
+                            .tokens(usage.get() != null ? usage.get().getTotalTokens() : null)
+                            .promptTokens(promptTokensOf(usage.get(), estimatedPromptTokens))
+                            .model(defaultModel)
+                            .status(CommonConstant.MESSAGE_STATUS_COMPLETED)
+                            .build());
+                    
+                    log.info("流式消息完成，回复长度: {}", reply.length());
+                    ChatMessageVO message = convertMessageToVO(aiMessage);
+                    stream.complete(message);
+                    listener.onComplete(message);
+                } catch (Exception e) {
+                    log.error("保存流式AI回复失败", e);
+                    stream.error(e.getMessage());
+                    listener.onError(e);
+                }
+            }
+            
+            @Override
+            public void onError(Throwable error) {
+                log.error("流式发送消息失败", error);
+                failReply(aiMessage, reply.toString());
+                stream.error(error.getMessage());
+                listener.onError(error);
+            }
+        });
+    }
+    
     @Override
     public List<ChatSessionVO> getUserSessions(Long userId, int page, int size) {
         log.info("获取用户会话列表，userId: {}, page: {}, size: {}", userId, page, size);
@@ -191,8 +356,18 @@ public class ChatServiceImpl implements IChatService {
             throw new BusinessException("会话不存在");
         }
         
+        writeBuffer.flushSession(sessionId);
         int offset = (page - 1) * size;
-        List<ChatMessage> messages = messageMapper.findBySessionId(sessionId, offset, size);
+        
+        // 已归档的早期消息排在 chat_message 中的消息之前，分页跨越两张表
+        int archived = session.getArchivedMessageCount() != null ? session.getArchivedMessageCount() : 0;
+        List<ChatMessage> messages = new ArrayList<>();
+        if (offset < archived) {
+            messages.addAll(messageMapper.findArchivedBySessionId(sessionId, offset, Math.min(size, archived - offset)));
+        }
+        if (offset + size > archived) {
+            messages.addAll(messageMapper.findBySessionId(sessionId, Math.max(0, offset - archived), size - messages.size()));
+        }
         
         return messages.stream()
                 .map(this::convertMessageToVO)
@@ -200,7 +375,6 @@ public class ChatServiceImpl implements IChatService {
     }
     
     @Override
-    @Transactional
     public boolean deleteSession(Long sessionId) {
         log.info("删除会话，sessionId: {}", sessionId);
         
@@ -210,15 +384,25 @@ public class ChatServiceImpl implements IChatService {
             throw new BusinessException("会话不存在");
         }
         
-        // 删除会话（软删除）
-        int result = sessionMapper.deleteById(sessionId);
+        // 先落库缓冲中的消息，避免删除后再被写入
+        // 刷新会一并写入其他会话的缓冲，必须在删除事务之外执行，删除回滚时不能带着它们一起回滚
+        writeBuffer.flushSession(sessionId);
         
-        // 删除会话下的所有消息
-        if (result > 0) {
-            messageMapper.deleteBySessionId(sessionId);
+        boolean deleted = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            // 删除会话（软删除）
+            int result = sessionMapper.deleteById(sessionId);
+            
+            // 删除会话下的所有消息
+            if (result > 0) {
+                messageMapper.deleteBySessionId(sessionId);
+                messageMapper.deleteArchivedBySessionId(sessionId);
+            }
+            return result > 0;
+        }));
+        if (deleted) {
+            historyCache.invalidate(sessionId);
         }
-        
-        return result > 0;
+        return deleted;
     }
     
     @Override
@@ -228,54 +412,72 @@ public class ChatServiceImpl implements IChatService {
     
     @Override
     public Integer countSessionMessages(Long sessionId) {
-        return messageMapper.countBySessionId(sessionId);
+        writeBuffer.flushSession(sessionId);
+        ChatSession session = sessionMapper.findById(sessionId);
+        int archived = session != null && session.getArchivedMessageCount() != null ? session.getArchivedMessageCount() : 0;
+        return messageMapper.countBySessionId(sessionId) + archived;
     }
     
     // ================= 私有方法 =================
     
     /**
-     * 构建AI请求（包含历史上下文）
+     * 构建AI请求（上下文消息由 ChatContextManager 按Token预算追加）
+     * 携带会话所属用户ID，AI调用调度按用户公平排队
      */
-    private AIRequestDTO buildAIRequest(Long sessionId, String currentMessage) {
-        AIRequestDTO request = AIRequestDTO.builder()
+    private AIRequestDTO buildAIRequest(ChatSession session) {
+        return AIRequestDTO.builder()
                 .model(defaultModel)
+                .sessionId(session.getId())
+                .userId(session.getUserId())
+                // 多轮对话上下文几乎不会重复，不走响应缓存
+                .cacheable(false)
+                .build();
+    }
+    
+    /**
+     * 写入生成中的AI回复占位，生成途中进程退出时由 PendingReplySweeper 标记为失败
+     */
+    private ChatMessage createReplyPlaceholder(Long sessionId) {
+        ChatMessage placeholder = ChatMessage.builder()
                 .sessionId(sessionId)
+                .role("assistant")
+                .content("")
+                .model(defaultModel)
+                .status(CommonConstant.MESSAGE_STATUS_PENDING)
+                .createdAt(LocalDateTime.now())
                 .build();
-        
-        // 添加系统Prompt
-        request.addSystemMessage(SYSTEM_PROMPT);
-        
-        // 获取最近的N条消息作为上下文
-        List<ChatMessage> historyMessages = messageMapper.findLatestBySessionId(
-                sessionId, CONTEXT_MESSAGE_COUNT);
-        
-        // 倒序添加（从旧到新）
-        for (int i = historyMessages.size() - 1; i >= 0; i--) {
-            ChatMessage msg = historyMessages.get(i);
-            if ("user".equals(msg.getRole())) {
-                request.addUserMessage(msg.getContent());
-            } else if ("assistant".equals(msg.getRole())) {
-                request.addAssistantMessage(msg.getContent());
-            }
+        writeBuffer.save(placeholder, false);
+        return placeholder;
+    }
+    
+    /**
+     * 把AI回复标记为失败，保留已生成的部分内容
+     */
+    private void failReply(ChatMessage placeholder, String partialContent) {
+        try {
+            writeBuffer.finishReply(placeholder, ChatMessage.builder()
+                    .content(partialContent != null ? partialContent : "")
+                    .model(defaultModel)
+                    .status(CommonConstant.MESSAGE_STATUS_FAILED)
+                    .build());
+        } catch (Exception e) {
+            log.warn("标记AI回复失败状态失败，sessionId: {}: {}", placeholder.getSessionId(), e.getMessage());
         }
-        
-        // 添加当前消息
-        request.addUserMessage(currentMessage);
-        
-        return request;
+    }
+    
+    /**
+     * 提示词Token数：优先使用上游返回值，缺失时使用本地估算值
+     */
+    private Integer promptTokensOf(AIResponseDTO.Usage usage, int estimated) {
+        return usage != null && usage.getPromptTokens() != null ? usage.getPromptTokens() : estimated;
     }
     
     /**
      * 转换会话为VO
      */
     private ChatSessionVO convertSessionToVO(ChatSession session) {
-        ChatSessionVO vo = BeanUtil.copyProperties(session, ChatSessionVO.class);
-        
-        // 查询消息数量
-        Integer messageCount = messageMapper.countBySessionId(session.getId());
-        vo.setMessageCount(messageCount);
-        
-        return vo;
+        // 消息数量和预览随消息写入增量维护，不再逐个会话统计
+        return BeanUtil.copyProperties(session, ChatSessionVO.class);
     }
     
     /**
@@ -0,0 +1,253 @@
+package com.health.agent.module.chat.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.chat.service.IChatService;
+import com.health.agent.module.chat.vo.ChatMessageVO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式AI回复缓冲（Redis Stream）
+ * 每条生成中的AI回复对应一个 Stream（键为 key-prefix + 消息ID），分片按顺序写入：
+ * - 开始生成时先写入 start 标记（条目ID 0-1）并设置生成中的过期时间，第一个分片到达前续传也能找到缓冲并等待；
+ *   分片的条目ID为 0-(偏移量+1)，偏移量从 1 开始逐个分片递增，最后一条为 done 或 error；客户端记录最后收到的偏移量即可续传
+ * - 结束时改为较短的保留时间，无需单独清理
+ * - 续传时先读取偏移量之后的已有分片，生成未结束则按间隔轮询，直到读到 done/error 或等待超时；任意节点都可续传
+ * - Redis 写入失败后该回复不再写入（只影响续传，不影响正在进行的推送）
+ * <p>
+ * Redis 不可用时续传返回缺失，由调用方从数据库读取回复
+ * <p>
+ * 指标：chat.stream.resume{result=replayed|missing}、chat.stream.write.failed
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class ChatReplyStreamBuffer {
+
+    private static final String FIELD_TYPE = "type";
+    private static final String FIELD_DATA = "data";
+    private static final String TYPE_START = "start";
+    private static final String TYPE_DELTA = "delta";
+    private static final String TYPE_DONE = "done";
+    private static final String TYPE_ERROR = "error";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChatConfig.ResumableStream config;
+    private final MeterRegistry meterRegistry;
+    private final Counter writeFailed;
+
+    public ChatReplyStreamBuffer(StringRedisTemplate redisTemplate,
+                                 ObjectMapper objectMapper,
+                                 ChatConfig chatConfig,
+                                 MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.config = chatConfig.getResumableStream();
+        this.meterRegistry = meterRegistry;
+        this.writeFailed = Counter.builder("chat.stream.write.failed")
+                .description("写入Redis Stream失败而无法续传的回复数").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(config.getEnabled());
+    }
+
+    /**
+     * 开始缓冲一条AI回复
+     *
+     * @param messageId AI回复的消息ID，为空（占位消息未能落库）或未启用时只计数不写入
+     */
+    public Writer open(Long messageId) {
+        Writer writer = new Writer(isEnabled() ? messageId : null);
+        writer.start();
+        return writer;
+    }
+
+    /**
+     * 从偏移量之后续传AI回复，阻塞直到回复结束或等待超时
+     * 监听方回调抛出异常（客户端再次断开）时直接向上抛出
+     *
+     * @param messageId AI回复的消息ID
+     * @param afterOffset 客户端最后收到的偏移量，0 表示从头开始
+     * @param listener 接收分片的监听方，onDelta 带偏移量回调
+     * @return 缓冲不存在（已过期、未启用或写入失败）时返回 false，由调用方从数据库读取
+     */
+    public boolean replay(Long messageId, long afterOffset, IChatService.StreamListener listener) {
+        if (!isEnabled()) {
+            return false;
+        }
+        String key = key(messageId);
+        long offset = afterOffset;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getMaxWaitMillis());
+        boolean first = true;
+        while (true) {
+            List<MapRecord<String, Object, Object>> records;
+            try {
+                records = redisTemplate.opsForStream()
+                        .range(key, Range.rightUnbounded(Range.Bound.inclusive("0-" + (offset + 2))));
+                if (first && (records == null || records.isEmpty()) && !Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                    record("missing");
+                    return false;
+                }
+            } catch (Exception e) {
+                log.warn("读取流式回复缓冲失败，key: {}: {}", key, e.getMessage());
+                if (first) {
+                    record("missing");
+                    return false;
+                }
+                listener.onError(new IllegalStateException("续传中断，请稍后刷新"));
+                return true;
+            }
+            if (first) {
+                first = false;
+                record("replayed");
+            }
+            for (MapRecord<String, Object, Object> entry : records != null ? records : List.<MapRecord<String, Object, Object>>of()) {
+                offset = entry.getId().getSequence() - 1;
+                String type = String.valueOf(entry.getValue().get(FIELD_TYPE));
+                String data = String.valueOf(entry.getValue().get(FIELD_DATA));
+                switch (type) {
+                    case TYPE_START -> {
+                        // 开始标记在偏移量之前，不会读到
+                    }
+                    case TYPE_DELTA -> listener.onDelta(data, offset);
+                    case TYPE_DONE -> {
+                        listener.onComplete(readMessage(data));
+                        return true;
+                    }
+                    default -> {
+                        listener.onError(new IllegalStateException(data));
+                        return true;
+                    }
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                listener.onError(new IllegalStateException("等待回复生成超时，请稍后刷新"));
+                return true;
+            }
+            try {
+                Thread.sleep(config.getPollIntervalMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                listener.onError(new IllegalStateException("请求已取消"));
+                return true;
+            }
+        }
+    }
+
+    private ChatMessageVO readMessage(String json) {
+        try {
+            return objectMapper.readValue(json, ChatMessageVO.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("解析缓冲的AI回复失败: " + e.getMessage(), e);
+        }
+    }
+
+    private String key(Long messageId) {
+        return config.getKeyPrefix() + messageId;
+    }
+
+    private void record(String result) {
+        Counter.builder("chat.stream.resume").tag("result", result)
+                .description("流式回复续传次数").register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 一条AI回复的写入方，由生成线程顺序调用，非线程安全
+     */
+    public final class Writer {
+        private final String key;
+        private long offset;
+        private boolean broken;
+        private boolean finished;
+
+        private Writer(Long messageId) {
+            this.key = messageId != null ? key(messageId) : null;
+            this.broken = messageId == null;
+        }
+
+        /**
+         * 写入开始标记并设置生成中的过期时间
+         */
+        private void start() {
+            write(TYPE_START, "", 1, config.getGeneratingTtlSeconds());
+        }
+
+        /**
+         * 写入一个分片
+         *
+         * @return 分片的偏移量（未写入缓冲时仍递增，保证推送给客户端的偏移量连续）
+         */
+        public long append(String delta) {
+            offset++;
+            write(TYPE_DELTA, delta, offset + 1, null);
+            return offset;
+        }
+
+        /**
+         * 写入完成的消息并缩短保留时间
+         */
+        public void complete(ChatMessageVO message) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                write(TYPE_DONE, objectMapper.writeValueAsString(message), offset + 2, config.getCompletedTtlSeconds());
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * 写入错误并缩短保留时间
+         */
+        public void error(String message) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            write(TYPE_ERROR, message != null ? message : "生成失败", offset + 2, config.getCompletedTtlSeconds());
+        }
+
+        private void write(String type, String data, long sequence, Long ttlSeconds) {
+            if (broken) {
+                return;
+            }
+            try {
+                redisTemplate.opsForStream().add(StreamRecords.newRecord()
+                        .in(key)
+                        .withId(RecordId.of(0, sequence))
+                        .ofMap(Map.of(FIELD_TYPE, type, FIELD_DATA, data)));
+                if (ttlSeconds != null) {
+                    redisTemplate.expire(key, Duration.ofSeconds(ttlSeconds));
+                }
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private void fail(Exception e) {
+            broken = true;
+            writeFailed.increment();
+            log.warn("写入流式回复缓冲失败，该回复无法续传，key: {}: {}", key, e.getMessage());
+        }
+    }
+}
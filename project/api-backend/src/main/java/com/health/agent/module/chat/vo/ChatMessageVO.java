@@ -38,9 +38,15 @@ public class ChatMessageVO {
     @Schema(description = "Token数量")
     private Integer tokens;
     
+    @Schema(description = "提示词Token数（AI回复）")
+    private Integer promptTokens;
+    
     @Schema(description = "使用的AI模型")
     private String model;
     
+    @Schema(description = "状态：0-生成中, 1-已完成, 2-生成失败")
+    private Integer status;
+    
     @Schema(description = "创建时间")
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime createdAt;
@@ -41,6 +41,9 @@ public class ChatSessionVO {
     @Schema(description = "消息数量")
     private Integer messageCount;
     
+    @Schema(description = "最后一条消息预览")
+    private String lastMessagePreview;
+    
     @Schema(description = "最后消息时间")
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime lastMessageTime;
@@ -0,0 +1,31 @@
+package com.health.agent.module.diet.entity;
+
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每日饮食汇总实体类（按用户、日期、餐次汇总饮食日记）
+ */
+@Data
+public class DietDailySummary {
+    
+    private Long userId;
+    
+    private LocalDate date;
+    
+    private String mealType; // breakfast-早餐 lunch-午餐 dinner-晚餐 snack-加餐，按天合计时为空
+    
+    private BigDecimal calories; // 热量(kcal)
+    
+    private BigDecimal protein; // 蛋白质(g)
+    
+    private BigDecimal carbohydrate; // 碳水化合物(g)
+    
+    private BigDecimal fat; // 脂肪(g)
+    
+    private Integer itemCount; // 日记条数
+    
+    private LocalDateTime updatedAt;
+}
@@ -2,6 +2,7 @@ package com.health.agent.module.diet.entity;
 
 import lombok.Data;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 /**
@@ -18,6 +19,8 @@ public class DietDiary {
     
     private String foodName; // 冗余保存的食物名称
     
+    private LocalDate date; // 日期，由用餐时间生成（只读）
+    
     private String mealType; // breakfast-早餐 lunch-午餐 dinner-晚餐 snack-加餐
     
     private LocalDateTime mealTime;
@@ -0,0 +1,64 @@
+package com.health.agent.module.diet.mapper;
+
+import com.health.agent.module.diet.entity.DietDailySummary;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 每日饮食汇总Mapper
+ */
+@Mapper
+public interface DietDailySummaryMapper {
+    
+    /**
+     * 按增量累加汇总（行不存在时插入），增量可为负
+     */
+    int upsertDelta(DietDailySummary delta);
+    
+    /**
+     * 删除日记条数已减到0的汇总行
+     */
+    int deleteEmpty(@Param("userId") Long userId, @Param("date") LocalDate date, @Param("mealType") String mealType);
+    
+    /**
+     * 查询用户某日期各餐次的汇总
+     */
+    List<DietDailySummary> selectByUserAndDate(@Param("userId") Long userId, @Param("date") LocalDate date);
+    
+    /**
+     * 查询用户日期范围内每天的合计（不区分餐次，只返回有日记的日期）
+     */
+    List<DietDailySummary> selectDailyTotals(@Param("userId") Long userId,
+                                             @Param("startDate") LocalDate startDate,
+                                             @Param("endDate") LocalDate endDate);
+    
+    /**
+     * 查询日期范围内汇总与日记不一致的用户日期（只填充 userId、date）
+     */
+    List<DietDailySummary> selectMismatches(@Param("startDate") LocalDate startDate,
+                                            @Param("endDate") LocalDate endDate,
+                                            @Param("limit") int limit);
+    
+    /**
+     * 删除用户某日期的汇总
+     */
+    int deleteByUserAndDate(@Param("userId") Long userId, @Param("date") LocalDate date);
+    
+    /**
+     * 从日记重新生成用户某日期的汇总（需先删除旧汇总）
+     */
+    int insertFromDiaryByUserAndDate(@Param("userId") Long userId, @Param("date") LocalDate date);
+    
+    /**
+     * 删除一批用户的全部汇总
+     */
+    int deleteByUserIds(@Param("userIds") List<Long> userIds);
+    
+    /**
+     * 从日记重新生成一批用户的全部汇总（需先删除旧汇总）
+     */
+    int insertFromDiaryByUserIds(@Param("userIds") List<Long> userIds);
+}
@@ -25,6 +25,11 @@ public interface DietDiaryMapper {
      */
     DietDiary selectById(@Param("id") Long id);
     
+    /**
+     * 根据ID查询并加行锁（需在事务内调用）
+     */
+    DietDiary selectByIdForUpdate(@Param("id") Long id);
+    
     /**
      * 根据ID查询VO
      */
@@ -61,4 +66,9 @@ public interface DietDiaryMapper {
      * 统计用户某日期的营养摄入
      */
     DietDiaryVO sumNutritionByDate(@Param("userId") Long userId, @Param("date") LocalDate date);
+    
+    /**
+     * 分批查询有饮食日记的用户ID
+     */
+    List<Long> selectUserIdsAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
 }
@@ -4,7 +4,9 @@ import com.health.agent.common.exception.BusinessException;
 import com.health.agent.module.diet.dto.AddDietDiaryDTO;
 import com.health.agent.module.diet.dto.DietDiaryQueryDTO;
 import com.health.agent.module.diet.dto.UpdateDietDiaryDTO;
+import com.health.agent.module.diet.entity.DietDailySummary;
 import com.health.agent.module.diet.entity.DietDiary;
+import com.health.agent.module.diet.mapper.DietDailySummaryMapper;
 import com.health.agent.module.diet.mapper.DietDiaryMapper;
 import com.health.agent.module.diet.service.IDietDiaryService;
 import com.health.agent.module.diet.vo.DietDiaryVO;
@@ -21,10 +23,10 @@ import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 饮食日记服务实现
+ * 日记增删改在同一事务内按增量更新每日饮食汇总（diet_daily_summary），统计直接读取汇总
  */
 @Slf4j
 @Service
@@ -33,6 +35,7 @@ public class DietDiaryServiceImpl implements IDietDiaryService {
     
     private final DietDiaryMapper dietDiaryMapper;
     private final FoodMapper foodMapper;
+    private final DietDailySummaryMapper dietDailySummaryMapper;
     
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -68,6 +71,7 @@ public class DietDiaryServiceImpl implements IDietDiaryService {
         diary.setFoodName(food.getName());
 
         dietDiaryMapper.insert(diary);
+        applySummaryDelta(userId, diary.getMealTime().toLocalDate(), diary.getMealType(), diary, 1);
         log.info("用户 {} 添加饮食日记成功，ID: {}", userId, diary.getId());
         
         return diary.getId();
@@ -76,8 +80,8 @@ public class DietDiaryServiceImpl implements IDietDiaryService {
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void updateDietDiary(Long userId, UpdateDietDiaryDTO dto) {
-        // 验证日记存在且属于当前用户
-        DietDiary existingDiary = dietDiaryMapper.selectById(dto.getId());
+        // 验证日记存在且属于当前用户（加行锁，保证按旧值扣减汇总时旧值不被并发修改）
+        DietDiary existingDiary = dietDiaryMapper.selectByIdForUpdate(dto.getId());
         if (existingDiary == null) {
             throw new BusinessException("饮食日记不存在");
         }
@@ -127,6 +131,7 @@ public class DietDiaryServiceImpl implements IDietDiaryService {
         diary.setUpdatedAt(LocalDateTime.now());
         
         dietDiaryMapper.updateById(diary);
+        updateSummary(existingDiary, diary);
         log.info("用户 {} 更新饮食日记成功，ID: {}", userId, dto.getId());
     }
     
@@ -134,7 +139,7 @@ public class DietDiaryServiceImpl implements IDietDiaryService {
     @Transactional(rollbackFor = Exception.class)
     public void deleteDietDiary(Long userId, Long id) {
         // 验证日记存在且属于当前用户
-        DietDiary diary = dietDiaryMapper.selectById(id);
+        DietDiary diary = dietDiaryMapper.selectByIdForUpdate(id);
         if (diary == null) {
             throw new BusinessException("饮食日记不存在");
         }
@@ -143,6 +148,7 @@ public class DietDiaryServiceImpl implements IDietDiaryService {
         }
         
         dietDiaryMapper.deleteById(id);
+        applySummaryDelta(userId, diary.getDate(), diary.getMealType(), diary, -1);
         log.info("用户 {} 删除饮食日记成功，ID: {}", userId, id);
     }
     
@@ -194,78 +200,96 @@ public class DietDiaryServiceImpl implements IDietDiaryService {
     
     @Override
     public DietStatisticsVO getDietStatistics(Long userId, LocalDate date) {
-        List<DietDiaryVO> diaries = dietDiaryMapper.selectByUserAndDate(userId, date);
+        List<DietDailySummary> summaries = dietDailySummaryMapper.selectByUserAndDate(userId, date);
         
         DietStatisticsVO statistics = new DietStatisticsVO();
         statistics.setDate(date);
         
-        if (diaries.isEmpty()) {
-            statistics.setTotalCalories(BigDecimal.ZERO);
-            statistics.setTotalProtein(BigDecimal.ZERO);
-            statistics.setTotalCarbohydrate(BigDecimal.ZERO);
-            statistics.setTotalFat(BigDecimal.ZERO);
-            statistics.setMealCount(0);
-            statistics.setMeals(new ArrayList<>());
-            return statistics;
-        }
-        
-        // 计算总营养
+        // 计算总营养并按餐次输出汇总
         BigDecimal totalCalories = BigDecimal.ZERO;
         BigDecimal totalProtein = BigDecimal.ZERO;
         BigDecimal totalCarbs = BigDecimal.ZERO;
         BigDecimal totalFat = BigDecimal.ZERO;
+        List<DietStatisticsVO.MealSummary> meals = new ArrayList<>();
         
-        for (DietDiaryVO diary : diaries) {
-            totalCalories = totalCalories.add(diary.getCalories());
-            totalProtein = totalProtein.add(diary.getProtein());
-            totalCarbs = totalCarbs.add(diary.getCarbohydrate());
-            totalFat = totalFat.add(diary.getFat());
+        for (DietDailySummary summary : summaries) {
+            totalCalories = totalCalories.add(summary.getCalories());
+            totalProtein = totalProtein.add(summary.getProtein());
+            totalCarbs = totalCarbs.add(summary.getCarbohydrate());
+            totalFat = totalFat.add(summary.getFat());
+            
+            DietStatisticsVO.MealSummary mealSummary = new DietStatisticsVO.MealSummary();
+            mealSummary.setMealType(summary.getMealType());
+            mealSummary.setMealTypeDesc(getMealTypeDesc(summary.getMealType()));
+            mealSummary.setCalories(summary.getCalories().setScale(2, RoundingMode.HALF_UP));
+            mealSummary.setProtein(summary.getProtein().setScale(2, RoundingMode.HALF_UP));
+            mealSummary.setCarbohydrate(summary.getCarbohydrate().setScale(2, RoundingMode.HALF_UP));
+            mealSummary.setFat(summary.getFat().setScale(2, RoundingMode.HALF_UP));
+            mealSummary.setItemCount(summary.getItemCount());
+            meals.add(mealSummary);
         }
         
         statistics.setTotalCalories(totalCalories.setScale(2, RoundingMode.HALF_UP));
         statistics.setTotalProtein(totalProtein.setScale(2, RoundingMode.HALF_UP));
         statistics.setTotalCarbohydrate(totalCarbs.setScale(2, RoundingMode.HALF_UP));
         statistics.setTotalFat(totalFat.setScale(2, RoundingMode.HALF_UP));
+        statistics.setMealCount(meals.size());
+        statistics.setMeals(meals);
         
-        // 按餐次分组统计
-        Map<String, List<DietDiaryVO>> mealGroups = diaries.stream()
-            .collect(Collectors.groupingBy(DietDiaryVO::getMealType));
+        return statistics;
+    }
+    
+    /**
+     * 修改日记后更新每日汇总：日期、餐次或营养成分有变化时，从旧的汇总行扣减旧值，再向新的汇总行累加新值
+     *
+     * @param existing 修改前的日记
+     * @param changes  本次修改的字段（未修改的字段为空）
+     */
+    private void updateSummary(DietDiary existing, DietDiary changes) {
+        LocalDate date = changes.getMealTime() != null ? changes.getMealTime().toLocalDate() : existing.getDate();
+        String mealType = changes.getMealType() != null ? changes.getMealType() : existing.getMealType();
         
-        statistics.setMealCount(mealGroups.size());
+        DietDiary updated = new DietDiary();
+        updated.setCalories(changes.getCalories() != null ? changes.getCalories() : existing.getCalories());
+        updated.setProtein(changes.getProtein() != null ? changes.getProtein() : existing.getProtein());
+        updated.setCarbohydrate(changes.getCarbohydrate() != null ? changes.getCarbohydrate() : existing.getCarbohydrate());
+        updated.setFat(changes.getFat() != null ? changes.getFat() : existing.getFat());
         
-        List<DietStatisticsVO.MealSummary> meals = new ArrayList<>();
-        for (Map.Entry<String, List<DietDiaryVO>> entry : mealGroups.entrySet()) {
-            String mealType = entry.getKey();
-            List<DietDiaryVO> mealDiaries = entry.getValue();
-            
-            DietStatisticsVO.MealSummary mealSummary = new DietStatisticsVO.MealSummary();
-            mealSummary.setMealType(mealType);
-            mealSummary.setMealTypeDesc(getMealTypeDesc(mealType));
-            
-            BigDecimal mealCalories = BigDecimal.ZERO;
-            BigDecimal mealProtein = BigDecimal.ZERO;
-            BigDecimal mealCarbs = BigDecimal.ZERO;
-            BigDecimal mealFat = BigDecimal.ZERO;
-            
-            for (DietDiaryVO diary : mealDiaries) {
-                mealCalories = mealCalories.add(diary.getCalories());
-                mealProtein = mealProtein.add(diary.getProtein());
-                mealCarbs = mealCarbs.add(diary.getCarbohydrate());
-                mealFat = mealFat.add(diary.getFat());
-            }
-            
-            mealSummary.setCalories(mealCalories.setScale(2, RoundingMode.HALF_UP));
-            mealSummary.setProtein(mealProtein.setScale(2, RoundingMode.HALF_UP));
-            mealSummary.setCarbohydrate(mealCarbs.setScale(2, RoundingMode.HALF_UP));
-            mealSummary.setFat(mealFat.setScale(2, RoundingMode.HALF_UP));
-            mealSummary.setItemCount(mealDiaries.size());
-            
-            meals.add(mealSummary);
+        boolean unchanged = date.equals(existing.getDate())
+            && mealType.equals(existing.getMealType())
+            && updated.getCalories().compareTo(existing.getCalories()) == 0
+            && updated.getProtein().compareTo(existing.getProtein()) == 0
+            && updated.getCarbohydrate().compareTo(existing.getCarbohydrate()) == 0
+            && updated.getFat().compareTo(existing.getFat()) == 0;
+        if (unchanged) {
+            return;
         }
         
-        statistics.setMeals(meals);
+        applySummaryDelta(existing.getUserId(), existing.getDate(), existing.getMealType(), existing, -1);
+        applySummaryDelta(existing.getUserId(), date, mealType, updated, 1);
+    }
+    
+    /**
+     * 按增量更新每日汇总，扣减后日记条数为0的汇总行直接删除
+     *
+     * @param sign 1-累加 -1-扣减
+     */
+    private void applySummaryDelta(Long userId, LocalDate date, String mealType, DietDiary diary, int sign) {
+        BigDecimal factor = BigDecimal.valueOf(sign);
+        DietDailySummary delta = new DietDailySummary();
+        delta.setUserId(userId);
+        delta.setDate(date);
+        delta.setMealType(mealType);
+        delta.setCalories(diary.getCalories().multiply(factor));
+        delta.setProtein(diary.getProtein().multiply(factor));
+        delta.setCarbohydrate(diary.getCarbohydrate().multiply(factor));
+        delta.setFat(diary.getFat().multiply(factor));
+        delta.setItemCount(sign);
         
-        return statistics;
+        dietDailySummaryMapper.upsertDelta(delta);
+        if (sign < 0) {
+            dietDailySummaryMapper.deleteEmpty(userId, date, mealType);
+        }
     }
     
     /**
@@ -0,0 +1,126 @@
+package com.health.agent.module.diet.summary;
+
+import com.health.agent.config.DietConfig;
+import com.health.agent.module.diet.entity.DietDailySummary;
+import com.health.agent.module.diet.mapper.DietDailySummaryMapper;
+import com.health.agent.module.diet.mapper.DietDiaryMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 每日饮食汇总重建与校验
+ * diet_daily_summary 随日记增删改增量维护，这里负责兜底：
+ * - 启用 diet.summary.rebuild-on-startup 时，启动后按用户分批从 diet_diary 全量重建（新增汇总表后执行一次）
+ * - 定时对比最近 verify-days 天的汇总与日记，不一致的用户日期在一个事务内删除汇总后重新生成
+ * - 重建与同一用户日期的并发写入冲突时由数据库回滚其中一方，未修复的下一轮校验重试
+ * <p>
+ * 指标：diet.summary.repaired
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@Slf4j
+@Component
+public class DietSummaryReconciler {
+
+    private final DietDiaryMapper dietDiaryMapper;
+    private final DietDailySummaryMapper dietDailySummaryMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final DietConfig.Summary config;
+    private final Counter repaired;
+
+    public DietSummaryReconciler(DietDiaryMapper dietDiaryMapper,
+                                 DietDailySummaryMapper dietDailySummaryMapper,
+                                 TransactionTemplate transactionTemplate,
+                                 DietConfig dietConfig,
+                                 MeterRegistry meterRegistry) {
+        this.dietDiaryMapper = dietDiaryMapper;
+        this.dietDailySummaryMapper = dietDailySummaryMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.config = dietConfig.getSummary();
+        this.repaired = Counter.builder("diet.summary.repaired")
+                .description("校验发现不一致并重建汇总的用户日期数").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!Boolean.TRUE.equals(config.getRebuildOnStartup())) {
+            return;
+        }
+        Thread thread = new Thread(this::rebuildAll, "diet-summary-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 按用户分批全量重建汇总
+     *
+     * @return 处理的用户数
+     */
+    public int rebuildAll() {
+        long start = System.currentTimeMillis();
+        int total = 0;
+        long afterId = 0;
+        try {
+            while (true) {
+                List<Long> userIds = dietDiaryMapper.selectUserIdsAfter(afterId, config.getRebuildBatchSize());
+                if (userIds.isEmpty()) {
+                    break;
+                }
+                transactionTemplate.executeWithoutResult(status -> {
+                    dietDailySummaryMapper.deleteByUserIds(userIds);
+                    dietDailySummaryMapper.insertFromDiaryByUserIds(userIds);
+                });
+                total += userIds.size();
+                afterId = userIds.get(userIds.size() - 1);
+            }
+            log.info("每日饮食汇总重建完成，用户: {} 个，耗时: {}ms", total, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("每日饮食汇总重建失败，已处理: {} 个，最后用户ID: {}", total, afterId, e);
+        }
+        return total;
+    }
+
+    @Scheduled(initialDelayString = "${diet.summary.verify-interval-millis:21600000}",
+            fixedDelayString = "${diet.summary.verify-interval-millis:21600000}")
+    public void verify() {
+        if (!Boolean.TRUE.equals(config.getVerifyEnabled())) {
+            return;
+        }
+        LocalDate endDate = LocalDate.now();
+        LocalDate startDate = endDate.minusDays(Math.max(1, config.getVerifyDays()) - 1L);
+        List<DietDailySummary> mismatches;
+        try {
+            mismatches = dietDailySummaryMapper.selectMismatches(startDate, endDate, config.getVerifyLimit());
+        } catch (Exception e) {
+            log.warn("校验每日饮食汇总失败: {}", e.getMessage());
+            return;
+        }
+
+        int count = 0;
+        for (DietDailySummary mismatch : mismatches) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    dietDailySummaryMapper.deleteByUserAndDate(mismatch.getUserId(), mismatch.getDate());
+                    dietDailySummaryMapper.insertFromDiaryByUserAndDate(mismatch.getUserId(), mismatch.getDate());
+                });
+                count++;
+            } catch (Exception e) {
+                log.warn("重建每日饮食汇总失败，userId: {}, date: {}: {}", mismatch.getUserId(), mismatch.getDate(), e.getMessage());
+            }
+        }
+        if (count > 0) {
+            repaired.increment(count);
+            log.warn("每日饮食汇总与日记不一致，已重建 {} 个用户日期", count);
+        }
+    }
+}
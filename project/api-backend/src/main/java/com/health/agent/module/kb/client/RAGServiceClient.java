@@ -2,6 +2,7 @@ package com.health.agent.module.kb.client;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.health.agent.config.RAGConfig;
+import com.health.agent.module.ai.transport.AIHttpTransport;
 import com.health.agent.module.kb.vo.KnowledgeVO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -23,13 +24,14 @@ import java.util.stream.Collectors;
 public class RAGServiceClient {
 
     private final RAGConfig ragConfig;
+    private final AIHttpTransport httpTransport;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private RestTemplate restTemplate;
+    private volatile RestTemplate restTemplate;
 
     private RestTemplate rest() {
         if (restTemplate != null) return restTemplate;
-        // 简易超时设置（非阻塞）：使用 HttpComponents/OkHttp 更佳，这里用默认即可
-        restTemplate = new RestTemplate();
+        // 与 AI 客户端共享连接池，读取超时使用 rag.timeout-ms
+        restTemplate = httpTransport.createRestTemplate(Duration.ofMillis(ragConfig.getTimeoutMs()));
         return restTemplate;
     }
 
@@ -1,6 +1,7 @@
 package com.health.agent.module.kb.service.impl;
 
 import cn.hutool.core.util.StrUtil;
+import com.health.agent.common.util.JwtUtil;
 import com.health.agent.module.ai.client.AIClient;
 import com.health.agent.module.ai.dto.AIRequestDTO;
 import com.health.agent.module.ai.dto.AIResponseDTO;
@@ -27,6 +28,10 @@ public class KnowledgeServiceImpl implements IKnowledgeService {
     private final KnowledgeMapper knowledgeMapper;
     private final AIClient aiClient;
     private final RAGServiceClient ragServiceClient;
+    private final JwtUtil jwtUtil;
+
+    /** 知识库问答温度 */
+    private static final double RAG_ANSWER_TEMPERATURE = 0.3;
 
     @Override
     @Transactional
@@ -82,6 +87,10 @@ public class KnowledgeServiceImpl implements IKnowledgeService {
         String answer = null;
         if (withAnswer) {
             AIRequestDTO req = AIRequestDTO.builder()
+                    // 基于检索片段作答，低温度保证答案稳定，同问题同片段可命中响应缓存
+                    .temperature(RAG_ANSWER_TEMPERATURE)
+                    // 请求用户，AI调用调度按用户公平排队
+                    .userId(jwtUtil.getCurrentUserId())
                     .build()
                     .addSystemMessage("你是营养健康领域的知识助手。请严格依据提供的知识库片段回答用户问题。若片段不足以回答,请明确说明'信息不足',并给出建议的检索方向。输出包含:简洁回答 + 参考片段标题列表。")
                     .addUserMessage("问题:" + question + "\n\n知识库片段:\n" + context);
@@ -132,6 +141,10 @@ public class KnowledgeServiceImpl implements IKnowledgeService {
         String answer = null;
         if (withAnswer) {
             AIRequestDTO req = AIRequestDTO.builder()
+                    // 基于检索片段作答，低温度保证答案稳定，同问题同片段可命中响应缓存
+                    .temperature(RAG_ANSWER_TEMPERATURE)
+                    // 请求用户，AI调用调度按用户公平排队
+                    .userId(jwtUtil.getCurrentUserId())
                     .build()
                     .addSystemMessage("你是心理健康领域的知识助手。请严格依据提供的知识库片段回答用户问题。若片段不足以回答，请明确说明'信息不足'，并给出建议的检索方向。输出包含：简洁回答 + 参考片段标题列表。")
                     .addUserMessage("问题：" + question + "\n\n知识库片段：\n" + context);
@@ -37,5 +37,7 @@ public class NutritionReport {
     
     private String aiAdvice; // AI建议
     
+    private Integer aiAdviceStatus; // AI建议状态 0-无 1-AI生成 2-规则建议待AI重新生成
+    
     private LocalDateTime createdAt;
 }
@@ -29,6 +29,20 @@ public interface NutritionReportMapper {
      */
     int updateById(NutritionReport report);
     
+    /**
+     * 仅当AI建议状态仍为 expectedStatus 时更新建议（避免覆盖期间用户手动重新生成的结果）
+     */
+    int updateAdviceIfStatus(@Param("id") Long id,
+                             @Param("aiAdvice") String aiAdvice,
+                             @Param("aiAdviceStatus") Integer aiAdviceStatus,
+                             @Param("expectedStatus") Integer expectedStatus);
+    
+    /**
+     * 按AI建议状态查询报告（按ID从旧到新）
+     */
+    List<NutritionReport> selectByAdviceStatus(@Param("aiAdviceStatus") Integer aiAdviceStatus,
+                                               @Param("limit") Integer limit);
+    
     /**
      * 删除报告
      */
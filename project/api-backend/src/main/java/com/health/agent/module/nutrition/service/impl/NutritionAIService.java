@@ -1,66 +1,219 @@
 package com.health.agent.module.nutrition.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import com.health.agent.common.api.ResultCode;
+import com.health.agent.common.constant.CommonConstant;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
 import com.health.agent.module.ai.client.AIClient;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.limit.AIPriority;
+import com.health.agent.module.ai.limit.AIWorkload;
+import com.health.agent.module.ai.limit.CircuitBreaker;
 import com.health.agent.module.nutrition.entity.NutritionReport;
-import lombok.RequiredArgsConstructor;
+import com.health.agent.module.nutrition.mapper.NutritionReportMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
- * 营养AI服务包装器
+ * 营养报告建议服务
+ * AI调用经过熔断器（ai.advice.breaker）：
+ * - 熔断器打开、AI调用失败或被限流时，立即返回 {@link NutritionAdviceTemplate} 生成的规则建议，并把报告标记为待重新生成
+ * - 生成报告和手动重新生成时用户在等待，使用文本对话隔离舱（chat）
+ * - 后台任务定期扫描待重新生成的报告，熔断器放行时逐个调用AI替换规则建议，遇到失败即停止本轮；
+ *   使用后台隔离舱（background），定时触发后整批在 aiBackgroundExecutor 中执行，不占用定时任务线程，同一时间只执行一批
+ * 本类只生成建议，不在事务中调用AI
  * <p>
- * 说明：项目当前可能没有真实的 AIClient Bean（例如腾讯混元等）。
- * - 我们通过可选注入 `AIClient`（`@Autowired(required = false)`）来支持真正的 AI 服务。
- * - 当 `aiClient` 为 null 或 AI 调用失败时，使用本地的 "假" 建议生成器返回占位文本。
- * - 后续替换真实AI时，只需确保有 `AIClient` 的实现类被 Spring 注册为 Bean（例如 `TencentHunyuanClient`），本类会自动调用真实接口。
+ * 指标：ai.advice{outcome=success|failed|throttled|rejected}、ai.advice.regenerated
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class NutritionAIService {
 
-    @Autowired(required = false)
-    private AIClient aiClient; // 如果项目中存在真实的 AIClient 实现，会被注入
+    private static final String ADVICE_PROMPT = """
+            你是一位专业的营养师。请根据用户的营养报告数据给出个性化饮食建议：
+            1. 先用一两句话总体评价
+            2. 指出热量和三大营养素中最需要改进的问题
+            3. 给出 3 条具体、可执行的饮食建议
+            回答控制在 300 字以内，不要使用 Markdown 标题。""";
+
+    private final AIClient aiClient;
+    private final AIConfig aiConfig;
+    private final NutritionAdviceTemplate adviceTemplate;
+    private final NutritionReportMapper nutritionReportMapper;
+    private final MeterRegistry meterRegistry;
+    private final Executor executor;
+    private final CircuitBreaker breaker;
+    private final Counter regenerated;
+    private final AtomicBoolean regenerating = new AtomicBoolean();
+
+    public NutritionAIService(AIClient aiClient,
+                              AIConfig aiConfig,
+                              NutritionAdviceTemplate adviceTemplate,
+                              NutritionReportMapper nutritionReportMapper,
+                              @Qualifier("aiBackgroundExecutor") Executor executor,
+                              MeterRegistry meterRegistry) {
+        this.aiClient = aiClient;
+        this.aiConfig = aiConfig;
+        this.adviceTemplate = adviceTemplate;
+        this.nutritionReportMapper = nutritionReportMapper;
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        this.breaker = new CircuitBreaker("nutrition-advice", aiConfig.getAdvice().getBreaker(), meterRegistry);
+        this.regenerated = Counter.builder("ai.advice.regenerated")
+                .description("后台由规则建议重新生成为AI建议的报告数").register(meterRegistry);
+    }
 
     /**
-     * 生成 AI 建议字符串（同步）。
-     * 如果存在 `aiClient` 会调用真实 AI，否则返回本地伪造建议。
+     * 为报告填充建议（设置 aiAdvice 和 aiAdviceStatus，不写库）
+     * AI不可用时使用规则建议并标记为待重新生成
+     *
+     * @param priority 调度优先级：生成报告和手动重新生成时用户在等待，为准实时
      */
-    public String generateAIAdvice(NutritionReport report) {
-        // 如果没有注入真实 AI 客户端，返回简单的占位建议（开发/测试阶段用）
-        if (aiClient == null) {
-            log.info("未检测到 AIClient 实现，使用本地假建议返回（用于开发/测试）。");
-            return buildFakeAdvice(report);
+    public void fillAdvice(NutritionReport report, AIPriority priority) {
+        String advice = requestAIAdvice(report, AIWorkload.CHAT, priority);
+        if (advice != null) {
+            report.setAiAdvice(advice);
+            report.setAiAdviceStatus(CommonConstant.ADVICE_STATUS_AI);
+        } else {
+            report.setAiAdvice(adviceTemplate.render(report, true));
+            report.setAiAdviceStatus(CommonConstant.ADVICE_STATUS_RULE_PENDING);
         }
+    }
 
-        // 若有真实 aiClient，可在此构建 AIRequestDTO 并调用 aiClient.chat(...)
-        // TODO: 后续将此处替换为调用具体 AI 接口的实现。
+    /**
+     * 后台重新生成规则建议：按ID从旧到新处理，熔断器拒绝或调用失败时停止本轮
+     * 只在报告仍处于待重新生成状态时写入，期间被用户手动重新生成的报告不会被覆盖
+     */
+    @Scheduled(initialDelayString = "${ai.advice.regenerate-interval-millis:60000}",
+            fixedDelayString = "${ai.advice.regenerate-interval-millis:60000}")
+    public void regeneratePending() {
+        if (!breaker.isCallPermitted() || !regenerating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    regenerateBatch();
+                } finally {
+                    regenerating.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            regenerating.set(false);
+            log.warn("后台任务队列已满，跳过本次建议重新生成");
+        }
+    }
+
+    /**
+     * 重新生成一批待更新的建议（在后台线程池中执行）
+     */
+    private void regenerateBatch() {
+        List<NutritionReport> pending;
         try {
-            // 伪代码：
-            // AIRequestDTO req = AIRequestDTO.builder() ...
-            // AIResponseDTO resp = aiClient.chat(req);
-            // if (resp.getSuccess()) return resp.getContent();
-            // else return "AI调用失败: " + resp.getErrorMessage();
+            pending = nutritionReportMapper.selectByAdviceStatus(CommonConstant.ADVICE_STATUS_RULE_PENDING,
+                    aiConfig.getAdvice().getRegenerateBatchSize());
+        } catch (Exception e) {
+            log.warn("查询待重新生成建议的报告失败: {}", e.getMessage());
+            return;
+        }
 
-            // 目前仍返回本地占位——以防真实AI返回异常
-            return buildFakeAdvice(report);
+        for (NutritionReport report : pending) {
+            String advice = requestAIAdvice(report, AIWorkload.BACKGROUND, AIPriority.BACKGROUND);
+            if (advice == null) {
+                log.info("AI建议暂不可用，本轮停止重新生成，剩余: {}", pending.size() - pending.indexOf(report));
+                return;
+            }
+            int updated = nutritionReportMapper.updateAdviceIfStatus(report.getId(), advice,
+                    CommonConstant.ADVICE_STATUS_AI, CommonConstant.ADVICE_STATUS_RULE_PENDING);
+            if (updated > 0) {
+                regenerated.increment();
+                log.info("报告AI建议已重新生成，reportId: {}", report.getId());
+            }
+        }
+    }
+
+    /**
+     * 经熔断器调用AI生成建议
+     *
+     * @return 熔断器拒绝、调用失败或被限流时返回 null
+     */
+    private String requestAIAdvice(NutritionReport report, AIWorkload workload, AIPriority priority) {
+        if (!breaker.tryAcquire()) {
+            outcome("rejected");
+            return null;
+        }
+
+        long start = System.nanoTime();
+        try {
+            AIResponseDTO response = aiClient.chat(buildRequest(report, workload, priority));
+            if (!Boolean.TRUE.equals(response.getSuccess()) || StrUtil.isBlank(response.getContent())) {
+                breaker.onFailure();
+                outcome("failed");
+                log.warn("生成AI建议失败，reportId: {}, error: {}", report.getId(), response.getErrorMessage());
+                return null;
+            }
+            breaker.onSuccess(System.nanoTime() - start);
+            outcome("success");
+            return response.getContent().trim();
+        } catch (BusinessException e) {
+            if (e.getCode() == ResultCode.TOO_MANY_REQUESTS.getCode()) {
+                // 本地排队或并发限制拒绝，上游并未出错，不计入熔断器
+                breaker.release();
+                outcome("throttled");
+                log.info("生成AI建议被限流，reportId: {}", report.getId());
+                return null;
+            }
+            breaker.onFailure();
+            outcome("failed");
+            log.warn("生成AI建议失败，reportId: {}: {}", report.getId(), e.getMessage());
+            return null;
         } catch (Exception e) {
-            log.error("调用 AIClient 失败，返回本地假建议", e);
-            return buildFakeAdvice(report);
+            breaker.onFailure();
+            outcome("failed");
+            log.warn("生成AI建议异常，reportId: {}: {}", report.getId(), e.getMessage());
+            return null;
         }
     }
 
-    private String buildFakeAdvice(NutritionReport report) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[示例AI建议]\n");
-        sb.append("日期: ").append(report.getReportDate()).append("\n");
-        sb.append("总体建议: 建议保持均衡摄入, 尝试更多蔬菜和优质蛋白。\n");
-        sb.append("热量: ").append(report.getTotalCalories()).append(" kcal；");
-        sb.append("蛋白质: ").append(report.getTotalProtein()).append(" g；");
-        sb.append("碳水: ").append(report.getTotalCarbohydrate()).append(" g；\n");
-        sb.append("建议: 控制高脂/高糖食物, 每餐配蔬菜, 每周增加2次中等强度运动。\n");
-        sb.append("注: 以上建议为示例文本，生产环境请接入真实AI服务以获得个性化建议。\n");
-        return sb.toString();
+    private AIRequestDTO buildRequest(NutritionReport report, AIWorkload workload, AIPriority priority) {
+        AIConfig.Advice config = aiConfig.getAdvice();
+        AIRequestDTO request = AIRequestDTO.builder()
+                .model(aiConfig.getModel())
+                .userId(report.getUserId())
+                .maxTokens(config.getMaxTokens())
+                .temperature(config.getTemperature())
+                .workload(workload)
+                .priority(priority)
+                .cacheable(false)
+                .build();
+        request.addSystemMessage(ADVICE_PROMPT);
+        request.addUserMessage("报告类型：" + report.getReportType() + "，报告日期：" + report.getReportDate() + "\n"
+                + "日均热量：" + report.getTotalCalories() + " kcal（目标 2000 kcal）\n"
+                + "日均蛋白质：" + report.getTotalProtein() + " g，碳水化合物：" + report.getTotalCarbohydrate()
+                + " g，脂肪：" + report.getTotalFat() + " g\n"
+                + "营养均衡评分：" + report.getNutritionBalanceScore() + "，热量达标率：" + report.getGoalCompletionRate() + "%");
+        return request;
+    }
+
+    private void outcome(String outcome) {
+        Counter.builder("ai.advice")
+                .description("营养报告AI建议调用次数")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
     }
 }
@@ -0,0 +1,194 @@
+package com.health.agent.module.nutrition.service.impl;
+
+import com.health.agent.module.nutrition.entity.NutritionReport;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 规则营养建议模板
+ * AI服务不可用时，根据报告的热量和三大营养素生成建议：
+ * - 先由报告计算出指标（日均摄入、相对目标的百分比、三大营养素供能比等）
+ * - 规则按顺序匹配，每条规则属于一个段落，命中的规则模板中的 ${变量} 用指标替换
+ * 目标值与报告详情页展示的推荐值一致，供能比范围与营养评分使用的范围一致
+ */
+@Component
+public class NutritionAdviceTemplate {
+
+    private static final double TARGET_CALORIES = 2000;
+    private static final double TARGET_PROTEIN = 60;
+    private static final double TARGET_FAT = 65;
+    private static final double TARGET_CARBOHYDRATE = 275;
+
+    private static final Pattern VARIABLE = Pattern.compile("\\$\\{(\\w+)}");
+
+    private static final String SECTION_OVERALL = "总体评价";
+    private static final String SECTION_CALORIES = "热量";
+    private static final String SECTION_MACROS = "营养素";
+    private static final String SECTION_ACTIONS = "建议";
+
+    private static final String NO_DATA = "【总体评价】${period}内没有饮食记录，无法评估营养摄入，建议坚持记录每餐饮食。";
+
+    private static final String PENDING_NOTE = "（以上建议根据营养数据自动生成，AI服务恢复后将更新为个性化建议）";
+
+    private static final List<Rule> RULES = List.of(
+            new Rule(SECTION_OVERALL, f -> f.score >= 80,
+                    "${period}营养均衡评分 ${score} 分，整体饮食结构良好，继续保持。"),
+            new Rule(SECTION_OVERALL, f -> f.score >= 60 && f.score < 80,
+                    "${period}营养均衡评分 ${score} 分，饮食结构基本合理，仍有改进空间。"),
+            new Rule(SECTION_OVERALL, f -> f.score < 60,
+                    "${period}营养均衡评分 ${score} 分，饮食结构需要调整，请优先关注下面列出的问题。"),
+
+            new Rule(SECTION_CALORIES, f -> f.caloriesPercent < 90,
+                    "日均热量 ${calories} kcal，仅为目标 ${targetCalories} kcal 的 ${caloriesPercent}%，"
+                            + "长期摄入不足可能导致乏力和肌肉流失，可适当增加主食和优质蛋白。"),
+            new Rule(SECTION_CALORIES, f -> f.caloriesPercent > 110,
+                    "日均热量 ${calories} kcal，达到目标 ${targetCalories} kcal 的 ${caloriesPercent}%，"
+                            + "建议减少油炸食品、含糖饮料和零食。"),
+            new Rule(SECTION_CALORIES, f -> f.caloriesPercent >= 90 && f.caloriesPercent <= 110,
+                    "日均热量 ${calories} kcal，接近目标 ${targetCalories} kcal，控制得很好。"),
+
+            new Rule(SECTION_MACROS, f -> f.proteinRatio < 15,
+                    "蛋白质供能占比 ${proteinRatio}%（建议 15%-25%），日均 ${protein} g，偏低，可增加鱼虾、蛋类、豆制品和瘦肉。"),
+            new Rule(SECTION_MACROS, f -> f.proteinRatio > 25,
+                    "蛋白质供能占比 ${proteinRatio}%（建议 15%-25%），偏高，注意搭配足量蔬菜和全谷物。"),
+            new Rule(SECTION_MACROS, f -> f.carbRatio < 50,
+                    "碳水供能占比 ${carbRatio}%（建议 50%-65%），日均 ${carbohydrate} g，偏低，可适量增加全谷物、薯类等主食。"),
+            new Rule(SECTION_MACROS, f -> f.carbRatio > 65,
+                    "碳水供能占比 ${carbRatio}%（建议 50%-65%），偏高，建议用粗粮替代部分精米白面，减少甜食。"),
+            new Rule(SECTION_MACROS, f -> f.fatRatio < 20,
+                    "脂肪供能占比 ${fatRatio}%（建议 20%-30%），偏低，可适量摄入坚果、橄榄油等优质脂肪。"),
+            new Rule(SECTION_MACROS, f -> f.fatRatio > 30,
+                    "脂肪供能占比 ${fatRatio}%（建议 20%-30%），日均 ${fat} g，偏高，建议少油烹饪，减少肥肉、油炸和加工肉制品。"),
+            new Rule(SECTION_MACROS, Facts::macrosBalanced,
+                    "三大营养素供能比例均衡：蛋白质 ${proteinRatio}%、碳水 ${carbRatio}%、脂肪 ${fatRatio}%。"),
+
+            new Rule(SECTION_ACTIONS, f -> f.goalRate < 50,
+                    "热量达标率 ${goalRate}%，建议提前规划每日餐食，让每天的摄入更稳定。"),
+            new Rule(SECTION_ACTIONS, f -> true,
+                    "每餐搭配蔬菜，保证充足饮水，每周进行 3 次以上中等强度运动。")
+    );
+
+    /**
+     * 生成规则建议
+     *
+     * @param report  营养报告（使用其中的日均摄入、评分和达标率）
+     * @param pending 是否为AI不可用时的临时建议（末尾附加说明）
+     */
+    public String render(NutritionReport report, boolean pending) {
+        Facts facts = Facts.of(report);
+        Map<String, String> variables = facts.variables(report);
+
+        StringBuilder advice = new StringBuilder();
+        if (facts.calories <= 0) {
+            advice.append(substitute(NO_DATA, variables));
+        } else {
+            Map<String, StringBuilder> sections = new LinkedHashMap<>();
+            for (Rule rule : RULES) {
+                if (rule.when().test(facts)) {
+                    sections.computeIfAbsent(rule.section(), key -> new StringBuilder())
+                            .append(substitute(rule.template(), variables));
+                }
+            }
+            sections.forEach((section, text) -> {
+                if (!advice.isEmpty()) {
+                    advice.append('\n');
+                }
+                advice.append('【').append(section).append('】').append(text);
+            });
+        }
+        if (pending) {
+            advice.append('\n').append(PENDING_NOTE);
+        }
+        return advice.toString();
+    }
+
+    private static String substitute(String template, Map<String, String> variables) {
+        Matcher matcher = VARIABLE.matcher(template);
+        StringBuilder out = new StringBuilder();
+        while (matcher.find()) {
+            matcher.appendReplacement(out, Matcher.quoteReplacement(variables.getOrDefault(matcher.group(1), "")));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    private record Rule(String section, Predicate<Facts> when, String template) {
+    }
+
+    /**
+     * 规则使用的指标，比例均为百分数
+     */
+    private record Facts(double calories, double protein, double carbohydrate, double fat,
+                         double caloriesPercent, double proteinRatio, double carbRatio, double fatRatio,
+                         int score, double goalRate) {
+
+        static Facts of(NutritionReport report) {
+            double calories = value(report.getTotalCalories());
+            double protein = value(report.getTotalProtein());
+            double carbohydrate = value(report.getTotalCarbohydrate());
+            double fat = value(report.getTotalFat());
+            // 按每克蛋白质、碳水 4 kcal，脂肪 9 kcal 计算供能比
+            double energy = protein * 4 + carbohydrate * 4 + fat * 9;
+            return new Facts(calories, protein, carbohydrate, fat,
+                    calories * 100 / TARGET_CALORIES,
+                    energy > 0 ? protein * 4 * 100 / energy : 0,
+                    energy > 0 ? carbohydrate * 4 * 100 / energy : 0,
+                    energy > 0 ? fat * 9 * 100 / energy : 0,
+                    report.getNutritionBalanceScore() != null ? report.getNutritionBalanceScore() : 60,
+                    report.getGoalCompletionRate() != null ? report.getGoalCompletionRate().doubleValue() : 100);
+        }
+
+        boolean macrosBalanced() {
+            return proteinRatio >= 15 && proteinRatio <= 25
+                    && carbRatio >= 50 && carbRatio <= 65
+                    && fatRatio >= 20 && fatRatio <= 30;
+        }
+
+        Map<String, String> variables(NutritionReport report) {
+            Map<String, String> variables = new HashMap<>();
+            variables.put("period", periodOf(report.getReportType()));
+            variables.put("score", String.valueOf(score));
+            variables.put("calories", format(calories, 0));
+            variables.put("protein", format(protein, 1));
+            variables.put("carbohydrate", format(carbohydrate, 1));
+            variables.put("fat", format(fat, 1));
+            variables.put("targetCalories", format(TARGET_CALORIES, 0));
+            variables.put("targetProtein", format(TARGET_PROTEIN, 0));
+            variables.put("targetFat", format(TARGET_FAT, 0));
+            variables.put("targetCarbohydrate", format(TARGET_CARBOHYDRATE, 0));
+            variables.put("caloriesPercent", format(caloriesPercent, 0));
+            variables.put("proteinRatio", format(proteinRatio, 0));
+            variables.put("carbRatio", format(carbRatio, 0));
+            variables.put("fatRatio", format(fatRatio, 0));
+            variables.put("goalRate", format(goalRate, 0));
+            return variables;
+        }
+
+        private static String periodOf(String reportType) {
+            String type = reportType == null ? "" : reportType.toUpperCase();
+            return switch (type) {
+                case "WEEK", "WEEKLY" -> "本周";
+                case "MONTH", "MONTHLY" -> "本月";
+                case "QUARTER" -> "本季度";
+                default -> "当日";
+            };
+        }
+
+        private static double value(BigDecimal value) {
+            return value != null ? value.doubleValue() : 0;
+        }
+
+        private static String format(double value, int scale) {
+            return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP).toPlainString();
+        }
+    }
+}
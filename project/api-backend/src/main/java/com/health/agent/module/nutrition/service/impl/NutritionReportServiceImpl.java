@@ -1,7 +1,10 @@
 package com.health.agent.module.nutrition.service.impl;
 
+import com.health.agent.common.constant.CommonConstant;
 import com.health.agent.common.exception.BusinessException;
-import com.health.agent.module.diet.mapper.DietDiaryMapper;
+import com.health.agent.module.ai.limit.AIPriority;
+import com.health.agent.module.diet.entity.DietDailySummary;
+import com.health.agent.module.diet.mapper.DietDailySummaryMapper;
 import com.health.agent.module.nutrition.dto.GenerateReportDTO;
 import com.health.agent.module.nutrition.dto.ReportQueryDTO;
 import com.health.agent.module.nutrition.entity.NutritionReport;
@@ -9,7 +12,6 @@ import com.health.agent.module.nutrition.mapper.NutritionReportMapper;
 import com.health.agent.module.nutrition.service.INutritionReportService;
 import com.health.agent.module.nutrition.vo.NutritionReportVO;
 import com.health.agent.module.nutrition.vo.NutritionTrendVO;
-import com.health.agent.module.diet.vo.DietDiaryVO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -31,12 +33,15 @@ import java.util.stream.Collectors;
 public class NutritionReportServiceImpl implements INutritionReportService {
 
     private final NutritionReportMapper nutritionReportMapper;
-    private final DietDiaryMapper dietDiaryMapper;
+    private final DietDailySummaryMapper dietDailySummaryMapper;
     private final NutritionAIService nutritionAIService;
     private final com.health.agent.module.weight.service.IWeightRecordService weightRecordService;
 
+    /**
+     * 生成报告
+     * 不加事务：AI建议在插入前生成，慢调用不占用数据库连接；报告只有一次插入
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Long generateReport(Long userId, GenerateReportDTO dto) {
         // 兼容旧版本参数
         LocalDate startDate = dto.getStartDate() != null ? dto.getStartDate() : dto.getReportDate();
@@ -51,23 +56,20 @@ public class NutritionReportServiceImpl implements INutritionReportService {
             throw new BusinessException("报告周期不能为空");
         }
 
-        // 统计日期范围内的营养摄入
-        List<DietDiaryVO> diaryList = dietDiaryMapper.selectByUserAndDateRange(userId, startDate, endDate);
+        // 统计日期范围内的营养摄入（每日饮食汇总，每个有记录的日期一行）
+        List<DietDailySummary> dailyTotals = dietDailySummaryMapper.selectDailyTotals(userId, startDate, endDate);
         
         BigDecimal totalCalories = BigDecimal.ZERO;
         BigDecimal totalProtein = BigDecimal.ZERO;
         BigDecimal totalCarb = BigDecimal.ZERO;
         BigDecimal totalFat = BigDecimal.ZERO;
-        int daysWithData = 0;
+        int daysWithData = dailyTotals.size();
         
-        if (diaryList != null && !diaryList.isEmpty()) {
-            for (DietDiaryVO diary : diaryList) {
-                if (diary.getCalories() != null) totalCalories = totalCalories.add(diary.getCalories());
-                if (diary.getProtein() != null) totalProtein = totalProtein.add(diary.getProtein());
-                if (diary.getCarbohydrate() != null) totalCarb = totalCarb.add(diary.getCarbohydrate());
-                if (diary.getFat() != null) totalFat = totalFat.add(diary.getFat());
-                daysWithData++;
-            }
+        for (DietDailySummary day : dailyTotals) {
+            totalCalories = totalCalories.add(day.getCalories());
+            totalProtein = totalProtein.add(day.getProtein());
+            totalCarb = totalCarb.add(day.getCarbohydrate());
+            totalFat = totalFat.add(day.getFat());
         }
         
         // 计算平均值
@@ -86,14 +88,12 @@ public class NutritionReportServiceImpl implements INutritionReportService {
         BigDecimal minCalories = targetCalories.subtract(caloriesTolerance);
         BigDecimal maxCalories = targetCalories.add(caloriesTolerance);
         
-        // 计算达标天数（基于用户目标热量±10%）
+        // 计算达标天数（当天总热量在用户目标热量±10%内）
         int compliantDays = 0;
-        if (diaryList != null) {
-            for (DietDiaryVO diary : diaryList) {
-                BigDecimal cal = diary.getCalories() != null ? diary.getCalories() : BigDecimal.ZERO;
-                if (cal.compareTo(minCalories) >= 0 && cal.compareTo(maxCalories) <= 0) {
-                    compliantDays++;
-                }
+        for (DietDailySummary day : dailyTotals) {
+            BigDecimal cal = day.getCalories();
+            if (cal.compareTo(minCalories) >= 0 && cal.compareTo(maxCalories) <= 0) {
+                compliantDays++;
             }
         }
 
@@ -111,20 +111,14 @@ public class NutritionReportServiceImpl implements INutritionReportService {
         report.setNutritionBalanceScore(nutritionScore);
         report.setCreatedAt(LocalDateTime.now());
 
-        nutritionReportMapper.insert(report);
-
-        // 生成 AI 建议（可选）
+        // 生成 AI 建议（可选），AI不可用时为规则建议，由后台任务重新生成
         if (useAI) {
-            try {
-                String advice = nutritionAIService.generateAIAdvice(report);
-                report.setAiAdvice(advice);
-                nutritionReportMapper.updateById(report);
-            } catch (Exception e) {
-                log.warn("生成AI建议失败: {}", e.getMessage());
-                // AI失败不影响报告生成
-            }
+            nutritionAIService.fillAdvice(report, AIPriority.NEAR_REAL_TIME);
+        } else {
+            report.setAiAdviceStatus(CommonConstant.ADVICE_STATUS_NONE);
         }
 
+        nutritionReportMapper.insert(report);
         return report.getId();
     }
     
@@ -245,15 +239,18 @@ public class NutritionReportServiceImpl implements INutritionReportService {
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void regenerateAIAdvice(Long userId, Long reportId) {
         NutritionReport r = nutritionReportMapper.selectById(reportId);
         if (r == null) throw new BusinessException("报告不存在");
         if (!r.getUserId().equals(userId)) throw new BusinessException("无权限操作此报告");
 
-        String advice = nutritionAIService.generateAIAdvice(r);
-        r.setAiAdvice(advice);
-        nutritionReportMapper.updateById(r);
+        // 不在事务中调用AI，只更新建议相关字段
+        nutritionAIService.fillAdvice(r, AIPriority.NEAR_REAL_TIME);
+        NutritionReport update = new NutritionReport();
+        update.setId(r.getId());
+        update.setAiAdvice(r.getAiAdvice());
+        update.setAiAdviceStatus(r.getAiAdviceStatus());
+        nutritionReportMapper.updateById(update);
     }
 
     private NutritionReportVO toVO(NutritionReport r) {
@@ -288,6 +285,7 @@ public class NutritionReportServiceImpl implements INutritionReportService {
         vo.setGoalCompletionRate(r.getGoalCompletionRate());
         vo.setNutritionBalanceScore(r.getNutritionBalanceScore());
         vo.setAiAdvice(r.getAiAdvice());
+        vo.setAiAdviceStatus(r.getAiAdviceStatus());
         vo.setCreatedAt(r.getCreatedAt());
 
         // 尝试设置报告期起止日期与总天数（便于前端请求趋势数据）
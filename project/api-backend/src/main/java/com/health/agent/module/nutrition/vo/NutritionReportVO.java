@@ -52,6 +52,8 @@ public class NutritionReportVO {
     
     private String aiAdvice; // AI建议
     
+    private Integer aiAdviceStatus; // AI建议状态 0-无 1-AI生成 2-规则建议待AI重新生成
+    
     private NutritionDetail nutritionDetail; // 营养详情
 
     // 体重相关（基于报告时间范围动态计算，不一定持久化）
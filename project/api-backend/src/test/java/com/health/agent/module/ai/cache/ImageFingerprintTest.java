@@ -0,0 +1,97 @@
+package com.health.agent.module.ai.cache;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 图片指纹测试：内容哈希精确匹配，差值哈希容忍重新编码与缩放
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class ImageFingerprintTest {
+
+    @Test
+    void sameBytesHaveSameFingerprint() throws IOException {
+        byte[] png = encode(gradient(64, 64, false), "png");
+        ImageFingerprint a = ImageFingerprint.of(png);
+        ImageFingerprint b = ImageFingerprint.of(png.clone());
+        assertEquals(a.getSha256(), b.getSha256());
+        assertEquals(a.getDHash(), b.getDHash());
+        assertEquals(16, a.dHashHex().length());
+    }
+
+    @Test
+    void reEncodedAndResizedImageIsNearDuplicate() throws IOException {
+        ImageFingerprint original = ImageFingerprint.of(encode(gradient(64, 64, false), "png"));
+        ImageFingerprint resized = ImageFingerprint.of(encode(gradient(96, 96, false), "jpg"));
+
+        assertNotEquals(original.getSha256(), resized.getSha256());
+        assertTrue(ImageFingerprint.hammingDistance(original.getDHash(), resized.getDHash()) <= 6);
+    }
+
+    @Test
+    void differentImageIsFarApart() throws IOException {
+        ImageFingerprint a = ImageFingerprint.of(encode(gradient(64, 64, false), "png"));
+        ImageFingerprint b = ImageFingerprint.of(encode(gradient(64, 64, true), "png"));
+        assertTrue(ImageFingerprint.hammingDistance(a.getDHash(), b.getDHash()) > 32);
+    }
+
+    @Test
+    void acceptsDataUrlPrefix() throws IOException {
+        byte[] png = encode(gradient(32, 32, false), "png");
+        String base64 = Base64.getEncoder().encodeToString(png);
+        ImageFingerprint plain = ImageFingerprint.ofBase64(base64);
+        ImageFingerprint dataUrl = ImageFingerprint.ofBase64("data:image/png;base64," + base64);
+        assertNotNull(plain);
+        assertEquals(plain.getSha256(), dataUrl.getSha256());
+    }
+
+    @Test
+    void undecodableDataHasNoDHash() {
+        assertNull(ImageFingerprint.ofBase64(null));
+        assertNull(ImageFingerprint.ofBase64("   "));
+        assertNull(ImageFingerprint.ofBase64("data:image/png;base64,a"));
+
+        ImageFingerprint text = ImageFingerprint.of("not an image".getBytes(StandardCharsets.UTF_8));
+        assertNotNull(text.getSha256());
+        assertNull(text.getDHash());
+        assertNull(text.dHashHex());
+    }
+
+    /**
+     * 水平亮度渐变，reversed 为 true 时方向相反
+     */
+    private static BufferedImage gradient(int width, int height, boolean reversed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        for (int x = 0; x < width; x++) {
+            int level = 255 * x / (width - 1);
+            int v = reversed ? level : 255 - level;
+            g.setColor(new Color(v, v, v));
+            g.drawLine(x, 0, x, height - 1);
+        }
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,136 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.limit.AIWorkload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 并发隔离舱装饰器的失败分类测试：只有超时、429 和 5xx 才收缩并发上限
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class ConcurrencyLimitingAIClientTest {
+
+    private AIClient delegate;
+    private ConcurrencyLimitingAIClient client;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(AIClient.class);
+        AIConfig.Limiter config = new AIConfig.Limiter();
+        config.setBackoffRatio(0.5);
+        config.setChat(new AIConfig.Bulkhead(10, 1, 20, 0L));
+        config.setVision(new AIConfig.Bulkhead(10, 1, 20, 0L));
+        client = new ConcurrencyLimitingAIClient(delegate, config, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void timeoutShrinksLimit() {
+        when(delegate.chat(any())).thenThrow(new RuntimeException("腾讯混元API调用失败",
+                new ResourceAccessException("I/O error", new SocketTimeoutException("Read timed out"))));
+        assertThrows(RuntimeException.class, () -> client.chat(new AIRequestDTO()));
+        assertEquals(5, client.getLimit(AIWorkload.CHAT));
+    }
+
+    @Test
+    void serverErrorAndTooManyRequestsShrinkLimit() {
+        when(delegate.chat(any()))
+                .thenThrow(new RuntimeException("w", HttpServerErrorException.create(
+                        HttpStatus.BAD_GATEWAY, "", null, null, null)))
+                .thenThrow(new RuntimeException("HTTP请求失败，状态码: 429 TOO_MANY_REQUESTS"));
+        assertThrows(RuntimeException.class, () -> client.chat(new AIRequestDTO()));
+        assertThrows(RuntimeException.class, () -> client.chat(new AIRequestDTO()));
+        assertEquals(2, client.getLimit(AIWorkload.CHAT));
+    }
+
+    @Test
+    void clientErrorDoesNotShrinkLimit() {
+        when(delegate.chat(any())).thenThrow(new RuntimeException("w", HttpClientErrorException.create(
+                HttpStatus.BAD_REQUEST, "", null, null, null)));
+        assertThrows(RuntimeException.class, () -> client.chat(new AIRequestDTO()));
+        assertEquals(10, client.getLimit(AIWorkload.CHAT));
+    }
+
+    @Test
+    void streamCancellationReleasesWithoutShrinkingLimit() {
+        doAnswer(invocation -> {
+            AIClient.StreamCallback callback = invocation.getArgument(1);
+            callback.onError(new CancellationException("client disconnected"));
+            return null;
+        }).when(delegate).chatStream(any(), any());
+
+        boolean[] errored = new boolean[1];
+        client.chatStream(new AIRequestDTO(), new AIClient.StreamCallback() {
+            @Override
+            public void onMessage(String content) {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                errored[0] = true;
+            }
+        });
+
+        assertTrue(errored[0]);
+        assertEquals(10, client.getLimit(AIWorkload.CHAT));
+
+        // 许可已归还：再发起上限个不结束的流式调用都不会被拒绝
+        doAnswer(invocation -> null).when(delegate).chatStream(any(), any());
+        int[] rejected = new int[1];
+        for (int i = 0; i < 10; i++) {
+            client.chatStream(new AIRequestDTO(), new AIClient.StreamCallback() {
+                @Override
+                public void onMessage(String content) {
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    rejected[0]++;
+                }
+            });
+        }
+        assertEquals(0, rejected[0]);
+    }
+
+    @Test
+    void failedVisionResponseCausedByServerErrorShrinksLimit() {
+        when(delegate.analyzeFoodImage(any())).thenReturn(FoodAnalysisResponseDTO.builder()
+                .success(false).errorMessage("食物图片分析失败")
+                .failureCause(new RuntimeException("图片分析失败", HttpServerErrorException.create(
+                        HttpStatus.SERVICE_UNAVAILABLE, "", null, null, null)))
+                .build());
+        client.analyzeFoodImage(new FoodAnalysisRequestDTO());
+        assertEquals(5, client.getLimit(AIWorkload.VISION));
+    }
+
+    @Test
+    void failedVisionResponseCountsAsSuccess() {
+        when(delegate.analyzeFoodImage(any())).thenReturn(FoodAnalysisResponseDTO.builder()
+                .success(false).errorMessage("无法识别").build());
+        FoodAnalysisResponseDTO response = client.analyzeFoodImage(new FoodAnalysisRequestDTO());
+        assertFalse(response.getSuccess());
+        assertEquals(10, client.getLimit(AIWorkload.VISION));
+    }
+}
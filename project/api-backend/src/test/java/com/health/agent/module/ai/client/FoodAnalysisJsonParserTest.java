@@ -0,0 +1,104 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 食物分析JSON解析与校验测试
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class FoodAnalysisJsonParserTest {
+
+    private static final String VALID = """
+            {"food": {"name": "苹果", "category": "水果", "calories": 52, "protein": 0.3, "fat": 0.2,
+              "carbohydrate": 13.8, "unit": "100克", "suggestedPortion": "1个", "advice": "适量食用"},
+             "nutritionAnalysis": "低热量，富含膳食纤维"}
+            """;
+
+    @Test
+    void parsesAllFields() {
+        FoodAnalysisJsonParser.Result result = FoodAnalysisJsonParser.parse(VALID);
+        FoodAnalysisResponseDTO.FoodInfo food = result.getFoodInfo();
+        assertEquals("苹果", food.getName());
+        assertEquals("水果", food.getCategory());
+        assertEquals(52.0, food.getCalories());
+        assertEquals(0.3, food.getProtein());
+        assertEquals(0.2, food.getFat());
+        assertEquals(13.8, food.getCarbohydrate());
+        assertEquals("100克", food.getUnit());
+        assertEquals("1个", food.getSuggestedPortion());
+        assertEquals("适量食用", food.getAdvice());
+        assertEquals("低热量，富含膳食纤维", result.getNutritionAnalysis());
+    }
+
+    @Test
+    void stripsMarkdownCodeFence() {
+        FoodAnalysisJsonParser.Result result = FoodAnalysisJsonParser.parse("```json\n" + VALID + "```");
+        assertEquals("苹果", result.getFoodInfo().getName());
+    }
+
+    @Test
+    void readsNumbersWithUnits() {
+        FoodAnalysisJsonParser.Result result = FoodAnalysisJsonParser.parse("""
+                {"food": {"name": "米饭", "calories": "116千卡", "protein": "2.6g", "fat": "0.3 克",
+                  "carbohydrate": 25.9}}
+                """);
+        assertEquals(116.0, result.getFoodInfo().getCalories());
+        assertEquals(2.6, result.getFoodInfo().getProtein());
+        assertEquals(0.3, result.getFoodInfo().getFat());
+        assertNull(result.getNutritionAnalysis());
+    }
+
+    @Test
+    void skipsUnknownFieldsAndNestedValues() {
+        FoodAnalysisJsonParser.Result result = FoodAnalysisJsonParser.parse("""
+                {"confidence": {"score": 0.9, "tags": ["a", "b"]},
+                 "food": {"name": "鸡蛋", "vitamins": {"a": 1}, "calories": 144, "protein": 13.3,
+                   "fat": 8.8, "carbohydrate": 2.8, "advice": ["每天一个"]}}
+                """);
+        assertEquals("鸡蛋", result.getFoodInfo().getName());
+        assertEquals(144.0, result.getFoodInfo().getCalories());
+        assertNull(result.getFoodInfo().getAdvice());
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {"   ", "```json\n```"})
+    void rejectsEmptyOutput(String json) {
+        assertThrows(IllegalArgumentException.class, () -> FoodAnalysisJsonParser.parse(json));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "[1, 2]",
+            "这是一个苹果",
+            "{\"food\": {\"name\": \"苹果\", \"calories\": 52",
+            "{\"nutritionAnalysis\": \"缺少food\"}",
+            "{\"food\": {\"calories\": 52, \"protein\": 0.3, \"fat\": 0.2, \"carbohydrate\": 13.8}}",
+            "{\"food\": {\"name\": \" \", \"calories\": 52, \"protein\": 0.3, \"fat\": 0.2, \"carbohydrate\": 13.8}}"
+    })
+    void rejectsMalformedOrIncompleteOutput(String json) {
+        assertThrows(IllegalArgumentException.class, () -> FoodAnalysisJsonParser.parse(json));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "{\"food\": {\"name\": \"苹果\", \"calories\": 5200, \"protein\": 0.3, \"fat\": 0.2, \"carbohydrate\": 13.8}}",
+            "{\"food\": {\"name\": \"苹果\", \"calories\": 52, \"protein\": -1, \"fat\": 0.2, \"carbohydrate\": 13.8}}",
+            "{\"food\": {\"name\": \"苹果\", \"calories\": 52, \"protein\": 0.3, \"fat\": 120, \"carbohydrate\": 13.8}}",
+            "{\"food\": {\"name\": \"苹果\", \"calories\": 52, \"protein\": 0.3, \"fat\": 0.2}}",
+            "{\"food\": {\"name\": \"苹果\", \"calories\": \"未知\", \"protein\": 0.3, \"fat\": 0.2, \"carbohydrate\": 13.8}}"
+    })
+    void rejectsMissingOrImplausibleNutrients(String json) {
+        assertThrows(IllegalArgumentException.class, () -> FoodAnalysisJsonParser.parse(json));
+    }
+}
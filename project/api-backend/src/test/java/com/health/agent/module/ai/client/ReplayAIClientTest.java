@@ -0,0 +1,92 @@
+package com.health.agent.module.ai.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.mock.AIRecordingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 回放客户端故障注入测试：注入的超时和错误与 RestTemplate 的真实失败类型一致，能被隔离舱识别为拥塞
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class ReplayAIClientTest {
+
+    @TempDir
+    Path tempDir;
+
+    private AIConfig aiConfig;
+    private AIRecordingStore store;
+
+    @BeforeEach
+    void setUp() {
+        aiConfig = new AIConfig();
+        aiConfig.setTimeout(1L);
+        AIConfig.Mock mock = aiConfig.getMock();
+        mock.setSeed(42L);
+        mock.setLatencyMedianMillis(1L);
+        mock.setLatencyP99Millis(1L);
+        // 录制文件不存在时加载 classpath 下的示例录制
+        store = new AIRecordingStore(tempDir.resolve("recordings.jsonl").toString(), new ObjectMapper().findAndRegisterModules());
+    }
+
+    @Test
+    void injectedTimeoutLooksLikeReadTimeout() {
+        aiConfig.getMock().setTimeoutRate(1.0);
+        ReplayAIClient client = new ReplayAIClient(store, aiConfig, new SimpleMeterRegistry());
+
+        ResourceAccessException e = assertThrows(ResourceAccessException.class, () -> client.chat(chatRequest()));
+
+        assertInstanceOf(SocketTimeoutException.class, e.getCause());
+        assertTrue(ConcurrencyLimitingAIClient.isCongestion(e));
+    }
+
+    @Test
+    void injectedErrorIsServerErrorResponse() {
+        aiConfig.getMock().setErrorRate(1.0);
+        ReplayAIClient client = new ReplayAIClient(store, aiConfig, new SimpleMeterRegistry());
+
+        HttpServerErrorException e = assertThrows(HttpServerErrorException.class, () -> client.chat(chatRequest()));
+
+        assertEquals(500, e.getStatusCode().value());
+        assertTrue(ConcurrencyLimitingAIClient.isCongestion(e));
+    }
+
+    @Test
+    void failedVisionResponseCarriesFailureCause() {
+        aiConfig.getMock().setErrorRate(1.0);
+        ReplayAIClient client = new ReplayAIClient(store, aiConfig, new SimpleMeterRegistry());
+
+        FoodAnalysisResponseDTO response = client.analyzeFoodImage(FoodAnalysisRequestDTO.builder()
+                .imageBytes(new byte[]{1, 2, 3})
+                .build());
+
+        assertFalse(response.getSuccess());
+        assertInstanceOf(HttpServerErrorException.class, response.getFailureCause());
+    }
+
+    private AIRequestDTO chatRequest() {
+        return AIRequestDTO.builder()
+                .messages(List.of(AIRequestDTO.Message.builder().role("user").content("今天吃什么").build()))
+                .build();
+    }
+}
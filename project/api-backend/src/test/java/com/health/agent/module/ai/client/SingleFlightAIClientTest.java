@@ -0,0 +1,254 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 相同请求合并测试：同步调用的结果/异常共享与等待超时，流式调用的分片回放、订阅方断开与上游中止
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class SingleFlightAIClientTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private AIClient delegate;
+    private AIConfig aiConfig;
+    private SingleFlightAIClient client;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(AIClient.class);
+        aiConfig = new AIConfig();
+        client = new SingleFlightAIClient(delegate, aiConfig, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentIdenticalChatsShareOneUpstreamCall() throws Exception {
+        CountDownLatch upstreamStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.chat(any())).thenAnswer(invocation -> {
+            upstreamStarted.countDown();
+            release.await();
+            return AIResponseDTO.builder().content("回复").success(true).build();
+        });
+
+        Future<AIResponseDTO> leader = executor.submit(() -> client.chat(request("你好")));
+        assertTrue(upstreamStarted.await(5, TimeUnit.SECONDS));
+        Future<AIResponseDTO> follower = executor.submit(() -> client.chat(request("  你好 ")));
+        awaitCoalesced("chat", 1);
+        release.countDown();
+
+        AIResponseDTO leaderResponse = leader.get(5, TimeUnit.SECONDS);
+        AIResponseDTO followerResponse = follower.get(5, TimeUnit.SECONDS);
+        assertEquals("回复", followerResponse.getContent());
+        // 跟随方拿到副本，互不影响
+        assertNotSame(leaderResponse, followerResponse);
+        verify(delegate, times(1)).chat(any());
+    }
+
+    @Test
+    void upstreamFailureIsSharedWithFollowers() throws Exception {
+        CountDownLatch upstreamStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RuntimeException failure = new RuntimeException("上游失败");
+        when(delegate.chat(any())).thenAnswer(invocation -> {
+            upstreamStarted.countDown();
+            release.await();
+            throw failure;
+        });
+
+        Future<AIResponseDTO> leader = executor.submit(() -> client.chat(request("你好")));
+        assertTrue(upstreamStarted.await(5, TimeUnit.SECONDS));
+        Future<AIResponseDTO> follower = executor.submit(() -> client.chat(request("你好")));
+        awaitCoalesced("chat", 1);
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+        verify(delegate, times(1)).chat(any());
+    }
+
+    @Test
+    void followerGivesUpAfterMaxWait() throws Exception {
+        aiConfig.getSingleFlight().setMaxWaitMillis(50L);
+        CountDownLatch upstreamStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.chat(any())).thenAnswer(invocation -> {
+            upstreamStarted.countDown();
+            release.await();
+            return AIResponseDTO.builder().content("回复").build();
+        });
+
+        executor.submit(() -> client.chat(request("你好")));
+        assertTrue(upstreamStarted.await(5, TimeUnit.SECONDS));
+        assertThrows(BusinessException.class, () -> client.chat(request("你好")));
+        assertEquals(1.0, meterRegistry.get("ai.singleflight.wait.timeout").counter().count());
+        release.countDown();
+    }
+
+    @Test
+    void finishedCallIsNotReused() {
+        when(delegate.chat(any())).thenReturn(AIResponseDTO.builder().content("回复").build());
+        client.chat(request("你好"));
+        client.chat(request("你好"));
+        verify(delegate, times(2)).chat(any());
+    }
+
+    @Test
+    void streamFollowerReplaysChunksAndReceivesTheRest() {
+        AtomicReference<AIClient.StreamCallback> upstream = captureUpstream();
+        RecordingCallback leader = new RecordingCallback();
+        RecordingCallback follower = new RecordingCallback();
+
+        client.chatStream(request("你好"), leader);
+        upstream.get().onMessage("你");
+        client.chatStream(request("你好"), follower);
+        upstream.get().onMessage("好");
+        upstream.get().onComplete();
+
+        assertEquals(List.of("你", "好"), leader.chunks);
+        assertEquals(List.of("你", "好"), follower.chunks);
+        assertTrue(leader.completed && follower.completed);
+        verify(delegate, times(1)).chatStream(any(), any());
+    }
+
+    @Test
+    void streamErrorReachesAllSubscribers() {
+        AtomicReference<AIClient.StreamCallback> upstream = captureUpstream();
+        RecordingCallback leader = new RecordingCallback();
+        RecordingCallback follower = new RecordingCallback();
+
+        client.chatStream(request("你好"), leader);
+        client.chatStream(request("你好"), follower);
+        RuntimeException failure = new RuntimeException("上游失败");
+        upstream.get().onError(failure);
+
+        assertSame(failure, leader.error);
+        assertSame(failure, follower.error);
+    }
+
+    @Test
+    void disconnectedSubscriberIsNotifiedAndOthersContinue() {
+        AtomicReference<AIClient.StreamCallback> upstream = captureUpstream();
+        RecordingCallback leader = new RecordingCallback();
+        RecordingCallback follower = new RecordingCallback();
+
+        client.chatStream(request("你好"), leader);
+        client.chatStream(request("你好"), follower);
+        leader.disconnected = true;
+        upstream.get().onMessage("你");
+        upstream.get().onComplete();
+
+        assertTrue(leader.error instanceof IllegalStateException);
+        assertFalse(leader.completed);
+        assertEquals(List.of("你"), follower.chunks);
+        assertTrue(follower.completed);
+    }
+
+    @Test
+    void upstreamIsCancelledWhenAllSubscribersDisconnect() {
+        AtomicReference<AIClient.StreamCallback> upstream = captureUpstream();
+        RecordingCallback leader = new RecordingCallback();
+
+        client.chatStream(request("你好"), leader);
+        leader.disconnected = true;
+        assertThrows(CancellationException.class, () -> upstream.get().onMessage("你"));
+        assertTrue(leader.error instanceof IllegalStateException);
+        assertEquals(1.0, meterRegistry.get("ai.singleflight.cancelled").counter().count());
+
+        // 已中止的调用不再接受订阅，相同请求重新发起上游调用
+        client.chatStream(request("你好"), new RecordingCallback());
+        verify(delegate, times(2)).chatStream(any(), any());
+    }
+
+    private AtomicReference<AIClient.StreamCallback> captureUpstream() {
+        AtomicReference<AIClient.StreamCallback> upstream = new AtomicReference<>();
+        doAnswer(invocation -> {
+            upstream.set(invocation.getArgument(1));
+            return null;
+        }).when(delegate).chatStream(any(), any());
+        return upstream;
+    }
+
+    private void awaitCoalesced(String call, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.find("ai.singleflight.coalesced").tag("call", call).counter() == null
+                || meterRegistry.get("ai.singleflight.coalesced").tag("call", call).counter().count() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("请求未被合并");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private AIRequestDTO request(String content) {
+        AIRequestDTO request = new AIRequestDTO();
+        request.getMessages().add(AIRequestDTO.Message.builder().role("user").content(content).build());
+        return request;
+    }
+
+    /**
+     * 记录收到的分片与结束状态，disconnected 为 true 时模拟客户端断开
+     */
+    private static final class RecordingCallback implements AIClient.StreamCallback {
+        private final List<String> chunks = new ArrayList<>();
+        private boolean disconnected;
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onMessage(String content) {
+            if (disconnected) {
+                throw new IllegalStateException("客户端已断开");
+            }
+            chunks.add(content);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+    }
+}
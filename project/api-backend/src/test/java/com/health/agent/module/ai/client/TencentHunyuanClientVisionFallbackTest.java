@@ -0,0 +1,112 @@
+package com.health.agent.module.ai.client;
+
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.transport.AIHttpTransport;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 单次视觉分析的回退条件测试：只有 400/422 回退两阶段流程，限流等错误直接失败
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class TencentHunyuanClientVisionFallbackTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private volatile int firstStatus;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            // 首个请求按测试设置的状态码失败，之后的请求一律返回 500
+            int status = requests.incrementAndGet() == 1 ? firstStatus : 500;
+            byte[] body = "{\"error\":\"test\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void rateLimitedSinglePassFailsWithoutFallback() {
+        firstStatus = 429;
+        FoodAnalysisResponseDTO response = client().analyzeFoodImage(request());
+
+        assertFalse(response.getSuccess());
+        assertEquals(1, requests.get());
+        assertTrue(response.getFailureCause() instanceof HttpClientErrorException.TooManyRequests);
+    }
+
+    @Test
+    void forbiddenSinglePassFailsWithoutFallback() {
+        firstStatus = 403;
+        client().analyzeFoodImage(request());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void badPayloadFallsBackToTwoStage() {
+        firstStatus = 400;
+        client().analyzeFoodImage(request());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void unprocessablePayloadFallsBackToTwoStage() {
+        firstStatus = 422;
+        client().analyzeFoodImage(request());
+        assertEquals(2, requests.get());
+    }
+
+    private TencentHunyuanClient client() {
+        AIConfig aiConfig = new AIConfig();
+        aiConfig.setApiUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        aiConfig.setApiKey("test");
+        AIHttpTransport transport = new AIHttpTransport() {
+            @Override
+            public RestTemplate createRestTemplate(Duration readTimeout) {
+                return new RestTemplate();
+            }
+
+            @Override
+            public String name() {
+                return "test";
+            }
+        };
+        return new TencentHunyuanClient(aiConfig, transport, new SimpleMeterRegistry());
+    }
+
+    private static FoodAnalysisRequestDTO request() {
+        FoodAnalysisRequestDTO request = new FoodAnalysisRequestDTO();
+        request.setBase64Image("aGVsbG8=");
+        request.setUserId(1L);
+        return request;
+    }
+}
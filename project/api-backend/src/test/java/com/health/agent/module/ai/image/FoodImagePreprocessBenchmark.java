@@ -0,0 +1,154 @@
+package com.health.agent.module.ai.image;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.health.agent.config.AIConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 食物图片预处理基准：按源降采样解码的预处理器 vs 原 FoodAnalysisController.compressImage
+ * 原实现完整解码原图、缩放到 800px、以 0.5 质量编码，Base64 超过 120000 字符时再以 0.3 质量压缩一次
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Djmh.include=FoodImagePreprocessBenchmark
+ * （查看每次操作的分配量时在 exec 参数中加 -prof gc）
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FoodImagePreprocessBenchmark {
+
+    /** 原图尺寸：普通截图 / 1200 万像素手机照片 */
+    @Param({"1600x1200", "4032x3024"})
+    public String size;
+
+    private byte[] original;
+    private FoodImagePreprocessor preprocessor;
+
+    @Setup
+    public void setUp() throws IOException {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        String[] dimensions = size.split("x");
+        original = photoLikeJpeg(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+        preprocessor = new FoodImagePreprocessor(new AIConfig(), Runnable::run, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public byte[] subsampledPreprocess() {
+        return preprocessor.process(original);
+    }
+
+    @Benchmark
+    public String legacyCompress() throws IOException {
+        byte[] compressed = legacyCompress(original, 0.5);
+        String base64 = Base64.getEncoder().encodeToString(compressed);
+        if (base64.length() > 120000) {
+            base64 = Base64.getEncoder().encodeToString(legacyCompress(compressed, 0.3));
+        }
+        return base64;
+    }
+
+    /**
+     * 原 FoodAnalysisController.compressImage（去掉日志）
+     */
+    private static byte[] legacyCompress(byte[] imageBytes, double quality) throws IOException {
+        BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
+        int maxDimension = 800;
+        int newWidth = originalImage.getWidth();
+        int newHeight = originalImage.getHeight();
+        if (newWidth > maxDimension || newHeight > maxDimension) {
+            double scale = Math.min((double) maxDimension / newWidth, (double) maxDimension / newHeight);
+            newWidth = (int) (newWidth * scale);
+            newHeight = (int) (newHeight * scale);
+        }
+
+        BufferedImage resizedImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resizedImage.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(originalImage, 0, 0, newWidth, newHeight, null);
+        g.dispose();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality((float) quality);
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(baos)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(resizedImage, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * 生成近似照片的 JPEG（色块 + 噪点，使压缩率接近真实照片），质量 0.9
+     */
+    private static byte[] photoLikeJpeg(int width, int height) throws IOException {
+        Random random = new Random(42);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        for (int i = 0; i < 200; i++) {
+            g.setColor(new Color(random.nextInt(0xFFFFFF)));
+            g.fillOval(random.nextInt(width), random.nextInt(height), width / 8, height / 8);
+        }
+        g.dispose();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x += 2) {
+                int rgb = image.getRGB(x, y);
+                int noise = random.nextInt(32) - 16;
+                int r = Math.min(255, Math.max(0, ((rgb >> 16) & 0xFF) + noise));
+                int gr = Math.min(255, Math.max(0, ((rgb >> 8) & 0xFF) + noise));
+                int b = Math.min(255, Math.max(0, (rgb & 0xFF) + noise));
+                image.setRGB(x, y, (r << 16) | (gr << 8) | b);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.9f);
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
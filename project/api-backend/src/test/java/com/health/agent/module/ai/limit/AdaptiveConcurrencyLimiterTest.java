@@ -0,0 +1,103 @@
+package com.health.agent.module.ai.limit;
+
+import com.health.agent.config.AIConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 自适应并发限制器（AIMD）测试
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private AdaptiveConcurrencyLimiter limiter(int initial, int min, int max, long slowCallMillis) {
+        return new AdaptiveConcurrencyLimiter("test", new AIConfig.Bulkhead(initial, min, max, slowCallMillis),
+                0.5, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void rejectsAtLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 10, 0L);
+        assertNotNull(limiter.tryAcquire());
+        assertNotNull(limiter.tryAcquire());
+        assertNull(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void successUnderLoadIncreasesLimitByOne() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 1, 10, 0L);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        limiter.tryAcquire();
+        limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit fourth = limiter.tryAcquire();
+
+        fourth.success(true);
+        assertEquals(5, limiter.getLimit());
+
+        // 获取时在途数不足上限一半，不增长
+        first.success(true);
+        assertEquals(5, limiter.getLimit());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void increaseIsCappedAtMaxLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 2, 0L);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        limiter.tryAcquire().success(true);
+        permit.success(true);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void dropMultipliesLimitByBackoffRatio() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 2, 20, 0L);
+        limiter.tryAcquire().dropped();
+        assertEquals(5, limiter.getLimit());
+        limiter.tryAcquire().dropped();
+        limiter.tryAcquire().dropped();
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void slowCallDecreasesLimitOnlyWhenLatencyIsMeasured() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 1, 20, 1L);
+        AdaptiveConcurrencyLimiter.Permit stream = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit call = limiter.tryAcquire();
+        Thread.sleep(5);
+
+        stream.success(false);
+        assertEquals(8, limiter.getLimit());
+        call.success(true);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void cancelledReleasesWithoutAdjustingLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 10, 0L);
+        limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        permit.cancelled();
+        assertEquals(2, limiter.getLimit());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void permitIsReleasedOnlyOnce() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 1, 20, 0L);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        permit.dropped();
+        permit.dropped();
+        permit.cancelled();
+        assertEquals(5, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,128 @@
+package com.health.agent.module.ai.limit;
+
+import com.health.agent.config.AIConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 熔断器状态变化测试
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class CircuitBreakerTest {
+
+    private CircuitBreaker breaker(long openSeconds) {
+        AIConfig.Breaker config = new AIConfig.Breaker();
+        config.setFailureRateThreshold(50.0);
+        config.setWindowSize(4);
+        config.setMinimumCalls(4);
+        config.setSlowCallMillis(1000L);
+        config.setOpenSeconds(openSeconds);
+        config.setHalfOpenCalls(2);
+        return new CircuitBreaker("test", config, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = breaker(30);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        CircuitBreaker breaker = breaker(30);
+        breaker.onSuccess(0);
+        breaker.onSuccess(0);
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.isCallPermitted());
+    }
+
+    @Test
+    void slowCallCountsAsFailure() {
+        CircuitBreaker breaker = breaker(30);
+        long slow = TimeUnit.MILLISECONDS.toNanos(2000);
+        breaker.onSuccess(0);
+        breaker.onSuccess(0);
+        breaker.onSuccess(slow);
+        breaker.onSuccess(slow);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void oldResultsLeaveTheSlidingWindow() {
+        CircuitBreaker breaker = breaker(30);
+        breaker.onFailure();
+        for (int i = 0; i < 4; i++) {
+            breaker.onSuccess(0);
+        }
+        // 窗口只保留最近 4 次调用，最早的失败已被挤出
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenLimitsProbesAndClosesAfterSuccesses() {
+        CircuitBreaker breaker = breaker(0);
+        tripOpen(breaker);
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void halfOpenFailureReopens() {
+        CircuitBreaker breaker = breaker(0);
+        tripOpen(breaker);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void releaseReturnsHalfOpenProbe() {
+        CircuitBreaker breaker = breaker(0);
+        tripOpen(breaker);
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.isCallPermitted());
+
+        breaker.release();
+        assertTrue(breaker.isCallPermitted());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    private void tripOpen(CircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,166 @@
+package com.health.agent.module.ai.limit;
+
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 优先级调度器测试：优先级放行顺序、同一优先级内的用户公平排队、按负载类型限制在途数
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class PriorityDispatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BlockingQueue<Granted> granted = new LinkedBlockingQueue<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    private PriorityDispatcher dispatcher(int maxConcurrency, AIConfig.Scheduler config) {
+        config.setMaxConcurrency(maxConcurrency);
+        return new PriorityDispatcher(config, meterRegistry);
+    }
+
+    @Test
+    void sameUserBacklogDoesNotStarveOtherUsers() throws InterruptedException {
+        PriorityDispatcher dispatcher = dispatcher(1, new AIConfig.Scheduler());
+        PriorityDispatcher.Slot running = dispatcher.acquire(AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+
+        enqueue(dispatcher, "u1-a", AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+        enqueue(dispatcher, "u1-b", AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+        enqueue(dispatcher, "u1-c", AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+        enqueue(dispatcher, "u2-a", AIPriority.INTERACTIVE, AIWorkload.CHAT, 2L);
+
+        running.release();
+        assertEquals(List.of("u1-a", "u2-a", "u1-b", "u1-c"), drainInOrder(4));
+    }
+
+    @Test
+    void higherPriorityIsDispatchedFirst() throws InterruptedException {
+        PriorityDispatcher dispatcher = dispatcher(1, new AIConfig.Scheduler());
+        PriorityDispatcher.Slot running = dispatcher.acquire(AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+
+        enqueue(dispatcher, "background", AIPriority.BACKGROUND, AIWorkload.BACKGROUND, 1L);
+        enqueue(dispatcher, "near-real-time", AIPriority.NEAR_REAL_TIME, AIWorkload.VISION, 1L);
+        enqueue(dispatcher, "interactive", AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+
+        running.release();
+        assertEquals(List.of("interactive", "near-real-time", "background"), drainInOrder(3));
+    }
+
+    @Test
+    void lowerPriorityKeepsHeadroomForInteractive() throws InterruptedException {
+        PriorityDispatcher dispatcher = dispatcher(2, new AIConfig.Scheduler());
+        // 后台优先级 share=0.5，只能使用 1 个名额
+        dispatcher.acquire(AIPriority.BACKGROUND, AIWorkload.BACKGROUND, 1L);
+        enqueue(dispatcher, "background", AIPriority.BACKGROUND, AIWorkload.BACKGROUND, 1L);
+
+        assertNotNull(dispatcher.acquire(AIPriority.INTERACTIVE, AIWorkload.CHAT, 2L));
+        assertNull(granted.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void fullWorkloadWaitsWhileOtherWorkloadsProceed() throws InterruptedException {
+        AIConfig.Scheduler config = new AIConfig.Scheduler();
+        config.setMaxConcurrency(8);
+        PriorityDispatcher dispatcher = new PriorityDispatcher(config,
+                workload -> workload == AIWorkload.CHAT ? 1 : 8, meterRegistry);
+
+        PriorityDispatcher.Slot chat = dispatcher.acquire(AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+        enqueue(dispatcher, "chat", AIPriority.INTERACTIVE, AIWorkload.CHAT, 2L);
+
+        assertNotNull(dispatcher.acquire(AIPriority.INTERACTIVE, AIWorkload.VISION, 3L));
+        assertNull(granted.poll(100, TimeUnit.MILLISECONDS));
+
+        chat.release();
+        assertEquals(List.of("chat"), drainInOrder(1));
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws InterruptedException {
+        AIConfig.Scheduler config = new AIConfig.Scheduler();
+        config.setInteractive(new AIConfig.PriorityClass(1.0, 1, 5000L));
+        PriorityDispatcher dispatcher = dispatcher(1, config);
+        dispatcher.acquire(AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+        enqueue(dispatcher, "queued", AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+
+        assertThrows(BusinessException.class,
+                () -> dispatcher.acquire(AIPriority.INTERACTIVE, AIWorkload.CHAT, 2L));
+    }
+
+    @Test
+    void rejectsAfterMaxWait() {
+        AIConfig.Scheduler config = new AIConfig.Scheduler();
+        config.setInteractive(new AIConfig.PriorityClass(1.0, 10, 50L));
+        PriorityDispatcher dispatcher = dispatcher(1, config);
+        dispatcher.acquire(AIPriority.INTERACTIVE, AIWorkload.CHAT, 1L);
+
+        assertThrows(BusinessException.class,
+                () -> dispatcher.acquire(AIPriority.INTERACTIVE, AIWorkload.CHAT, 2L));
+        assertEquals(0.0, queued(AIPriority.INTERACTIVE));
+    }
+
+    /**
+     * 在后台线程中排队，等到请求确实进入队列后返回，保证排队顺序确定
+     */
+    private void enqueue(PriorityDispatcher dispatcher, String label, AIPriority priority, AIWorkload workload,
+                         Long userId) throws InterruptedException {
+        double before = queued(priority);
+        Thread thread = new Thread(() -> {
+            try {
+                granted.add(new Granted(label, dispatcher.acquire(priority, workload, userId)));
+            } catch (BusinessException ignored) {
+                // 测试结束时中断仍在排队的线程
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queued(priority) <= before) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("请求未进入队列: " + label);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * 依次取出获得名额的请求并立即释放，返回放行顺序
+     */
+    private List<String> drainInOrder(int count) throws InterruptedException {
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Granted next = granted.poll(5, TimeUnit.SECONDS);
+            assertNotNull(next, "等待放行超时");
+            order.add(next.label());
+            next.slot().release();
+        }
+        return order;
+    }
+
+    private double queued(AIPriority priority) {
+        return meterRegistry.get("ai.scheduler.queued").tag("priority", priority.getTag()).gauge().value();
+    }
+
+    private record Granted(String label, PriorityDispatcher.Slot slot) {
+    }
+}
@@ -0,0 +1,95 @@
+package com.health.agent.module.ai.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.agent.common.api.ResultCode;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.client.AIClient;
+import com.health.agent.module.ai.dto.FoodAnalysisRequestDTO;
+import com.health.agent.module.ai.dto.FoodAnalysisResponseDTO;
+import com.health.agent.module.ai.vo.FoodAnalysisJobVO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 食物分析任务服务测试：取消订阅后不再回调，批量任务与异步任务共用在途上限
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class FoodAnalysisJobServiceImplTest {
+
+    /** 手动执行的执行器，便于控制任务开始时机 */
+    private final List<Runnable> pending = new ArrayList<>();
+    private AIClient aiClient;
+    private FoodAnalysisJobServiceImpl service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        aiClient = mock(AIClient.class);
+        when(aiClient.analyzeFoodImage(any())).thenReturn(FoodAnalysisResponseDTO.builder().success(true).build());
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.opsForValue()).thenReturn(mock(ValueOperations.class));
+
+        AIConfig aiConfig = new AIConfig();
+        aiConfig.getJob().setMaxInFlight(2);
+        service = new FoodAnalysisJobServiceImpl(aiClient, pending::add, aiConfig, redisTemplate,
+                new ObjectMapper().findAndRegisterModules(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void unsubscribedListenerIsNotNotified() {
+        FoodAnalysisJobVO job = service.submit(FoodAnalysisRequestDTO.builder().userId(1L).build());
+        AtomicInteger kept = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        Consumer<FoodAnalysisJobVO> keptListener = finished -> kept.incrementAndGet();
+        Consumer<FoodAnalysisJobVO> removedListener = finished -> removed.incrementAndGet();
+        service.subscribe(job.getJobId(), keptListener);
+        service.subscribe(job.getJobId(), removedListener);
+
+        service.unsubscribe(job.getJobId(), removedListener);
+        runPending();
+
+        assertEquals(1, kept.get());
+        assertEquals(0, removed.get());
+    }
+
+    @Test
+    void batchTasksShareInFlightLimitWithJobs() {
+        service.submit(FoodAnalysisRequestDTO.builder().userId(1L).build());
+        AtomicInteger ran = new AtomicInteger();
+        service.execute(ran::incrementAndGet);
+
+        BusinessException rejected = assertThrows(BusinessException.class, () -> service.execute(ran::incrementAndGet));
+        assertEquals(ResultCode.TOO_MANY_REQUESTS.getCode(), rejected.getCode());
+        assertThrows(BusinessException.class, () -> service.submit(FoodAnalysisRequestDTO.builder().build()));
+
+        // 任务结束后归还许可
+        runPending();
+        assertEquals(1, ran.get());
+        service.execute(ran::incrementAndGet);
+        runPending();
+        assertEquals(2, ran.get());
+    }
+
+    private void runPending() {
+        List<Runnable> tasks = new ArrayList<>(pending);
+        pending.clear();
+        tasks.forEach(Runnable::run);
+    }
+}
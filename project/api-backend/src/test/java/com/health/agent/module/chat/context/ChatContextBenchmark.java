@@ -0,0 +1,110 @@
+package com.health.agent.module.chat.context;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.agent.common.constant.CommonConstant;
+import com.health.agent.config.AIConfig;
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.ai.client.AIClient;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.chat.entity.ChatMessage;
+import com.health.agent.module.chat.entity.ChatSession;
+import com.health.agent.module.chat.mapper.ChatMessageMapper;
+import com.health.agent.module.chat.mapper.ChatSessionMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * 对话上下文构建基准：Token 估算，以及按 Token 预算从新到旧装入历史消息
+ * 历史窗口由本地缓存直接返回，只测量估算和裁剪本身；后台摘要任务不执行
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Djmh.include=ChatContextBenchmark
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatContextBenchmark {
+
+    private static final String SYSTEM_PROMPT = "你是'智能营养师'，一个专业的饮食健康AI助手，致力于帮助用户建立健康的饮食习惯。";
+
+    private static final String USER_TEXT = "我今天早餐吃了两个鸡蛋和一杯牛奶，午餐是牛肉面，晚上想吃点清淡的，"
+            + "有什么推荐吗？My goal is 1800 kcal per day and about 90g protein.";
+
+    private static final String ASSISTANT_TEXT = "根据您今天的饮食，早餐和午餐已经摄入约 1100 千卡、蛋白质约 55 克。"
+            + "晚餐建议：清蒸鱼 150g、凉拌菠菜、杂粮饭半碗，约 500 千卡、蛋白质 35 克。"
+            + "这样全天热量约 1600 kcal，蛋白质 90g，符合您的目标。睡前如果饿可以加一杯无糖酸奶。";
+
+    /** 读取窗口内的历史消息数（默认读取窗口为 40 条） */
+    @Param({"10", "40"})
+    public int historySize;
+
+    private List<ChatMessage> history;
+    private ChatSession session;
+    private ChatContextManager contextManager;
+
+    @Setup
+    public void setUp() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            // 按时间倒序：第 0 条是最新的AI回复
+            boolean assistant = i % 2 == 0;
+            ChatMessage message = new ChatMessage();
+            message.setId((long) (historySize - i));
+            message.setSessionId(1L);
+            message.setRole(assistant ? "assistant" : "user");
+            message.setContent(assistant ? ASSISTANT_TEXT : USER_TEXT + i);
+            message.setStatus(CommonConstant.MESSAGE_STATUS_COMPLETED);
+            history.add(message);
+        }
+        session = ChatSession.builder().id(1L).userId(1L).title("基准会话").build();
+
+        ChatHistoryCache historyCache = new ChatHistoryCache(mock(ChatMessageMapper.class),
+                mock(StringRedisTemplate.class), new ObjectMapper(), new ChatConfig(), new SimpleMeterRegistry()) {
+            @Override
+            public List<ChatMessage> findLatest(Long sessionId, int limit) {
+                return history;
+            }
+        };
+        contextManager = new ChatContextManager(mock(ChatMessageMapper.class), mock(ChatSessionMapper.class),
+                historyCache, mock(AIClient.class), task -> { }, new AIConfig(), new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public void estimateTokens(Blackhole blackhole) {
+        for (ChatMessage message : history) {
+            blackhole.consume(TokenEstimator.estimateMessage(message.getContent()));
+        }
+    }
+
+    @Benchmark
+    public int appendContext() {
+        return contextManager.appendContext(new AIRequestDTO(), session, SYSTEM_PROMPT, USER_TEXT);
+    }
+}
@@ -0,0 +1,231 @@
+package com.health.agent.module.chat.context;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.chat.entity.ChatMessage;
+import com.health.agent.module.chat.mapper.ChatMessageMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 会话近期消息窗口缓存测试
+ * 用内存中的列表和计数器模拟窗口的几个 Lua 脚本，验证代数校验：加载期间有新的追加时不写入旧窗口
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class ChatHistoryCacheTest {
+
+    private static final Long SESSION_ID = 1L;
+
+    /**
+     * 与 Spring Boot 默认配置一致（忽略未知字段）
+     */
+    private static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json().build();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Map<String, LinkedList<String>> lists = new HashMap<>();
+    private final Map<String, Long> counters = new HashMap<>();
+    private ChatMessageMapper messageMapper;
+    private StringRedisTemplate redisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private ChatHistoryCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        messageMapper = mock(ChatMessageMapper.class);
+        redisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> {
+            Long value = counters.get(invocation.<String>getArgument(0));
+            return value == null ? null : String.valueOf(value);
+        });
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> runScript(invocation.getArgument(0), invocation.getArgument(1),
+                        (Object[]) invocation.getRawArguments()[2]));
+
+        ChatConfig chatConfig = new ChatConfig();
+        chatConfig.getHistoryCache().setWindowSize(3);
+        cache = new ChatHistoryCache(messageMapper, redisTemplate, OBJECT_MAPPER, chatConfig, meterRegistry);
+    }
+
+    @Test
+    void missLoadsWindowOnceThenServesLocally() {
+        when(messageMapper.findLatestBySessionId(SESSION_ID, 3)).thenReturn(List.of(message(2L), message(1L)));
+
+        assertEquals(List.of(2L, 1L), ids(cache.findLatest(SESSION_ID, 3)));
+        assertEquals(List.of(2L), ids(cache.findLatest(SESSION_ID, 1)));
+
+        verify(messageMapper, times(1)).findLatestBySessionId(anyLong(), anyInt());
+        assertEquals(1.0, count("miss"));
+        assertEquals(1.0, count("local"));
+    }
+
+    @Test
+    void appendUpdatesCachedWindowAndTrimsIt() {
+        when(messageMapper.findLatestBySessionId(SESSION_ID, 3))
+                .thenReturn(List.of(message(3L), message(2L), message(1L)));
+        cache.findLatest(SESSION_ID, 3);
+
+        cache.append(List.of(message(4L), message(5L)));
+
+        assertEquals(List.of(5L, 4L, 3L), ids(cache.findLatest(SESSION_ID, 3)));
+        assertEquals(List.of(5L, 4L, 3L), ids(redisWindow()));
+        verify(messageMapper, times(1)).findLatestBySessionId(anyLong(), anyInt());
+    }
+
+    @Test
+    void redisWindowIsUsedWhenLocalWindowIsStale() {
+        when(messageMapper.findLatestBySessionId(SESSION_ID, 3)).thenReturn(List.of(message(1L)));
+        cache.findLatest(SESSION_ID, 3);
+        // 其他实例追加了消息：Redis 窗口与代数都已变化
+        lists.get("chat:history:1").addFirst(json(message(2L)));
+        counters.merge("chat:history:1:gen", 1L, Long::sum);
+
+        assertEquals(List.of(2L, 1L), ids(cache.findLatest(SESSION_ID, 3)));
+        assertEquals(1.0, count("redis"));
+    }
+
+    @Test
+    void windowLoadedDuringConcurrentAppendIsNotCached() {
+        when(messageMapper.findLatestBySessionId(SESSION_ID, 3)).thenAnswer(invocation -> {
+            // 加载期间另一条消息落库并追加
+            cache.append(List.of(message(2L)));
+            return List.of(message(1L));
+        }).thenReturn(List.of(message(2L), message(1L)));
+
+        assertEquals(List.of(1L), ids(cache.findLatest(SESSION_ID, 3)));
+        // 旧窗口未写入缓存，下次读取重新加载
+        assertEquals(List.of(2L, 1L), ids(cache.findLatest(SESSION_ID, 3)));
+        verify(messageMapper, times(2)).findLatestBySessionId(anyLong(), anyInt());
+    }
+
+    @Test
+    void invalidateForcesReload() {
+        when(messageMapper.findLatestBySessionId(SESSION_ID, 3)).thenReturn(List.of(message(1L)));
+        cache.findLatest(SESSION_ID, 3);
+        cache.invalidate(SESSION_ID);
+        cache.findLatest(SESSION_ID, 3);
+
+        verify(messageMapper, times(2)).findLatestBySessionId(anyLong(), anyInt());
+    }
+
+    @Test
+    void redisFailureFallsBackToDatabase() {
+        when(valueOperations.get(anyString())).thenThrow(new RedisConnectionFailureException("连接失败"));
+        when(messageMapper.findLatestBySessionId(SESSION_ID, 2)).thenReturn(List.of(message(1L)));
+
+        assertEquals(List.of(1L), ids(cache.findLatest(SESSION_ID, 2)));
+        assertEquals(1.0, count("miss"));
+    }
+
+    @Test
+    void limitLargerThanWindowBypassesCache() {
+        when(messageMapper.findLatestBySessionId(SESSION_ID, 10)).thenReturn(List.of(message(1L)));
+
+        cache.findLatest(SESSION_ID, 10);
+
+        verify(redisTemplate, times(0)).opsForValue();
+        assertEquals(1.0, count("bypass"));
+        verify(messageMapper).findLatestBySessionId(eq(SESSION_ID), eq(10));
+    }
+
+    /**
+     * 按脚本内容模拟 ChatHistoryCache 的追加、写入、读取、失效脚本
+     */
+    private Object runScript(RedisScript<?> script, List<String> keys, Object[] args) {
+        String body = script.getScriptAsString();
+        String listKey = keys.get(0);
+        String genKey = keys.get(1);
+        if (body.contains("LPUSH")) {
+            long generation = counters.merge(genKey, 1L, Long::sum);
+            LinkedList<String> list = lists.get(listKey);
+            if (list != null) {
+                for (int i = 2; i < args.length; i++) {
+                    list.addFirst(String.valueOf(args[i]));
+                }
+                while (list.size() > Integer.parseInt(String.valueOf(args[1]))) {
+                    list.removeLast();
+                }
+            }
+            return generation;
+        }
+        if (body.contains("RPUSH")) {
+            if (!String.valueOf(counters.getOrDefault(genKey, 0L)).equals(args[0])) {
+                return 0L;
+            }
+            lists.remove(listKey);
+            if (args.length > 2) {
+                LinkedList<String> list = new LinkedList<>();
+                for (int i = 2; i < args.length; i++) {
+                    list.addLast(String.valueOf(args[i]));
+                }
+                lists.put(listKey, list);
+            }
+            return 1L;
+        }
+        if (body.contains("LRANGE")) {
+            List<Object> items = new ArrayList<>(lists.getOrDefault(listKey, new LinkedList<>()));
+            items.add(String.valueOf(counters.getOrDefault(genKey, 0L)));
+            return items;
+        }
+        lists.remove(listKey);
+        return counters.merge(genKey, 1L, Long::sum);
+    }
+
+    private List<ChatMessage> redisWindow() {
+        return lists.get("chat:history:1").stream().map(item -> {
+            try {
+                return OBJECT_MAPPER.readValue(item, ChatMessage.class);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).toList();
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("chat.history.cache").tag("result", result).counter().count();
+    }
+
+    private static String json(ChatMessage message) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(message);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<Long> ids(List<ChatMessage> messages) {
+        return messages.stream().map(ChatMessage::getId).toList();
+    }
+
+    private static ChatMessage message(Long id) {
+        return ChatMessage.builder().id(id).sessionId(SESSION_ID).role("user").content("消息" + id).build();
+    }
+}
@@ -0,0 +1,54 @@
+package com.health.agent.module.chat.context;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 本地 Token 数估算测试
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class TokenEstimatorTest {
+
+    @Test
+    void emptyTextHasNoTokens() {
+        assertEquals(0, TokenEstimator.estimate(null));
+        assertEquals(0, TokenEstimator.estimate(""));
+        assertEquals(0, TokenEstimator.estimate(" \n\t"));
+    }
+
+    @Test
+    void countsEachCjkCharacterAndFullWidthPunctuation() {
+        assertEquals(4, TokenEstimator.estimate("你好世界"));
+        assertEquals(3, TokenEstimator.estimate("吃饭。"));
+    }
+
+    @Test
+    void countsAsciiRunsInGroupsOfFour() {
+        assertEquals(1, TokenEstimator.estimate("abc"));
+        assertEquals(1, TokenEstimator.estimate("abcd"));
+        assertEquals(2, TokenEstimator.estimate("abcde"));
+        // hello(2) ,(1) world(2)，空白不计
+        assertEquals(5, TokenEstimator.estimate("hello, world"));
+    }
+
+    @Test
+    void countsMixedText() {
+        // 我(1) 每天(2) 2000(1) kcal(1)
+        assertEquals(5, TokenEstimator.estimate("我每天2000kcal"));
+    }
+
+    @Test
+    void countsSurrogatePairOnce() {
+        assertEquals(1, TokenEstimator.estimate("😀"));
+        assertEquals(3, TokenEstimator.estimate("好😀好"));
+    }
+
+    @Test
+    void messageIncludesFixedOverhead() {
+        assertEquals(TokenEstimator.MESSAGE_OVERHEAD, TokenEstimator.estimateMessage(null));
+        assertEquals(2 + TokenEstimator.MESSAGE_OVERHEAD, TokenEstimator.estimateMessage("你好"));
+    }
+}
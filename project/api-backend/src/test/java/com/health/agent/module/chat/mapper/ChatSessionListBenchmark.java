@@ -0,0 +1,191 @@
+package com.health.agent.module.chat.mapper;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import cn.hutool.core.bean.BeanUtil;
+import com.health.agent.module.chat.entity.ChatSession;
+import com.health.agent.module.chat.vo.ChatSessionVO;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话列表基准（H2 MySQL 兼容模式，使用实际的 Mapper XML）
+ * 每个用户 10000 条消息，平均分布在 sessionsPerUser 个会话中，查询第一页 20 个会话：
+ * - perSessionCount：原实现，列表查询后逐个会话执行 countBySessionId（1 + 20 条语句）
+ * - denormalizedCount：列表查询直接带出增量维护的 message_count（1 条语句）
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Djmh.include=ChatSessionListBenchmark
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ChatSessionListBenchmark {
+
+    private static final int USERS = 10;
+    private static final int MESSAGES_PER_USER = 10_000;
+    private static final int PAGE_SIZE = 20;
+    private static final Long USER_ID = 1L;
+
+    /** 每个用户的会话数 */
+    @Param({"20", "200"})
+    public int sessionsPerUser;
+
+    private SqlSessionFactory factory;
+
+    @Setup
+    public void setUp() throws Exception {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection()) {
+            createTables(connection);
+            seed(connection);
+        }
+
+        Configuration configuration = new Configuration(
+                new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        for (String resource : List.of("mapper/ChatSessionMapper.xml", "mapper/ChatMessageMapper.xml")) {
+            try (InputStream xml = Resources.getResourceAsStream(resource)) {
+                new XMLMapperBuilder(xml, configuration, resource, configuration.getSqlFragments()).parse();
+            }
+        }
+        factory = new SqlSessionFactoryBuilder().build(configuration);
+        // 回收写入数据时产生的垃圾，避免计入测量
+        System.gc();
+    }
+
+    @Benchmark
+    public List<ChatSessionVO> perSessionCount() {
+        try (SqlSession session = factory.openSession(true)) {
+            ChatMessageMapper messageMapper = session.getMapper(ChatMessageMapper.class);
+            List<ChatSessionVO> page = new ArrayList<>(PAGE_SIZE);
+            for (ChatSession chatSession : session.getMapper(ChatSessionMapper.class).findByUserId(USER_ID, 0, PAGE_SIZE)) {
+                ChatSessionVO vo = BeanUtil.copyProperties(chatSession, ChatSessionVO.class);
+                vo.setMessageCount(messageMapper.countBySessionId(chatSession.getId()));
+                page.add(vo);
+            }
+            return page;
+        }
+    }
+
+    @Benchmark
+    public List<ChatSessionVO> denormalizedCount() {
+        try (SqlSession session = factory.openSession(true)) {
+            List<ChatSessionVO> page = new ArrayList<>(PAGE_SIZE);
+            for (ChatSession chatSession : session.getMapper(ChatSessionMapper.class).findByUserId(USER_ID, 0, PAGE_SIZE)) {
+                page.add(BeanUtil.copyProperties(chatSession, ChatSessionVO.class));
+            }
+            return page;
+        }
+    }
+
+    private static void createTables(Connection connection) throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE chat_session (
+                      id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                      user_id BIGINT NOT NULL,
+                      title VARCHAR(100),
+                      type VARCHAR(20) NOT NULL DEFAULT 'nutrition',
+                      status TINYINT NOT NULL DEFAULT 1,
+                      last_message_time TIMESTAMP,
+                      message_count INT NOT NULL DEFAULT 0,
+                      last_message_preview VARCHAR(200),
+                      summary TEXT,
+                      summary_message_id BIGINT,
+                      archived_message_count INT NOT NULL DEFAULT 0,
+                      created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                      updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                      is_deleted TINYINT NOT NULL DEFAULT 0
+                    )""");
+            statement.execute("CREATE INDEX idx_user_last_message ON chat_session (user_id, is_deleted, last_message_time)");
+            statement.execute("""
+                    CREATE TABLE chat_message (
+                      id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                      session_id BIGINT NOT NULL,
+                      role VARCHAR(20) NOT NULL,
+                      content TEXT NOT NULL,
+                      status TINYINT NOT NULL DEFAULT 1,
+                      created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                    )""");
+            statement.execute("CREATE INDEX idx_session_id ON chat_message (session_id)");
+        }
+    }
+
+    /**
+     * 每个用户 sessionsPerUser 个会话，10000 条消息平均分布
+     */
+    private void seed(Connection connection) throws Exception {
+        int messagesPerSession = MESSAGES_PER_USER / sessionsPerUser;
+        LocalDateTime now = LocalDateTime.now();
+        connection.setAutoCommit(false);
+        try (PreparedStatement session = connection.prepareStatement(
+                "INSERT INTO chat_session (id, user_id, title, last_message_time, message_count, last_message_preview) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)");
+             PreparedStatement message = connection.prepareStatement(
+                     "INSERT INTO chat_message (session_id, role, content) VALUES (?, ?, ?)")) {
+            long sessionId = 0;
+            for (long userId = 1; userId <= USERS; userId++) {
+                for (int s = 0; s < sessionsPerUser; s++) {
+                    sessionId++;
+                    session.setLong(1, sessionId);
+                    session.setLong(2, userId);
+                    session.setString(3, "会话" + s);
+                    session.setTimestamp(4, Timestamp.valueOf(now.minusMinutes(s)));
+                    session.setInt(5, messagesPerSession);
+                    session.setString(6, "晚餐建议：清蒸鱼、凉拌菠菜、杂粮饭半碗");
+                    session.addBatch();
+                    for (int m = 0; m < messagesPerSession; m++) {
+                        message.setLong(1, sessionId);
+                        message.setString(2, m % 2 == 0 ? "user" : "assistant");
+                        message.setString(3, "第" + m + "条消息：今天的饮食是否均衡？");
+                        message.addBatch();
+                    }
+                    message.executeBatch();
+                }
+                session.executeBatch();
+            }
+        }
+        connection.commit();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.health.agent.module.chat.persist;
+
+import com.health.agent.common.constant.CommonConstant;
+import com.health.agent.common.exception.BusinessException;
+import com.health.agent.config.ChatConfig;
+import com.health.agent.module.chat.context.ChatHistoryCache;
+import com.health.agent.module.chat.entity.ChatMessage;
+import com.health.agent.module.chat.mapper.ChatMessageMapper;
+import com.health.agent.module.chat.mapper.ChatSessionMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 聊天消息写入缓冲测试：批量合并、回复结果写入、失败重试与丢弃
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class ChatWriteBehindBufferTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong ids = new AtomicLong();
+    private final List<List<ChatMessage>> insertedBatches = new ArrayList<>();
+    private ChatMessageMapper messageMapper;
+    private ChatSessionMapper sessionMapper;
+    private ChatHistoryCache historyCache;
+    private ChatConfig chatConfig;
+    private ChatWriteBehindBuffer buffer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        messageMapper = mock(ChatMessageMapper.class);
+        sessionMapper = mock(ChatSessionMapper.class);
+        historyCache = mock(ChatHistoryCache.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            ((Consumer<Object>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        // 模拟 useGeneratedKeys 回填自增ID
+        when(messageMapper.insertBatch(anyList())).thenAnswer(invocation -> {
+            List<ChatMessage> rows = invocation.getArgument(0);
+            rows.forEach(row -> row.setId(ids.incrementAndGet()));
+            synchronized (insertedBatches) {
+                insertedBatches.add(new ArrayList<>(rows));
+            }
+            return rows.size();
+        });
+
+        chatConfig = new ChatConfig();
+        // 关闭定时刷新，由测试显式调用 flush
+        chatConfig.getWriteBehind().setMaxLossWindowMillis(60_000L);
+        chatConfig.getWriteBehind().setMaxRetries(1);
+        buffer = newBuffer(transactionTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        buffer.shutdown();
+    }
+
+    private ChatWriteBehindBuffer newBuffer(TransactionTemplate transactionTemplate) {
+        return new ChatWriteBehindBuffer(messageMapper, sessionMapper, historyCache, transactionTemplate,
+                chatConfig, meterRegistry);
+    }
+
+    @Test
+    void buffersWritesUntilFlush() {
+        buffer.save(message(1L, "user", "你好"), false);
+        buffer.save(message(1L, "assistant", "你好，有什么可以帮你"), true);
+        verify(messageMapper, never()).insertBatch(anyList());
+
+        buffer.flush();
+
+        assertEquals(1, insertedBatches.size());
+        assertEquals(2, insertedBatches.get(0).size());
+        ArgumentCaptor<List<ChatSessionDelta>> deltas = deltaCaptor();
+        verify(sessionMapper).updateMessageStats(deltas.capture());
+        ChatSessionDelta delta = deltas.getValue().get(0);
+        assertEquals(2, delta.getAddedCount());
+        assertEquals("你好，有什么可以帮你", delta.getLastMessagePreview());
+        assertNotNull(delta.getLastMessageTime());
+        verify(historyCache).append(insertedBatches.get(0));
+    }
+
+    @Test
+    void splitsRowsIntoBatchSizedInserts() {
+        chatConfig.getWriteBehind().setBatchSize(2);
+        for (int i = 0; i < 5; i++) {
+            buffer.save(message(1L, "user", "消息" + i), false);
+        }
+        buffer.flush();
+
+        int total = 0;
+        synchronized (insertedBatches) {
+            for (List<ChatMessage> batch : insertedBatches) {
+                assertTrue(batch.size() <= 2);
+                total += batch.size();
+            }
+        }
+        assertEquals(5, total);
+    }
+
+    @Test
+    void replyFinishedBeforeFlushIsInsertedWithFinalContent() {
+        ChatMessage placeholder = message(1L, "assistant", "");
+        placeholder.setStatus(CommonConstant.MESSAGE_STATUS_PENDING);
+        buffer.save(placeholder, false);
+        buffer.finishReply(placeholder, result("完整回复", CommonConstant.MESSAGE_STATUS_COMPLETED));
+        buffer.flush();
+
+        assertEquals("完整回复", insertedBatches.get(0).get(0).getContent());
+        verify(messageMapper, never()).updateReplies(anyList());
+        verify(historyCache).append(List.of(placeholder));
+    }
+
+    @Test
+    void replyFinishedAfterFlushIsUpdated() {
+        ChatMessage placeholder = message(1L, "assistant", "");
+        placeholder.setStatus(CommonConstant.MESSAGE_STATUS_PENDING);
+        buffer.save(placeholder, false);
+        buffer.flush();
+        // 生成中的占位消息不进入近期消息缓存
+        verify(historyCache).append(List.of());
+
+        buffer.finishReply(placeholder, result("部分回复", CommonConstant.MESSAGE_STATUS_FAILED));
+        buffer.flush();
+
+        verify(messageMapper).updateReplies(List.of(placeholder));
+        assertEquals(CommonConstant.MESSAGE_STATUS_FAILED, placeholder.getStatus());
+        ArgumentCaptor<List<ChatSessionDelta>> deltas = deltaCaptor();
+        verify(sessionMapper, times(2)).updateMessageStats(deltas.capture());
+        // 失败的回复不更新预览
+        assertNull(deltas.getValue().get(0).getLastMessagePreview());
+    }
+
+    @Test
+    void flushSessionOnlyFlushesWhenSessionHasPendingWrites() {
+        buffer.save(message(1L, "user", "你好"), false);
+        buffer.flushSession(2L);
+        verify(messageMapper, never()).insertBatch(anyList());
+
+        buffer.flushSession(1L);
+        assertEquals(1, insertedBatches.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushSessionWaitsForFlushAlreadyInProgress() throws Exception {
+        CountDownLatch committing = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            committing.countDown();
+            commit.await();
+            ((Consumer<Object>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        buffer.shutdown();
+        buffer = newBuffer(transactionTemplate);
+
+        ChatMessage message = message(1L, "assistant", "");
+        buffer.save(message, false);
+        Thread flusher = new Thread(buffer::flush);
+        flusher.start();
+        assertTrue(committing.await(5, TimeUnit.SECONDS));
+
+        // 缓冲已被取空，但写入尚未提交
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> buffer.flushSession(1L));
+        try {
+            Thread.sleep(100);
+            assertFalse(reader.isDone());
+        } finally {
+            commit.countDown();
+        }
+        reader.get(5, TimeUnit.SECONDS);
+        assertNotNull(message.getId());
+        flusher.join();
+    }
+
+    @Test
+    void retriesFailedFlushAndResetsIds() {
+        when(sessionMapper.updateMessageStats(anyList()))
+                .thenThrow(new RuntimeException("死锁"))
+                .thenReturn(1);
+        ChatMessage message = message(1L, "user", "你好");
+        buffer.save(message, false);
+        buffer.flush();
+
+        assertEquals(2, insertedBatches.size());
+        assertEquals(2L, message.getId());
+        verify(historyCache, times(1)).append(anyList());
+    }
+
+    @Test
+    void groupCommitWriterSeesFailureAfterRetries() {
+        chatConfig.getWriteBehind().setMaxLossWindowMillis(0L);
+        buffer.shutdown();
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            throw new RuntimeException("数据库不可用");
+        }).when(transactionTemplate).executeWithoutResult(any());
+        buffer = newBuffer(transactionTemplate);
+
+        assertThrows(BusinessException.class, () -> buffer.save(message(1L, "user", "你好"), false));
+        assertEquals(1.0, meterRegistry.get("chat.write_behind.dropped").counter().count());
+        verify(historyCache, never()).append(anyList());
+    }
+
+    @Test
+    void disabledBufferWritesThrough() {
+        chatConfig.getWriteBehind().setEnabled(false);
+        ChatMessage message = message(1L, "user", "你好");
+        buffer.save(message, true);
+
+        verify(messageMapper).insert(message);
+        verify(sessionMapper).updateMessageStats(anyList());
+        verify(historyCache).append(List.of(message));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<ChatSessionDelta>> deltaCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private static ChatMessage message(Long sessionId, String role, String content) {
+        return ChatMessage.builder().sessionId(sessionId).role(role).content(content).build();
+    }
+
+    private static ChatMessage result(String content, int status) {
+        return ChatMessage.builder().content(content).status(status).tokens(10).model("test").build();
+    }
+}
@@ -0,0 +1,207 @@
+package com.health.agent.module.diet.mapper;
+
+import com.health.agent.module.diet.entity.DietDailySummary;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 每日饮食汇总 SQL 测试（H2 MySQL 兼容模式）
+ * 验证增量累加、空行删除、按天合计、不一致检测和从日记重建
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+public class DietDailySummaryMapperTest {
+
+    private static final Long USER_ID = 1L;
+    private static final LocalDate DAY = LocalDate.of(2025, 1, 1);
+
+    private SqlSession session;
+    private DietDailySummaryMapper mapper;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DATE,VALUE;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE diet_diary (
+                      id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                      user_id BIGINT NOT NULL,
+                      date DATE NOT NULL,
+                      meal_type VARCHAR(20) NOT NULL,
+                      calories DECIMAL(10,2) NOT NULL,
+                      protein DECIMAL(10,2) NOT NULL DEFAULT 0,
+                      carbohydrate DECIMAL(10,2) NOT NULL DEFAULT 0,
+                      fat DECIMAL(10,2) NOT NULL DEFAULT 0
+                    )""");
+            statement.execute("""
+                    CREATE TABLE diet_daily_summary (
+                      user_id BIGINT NOT NULL,
+                      date DATE NOT NULL,
+                      meal_type VARCHAR(20) NOT NULL,
+                      calories DECIMAL(12,2) NOT NULL DEFAULT 0,
+                      protein DECIMAL(12,2) NOT NULL DEFAULT 0,
+                      carbohydrate DECIMAL(12,2) NOT NULL DEFAULT 0,
+                      fat DECIMAL(12,2) NOT NULL DEFAULT 0,
+                      item_count INT NOT NULL DEFAULT 0,
+                      updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                      PRIMARY KEY (user_id, date, meal_type)
+                    )""");
+            // H2 没有 MySQL 的 FIELD 函数（别名方法所在类须为 public）
+            statement.execute("CREATE ALIAS FIELD FOR \"" + DietDailySummaryMapperTest.class.getName() + ".field\"");
+        }
+
+        Configuration configuration = new Configuration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        String resource = "mapper/diet/DietDailySummaryMapper.xml";
+        try (InputStream xml = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(xml, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+        SqlSessionFactory factory = new SqlSessionFactoryBuilder().build(configuration);
+        session = factory.openSession(true);
+        mapper = session.getMapper(DietDailySummaryMapper.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    /**
+     * MySQL FIELD(value, a, b, ...)：返回 value 在候选中的位置（从 1 开始），不存在时为 0
+     */
+    public static int field(String value, String... candidates) {
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i].equals(value)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    @Test
+    void upsertDeltaInsertsThenAccumulates() {
+        mapper.upsertDelta(delta("lunch", "300", 1));
+        mapper.upsertDelta(delta("lunch", "200.5", 1));
+        mapper.upsertDelta(delta("lunch", "-100", -1));
+
+        List<DietDailySummary> rows = mapper.selectByUserAndDate(USER_ID, DAY);
+        assertEquals(1, rows.size());
+        assertEquals(0, new BigDecimal("400.5").compareTo(rows.get(0).getCalories()));
+        assertEquals(1, rows.get(0).getItemCount());
+    }
+
+    @Test
+    void deleteEmptyRemovesOnlyZeroCountRows() {
+        mapper.upsertDelta(delta("lunch", "300", 1));
+        mapper.upsertDelta(delta("dinner", "500", 1));
+        mapper.upsertDelta(delta("lunch", "-300", -1));
+
+        assertEquals(1, mapper.deleteEmpty(USER_ID, DAY, "lunch"));
+        assertEquals(0, mapper.deleteEmpty(USER_ID, DAY, "dinner"));
+        assertEquals(List.of("dinner"), mealTypes(mapper.selectByUserAndDate(USER_ID, DAY)));
+    }
+
+    @Test
+    void selectByUserAndDateOrdersByMeal() {
+        mapper.upsertDelta(delta("snack", "100", 1));
+        mapper.upsertDelta(delta("dinner", "500", 1));
+        mapper.upsertDelta(delta("breakfast", "300", 1));
+
+        assertEquals(List.of("breakfast", "dinner", "snack"), mealTypes(mapper.selectByUserAndDate(USER_ID, DAY)));
+    }
+
+    @Test
+    void selectDailyTotalsSumsMealsPerDay() {
+        mapper.upsertDelta(delta("breakfast", "300", 1));
+        mapper.upsertDelta(delta("dinner", "500", 2));
+        DietDailySummary nextDay = delta("lunch", "700", 1);
+        nextDay.setDate(DAY.plusDays(1));
+        mapper.upsertDelta(nextDay);
+
+        List<DietDailySummary> totals = mapper.selectDailyTotals(USER_ID, DAY, DAY.plusDays(6));
+        assertEquals(2, totals.size());
+        assertEquals(DAY, totals.get(0).getDate());
+        assertEquals(0, new BigDecimal("800").compareTo(totals.get(0).getCalories()));
+        assertEquals(3, totals.get(0).getItemCount());
+        assertEquals(0, new BigDecimal("700").compareTo(totals.get(1).getCalories()));
+    }
+
+    @Test
+    void mismatchDetectionAndRebuildFromDiary() throws Exception {
+        insertDiary("breakfast", "300");
+        insertDiary("breakfast", "200");
+        insertDiary("lunch", "600");
+        mapper.upsertDelta(delta("breakfast", "500", 2));
+        assertEquals(1, mapper.selectMismatches(DAY, DAY, 10).size());
+
+        mapper.deleteByUserAndDate(USER_ID, DAY);
+        mapper.insertFromDiaryByUserAndDate(USER_ID, DAY);
+
+        assertTrue(mapper.selectMismatches(DAY, DAY, 10).isEmpty());
+        List<DietDailySummary> rows = mapper.selectByUserAndDate(USER_ID, DAY);
+        assertEquals(List.of("breakfast", "lunch"), mealTypes(rows));
+        assertEquals(2, rows.get(0).getItemCount());
+        assertEquals(0, new BigDecimal("500").compareTo(rows.get(0).getCalories()));
+    }
+
+    @Test
+    void rebuildByUserIds() throws Exception {
+        insertDiary("dinner", "400");
+        mapper.upsertDelta(delta("snack", "100", 1));
+
+        mapper.deleteByUserIds(List.of(USER_ID));
+        mapper.insertFromDiaryByUserIds(List.of(USER_ID));
+
+        assertEquals(List.of("dinner"), mealTypes(mapper.selectByUserAndDate(USER_ID, DAY)));
+        assertTrue(mapper.selectMismatches(DAY, DAY, 10).isEmpty());
+    }
+
+    private void insertDiary(String mealType, String calories) throws Exception {
+        try (Statement statement = session.getConnection().createStatement()) {
+            statement.execute("INSERT INTO diet_diary (user_id, date, meal_type, calories, protein, carbohydrate, fat) "
+                    + "VALUES (" + USER_ID + ", DATE '" + DAY + "', '" + mealType + "', " + calories + ", 0, 0, 0)");
+        }
+    }
+
+    private static DietDailySummary delta(String mealType, String calories, int itemCount) {
+        DietDailySummary delta = new DietDailySummary();
+        delta.setUserId(USER_ID);
+        delta.setDate(DAY);
+        delta.setMealType(mealType);
+        delta.setCalories(new BigDecimal(calories));
+        delta.setProtein(BigDecimal.ZERO);
+        delta.setCarbohydrate(BigDecimal.ZERO);
+        delta.setFat(BigDecimal.ZERO);
+        delta.setItemCount(itemCount);
+        return delta;
+    }
+
+    private static List<String> mealTypes(List<DietDailySummary> rows) {
+        return rows.stream().map(DietDailySummary::getMealType).toList();
+    }
+}
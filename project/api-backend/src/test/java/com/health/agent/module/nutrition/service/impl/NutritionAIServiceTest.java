@@ -0,0 +1,100 @@
+package com.health.agent.module.nutrition.service.impl;
+
+import com.health.agent.common.constant.CommonConstant;
+import com.health.agent.config.AIConfig;
+import com.health.agent.module.ai.client.AIClient;
+import com.health.agent.module.ai.dto.AIRequestDTO;
+import com.health.agent.module.ai.dto.AIResponseDTO;
+import com.health.agent.module.ai.limit.AIPriority;
+import com.health.agent.module.ai.limit.AIWorkload;
+import com.health.agent.module.nutrition.entity.NutritionReport;
+import com.health.agent.module.nutrition.mapper.NutritionReportMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 营养建议服务测试：生成报告走文本对话隔离舱，后台重新生成走后台隔离舱并在后台线程池中执行
+ *
+ * @author Health Agent Team
+ * @date 2025-01-01
+ */
+class NutritionAIServiceTest {
+
+    /** 手动执行的后台线程池，便于确认定时触发不直接调用AI */
+    private final List<Runnable> background = new ArrayList<>();
+    private AIClient aiClient;
+    private NutritionReportMapper reportMapper;
+    private NutritionAIService service;
+
+    @BeforeEach
+    void setUp() {
+        aiClient = mock(AIClient.class);
+        when(aiClient.chat(any())).thenReturn(AIResponseDTO.builder().success(true).content("多吃蔬菜").build());
+        reportMapper = mock(NutritionReportMapper.class);
+        service = new NutritionAIService(aiClient, new AIConfig(), mock(NutritionAdviceTemplate.class),
+                reportMapper, background::add, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void fillAdviceUsesChatWorkload() {
+        NutritionReport report = report(1L);
+
+        service.fillAdvice(report, AIPriority.NEAR_REAL_TIME);
+
+        AIRequestDTO request = captureRequest();
+        assertEquals(AIWorkload.CHAT, request.getWorkload());
+        assertEquals(AIPriority.NEAR_REAL_TIME, request.getPriority());
+        assertEquals(CommonConstant.ADVICE_STATUS_AI, report.getAiAdviceStatus());
+    }
+
+    @Test
+    void regeneratePendingRunsOnBackgroundExecutorWithBackgroundWorkload() {
+        when(reportMapper.selectByAdviceStatus(eq(CommonConstant.ADVICE_STATUS_RULE_PENDING), anyInt()))
+                .thenReturn(List.of(report(2L)));
+        when(reportMapper.updateAdviceIfStatus(anyLong(), anyString(), anyInt(), anyInt())).thenReturn(1);
+
+        service.regeneratePending();
+        // 上一批未结束时不重复提交
+        service.regeneratePending();
+        verify(aiClient, never()).chat(any());
+        assertEquals(1, background.size());
+
+        background.remove(0).run();
+        AIRequestDTO request = captureRequest();
+        assertEquals(AIWorkload.BACKGROUND, request.getWorkload());
+        assertEquals(AIPriority.BACKGROUND, request.getPriority());
+
+        // 上一批结束后可以再次提交
+        service.regeneratePending();
+        assertEquals(1, background.size());
+    }
+
+    private AIRequestDTO captureRequest() {
+        ArgumentCaptor<AIRequestDTO> captor = ArgumentCaptor.forClass(AIRequestDTO.class);
+        verify(aiClient).chat(captor.capture());
+        return captor.getValue();
+    }
+
+    private NutritionReport report(Long id) {
+        NutritionReport report = new NutritionReport();
+        report.setId(id);
+        report.setUserId(1L);
+        return report;
+    }
+}
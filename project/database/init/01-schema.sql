@@ -171,10 +171,12 @@ CREATE TABLE IF NOT EXISTS `nutrition_report` (
   `goal_completion_rate` DECIMAL(5,2) NULL COMMENT '目标完成率(%)',
   `nutrition_balance_score` INT NULL COMMENT '营养均衡评分(0-100)',
   `ai_advice` TEXT NULL COMMENT 'AI建议',
+  `ai_advice_status` TINYINT NOT NULL DEFAULT 0 COMMENT 'AI建议状态 0-无 1-AI生成 2-规则建议待AI重新生成',
   `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   PRIMARY KEY (`id`),
   KEY `idx_user_date` (`user_id`, `report_date`),
-  KEY `idx_report_type` (`report_type`)
+  KEY `idx_report_type` (`report_type`),
+  KEY `idx_advice_status` (`ai_advice_status`, `id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='营养分析报告表';
 
 -- 9. 文章表
@@ -272,11 +274,18 @@ CREATE TABLE IF NOT EXISTS `chat_session` (
   `type` VARCHAR(20) NOT NULL DEFAULT 'nutrition' COMMENT '会话类型 nutrition-营养咨询 recipe-食谱推荐',
   `status` TINYINT(1) NOT NULL DEFAULT 1 COMMENT '状态 0-结束 1-进行中',
   `last_message_time` DATETIME NULL COMMENT '最后消息时间',
+  `message_count` INT NOT NULL DEFAULT 0 COMMENT '消息数量（随消息写入增量维护）',
+  `last_message_preview` VARCHAR(200) NULL COMMENT '最后一条消息预览',
+  `summary` TEXT NULL COMMENT '早期对话滚动摘要（超出上下文预算的历史）',
+  `summary_message_id` BIGINT NULL COMMENT '摘要已覆盖的最后一条消息ID',
+  `archived_message_count` INT NOT NULL DEFAULT 0 COMMENT '已归档到 chat_message_archive 的消息数',
   `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   `is_deleted` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否删除',
   PRIMARY KEY (`id`),
   KEY `idx_user_id` (`user_id`),
+  KEY `idx_user_last_message` (`user_id`, `is_deleted`, `last_message_time`),
+  KEY `idx_last_message_time` (`last_message_time`),
   KEY `idx_created_at` (`created_at`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='聊天会话表';
 
@@ -287,10 +296,13 @@ CREATE TABLE IF NOT EXISTS `chat_message` (
   `role` VARCHAR(20) NOT NULL COMMENT '角色 user-用户 assistant-AI',
   `content` TEXT NOT NULL COMMENT '消息内容',
   `tokens` INT NULL COMMENT 'Token数量',
+  `prompt_tokens` INT NULL COMMENT '提示词Token数（AI回复消息）',
   `model` VARCHAR(50) NULL COMMENT '使用的模型',
+  `status` TINYINT NOT NULL DEFAULT 1 COMMENT '状态 0-生成中 1-已完成 2-生成失败',
   `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   PRIMARY KEY (`id`),
   KEY `idx_session_id` (`session_id`),
+  KEY `idx_status_created` (`status`, `created_at`),
   KEY `idx_created_at` (`created_at`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='聊天消息表';
 
@@ -302,7 +314,7 @@ CREATE TABLE IF NOT EXISTS `ai_config` (
   `model` VARCHAR(100) NOT NULL COMMENT '模型名称',
   `api_url` VARCHAR(255) NOT NULL COMMENT 'API地址',
   `api_key` VARCHAR(255) NOT NULL COMMENT 'API密钥',
-  `parameters` JSON NULL COMMENT '模型参数',
+  `parameters` JSON NULL COMMENT '模型参数 visionModel, maxTokens, temperature',
   `is_default` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否默认',
   `status` TINYINT(1) NOT NULL DEFAULT 1 COMMENT '状态 0-禁用 1-启用',
   `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -322,3 +334,33 @@ CREATE TABLE IF NOT EXISTS `role` (
   PRIMARY KEY (`id`),
   UNIQUE KEY `uk_code` (`code`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='角色表';
+
+-- 17. 聊天消息归档表（长会话压缩后移出 chat_message 的早期消息，已由会话摘要代替）
+CREATE TABLE IF NOT EXISTS `chat_message_archive` (
+  `id` BIGINT NOT NULL COMMENT '消息ID（与原 chat_message 一致）',
+  `session_id` BIGINT NOT NULL COMMENT '会话ID',
+  `role` VARCHAR(20) NOT NULL COMMENT '角色 user-用户 assistant-AI',
+  `content` TEXT NOT NULL COMMENT '消息内容',
+  `tokens` INT NULL COMMENT 'Token数量',
+  `prompt_tokens` INT NULL COMMENT '提示词Token数（AI回复消息）',
+  `model` VARCHAR(50) NULL COMMENT '使用的模型',
+  `status` TINYINT NOT NULL DEFAULT 1 COMMENT '状态 0-生成中 1-已完成 2-生成失败',
+  `created_at` DATETIME NOT NULL COMMENT '创建时间',
+  `archived_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '归档时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_session_id` (`session_id`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='聊天消息归档表';
+
+-- 18. 每日饮食汇总表（按用户、日期、餐次汇总 diet_diary，随日记增删改增量维护）
+CREATE TABLE IF NOT EXISTS `diet_daily_summary` (
+  `user_id` BIGINT NOT NULL COMMENT '用户ID',
+  `date` DATE NOT NULL COMMENT '日期',
+  `meal_type` VARCHAR(20) NOT NULL COMMENT '餐次 breakfast-早餐 lunch-午餐 dinner-晚餐 snack-加餐',
+  `calories` DECIMAL(12,2) NOT NULL DEFAULT 0 COMMENT '热量(kcal)',
+  `protein` DECIMAL(12,2) NOT NULL DEFAULT 0 COMMENT '蛋白质(g)',
+  `carbohydrate` DECIMAL(12,2) NOT NULL DEFAULT 0 COMMENT '碳水化合物(g)',
+  `fat` DECIMAL(12,2) NOT NULL DEFAULT 0 COMMENT '脂肪(g)',
+  `item_count` INT NOT NULL DEFAULT 0 COMMENT '日记条数',
+  `updated_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`user_id`, `date`, `meal_type`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='每日饮食汇总表';
@@ -1,4 +1,5 @@
 import { http } from '@/utils/http'
+import { useUserStore } from '@/stores/user'
 
 // 创建会话
 export function createSession(data) {
@@ -25,6 +26,102 @@ export function sendMessage(payload) {
   return http.post('/api/chat/messages', payload)
 }
 
+// 发送消息（流式，SSE 逐段返回AI回复）
+// handlers: { onStart(message), onDelta(text, offset), onDone(message), onError(message) }
+// 网络中断时按AI回复的消息ID和最后收到的偏移量自动续传，不重新生成
+export async function sendMessageStream(payload, handlers = {}) {
+  const state = { messageId: null, offset: 0, finished: false }
+  try {
+    const resp = await streamFetch('/api/chat/messages/stream', {
+      method: 'POST',
+      body: JSON.stringify(payload)
+    })
+    await readEventStream(resp, state, handlers)
+  } catch (e) {
+    if (!state.messageId) throw e
+  }
+  if (state.messageId && !state.finished) {
+    await resumeUntilFinished(state, handlers)
+  }
+}
+
+// 续传流式回复（从偏移量 offset 之后继续接收）
+export async function resumeMessageStream(messageId, offset, handlers = {}) {
+  await resumeUntilFinished({ messageId, offset, finished: false }, handlers)
+}
+
+const MAX_RESUME_ATTEMPTS = 5
+
+async function resumeUntilFinished(state, handlers) {
+  for (let attempt = 1; !state.finished; attempt++) {
+    try {
+      const resp = await streamFetch(`/api/chat/messages/${state.messageId}/stream?after=${state.offset}`, { method: 'GET' })
+      await readEventStream(resp, state, handlers)
+    } catch (e) {
+      if (attempt >= MAX_RESUME_ATTEMPTS) throw e
+    }
+    if (!state.finished) {
+      await new Promise((resolve) => setTimeout(resolve, Math.min(1000 * attempt, 5000)))
+    }
+  }
+}
+
+async function streamFetch(path, init) {
+  const userStore = useUserStore()
+  const headers = { 'Content-Type': 'application/json', Accept: 'text/event-stream' }
+  if (userStore.token) {
+    headers.Authorization = `Bearer ${userStore.token}`
+  }
+
+  const resp = await fetch(`${import.meta.env.VITE_API_BASE_URL || ''}${path}`, { ...init, headers })
+  if (!resp.ok || !resp.body) {
+    throw new Error(`流式请求失败: ${resp.status}`)
+  }
+  return resp
+}
+
+// 读取SSE事件直到流结束，记录消息ID和偏移量供续传
+async function readEventStream(resp, state, handlers) {
+  const reader = resp.body.getReader()
+  const decoder = new TextDecoder('utf-8')
+  let buffer = ''
+  for (;;) {
+    const { value, done } = await reader.read()
+    if (done) break
+    buffer += decoder.decode(value, { stream: true })
+
+    // SSE 事件以空行分隔
+    let sep
+    while ((sep = buffer.indexOf('\n\n')) >= 0) {
+      const raw = buffer.slice(0, sep)
+      buffer = buffer.slice(sep + 2)
+      let event = 'message'
+      let id = null
+      const dataLines = []
+      for (const line of raw.split('\n')) {
+        if (line.startsWith('event:')) event = line.slice(6).trim()
+        else if (line.startsWith('id:')) id = line.slice(3).trim()
+        else if (line.startsWith('data:')) dataLines.push(line.slice(5))
+      }
+      const data = dataLines.join('\n')
+      if (event === 'start') {
+        const message = JSON.parse(data)
+        state.messageId = message.id
+        handlers.onStart?.(message)
+      } else if (event === 'delta') {
+        if (id) state.offset = Number(id)
+        handlers.onDelta?.(data, state.offset)
+      } else if (event === 'done') {
+        state.finished = true
+        handlers.onDone?.(JSON.parse(data))
+      } else if (event === 'error') {
+        state.finished = true
+        handlers.onError?.(data)
+      }
+    }
+  }
+}
+
 // 删除会话
 export function deleteSession(sessionId) {
   return http.delete(`/api/chat/sessions/${sessionId}`)
@@ -0,0 +1,97 @@
+import { useUserStore } from '@/stores/user'
+
+// WebSocket 聊天网关：一个连接承载所有会话，推送AI回复增量、生成状态和其他设备的消息
+// 事件：message（其他设备发送的用户消息）、delta、done、error、status、typing，以及连接断开时的 close
+const PING_INTERVAL = 30000
+const MAX_RECONNECT_DELAY = 30000
+
+let socket = null
+let pingTimer = null
+let reconnectTimer = null
+let reconnectDelay = 1000
+let closedByUser = false
+const listeners = new Map()
+
+function socketUrl(token) {
+  const base = import.meta.env.VITE_API_BASE_URL || window.location.origin
+  const url = new URL('/ws/chat', base)
+  url.protocol = url.protocol === 'https:' ? 'wss:' : 'ws:'
+  url.searchParams.set('token', token)
+  return url.toString()
+}
+
+function emit(type, event) {
+  for (const handler of listeners.get(type) || []) {
+    handler(event)
+  }
+}
+
+function scheduleReconnect() {
+  if (closedByUser || reconnectTimer) return
+  reconnectTimer = setTimeout(() => {
+    reconnectTimer = null
+    connect()
+  }, reconnectDelay)
+  reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY)
+}
+
+// 建立连接（已连接时忽略），断开后按指数退避重连
+export function connect() {
+  const userStore = useUserStore()
+  if (!userStore.token || typeof WebSocket === 'undefined') return
+  if (socket && (socket.readyState === WebSocket.OPEN || socket.readyState === WebSocket.CONNECTING)) return
+
+  closedByUser = false
+  socket = new WebSocket(socketUrl(userStore.token))
+  socket.onopen = () => {
+    reconnectDelay = 1000
+    clearInterval(pingTimer)
+    pingTimer = setInterval(() => send({ type: 'ping' }), PING_INTERVAL)
+  }
+  socket.onmessage = (e) => {
+    try {
+      const event = JSON.parse(e.data)
+      emit(event.type, event)
+    } catch (err) {
+      console.error('解析WebSocket消息失败:', err)
+    }
+  }
+  socket.onclose = () => {
+    clearInterval(pingTimer)
+    socket = null
+    emit('close', {})
+    scheduleReconnect()
+  }
+}
+
+// 主动断开，不再重连
+export function disconnect() {
+  closedByUser = true
+  clearTimeout(reconnectTimer)
+  reconnectTimer = null
+  clearInterval(pingTimer)
+  if (socket) {
+    socket.close()
+    socket = null
+  }
+}
+
+export function isOpen() {
+  return !!socket && socket.readyState === WebSocket.OPEN
+}
+
+// 发送消息，未连接时返回 false（调用方退化为 HTTP 接口）
+export function send(frame) {
+  if (!isOpen()) return false
+  socket.send(JSON.stringify(frame))
+  return true
+}
+
+export function on(type, handler) {
+  if (!listeners.has(type)) listeners.set(type, new Set())
+  listeners.get(type).add(handler)
+}
+
+export function off(type, handler) {
+  listeners.get(type)?.delete(handler)
+}
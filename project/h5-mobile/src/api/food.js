@@ -1,4 +1,5 @@
 import { http } from '@/utils/http'
+import { useUserStore } from '@/stores/user'
 
 // 分析食物图片（文件上传）
 export function analyzeFoodImageUpload(file, userId) {
@@ -14,6 +15,132 @@ export function analyzeFoodImageUpload(file, userId) {
   })
 }
 
+// 提交食物图片分析任务（立即返回任务ID）
+export function submitFoodAnalysisJob(file, userId) {
+  const formData = new FormData()
+  formData.append('file', file)
+  if (userId) {
+    formData.append('userId', userId)
+  }
+
+  return http.post('/api/ai/analyze-food/jobs', formData, {
+    headers: { 'Content-Type': 'multipart/form-data' }
+  })
+}
+
+// 查询食物图片分析任务
+export function getFoodAnalysisJob(jobId) {
+  return http.get(`/api/ai/analyze-food/jobs/${jobId}`)
+}
+
+// 异步分析食物图片：提交任务后通过SSE等待结果，SSE不可用时退化为轮询
+// 返回值与 analyzeFoodImageUpload 一致（success / food / errorMessage）
+export async function analyzeFoodImageAsync(file, userId) {
+  const job = await submitFoodAnalysisJob(file, userId)
+  const toResult = (finished) => finished.status === 'succeeded'
+    ? finished.result
+    : { success: false, errorMessage: finished.errorMessage }
+
+  return new Promise((resolve, reject) => {
+    const baseURL = import.meta.env.VITE_API_BASE_URL || ''
+    let settled = false
+    const finish = (fn, value) => {
+      if (!settled) {
+        settled = true
+        fn(value)
+      }
+    }
+
+    const poll = async () => {
+      const deadline = Date.now() + 150000
+      while (!settled && Date.now() < deadline) {
+        try {
+          const current = await getFoodAnalysisJob(job.jobId)
+          if (current.status === 'succeeded' || current.status === 'failed') {
+            finish(resolve, toResult(current))
+            return
+          }
+        } catch (error) {
+          finish(reject, error)
+          return
+        }
+        await new Promise((r) => setTimeout(r, 1500))
+      }
+      finish(reject, new Error('分析超时，请重试'))
+    }
+
+    if (typeof EventSource === 'undefined') {
+      poll()
+      return
+    }
+
+    const source = new EventSource(`${baseURL}/api/ai/analyze-food/jobs/${job.jobId}/events`)
+    source.addEventListener('done', (event) => {
+      source.close()
+      finish(resolve, toResult(JSON.parse(event.data)))
+    })
+    source.onerror = () => {
+      source.close()
+      poll()
+    }
+  })
+}
+
+// 批量分析食物图片（一餐多道菜），SSE 按完成顺序逐张返回结果
+// handlers: { onItem(item), onDone(summary), onError(message) }
+// item: { index, fileName, success, result, errorCode, errorMessage }
+export async function analyzeFoodImagesBatch(files, userId, handlers = {}) {
+  const userStore = useUserStore()
+  const headers = { Accept: 'text/event-stream' }
+  if (userStore.token) {
+    headers.Authorization = `Bearer ${userStore.token}`
+  }
+  const formData = new FormData()
+  files.forEach((file) => formData.append('files', file))
+  if (userId) {
+    formData.append('userId', userId)
+  }
+
+  const resp = await fetch(`${import.meta.env.VITE_API_BASE_URL || ''}/api/ai/analyze-food/batch`, {
+    method: 'POST',
+    headers,
+    body: formData
+  })
+  if (!resp.ok || !resp.body) {
+    throw new Error(`批量分析请求失败: ${resp.status}`)
+  }
+
+  const reader = resp.body.getReader()
+  const decoder = new TextDecoder('utf-8')
+  let buffer = ''
+  for (;;) {
+    const { value, done } = await reader.read()
+    if (done) break
+    buffer += decoder.decode(value, { stream: true })
+
+    // SSE 事件以空行分隔
+    let sep
+    while ((sep = buffer.indexOf('\n\n')) >= 0) {
+      const raw = buffer.slice(0, sep)
+      buffer = buffer.slice(sep + 2)
+      let event = 'message'
+      const dataLines = []
+      for (const line of raw.split('\n')) {
+        if (line.startsWith('event:')) event = line.slice(6).trim()
+        else if (line.startsWith('data:')) dataLines.push(line.slice(5))
+      }
+      const data = dataLines.join('\n')
+      if (event === 'item') {
+        handlers.onItem?.(JSON.parse(data))
+      } else if (event === 'done') {
+        handlers.onDone?.(JSON.parse(data))
+      } else if (event === 'error') {
+        handlers.onError?.(data)
+      }
+    }
+  }
+}
+
 // 分析食物图片（Base64）
 export function analyzeFoodImage(data) {
   return http.post('/api/ai/analyze-food', data, {